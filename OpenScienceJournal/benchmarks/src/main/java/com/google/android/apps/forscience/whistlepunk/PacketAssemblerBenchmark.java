@@ -0,0 +1,116 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk;
+
+import com.google.android.apps.forscience.whistlepunk.data.GoosciSensor;
+import com.google.android.apps.forscience.whistlepunk.metadata.BleSensorSpec;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamConsumer;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.StubStatusListener;
+import com.google.android.apps.forscience.whistlepunk.sensordb.MonotonicClock;
+import com.google.android.apps.forscience.whistlepunk.sensors.BluetoothSensor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * How long it takes to reassemble and parse one reading from an external sensor, from the BLE
+ * notifications it arrives in.
+ */
+@State(Scope.Thread)
+public class PacketAssemblerBenchmark {
+    // Each notification has a length byte and a last-packet byte before the payload.
+    private static final int HEADER_SIZE = 2;
+    private static final int MESSAGE_COUNT = 4096;
+
+    /**
+     * Largest notification the sensor sends, including the header.  Small enough values split
+     * each reading across several notifications.
+     */
+    @Param({"20", "8"})
+    public int mPacketSize;
+
+    private PacketAssembler mAssembler;
+    private List<byte[][]> mMessages;
+    private int mNextMessage = 0;
+    private double mValueSum = 0;
+
+    @Setup
+    public void setUp() {
+        BluetoothSensor sensor = new BluetoothSensor("sensorId",
+                new BleSensorSpec("F7:83:CE:FE:56:C2", "name"),
+                BluetoothSensor.ANNING_SERVICE_SPEC);
+        StreamConsumer consumer = new StreamConsumer() {
+            @Override
+            public void addData(long timestampMillis, double value) {
+                mValueSum += value;
+            }
+        };
+        mAssembler = new PacketAssembler(consumer, new MonotonicClock(), sensor,
+                new StubStatusListener());
+
+        // The sensor's timestamps only go forward, as they do when streaming, until the messages
+        // run out and start over.
+        mMessages = new ArrayList<>();
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            mMessages.add(frame(analogReading(i * 10, i % 1024), mPacketSize - HEADER_SIZE));
+        }
+    }
+
+    private static byte[] analogReading(int timestampMillis, int value) {
+        GoosciSensor.AnalogValue analogValue = new GoosciSensor.AnalogValue();
+        analogValue.value = value;
+        GoosciSensor.Data data = new GoosciSensor.Data();
+        data.pin = new GoosciSensor.Pin();
+        data.pin.setAnalogPin(new GoosciSensor.AnalogPin());
+        data.setAnalogValue(analogValue);
+        GoosciSensor.SensorData sensorData = new GoosciSensor.SensorData();
+        sensorData.timestampKey = timestampMillis;
+        sensorData.setData(data);
+        return GoosciSensor.SensorData.toByteArray(sensorData);
+    }
+
+    private static byte[][] frame(byte[] message, int payloadSize) {
+        int packetCount = (message.length + payloadSize - 1) / payloadSize;
+        byte[][] packets = new byte[packetCount][];
+        for (int i = 0; i < packetCount; i++) {
+            int start = i * payloadSize;
+            int length = Math.min(payloadSize, message.length - start);
+            byte[] packet = new byte[HEADER_SIZE + length];
+            packet[0] = (byte) length;
+            packet[1] = (byte) (i == packetCount - 1 ? 1 : 0);
+            System.arraycopy(message, start, packet, HEADER_SIZE, length);
+            packets[i] = packet;
+        }
+        return packets;
+    }
+
+    @Benchmark
+    public double append() {
+        for (byte[] packet : mMessages.get(mNextMessage)) {
+            mAssembler.append(packet);
+        }
+        mNextMessage = (mNextMessage + 1) % MESSAGE_COUNT;
+        return mValueSum;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * How long it takes to fold one reading into the recording stats.
+ */
+@State(Scope.Thread)
+public class StatsAccumulatorBenchmark {
+    private StatsAccumulator mAccumulator;
+    private double[] mValues;
+    private int mNextValue = 0;
+    private long mTimestamp = 0;
+
+    @Setup
+    public void setUp() {
+        mAccumulator = new StatsAccumulator();
+        Random random = new Random(0);
+        mValues = new double[1024];
+        for (int i = 0; i < mValues.length; i++) {
+            mValues[i] = random.nextGaussian();
+        }
+    }
+
+    @Benchmark
+    public void updateRecordingStreamStats() {
+        mTimestamp += 10;
+        mNextValue = (mNextValue + 1) % mValues.length;
+        mAccumulator.updateRecordingStreamStats(mTimestamp, mValues[mNextValue]);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.metadata;
+
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciSensorTriggerInformation
+        .TriggerInformation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * How long it takes to check one reading against a trigger, for each kind of trigger.
+ */
+@State(Scope.Thread)
+public class SensorTriggerBenchmark {
+    private static final long STEP_MILLIS = 10;
+
+    @Param({
+            "" + TriggerInformation.TRIGGER_WHEN_AT,
+            "" + TriggerInformation.TRIGGER_WHEN_RISES_ABOVE,
+            "" + TriggerInformation.TRIGGER_WHEN_DROPS_BELOW,
+            "" + TriggerInformation.TRIGGER_WHEN_ABOVE,
+            "" + TriggerInformation.TRIGGER_WHEN_BELOW})
+    public int mTriggerWhen;
+
+    private SensorTrigger mTrigger;
+    private long mTimestamp = 0;
+
+    @Setup
+    public void setUp() {
+        mTrigger = SensorTrigger.newAlertTypeTrigger("triggerId", "sensorId", mTriggerWhen,
+                new int[]{TriggerInformation.TRIGGER_ALERT_VISUAL}, 0.5);
+    }
+
+    @Benchmark
+    public boolean isTriggered() {
+        mTimestamp += STEP_MILLIS;
+        // A 1Hz sine wave, which crosses the trigger value twice a second.
+        return mTrigger.isTriggered(Math.sin(2 * Math.PI * mTimestamp / 1000.0));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.scalarchart;
+
+import com.google.android.apps.forscience.whistlepunk.TestData;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * How long the chart takes to take in points, find them again, and let go of old ones.
+ */
+@State(Scope.Thread)
+public class ChartDataBenchmark {
+    private static final int STEP_MILLIS = 10;
+
+    @Param({"1000", "100000"})
+    public int mPointCount;
+
+    private List<ChartData.DataPoint> mPoints;
+    private ChartData mFullChart;
+    private long[] mSearchTimestamps;
+    private int mNextSearch = 0;
+
+    @Setup
+    public void setUp() {
+        mPoints = TestData.allPointsBetween(0, (mPointCount - 1) * STEP_MILLIS, STEP_MILLIS)
+                .asDataPoints();
+        mFullChart = new ChartData();
+        mFullChart.setPoints(new ArrayList<>(mPoints));
+
+        // Fixed seed, so that every run searches for the same timestamps.
+        Random random = new Random(0);
+        mSearchTimestamps = new long[1024];
+        for (int i = 0; i < mSearchTimestamps.length; i++) {
+            mSearchTimestamps[i] = random.nextInt(mPointCount * STEP_MILLIS);
+        }
+    }
+
+    private long nextSearchTimestamp() {
+        mNextSearch = (mNextSearch + 1) % mSearchTimestamps.length;
+        return mSearchTimestamps[mNextSearch];
+    }
+
+    @Benchmark
+    public ChartData addPoints() {
+        ChartData chart = new ChartData();
+        for (ChartData.DataPoint point : mPoints) {
+            chart.addPoint(point);
+        }
+        return chart;
+    }
+
+    @Benchmark
+    public ChartData addOrderedGroupOfPoints() {
+        ChartData chart = new ChartData();
+        chart.addOrderedGroupOfPoints(mPoints);
+        return chart;
+    }
+
+    @Benchmark
+    public int getClosestIndexToTimestamp() {
+        return mFullChart.getClosestIndexToTimestamp(nextSearchTimestamp());
+    }
+
+    @Benchmark
+    public List<ChartData.DataPoint> getPointsInRange() {
+        long start = nextSearchTimestamp();
+        return mFullChart.getPointsInRange(start, start + 100 * STEP_MILLIS);
+    }
+
+    /**
+     * Throws away the older half of the points, as the live chart does when it scrolls.  This
+     * includes copying the points into a fresh chart first.
+     */
+    @Benchmark
+    public ChartData throwAwayBefore() {
+        ChartData chart = new ChartData();
+        chart.setPoints(new ArrayList<>(mPoints));
+        chart.throwAwayBefore(mPointCount / 2 * STEP_MILLIS);
+        return chart;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensorapi;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * How long the frequency filter takes per reading once its window is full.
+ */
+@State(Scope.Thread)
+public class FrequencyBufferBenchmark {
+    private static final long STEP_MILLIS = 10;
+
+    @Param({"2000", "20000"})
+    public long mWindowMillis;
+
+    private FrequencyBuffer mBuffer;
+    private long mTimestamp;
+
+    @Setup
+    public void setUp() {
+        mBuffer = new FrequencyBuffer(mWindowMillis, 1000, 0);
+        // Fill the window first, so that every measured reading also pushes one out.
+        for (mTimestamp = 0; mTimestamp < mWindowMillis; mTimestamp += STEP_MILLIS) {
+            mBuffer.filterValue(mTimestamp, valueAt(mTimestamp));
+        }
+    }
+
+    // A 3Hz sine wave.
+    private static double valueAt(long timestamp) {
+        return Math.sin(2 * Math.PI * 3 * timestamp / 1000.0);
+    }
+
+    @Benchmark
+    public double filterValue() {
+        mTimestamp += STEP_MILLIS;
+        return mBuffer.filterValue(mTimestamp, valueAt(mTimestamp));
+    }
+}
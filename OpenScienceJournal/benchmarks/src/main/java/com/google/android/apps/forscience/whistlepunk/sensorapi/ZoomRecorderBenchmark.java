@@ -0,0 +1,60 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensorapi;
+
+import com.google.android.apps.forscience.whistlepunk.RecordingDataController;
+import com.google.android.apps.forscience.whistlepunk.sensordb.InMemorySensorDatabase;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * How long it takes to push one reading through every zoom tier while recording.
+ */
+@State(Scope.Thread)
+public class ZoomRecorderBenchmark {
+    private static final String SENSOR_ID = "sensorId";
+
+    @Param({"20"})
+    public int mZoomBufferSize;
+
+    private InMemorySensorDatabase mDatabase;
+    private RecordingDataController mDataController;
+    private ZoomRecorder mRecorder;
+    private long mTimestamp;
+
+    // A new database for each iteration, so that the stored readings don't pile up for the whole
+    // run.
+    @Setup(Level.Iteration)
+    public void setUp() {
+        mDatabase = new InMemorySensorDatabase();
+        mDataController = mDatabase.makeSimpleRecordingController();
+        mRecorder = new ZoomRecorder(SENSOR_ID, mZoomBufferSize, 1);
+        mTimestamp = 0;
+    }
+
+    @Benchmark
+    public void addData() {
+        mTimestamp += 10;
+        mRecorder.addData(mTimestamp, Math.sin(mTimestamp / 1000.0), mDataController);
+    }
+}
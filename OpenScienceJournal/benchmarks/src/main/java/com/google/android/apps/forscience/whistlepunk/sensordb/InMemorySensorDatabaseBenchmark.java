@@ -0,0 +1,70 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensordb;
+
+import com.google.android.apps.forscience.whistlepunk.TestData;
+import com.google.android.apps.forscience.whistlepunk.scalarchart.ChartData;
+import com.google.common.collect.Range;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * How long the in-memory database that the tests use takes to answer the queries a run review
+ * makes.  Useful as a baseline for the cost of everything above the storage layer.
+ */
+@State(Scope.Thread)
+public class InMemorySensorDatabaseBenchmark {
+    private static final String SENSOR_TAG = "sensorTag";
+    private static final int STEP_MILLIS = 10;
+
+    @Param({"1000", "100000"})
+    public int mReadingCount;
+
+    private InMemorySensorDatabase mDatabase;
+    private TimeRange mWholeRun;
+    private TimeRange mLastSecond;
+
+    @Setup
+    public void setUp() {
+        mDatabase = new InMemorySensorDatabase();
+        long lastTimestamp = (mReadingCount - 1) * STEP_MILLIS;
+        List<ChartData.DataPoint> points =
+                TestData.allPointsBetween(0, (int) lastTimestamp, STEP_MILLIS).asDataPoints();
+        for (ChartData.DataPoint point : points) {
+            mDatabase.addScalarReading(SENSOR_TAG, 0, point.getX(), point.getY());
+        }
+        mWholeRun = TimeRange.oldest(Range.closed(0L, lastTimestamp));
+        mLastSecond = TimeRange.oldest(Range.closed(lastTimestamp - 1000, lastTimestamp));
+    }
+
+    @Benchmark
+    public List<ChartData.DataPoint> getWholeRun() {
+        return mDatabase.getScalarReadings(SENSOR_TAG, mWholeRun, 0, 0).asDataPoints();
+    }
+
+    @Benchmark
+    public List<ChartData.DataPoint> getLastSecond() {
+        return mDatabase.getScalarReadings(SENSOR_TAG, mLastSecond, 0, 0).asDataPoints();
+    }
+}
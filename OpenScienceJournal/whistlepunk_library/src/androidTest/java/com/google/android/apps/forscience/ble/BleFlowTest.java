@@ -0,0 +1,139 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.ble;
+
+import android.content.Intent;
+import android.support.v4.content.LocalBroadcastManager;
+import android.test.AndroidTestCase;
+
+import com.google.android.apps.forscience.whistlepunk.sensorapi.FakeBleClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+public class BleFlowTest extends AndroidTestCase {
+    private static final String ADDRESS = "AA:BB:CC:DD:EE:FF";
+
+    public void testTwoFlowsOnOneDeviceOnlyActOnTheirOwnResults() {
+        RecordingBleClient client = new RecordingBleClient();
+        CountingListener firstListener = new CountingListener();
+        CountingListener secondListener = new CountingListener();
+        BleFlow first = client.createFlowFor(ADDRESS).addListener(firstListener).commit();
+        BleFlow second = client.createFlowFor(ADDRESS).addListener(secondListener).commit();
+        BleFlow.run(first);
+        BleFlow.run(second);
+        assertEquals(2, client.commitIssuers.size());
+        assertEquals(first.getId(), client.commitIssuers.get(0));
+        assertEquals(second.getId(), client.commitIssuers.get(1));
+
+        // The first commit finishing must not move the second flow along.
+        broadcast(BleEvents.COMMIT_OK, first.getId());
+        assertEquals(1, firstListener.successes);
+        assertEquals(0, secondListener.successes);
+
+        broadcast(BleEvents.COMMIT_OK, second.getId());
+        assertEquals(1, firstListener.successes);
+        assertEquals(1, secondListener.successes);
+
+        first.close();
+        second.close();
+    }
+
+    public void testNotificationsGoToEveryFlow() {
+        RecordingBleClient client = new RecordingBleClient();
+        CountingListener firstListener = new CountingListener();
+        CountingListener secondListener = new CountingListener();
+        BleFlow first = client.createFlowFor(ADDRESS).addListener(firstListener);
+        BleFlow second = client.createFlowFor(ADDRESS).addListener(secondListener);
+
+        Intent intent = BleEvents.createIntent(BleEvents.CHAR_CHANGED, ADDRESS);
+        intent.putExtra(MyBleService.UUID, UUID.randomUUID().toString());
+        intent.putExtra(MyBleService.DATA, new byte[] {1});
+        LocalBroadcastManager.getInstance(getContext()).sendBroadcastSync(intent);
+
+        assertEquals(1, firstListener.notifications);
+        assertEquals(1, secondListener.notifications);
+
+        first.close();
+        second.close();
+    }
+
+    private void broadcast(String action, String issuer) {
+        Intent intent = BleEvents.createIntent(action, ADDRESS);
+        intent.putExtra(MyBleService.ISSUER, issuer);
+        LocalBroadcastManager.getInstance(getContext()).sendBroadcastSync(intent);
+    }
+
+    private class RecordingBleClient extends FakeBleClient {
+        public final List<String> commitIssuers = new ArrayList<>();
+
+        public RecordingBleClient() {
+            super(getContext());
+        }
+
+        @Override
+        public void commit(String address, String issuer) {
+            commitIssuers.add(issuer);
+        }
+    }
+
+    private static class CountingListener extends BleFlowListener {
+        public int successes = 0;
+        public int notifications = 0;
+
+        @Override
+        public void onSuccess() {
+            successes++;
+        }
+
+        @Override
+        public void onFailure(Exception error) {
+            fail(error.getMessage());
+        }
+
+        @Override
+        public void onCharacteristicRead(UUID characteristic, int flags, byte[] value) {
+        }
+
+        @Override
+        public void onNotification(UUID characteristic, int flags, byte[] value) {
+            notifications++;
+        }
+
+        @Override
+        public void onDisconnect() {
+        }
+
+        @Override
+        public void onConnect() {
+        }
+
+        @Override
+        public void onNotificationSubscribed() {
+        }
+
+        @Override
+        public void onNotificationUnsubscribed() {
+        }
+
+        @Override
+        public void onServicesDiscovered() {
+        }
+    }
+}
@@ -32,16 +32,32 @@ public class MyBleServiceTest extends AndroidTestCase {
     public void testDontAskForSameServiceTwice() {
         TestBleService mbs = new TestBleService();
 
-        mbs.discoverServices("address");
+        mbs.discoverServices("address", "flow1");
         // make sure this doesn't actually deliver
-        mbs.discoverServices("address");
+        mbs.discoverServices("address", "flow2");
 
         // Should be only one discovery call
         assertEquals(Lists.newArrayList("address"), mbs.addressesDiscovered);
     }
 
+    public void testFailedRequestIsAnsweredToItsIssuer() {
+        TestBleService mbs = new TestBleService();
+
+        // Not connected, so the commit can't be issued.
+        mbs.commit("address", "flow1");
+
+        assertEquals(Lists.newArrayList(BleEvents.COMMIT_FAIL + " to flow1"), mbs.broadcasts);
+    }
+
     private static class TestBleService extends MyBleService {
         public List<String> addressesDiscovered = new ArrayList<>();
+        public List<String> broadcasts = new ArrayList<>();
+
+        @Override
+        protected void sendGattBroadcast(String address, String gattAction,
+                BluetoothGattCharacteristic characteristic, String issuer) {
+            broadcasts.add(gattAction + " to " + issuer);
+        }
 
         @Override
         protected boolean internalDiscoverServices(String address) {
@@ -19,10 +19,13 @@ package com.google.android.apps.forscience.whistlepunk;
 import android.support.annotation.NonNull;
 import android.test.AndroidTestCase;
 
+import com.google.android.apps.forscience.whistlepunk.api.scalarinput.ExplicitExecutor;
 import com.google.android.apps.forscience.whistlepunk.metadata.Experiment;
 import com.google.android.apps.forscience.whistlepunk.metadata.Project;
 import com.google.android.apps.forscience.whistlepunk.sensordb.InMemorySensorDatabase;
 import com.google.android.apps.forscience.whistlepunk.sensordb.MemoryMetadataManager;
+import com.google.android.apps.forscience.whistlepunk.sensordb.MonotonicClock;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -79,11 +82,96 @@ public class MetadataControllerTest extends AndroidTestCase {
         assertEquals(e2.getTitle(), mc.getExperimentName(getContext()));
     }
 
+    public void testPrefetchOnlyUsedByFirstListener() {
+        MemoryMetadataManager mmm = new MemoryMetadataManager();
+        Project p = mmm.newProject();
+        Experiment e1 = mmm.newExperiment(p, 1, "e1");
+        Experiment e2 = mmm.newExperiment(p, 2, "e2");
+        DataController dc = buildDataController(mmm);
+        MetadataController mc = new MetadataController(dc, new ExplodingFactory());
+        RecordingMetadataListener listener = new RecordingMetadataListener();
+        final int[] loadedCount = {0};
+
+        mc.prefetch(new Runnable() {
+            @Override
+            public void run() {
+                loadedCount[0]++;
+            }
+        });
+        assertEquals(1, loadedCount[0]);
+        Experiment e3 = mmm.newExperiment(p, 3, "e3");
+
+        // Answered from the prefetch, which doesn't know about e3
+        listener.expectedProjectId = p.getProjectId();
+        listener.expectedExperimentIds = Arrays.asList(e2.getExperimentId(),
+                e1.getExperimentId());
+        mc.setExperimentChangeListener(listener);
+        listener.assertListenerCalled(1);
+        mc.clearExperimentChangeListener();
+
+        // Showing e2 made it the last used, ahead of e3
+        listener.expectedExperimentIds = Arrays.asList(e2.getExperimentId(),
+                e3.getExperimentId(), e1.getExperimentId());
+        mc.setExperimentChangeListener(listener);
+        listener.assertListenerCalled(1);
+    }
+
+    public void testDiscardedPrefetchNotUsed() {
+        MemoryMetadataManager mmm = new MemoryMetadataManager();
+        Project p = mmm.newProject();
+        Experiment e1 = mmm.newExperiment(p, 1, "e1");
+        DataController dc = buildDataController(mmm);
+        MetadataController mc = new MetadataController(dc, new ExplodingFactory());
+        RecordingMetadataListener listener = new RecordingMetadataListener();
+
+        mc.prefetch(null);
+        Experiment e2 = mmm.newExperiment(p, 2, "e2");
+        mc.discardPrefetch();
+
+        listener.expectedProjectId = p.getProjectId();
+        listener.expectedExperimentIds = Arrays.asList(e2.getExperimentId(),
+                e1.getExperimentId());
+        mc.setExperimentChangeListener(listener);
+        listener.assertListenerCalled(1);
+    }
+
+    public void testQuickReattachMakesOneDefaultProject() {
+        MemoryMetadataManager mmm = new MemoryMetadataManager();
+        ExplicitExecutor metadataThread = new ExplicitExecutor();
+        DataController dc = new DataControllerImpl(new InMemorySensorDatabase(),
+                MoreExecutors.directExecutor(), metadataThread, MoreExecutors.directExecutor(),
+                mmm, new MonotonicClock(), null);
+        MetadataController mc = new MetadataController(dc, new ExplodingFactory());
+        CountingMetadataListener first = new CountingMetadataListener();
+        CountingMetadataListener second = new CountingMetadataListener();
+
+        // The first listener comes and goes before the prefetch has loaded anything.
+        mc.prefetch(null);
+        mc.setExperimentChangeListener(first);
+        mc.clearExperimentChangeListener();
+        mc.setExperimentChangeListener(second);
+        ExplicitExecutor.drainAll(metadataThread);
+
+        assertEquals(1, mmm.getProjects(10, false).size());
+        assertEquals(0, first.calls);
+        assertEquals(1, second.calls);
+    }
+
     @NonNull
     private DataController buildDataController(MemoryMetadataManager mmm) {
         return new InMemorySensorDatabase().makeSimpleController(mmm);
     }
 
+    private static class CountingMetadataListener implements
+            MetadataController.MetadataChangeListener {
+        public int calls = 0;
+
+        @Override
+        public void onMetadataChanged(Project newProject, List<Experiment> newExperiments) {
+            calls++;
+        }
+    }
+
     private static class RecordingMetadataListener implements MetadataController
             .MetadataChangeListener {
         public String expectedProjectId;
@@ -0,0 +1,181 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk;
+
+import android.test.AndroidTestCase;
+
+import com.google.android.apps.forscience.whistlepunk.metadata.BleSensorSpec;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorStatusListener;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamConsumer;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.StubStatusListener;
+import com.google.android.apps.forscience.whistlepunk.sensors.BluetoothSensor;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+public class MultiSamplePacketDecoderTest extends AndroidTestCase {
+    private static final long NOW = 100000;
+
+    private static class RecordingConsumer implements StreamConsumer {
+        final List<Long> timestamps = new ArrayList<>();
+        final List<Double> values = new ArrayList<>();
+
+        @Override
+        public void addData(long timestampMillis, double value) {
+            timestamps.add(timestampMillis);
+            values.add(value);
+        }
+    }
+
+    private static class ErrorCountingListener extends StubStatusListener {
+        int errors = 0;
+
+        @Override
+        public void onSourceError(String id, int error, String errorMessage) {
+            assertEquals(SensorStatusListener.ERROR_INVALID_PROTO, error);
+            errors++;
+        }
+    }
+
+    private final RecordingConsumer mConsumer = new RecordingConsumer();
+    private final ErrorCountingListener mListener = new ErrorCountingListener();
+    private final Clock mClock = new Clock() {
+        @Override
+        public long getNow() {
+            return NOW;
+        }
+    };
+
+    private BluetoothSensor newSensor() {
+        return new BluetoothSensor("sensorId", new BleSensorSpec("address", "name"),
+                BluetoothSensor.ANNING_SERVICE_SPEC, MoreExecutors.directExecutor());
+    }
+
+    private MultiSamplePacketDecoder newDecoder() {
+        return new MultiSamplePacketDecoder(mConsumer, mClock, newSensor(), mListener);
+    }
+
+    private static byte[] packet(int count, int encoding, long... varints) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(count);
+        out.write(encoding);
+        for (long varint : varints) {
+            SimulatedAnningDevice.writeVarint(out, varint);
+        }
+        return out.toByteArray();
+    }
+
+    public void testIntegerDeltas() {
+        // Readings 10 @ 1000, 7 @ 1010, 300 @ 1030; zigzag(10) = 20, zigzag(-3) = 5,
+        // zigzag(293) = 586.
+        newDecoder().append(packet(3, MultiSamplePacketDecoder.VALUES_INT,
+                1000, 20, 10, 5, 20, 586));
+
+        // The clock offset is taken from the newest reading.
+        long skew = NOW - 1030;
+        assertEquals(3, mConsumer.values.size());
+        assertEquals(1000 + skew, (long) mConsumer.timestamps.get(0));
+        assertEquals(1010 + skew, (long) mConsumer.timestamps.get(1));
+        assertEquals(NOW, (long) mConsumer.timestamps.get(2));
+        assertEquals(10.0, mConsumer.values.get(0), 0.0);
+        assertEquals(7.0, mConsumer.values.get(1), 0.0);
+        assertEquals(300.0, mConsumer.values.get(2), 0.0);
+        assertEquals(0, mListener.errors);
+    }
+
+    public void testDigitalValues() {
+        newDecoder().append(packet(3, MultiSamplePacketDecoder.VALUES_DIGITAL, 5, 2, 5, 1, 5, 2));
+        assertEquals(3, mConsumer.values.size());
+        assertEquals(PacketAssembler.DIGITAL_HIGH, mConsumer.values.get(0), 0.0);
+        assertEquals(PacketAssembler.DIGITAL_LOW, mConsumer.values.get(1), 0.0);
+        assertEquals(PacketAssembler.DIGITAL_HIGH, mConsumer.values.get(2), 0.0);
+    }
+
+    public void testFloatValues() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(2);
+        out.write(MultiSamplePacketDecoder.VALUES_FLOAT);
+        for (float value : new float[]{1.5f, -2.25f}) {
+            SimulatedAnningDevice.writeVarint(out, 10);
+            int bits = Float.floatToIntBits(value);
+            for (int i = 0; i < 4; i++) {
+                out.write(bits >> (8 * i));
+            }
+        }
+        newDecoder().append(out.toByteArray());
+        assertEquals(2, mConsumer.values.size());
+        assertEquals(1.5, mConsumer.values.get(0), 0.0);
+        assertEquals(-2.25, mConsumer.values.get(1), 0.0);
+    }
+
+    public void testTruncatedPacketIsDroppedWhole() {
+        MultiSamplePacketDecoder decoder = newDecoder();
+        decoder.append(packet(3, MultiSamplePacketDecoder.VALUES_INT, 1000, 20, 10, 5));
+        decoder.append(new byte[]{0, MultiSamplePacketDecoder.VALUES_INT});
+        decoder.append(new byte[]{1, 9, 0, 0});
+        assertEquals(0, mConsumer.values.size());
+        assertEquals(3, mListener.errors);
+    }
+
+    public void testPackedSamplesGiveTenTimesTheReadingsPerNotification() {
+        int readingCount = 1000;
+        long[] timestamps = new long[readingCount];
+        int[] values = new int[readingCount];
+        for (int i = 0; i < readingCount; i++) {
+            // A slowly changing 10-bit analog signal, read every 10ms.
+            timestamps[i] = 50000 + i * 10;
+            values[i] = (int) (512 + 400 * Math.sin(i / 20.0));
+        }
+
+        // Version 1 devices send at the default MTU; version 2 devices get a larger one.
+        List<byte[]> v1 = new SimulatedAnningDevice(23).sendSensorDataProtos(timestamps, values);
+        List<byte[]> v2 = new SimulatedAnningDevice(185).sendPackedSamples(timestamps, values);
+
+        RecordingConsumer v1Consumer = new RecordingConsumer();
+        BluetoothSensor v1Sensor = newSensor();
+        PacketAssembler assembler = new PacketAssembler(v1Consumer, mClock, v1Sensor, mListener);
+        // Line both decoders up on the same clock offset, so their output can be compared
+        // directly.
+        long newest = timestamps[readingCount - 1];
+        v1Sensor.getClockOffsets().addObservation(newest, NOW);
+        for (byte[] notification : v1) {
+            assembler.append(notification);
+        }
+
+        BluetoothSensor v2Sensor = newSensor();
+        MultiSamplePacketDecoder decoder = new MultiSamplePacketDecoder(mConsumer, mClock,
+                v2Sensor, mListener);
+        v2Sensor.getClockOffsets().addObservation(newest, NOW);
+        for (byte[] notification : v2) {
+            decoder.append(notification);
+        }
+
+        assertEquals(0, mListener.errors);
+        assertEquals(readingCount, v1Consumer.values.size());
+        assertEquals(v1Consumer.timestamps, mConsumer.timestamps);
+        assertEquals(v1Consumer.values, mConsumer.values);
+        assertEquals(NOW, (long) mConsumer.timestamps.get(readingCount - 1));
+
+        // BLE delivers a fixed number of notifications per connection interval, so readings per
+        // notification is what bounds throughput.
+        assertTrue("v1 " + v1.size() + " notifications, v2 " + v2.size(),
+                v1.size() >= 10 * v2.size());
+    }
+}
@@ -18,7 +18,10 @@ package com.google.android.apps.forscience.whistlepunk;
 
 import android.test.AndroidTestCase;
 
+import com.google.android.apps.forscience.whistlepunk.sensorapi.DetachableSensorObserver;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.ObservedValue;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.RecordingSensorObserver;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorObserver;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorStatusListener;
 
 // TODO: these could be unit tests.
@@ -45,4 +48,48 @@ public class RecorderListenerRegistryTest extends AndroidTestCase {
         assertFalse(r.getSourceHasError("sensorId"));
     }
 
-}
\ No newline at end of file
+    public void testObserverMadeBeforeListenersSeesThem() {
+        RecorderListenerRegistry r = new RecorderListenerRegistry();
+        SensorObserver recorderObserver = r.makeObserverForRecorder("sensorId");
+        RecordingSensorObserver first = new RecordingSensorObserver();
+        RecordingSensorObserver second = new RecordingSensorObserver();
+        String firstId = r.putListeners("sensorId", first, null);
+        r.putListeners("sensorId", second, null);
+
+        ObservedValue data = new ObservedValue();
+        data.setValue(1.0);
+        recorderObserver.onNewData(1, data);
+        r.remove("sensorId", firstId);
+        data.setValue(2.0);
+        recorderObserver.onNewData(2, data);
+
+        assertEquals(1, first.getReadings().size());
+        assertEquals(2, second.getReadings().size());
+        assertEquals(1, r.countListeners("sensorId"));
+    }
+
+    public void testRecorderObserverDetachedWithoutDataObservers() {
+        RecorderListenerRegistry r = new RecorderListenerRegistry();
+        DetachableSensorObserver recorderObserver = r.makeObserverForRecorder("sensorId");
+        assertFalse(recorderObserver.isAttached());
+
+        // A listener without an observer doesn't want the data
+        String statusOnlyId = r.putListeners("sensorId", null, new RecordingStatusListener());
+        assertFalse(recorderObserver.isAttached());
+
+        RecordingSensorObserver observer = new RecordingSensorObserver();
+        String observerId = r.putListeners("sensorId", observer, null);
+        assertTrue(recorderObserver.isAttached());
+
+        ObservedValue data = new ObservedValue();
+        data.setValue(1.0);
+        recorderObserver.onNewData(1, data);
+        assertEquals(1, observer.getReadings().size());
+
+        r.remove("sensorId", observerId);
+        assertFalse(recorderObserver.isAttached());
+        assertEquals(1, r.countListeners("sensorId"));
+        r.remove("sensorId", statusOnlyId);
+        assertEquals(0, r.countListeners("sensorId"));
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk;
+
+import com.google.android.apps.forscience.whistlepunk.data.GoosciSensor;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stands in for an Anning device on an analog pin, producing the value notifications it would
+ * send for a series of readings at a given ATT MTU.
+ */
+class SimulatedAnningDevice {
+    // Each notification carries the MTU less the 3-byte ATT header.
+    private static final int ATT_HEADER_SIZE = 3;
+
+    // Worst case for a reading in a packed packet: two 5-byte varints.
+    private static final int MAX_PACKED_READING_SIZE = 10;
+
+    private final int mPayloadSize;
+
+    SimulatedAnningDevice(int mtu) {
+        mPayloadSize = mtu - ATT_HEADER_SIZE;
+    }
+
+    /**
+     * @return the notifications for {@code values} as one {@code SensorData} per reading, framed
+     * with a (length, is-last) header.
+     */
+    List<byte[]> sendSensorDataProtos(long[] timestamps, int[] values) {
+        List<byte[]> notifications = new ArrayList<>();
+        int chunkSize = mPayloadSize - 2;
+        for (int i = 0; i < values.length; i++) {
+            byte[] proto = sensorData(timestamps[i], values[i]);
+            for (int start = 0; start < proto.length; start += chunkSize) {
+                int length = Math.min(chunkSize, proto.length - start);
+                byte[] notification = new byte[length + 2];
+                notification[0] = (byte) length;
+                notification[1] = (byte) (start + length == proto.length ? 1 : 0);
+                System.arraycopy(proto, start, notification, 2, length);
+                notifications.add(notification);
+            }
+        }
+        return notifications;
+    }
+
+    /**
+     * @return the notifications for {@code values} as {@link GoosciSensor#PACKED_SAMPLES}
+     * packets, with as many readings in each as will fit.
+     */
+    List<byte[]> sendPackedSamples(long[] timestamps, int[] values) {
+        List<byte[]> notifications = new ArrayList<>();
+        int i = 0;
+        while (i < values.length) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            int count = 0;
+            long previousTimestamp = 0;
+            int previousValue = 0;
+            while (i < values.length && count < 255 && body.size() + MAX_PACKED_READING_SIZE
+                    <= mPayloadSize - MultiSamplePacketDecoder.HEADER_SIZE) {
+                writeVarint(body, timestamps[i] - previousTimestamp);
+                long delta = (long) values[i] - previousValue;
+                writeVarint(body, (delta << 1) ^ (delta >> 63));
+                previousTimestamp = timestamps[i];
+                previousValue = values[i];
+                count++;
+                i++;
+            }
+            ByteArrayOutputStream notification = new ByteArrayOutputStream();
+            notification.write(count);
+            notification.write(MultiSamplePacketDecoder.VALUES_INT);
+            byte[] bytes = body.toByteArray();
+            notification.write(bytes, 0, bytes.length);
+            notifications.add(notification.toByteArray());
+        }
+        return notifications;
+    }
+
+    private static byte[] sensorData(long timestamp, int value) {
+        GoosciSensor.SensorData sensorData = new GoosciSensor.SensorData();
+        sensorData.timestampKey = (int) timestamp;
+        GoosciSensor.Data data = new GoosciSensor.Data();
+        data.pin = new GoosciSensor.Pin();
+        data.pin.setAnalogPin(new GoosciSensor.AnalogPin());
+        GoosciSensor.AnalogValue analogValue = new GoosciSensor.AnalogValue();
+        analogValue.value = value;
+        data.setAnalogValue(analogValue);
+        sensorData.setData(data);
+        return GoosciSensor.SensorData.toByteArray(sensorData);
+    }
+
+    static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
@@ -91,6 +91,16 @@ public class NativeBleDiscovererTest extends AndroidTestCase {
                         sensorsSeen.take(sensor);
                     }
 
+                    @Override
+                    public void onDeviceLost(ExternalSensorDiscoverer.DiscoveredDevice device) {
+
+                    }
+
+                    @Override
+                    public void onSensorLost(ExternalSensorDiscoverer.DiscoveredSensor sensor) {
+
+                    }
+
                     @Override
                     public void onServiceScanComplete(String serviceId) {
 
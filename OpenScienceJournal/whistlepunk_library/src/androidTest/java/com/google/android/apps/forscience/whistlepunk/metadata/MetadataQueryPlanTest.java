@@ -0,0 +1,78 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.metadata;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+import com.google.android.apps.forscience.whistlepunk.CurrentTimeClock;
+
+import java.util.Arrays;
+
+/**
+ * Checks that the hot metadata lookups are served by an index, so they don't slow down as users
+ * collect thousands of notes and runs.
+ */
+public class MetadataQueryPlanTest extends AndroidTestCase {
+    private static final String DB_NAME = "test.queryplan.db";
+
+    @Override
+    protected void tearDown() throws Exception {
+        getContext().getDatabasePath(DB_NAME).delete();
+        super.tearDown();
+    }
+
+    public void testHotLookupsUseIndexes() {
+        SimpleMetaDataManager manager = new SimpleMetaDataManager(getContext(), DB_NAME,
+                new CurrentTimeClock());
+        // Forces the database and its indexes to be created.
+        manager.getProjects(1, true);
+
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(
+                getContext().getDatabasePath(DB_NAME).getPath(), null,
+                SQLiteDatabase.OPEN_READONLY);
+        try {
+            for (String[] lookup : SimpleMetaDataManager.INDEXED_LOOKUPS) {
+                String table = lookup[0];
+                String selection = lookup[1];
+                String[] args = new String[selection.split("\\?", -1).length - 1];
+                Arrays.fill(args, "x");
+                assertIndexed(db, "SELECT * FROM " + table + " WHERE " + selection, args);
+            }
+        } finally {
+            db.close();
+        }
+    }
+
+    private void assertIndexed(SQLiteDatabase db, String sql, String[] args) {
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        try {
+            int detailIndex = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                String detail = cursor.getString(detailIndex);
+                // A full scan reads "SCAN TABLE labels" (or "SCAN labels" on newer SQLite), while
+                // an indexed lookup reads "SEARCH ... USING INDEX".
+                assertFalse(sql + " does a full table scan: " + detail,
+                        detail.startsWith("SCAN") && !detail.contains(" USING "));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -320,6 +320,53 @@ public class SimpleMetaDataManagerTest extends AndroidTestCase {
         assertEquals(Lists.newArrayList("startId3", "startId2", "startId1"), experimentRunIds2);
     }
 
+    public void testPages() {
+        Project project = mMetaDataManager.newProject();
+        List<Experiment> created = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            created.add(mMetaDataManager.newExperiment(project));
+        }
+
+        // Experiments that were last used at the same time come newest first.
+        List<Experiment> page = mMetaDataManager.getExperimentsForProject(project, false, null, 2);
+        assertEquals(Lists.newArrayList(created.get(4).getExperimentId(),
+                created.get(3).getExperimentId()), getExperimentIds(page));
+        page = mMetaDataManager.getExperimentsForProject(project, false, page.get(1), 2);
+        assertEquals(Lists.newArrayList(created.get(2).getExperimentId(),
+                created.get(1).getExperimentId()), getExperimentIds(page));
+        page = mMetaDataManager.getExperimentsForProject(project, false, page.get(1), 2);
+        assertEquals(Lists.newArrayList(created.get(0).getExperimentId()),
+                getExperimentIds(page));
+
+        Experiment used = created.get(0);
+        used.setLastUsedTime(100);
+        mMetaDataManager.updateExperiment(used);
+        page = mMetaDataManager.getExperimentsForProject(project, false, null, 2);
+        assertEquals(Lists.newArrayList(used.getExperimentId(),
+                created.get(4).getExperimentId()), getExperimentIds(page));
+
+        // Runs started at the same time still page in a stable order.
+        Experiment experiment = created.get(4);
+        for (String runId : new String[]{"startId1", "startId2", "startId3"}) {
+            mMetaDataManager.addLabel(experiment, newStartLabel(runId, 1));
+            mMetaDataManager.newRun(experiment, runId,
+                    new ArrayList<GoosciSensorLayout.SensorLayout>());
+        }
+        String experimentId = experiment.getExperimentId();
+        assertEquals(Lists.newArrayList("startId3", "startId2"),
+                mMetaDataManager.getExperimentRunIds(experimentId, true, null, 2));
+        assertEquals(Lists.newArrayList("startId1"),
+                mMetaDataManager.getExperimentRunIds(experimentId, true, "startId2", 2));
+    }
+
+    private List<String> getExperimentIds(List<Experiment> experiments) {
+        List<String> ids = new ArrayList<>();
+        for (Experiment experiment : experiments) {
+            ids.add(experiment.getExperimentId());
+        }
+        return ids;
+    }
+
     private void assertEqualLabels(TextLabel expected, Label actual) {
         assertTrue(actual instanceof TextLabel);
         TextLabel actualText = (TextLabel) actual;
@@ -605,6 +652,122 @@ public class SimpleMetaDataManagerTest extends AndroidTestCase {
         assertEquals(0, mMetaDataManager.getLabelsWithStartId(startLabel.getLabelId()).size());
     }
 
+    public void testExperimentSummary() {
+        Project project = mMetaDataManager.newProject();
+        Experiment experiment = mMetaDataManager.newExperiment(project);
+        String experimentId = experiment.getExperimentId();
+        ExperimentSummary summary = mMetaDataManager.getExperimentSummaries(
+                project.getProjectId()).get(experimentId);
+        assertEquals(0, summary.getRunCount());
+        assertEquals(ExperimentSummary.NO_RUNS, summary.getLastRunTimestamp());
+        assertNull(summary.getCoverPicturePath());
+        assertEquals(0, summary.getLabelCount());
+
+        final ArrayList<GoosciSensorLayout.SensorLayout> sensorLayouts = Lists.newArrayList(
+                new GoosciSensorLayout.SensorLayout());
+        final ApplicationLabel start1 = newStartLabel("start1", 10);
+        mMetaDataManager.addLabel(experiment, start1);
+        mMetaDataManager.newRun(experiment, start1.getRunId(), sensorLayouts);
+        mMetaDataManager.addLabel(experiment,
+                new PictureLabel("path1", "", "picture1", start1.getRunId(), 11));
+        final ApplicationLabel start2 = newStartLabel("start2", 20);
+        mMetaDataManager.addLabel(experiment, start2);
+        mMetaDataManager.newRun(experiment, start2.getRunId(), sensorLayouts);
+        mMetaDataManager.addLabel(experiment,
+                new TextLabel("text", "text2", start2.getRunId(), 21));
+
+        summary = mMetaDataManager.getExperimentSummaries(project.getProjectId())
+                .get(experimentId);
+        assertEquals(2, summary.getRunCount());
+        assertEquals(20, summary.getLastRunTimestamp());
+        assertEquals("path1", summary.getCoverPicturePath());
+        assertEquals(2, summary.getLabelCount());
+
+        // Archived runs are not counted.
+        Run run2 = mMetaDataManager.getRun(start2.getRunId());
+        run2.setArchived(true);
+        mMetaDataManager.updateRun(run2);
+        summary = mMetaDataManager.getExperimentSummaries(project.getProjectId())
+                .get(experimentId);
+        assertEquals(1, summary.getRunCount());
+        assertEquals(10, summary.getLastRunTimestamp());
+
+        // Deleting a run removes its labels, and with them the cover picture.
+        mMetaDataManager.deleteRun(start1.getRunId());
+        summary = mMetaDataManager.getExperimentSummaries(project.getProjectId())
+                .get(experimentId);
+        assertEquals(0, summary.getRunCount());
+        assertEquals(ExperimentSummary.NO_RUNS, summary.getLastRunTimestamp());
+        assertNull(summary.getCoverPicturePath());
+        assertEquals(1, summary.getLabelCount());
+
+        mMetaDataManager.deleteExperiment(experiment);
+        assertTrue(mMetaDataManager.getExperimentSummaries(project.getProjectId()).isEmpty());
+    }
+
+    public void testExperimentSummaryFollowsLabels() {
+        Project project = mMetaDataManager.newProject();
+        Experiment experiment = mMetaDataManager.newExperiment(project);
+        String experimentId = experiment.getExperimentId();
+        final ArrayList<GoosciSensorLayout.SensorLayout> sensorLayouts = Lists.newArrayList(
+                new GoosciSensorLayout.SensorLayout());
+        final ApplicationLabel start1 = newStartLabel("start1", 10);
+        mMetaDataManager.addLabel(experiment, start1);
+        mMetaDataManager.newRun(experiment, start1.getRunId(), sensorLayouts);
+        PictureLabel picture1 = new PictureLabel("path1", "", "picture1", start1.getRunId(), 11);
+        mMetaDataManager.addLabel(experiment, picture1);
+        final ApplicationLabel start2 = newStartLabel("start2", 20);
+        mMetaDataManager.addLabel(experiment, start2);
+        mMetaDataManager.newRun(experiment, start2.getRunId(), sensorLayouts);
+        TextLabel text = new TextLabel("text", "text2", start2.getRunId(), 21);
+        mMetaDataManager.addLabel(experiment, text);
+
+        ExperimentSummary summary = mMetaDataManager.getExperimentSummaries(
+                project.getProjectId()).get(experimentId);
+        assertEquals("path1", summary.getCoverPicturePath());
+        assertEquals(2, summary.getLabelCount());
+
+        // A picture in the newest run becomes the cover.
+        PictureLabel picture2 = new PictureLabel("path2", "", "picture2", start2.getRunId(), 22);
+        mMetaDataManager.addLabel(experiment, picture2);
+        summary = mMetaDataManager.getExperimentSummaries(project.getProjectId())
+                .get(experimentId);
+        assertEquals("path2", summary.getCoverPicturePath());
+        assertEquals(3, summary.getLabelCount());
+
+        picture1.setCaption("caption");
+        mMetaDataManager.editLabel(picture1);
+        mMetaDataManager.deleteLabel(picture2);
+        summary = mMetaDataManager.getExperimentSummaries(project.getProjectId())
+                .get(experimentId);
+        assertEquals("path1", summary.getCoverPicturePath());
+        assertEquals(2, summary.getLabelCount());
+
+        mMetaDataManager.deleteLabel(text);
+        mMetaDataManager.deleteLabel(picture1);
+        summary = mMetaDataManager.getExperimentSummaries(project.getProjectId())
+                .get(experimentId);
+        assertNull(summary.getCoverPicturePath());
+        assertEquals(0, summary.getLabelCount());
+        assertEquals(2, summary.getRunCount());
+
+        // Cropping the newest run moves when it started.
+        ApplicationLabel cropStart = new ApplicationLabel(ApplicationLabel.TYPE_CROP_START,
+                "cropStart", start2.getRunId(), 25);
+        mMetaDataManager.addLabel(experiment, cropStart);
+        assertEquals(25, mMetaDataManager.getExperimentSummaries(project.getProjectId())
+                .get(experimentId).getLastRunTimestamp());
+        cropStart.setTimestamp(26);
+        mMetaDataManager.editLabel(cropStart);
+        assertEquals(26, mMetaDataManager.getExperimentSummaries(project.getProjectId())
+                .get(experimentId).getLastRunTimestamp());
+        mMetaDataManager.deleteLabel(cropStart);
+        summary = mMetaDataManager.getExperimentSummaries(project.getProjectId())
+                .get(experimentId);
+        assertEquals(20, summary.getLastRunTimestamp());
+        assertEquals(0, summary.getLabelCount());
+    }
+
     public void testExperimentSensorLayout() {
         GoosciSensorLayout.SensorLayout layout1 = new GoosciSensorLayout.SensorLayout();
         layout1.sensorId = "sensorId1";
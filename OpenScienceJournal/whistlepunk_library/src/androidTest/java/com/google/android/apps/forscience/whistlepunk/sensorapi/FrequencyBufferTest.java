@@ -18,6 +18,10 @@ package com.google.android.apps.forscience.whistlepunk.sensorapi;
 
 import android.test.AndroidTestCase;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 public class FrequencyBufferTest extends AndroidTestCase {
     public void testTwenty() {
         final FrequencyBuffer buffer = new FrequencyBuffer(100, 1000.0, 0.0);
@@ -137,4 +141,123 @@ public class FrequencyBufferTest extends AndroidTestCase {
         buffer.changeWindow(200);
         // Just don't crash
     }
+
+    public void testLongRunningSine() {
+        // Long enough for the buffer to grow and wrap around many times
+        final FrequencyBuffer buffer = new FrequencyBuffer(1000, 1000.0, 0.0);
+        for (long t = 0; t <= 60000; t += 5) {
+            buffer.filterValue(t, Math.sin(2 * Math.PI * 5 * t / 1000.0));
+        }
+        assertEquals(5.0, buffer.getLatestFrequency(), 0.1);
+        buffer.changeWindow(500);
+        assertEquals(5.0, buffer.getLatestFrequency(), 0.1);
+    }
+
+    public void testNoisyInputAgreesWithRescanning() {
+        Random random = new Random(42);
+        FrequencyBuffer buffer = new FrequencyBuffer(1000, 1000.0, 0.0);
+        RescanningFrequencyBuffer rescanning = new RescanningFrequencyBuffer(1000, 1000.0, 0.0);
+        for (long t = 0; t <= 20000; t += 5) {
+            double value = Math.sin(2 * Math.PI * 5 * t / 1000.0) + random.nextGaussian();
+            assertEquals("at " + t, rescanning.filterValue(t, value), buffer.filterValue(t, value),
+                    1e-9);
+        }
+    }
+
+    public void testDriftingInputAgreesWithRescanning() {
+        Random random = new Random(7);
+        FrequencyBuffer buffer = new FrequencyBuffer(1000, 1000.0, 0.1);
+        RescanningFrequencyBuffer rescanning = new RescanningFrequencyBuffer(1000, 1000.0, 0.1);
+        for (long t = 0; t <= 20000; t += 5) {
+            double value = Math.sin(2 * Math.PI * 3 * t / 1000.0) + t / 500.0
+                    + 0.2 * random.nextGaussian();
+            assertEquals("at " + t, rescanning.filterValue(t, value), buffer.filterValue(t, value),
+                    1e-9);
+            if (t == 10000) {
+                buffer.changeWindow(700);
+                rescanning.changeWindow(700);
+                buffer.changeFilter(0.3);
+                rescanning.changeFilter(0.3);
+                assertEquals(rescanning.getLatestFrequency(), buffer.getLatestFrequency(), 1e-9);
+            }
+        }
+    }
+
+    /**
+     * The original implementation, which classifies the whole window against the latest average
+     * each time it's asked.
+     */
+    private static class RescanningFrequencyBuffer {
+        private final List<Long> mTimestamps = new ArrayList<>();
+        private final List<Double> mValues = new ArrayList<>();
+        private long mWindow;
+        private final double mDenominatorInMillis;
+        private double mFilter;
+
+        RescanningFrequencyBuffer(long windowMillis, double denominatorInMillis, double filter) {
+            mWindow = windowMillis;
+            mDenominatorInMillis = denominatorInMillis;
+            mFilter = filter;
+        }
+
+        void changeWindow(long newWindowMillis) {
+            mWindow = newWindowMillis;
+            prune(mTimestamps.get(mTimestamps.size() - 1));
+        }
+
+        void changeFilter(double newFilter) {
+            mFilter = newFilter;
+        }
+
+        double filterValue(long timestamp, double value) {
+            mTimestamps.add(timestamp);
+            mValues.add(value);
+            prune(timestamp);
+            return getLatestFrequency();
+        }
+
+        private void prune(long timestamp) {
+            while (!mTimestamps.isEmpty() && mTimestamps.get(0) < timestamp - mWindow) {
+                mTimestamps.remove(0);
+                mValues.remove(0);
+            }
+        }
+
+        double getLatestFrequency() {
+            if (mValues.size() < 2) {
+                return 0.0;
+            }
+            double total = 0;
+            for (double value : mValues) {
+                total += value;
+            }
+            double average = total / mValues.size() + mFilter;
+
+            int crossings = 0;
+            long firstCrossingTime = -1;
+            long lastCrossingTime = -1;
+            boolean higherThanAverage = mValues.get(0) > average;
+            for (int i = 1; i < mValues.size(); i++) {
+                boolean thisReadingHigher = mValues.get(i) > average;
+                if (higherThanAverage != thisReadingHigher) {
+                    higherThanAverage = thisReadingHigher;
+                    crossings++;
+                    if (firstCrossingTime == -1) {
+                        firstCrossingTime = mTimestamps.get(i);
+                    } else {
+                        lastCrossingTime = mTimestamps.get(i);
+                    }
+                }
+            }
+            crossings--;
+            if (firstCrossingTime == -1 || lastCrossingTime == -1) {
+                return 0.0;
+            }
+            long adjustedWindowMillis = lastCrossingTime - firstCrossingTime;
+            if (adjustedWindowMillis < mWindow / 4) {
+                return 0.0;
+            }
+            return (crossings / 2.0f) / (adjustedWindowMillis / mDenominatorInMillis);
+        }
+    }
 }
@@ -22,36 +22,54 @@ import android.bluetooth.BluetoothGattService;
 
 import java.util.UUID;
 
+/**
+ * Requests that get an answer broadcast back take the {@code issuer} making them, usually the id
+ * of a {@link BleFlow}.  The answer is tagged with it, so that several flows can talk to one
+ * device at the same time without acting on each other's results.
+ */
 public interface BleClient {
     void scanForDevices(UUID[] serviceType, int timeoutSeconds);
 
-    boolean connectToAddress(String address);
+    boolean connectToAddress(String address, String issuer);
 
-    void findServices(String address);
+    void findServices(String address, String issuer);
 
     BluetoothGattService getService(String address, UUID serviceId);
 
-    void readValue(String address, BluetoothGattCharacteristic theCharacteristic);
+    void readValue(String address, BluetoothGattCharacteristic theCharacteristic, String issuer);
 
-    void writeValue(String address, BluetoothGattCharacteristic theCharacteristic, byte[] value);
+    void writeValue(String address, BluetoothGattCharacteristic theCharacteristic, byte[] value,
+            String issuer);
 
     BleFlow getFlowFor(String address);
 
     BleFlow createFlowFor(String address);
 
-    void disconnectDevice(String address);
+    /**
+     * @return the flow that {@code owner} uses to talk to {@code address}, creating it if needed.
+     * Owners get separate flows, and so can share one device's connection without interfering
+     * with each other.
+     */
+    BleFlow getFlowFor(String address, String owner);
+
+    /**
+     * @return true if the device is being disconnected, or false if other flows still hold its
+     * connection, so that no {@code GATT_DISCONNECT} will be broadcast.
+     */
+    boolean disconnectDevice(String address);
 
-    void commit(String address);
+    void commit(String address, String issuer);
 
-    void writeValue(String address, BluetoothGattDescriptor currentDescriptor, byte[] value);
+    void writeValue(String address, BluetoothGattDescriptor currentDescriptor, byte[] value,
+            String issuer);
 
     boolean enableNotifications(String address, BluetoothGattCharacteristic characteristic);
 
     boolean disableNotifications(String address, BluetoothGattCharacteristic characteristic);
 
-    void changeMtu(String address, int mtu);
+    void changeMtu(String address, int mtu, String issuer);
 
-    void startTransaction(String address);
+    void startTransaction(String address, String issuer);
 
     String getFirstDeviceAddress();
 
@@ -26,10 +26,12 @@ import android.content.Intent;
 import android.content.ServiceConnection;
 import android.os.Handler;
 import android.os.IBinder;
+import android.util.ArrayMap;
 import android.util.Log;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -56,6 +58,7 @@ public class BleClientImpl implements BleDeviceListener, BleClient {
 
     private final Context context;
     private final List<BleFlow> flows;
+    private final Map<String, BleFlow> mOwnedFlows = new ArrayMap<>();
     private BleClientStartListener startListener;
     private BleDeviceListener deviceListener;
 
@@ -154,10 +157,10 @@ public class BleClientImpl implements BleDeviceListener, BleClient {
     }
 
     @Override
-    public final boolean connectToAddress(String address) {
+    public final boolean connectToAddress(String address, String issuer) {
         if (DEBUG) Log.d(TAG, "connecting to address: " + address + "...");
         try {
-            return bleService.connect(address);
+            return bleService.connect(address, issuer);
         } catch (java.lang.IllegalArgumentException ex) {
             Log.e(TAG, "failure connecting to address " + address + " due to: " + ex.getMessage());
             return false;
@@ -165,9 +168,9 @@ public class BleClientImpl implements BleDeviceListener, BleClient {
     }
 
     @Override
-    public final void findServices(String address) {
+    public final void findServices(String address, String issuer) {
         if (DEBUG) Log.d(TAG, "scanning for services on " + address + "...");
-        bleService.discoverServices(address);
+        bleService.discoverServices(address, issuer);
     }
 
     public void onServicesFound(String device, boolean success) {
@@ -180,14 +183,15 @@ public class BleClientImpl implements BleDeviceListener, BleClient {
     }
 
     @Override
-    public void readValue(String address, BluetoothGattCharacteristic theCharacteristic) {
-        bleService.readValue(address, theCharacteristic);
+    public void readValue(String address, BluetoothGattCharacteristic theCharacteristic,
+            String issuer) {
+        bleService.readValue(address, theCharacteristic, issuer);
     }
 
     @Override
     public void writeValue(String address, BluetoothGattCharacteristic theCharacteristic,
-            byte[] value) {
-        bleService.writeValue(address, theCharacteristic, value);
+            byte[] value, String issuer) {
+        bleService.writeValue(address, theCharacteristic, value, issuer);
     }
 
     @Override
@@ -202,6 +206,17 @@ public class BleClientImpl implements BleDeviceListener, BleClient {
         return createFlowFor(address);
     }
 
+    @Override
+    public BleFlow getFlowFor(String address, String owner) {
+        String key = owner + "@" + address;
+        BleFlow flow = mOwnedFlows.get(key);
+        if (flow == null) {
+            flow = createFlowFor(address);
+            mOwnedFlows.put(key, flow);
+        }
+        return flow;
+    }
+
     @Override
     public BleFlow createFlowFor(String address) {
         BleFlow flow = BleFlow.getInstance(this, context, address);
@@ -216,8 +231,19 @@ public class BleClientImpl implements BleDeviceListener, BleClient {
     }
 
     @Override
-    public void disconnectDevice(String address) {
-        bleService.disconnectDevice(address);
+    public boolean disconnectDevice(String address) {
+        return bleService.disconnectDevice(address);
+    }
+
+    /**
+     * @return connect latency and notification throughput for {@code address}, or null if the
+     * service isn't bound yet.
+     */
+    public DeviceConnectionStats getConnectionStats(String address) {
+        if (bleService == null) {
+            return null;
+        }
+        return bleService.getConnectionStats(address);
     }
 
     public String getSelectedDeviceAddress() {
@@ -225,14 +251,14 @@ public class BleClientImpl implements BleDeviceListener, BleClient {
     }
 
     @Override
-    public void commit(String address) {
-        bleService.commit(address);
+    public void commit(String address, String issuer) {
+        bleService.commit(address, issuer);
     }
 
     @Override
     public void writeValue(String address, BluetoothGattDescriptor currentDescriptor, byte[]
-            value) {
-        bleService.writeValue(address, currentDescriptor, value);
+            value, String issuer) {
+        bleService.writeValue(address, currentDescriptor, value, issuer);
     }
 
     @Override
@@ -247,13 +273,13 @@ public class BleClientImpl implements BleDeviceListener, BleClient {
     }
 
     @Override
-    public void changeMtu(String address, int mtu) {
-        bleService.setMtu(address, mtu);
+    public void changeMtu(String address, int mtu, String issuer) {
+        bleService.setMtu(address, mtu, issuer);
     }
 
     @Override
-    public void startTransaction(String address) {
-        bleService.startTransaction(address);
+    public void startTransaction(String address, String issuer) {
+        bleService.startTransaction(address, issuer);
     }
 
     @Override
@@ -38,6 +38,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A BLE protocol builder for simplifying the interactions with a BLE remote device.
@@ -63,6 +64,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 public class BleFlow {
     private static final long SERVICES_RETRY_DELAY_MILLIS = 500;
+    private static final AtomicInteger sNextId = new AtomicInteger();
 
     private enum Action {SCAN, CONNECT, LOOKUP_SRV, LOOKUP_CHARACT, READ_CHARACT, WRITE_CHARACT,
         LOOKUP_DESC, WRITE_DESC, ENABLE_NOTIF, DISABLE_NOTIF, DISCONNECT, COMMIT,
@@ -149,6 +151,14 @@ public class BleFlow {
 
     private int currentBufferSize = 20;
 
+    // Whether this flow has connected and not yet let go of the connection.  Other flows may be
+    // sharing the same connection, so only the holders' DISCONNECTs count.
+    private boolean mHoldsConnection = false;
+
+    // Tags the requests this flow makes, so that it can tell its own results from those of other
+    // flows talking to the same device.
+    private final String mId = "BleFlow" + sNextId.incrementAndGet();
+
     private BroadcastReceiver receiver = new BroadcastReceiver() {
 
         @Override
@@ -162,6 +172,15 @@ public class BleFlow {
                 listener.onNotification(characteristic, flags, data);
                 return;
             }
+            String issuer = intent.getStringExtra(MyBleService.ISSUER);
+            if (issuer != null && !issuer.equals(mId)) {
+                // The answer to another flow's request.
+                return;
+            }
+            if (BleEvents.GATT_CONNECT_FAIL.equals(action)
+                    || BleEvents.GATT_DISCONNECT.equals(action)) {
+                mHoldsConnection = false;
+            }
             if (flowEnded.get() && (BleEvents.GATT_CONNECT_FAIL.equals(action)
                     || BleEvents.GATT_DISCONNECT.equals(action))) {
                 listener.onDisconnect();
@@ -267,7 +286,7 @@ public class BleFlow {
         mDelayHandler.postDelayed(new Runnable() {
             @Override
             public void run() {
-                MyBleService.sendServiceDiscoveryIntent(context, address, retriesLeft);
+                MyBleService.sendServiceDiscoveryIntent(context, address, mId, retriesLeft);
             }
         }, SERVICES_RETRY_DELAY_MILLIS);
     }
@@ -330,25 +349,33 @@ public class BleFlow {
                 }
                 break;
             case CONNECT:
-                if (!client.connectToAddress(address)) {
+                if (!client.connectToAddress(address, mId)) {
                     listener.onFailure(new Exception("cannot connect to: " + address));
                     flowEnded.set(true);
+                } else {
+                    mHoldsConnection = true;
                 }
                 break;
             case DISCONNECT:
-                client.disconnectDevice(address);
+                boolean heldConnection = mHoldsConnection;
+                mHoldsConnection = false;
+                // If we weren't holding the connection, or someone else still is, no
+                // GATT_DISCONNECT is coming for us to wait on.
+                if (!heldConnection || !client.disconnectDevice(address)) {
+                    nextAction();
+                }
                 break;
             case START_TX:
-                client.startTransaction(address);
+                client.startTransaction(address, mId);
                 break;
             case COMMIT:
-                client.commit(address);
+                client.commit(address, mId);
                 break;
             case CHANGE_MTU:
-                client.changeMtu(address, mtu);
+                client.changeMtu(address, mtu, mId);
                 break;
             case LOOKUP_SRV:
-                client.findServices(address);
+                client.findServices(address, mId);
                 break;
             case LOOKUP_CHARACT:
                 UUID charactId = characteristics.get(characteristicIndex++);
@@ -370,7 +397,7 @@ public class BleFlow {
                     flowEnded.set(true);
                 } else {
                     if (DEBUG) Log.d(TAG, "Reading on characteristic " + currentCharacteristic.getUuid());
-                    client.readValue(address, currentCharacteristic);
+                    client.readValue(address, currentCharacteristic, mId);
                 }
                 break;
             case WRITE_CHARACT:
@@ -380,7 +407,8 @@ public class BleFlow {
                 } else {
                     if (DEBUG) Log.d(TAG, "Writing on characteristic " + currentCharacteristic.getUuid()
                             + " the value " + Arrays.toString(values.get(valueIndex)));
-                    client.writeValue(address, currentCharacteristic, values.get(valueIndex++));
+                    client.writeValue(address, currentCharacteristic, values.get(valueIndex++),
+                            mId);
                 }
                 break;
             case WRITE_STREAM:
@@ -403,7 +431,7 @@ public class BleFlow {
                 } else {
                     if (DEBUG) Log.d(TAG, "Writing on descriptor " + currentDescriptor.getUuid()
                             + " the value " + Arrays.toString(values.get(valueIndex)));
-                    client.writeValue(address, currentDescriptor, values.get(valueIndex++));
+                    client.writeValue(address, currentDescriptor, values.get(valueIndex++), mId);
                 }
                 break;
             case ENABLE_NOTIF:
@@ -657,13 +685,13 @@ public class BleFlow {
             actionIndex--;
 
             if (read == buffer.length) {
-                client.writeValue(address, currentCharacteristic, buffer);
+                client.writeValue(address, currentCharacteristic, buffer, mId);
                 return;
             }
 
             byte[] smallerBuffer = new byte[read];
             System.arraycopy(buffer, 0, smallerBuffer, 0, read);
-            client.writeValue(address, currentCharacteristic, smallerBuffer);
+            client.writeValue(address, currentCharacteristic, smallerBuffer, mId);
         } catch (IOException e) {
             listener.onFailure(new Exception("Failed to read input stream."));
             flowEnded.set(true);
@@ -673,4 +701,12 @@ public class BleFlow {
     public String getAddress() {
         return address;
     }
+
+    /**
+     * @return the issuer that this flow's requests are tagged with.
+     */
+    @VisibleForTesting
+    String getId() {
+        return mId;
+    }
 }
@@ -0,0 +1,148 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.ble;
+
+/**
+ * Connection and streaming measurements for one BLE device, kept by {@link MyBleService}.  Times
+ * are in the {@code SystemClock.elapsedRealtime()} base.
+ */
+public class DeviceConnectionStats {
+    public static final long UNKNOWN = -1;
+
+    // Until told otherwise, assume the default ATT MTU.
+    static final int DEFAULT_MTU = 23;
+
+    private final String mAddress;
+    private long mConnectRequestedMs = UNKNOWN;
+    private long mConnectLatencyMs = UNKNOWN;
+    private int mSharedConnectCount = 0;
+    private int mMtu = DEFAULT_MTU;
+    private long mFirstNotificationMs = UNKNOWN;
+    private long mLastNotificationMs = UNKNOWN;
+    private long mNotificationCount = 0;
+    private long mNotificationBytes = 0;
+
+    DeviceConnectionStats(String address) {
+        mAddress = address;
+    }
+
+    public String getAddress() {
+        return mAddress;
+    }
+
+    synchronized void onConnectRequested(long nowMs) {
+        mConnectRequestedMs = nowMs;
+    }
+
+    synchronized void onConnected(long nowMs) {
+        if (mConnectRequestedMs != UNKNOWN) {
+            mConnectLatencyMs = nowMs - mConnectRequestedMs;
+            mConnectRequestedMs = UNKNOWN;
+        }
+    }
+
+    /**
+     * A sensor asked to connect to a device that was already connected, and was handed the
+     * existing connection.
+     */
+    synchronized void onConnectionShared() {
+        mSharedConnectCount++;
+    }
+
+    synchronized void onMtuChanged(int mtu) {
+        mMtu = mtu;
+    }
+
+    synchronized void onNotification(int byteCount, long nowMs) {
+        if (mFirstNotificationMs == UNKNOWN) {
+            mFirstNotificationMs = nowMs;
+        }
+        mLastNotificationMs = nowMs;
+        mNotificationCount++;
+        mNotificationBytes += byteCount;
+    }
+
+    /**
+     * Forget the streaming counters, so that the next connection is measured on its own.
+     */
+    synchronized void resetStreaming() {
+        mFirstNotificationMs = UNKNOWN;
+        mLastNotificationMs = UNKNOWN;
+        mNotificationCount = 0;
+        mNotificationBytes = 0;
+        mMtu = DEFAULT_MTU;
+    }
+
+    /**
+     * @return how long the most recent connection took to be established, or {@link #UNKNOWN}.
+     */
+    public synchronized long getConnectLatencyMs() {
+        return mConnectLatencyMs;
+    }
+
+    /**
+     * @return how many times an existing connection was reused instead of opening a new one.
+     */
+    public synchronized int getSharedConnectCount() {
+        return mSharedConnectCount;
+    }
+
+    public synchronized int getMtu() {
+        return mMtu;
+    }
+
+    public synchronized long getNotificationCount() {
+        return mNotificationCount;
+    }
+
+    /**
+     * @return notifications per second between the first and the latest notification, or 0 if
+     * there have not been two yet.
+     */
+    public synchronized double getNotificationsPerSecond() {
+        return perSecond(mNotificationCount - 1);
+    }
+
+    /**
+     * @return payload bytes per second between the first and the latest notification, or 0 if
+     * there have not been two yet.
+     */
+    public synchronized double getBytesPerSecond() {
+        return perSecond(mNotificationBytes);
+    }
+
+    private double perSecond(long amount) {
+        long elapsedMs = mLastNotificationMs - mFirstNotificationMs;
+        if (mNotificationCount < 2 || elapsedMs <= 0) {
+            return 0;
+        }
+        return amount * 1000.0 / elapsedMs;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DeviceConnectionStats{" +
+                "connectLatencyMs=" + mConnectLatencyMs +
+                ", sharedConnects=" + mSharedConnectCount +
+                ", mtu=" + mMtu +
+                ", notifications=" + mNotificationCount +
+                ", notificationsPerSecond=" + getNotificationsPerSecond() +
+                ", bytesPerSecond=" + getBytesPerSecond() +
+                '}';
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.ble;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * Android drops a GATT request if another one is still outstanding on the same connection, so
+ * this keeps one FIFO of operations per device address and only starts the next operation for a
+ * device once the previous one has reported back.  Queues for different devices are independent,
+ * so slow operations on one device never hold up another.
+ */
+class GattOperationQueue {
+    /**
+     * A single GATT request, such as a characteristic read or an MTU change.
+     */
+    interface Operation {
+        /**
+         * Issue the request.
+         *
+         * @return true if the request was issued and a GATT callback will follow, false if it
+         * could not be issued, in which case {@link #onStartFailed()} is called and the next
+         * operation is started.
+         */
+        boolean start();
+
+        /**
+         * Called if {@link #start()} returned false.
+         */
+        void onStartFailed();
+    }
+
+    private final Object mLock = new Object();
+    private final Map<String, Queue<Operation>> mPending = new HashMap<>();
+    private final Set<String> mInFlight = new HashSet<>();
+
+    /**
+     * Adds {@code operation} to the queue for {@code address}, starting it right away if nothing
+     * else is outstanding for that device.
+     */
+    void enqueue(String address, Operation operation) {
+        synchronized (mLock) {
+            Queue<Operation> queue = mPending.get(address);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                mPending.put(address, queue);
+            }
+            queue.add(operation);
+            if (!mInFlight.add(address)) {
+                return;
+            }
+        }
+        startNext(address);
+    }
+
+    /**
+     * Called when the GATT callback for the outstanding operation on {@code address} arrives.
+     * Callbacks for a device with nothing outstanding (for example after {@link #clear}) are
+     * ignored.
+     */
+    void operationCompleted(String address) {
+        synchronized (mLock) {
+            if (!mInFlight.contains(address)) {
+                return;
+            }
+        }
+        startNext(address);
+    }
+
+    /**
+     * Drops everything queued for {@code address}, for when its connection goes away.
+     */
+    void clear(String address) {
+        synchronized (mLock) {
+            mPending.remove(address);
+            mInFlight.remove(address);
+        }
+    }
+
+    /**
+     * @return true if an operation on {@code address} has been started and not yet completed.
+     */
+    boolean isBusy(String address) {
+        synchronized (mLock) {
+            return mInFlight.contains(address);
+        }
+    }
+
+    /**
+     * @return the number of operations on {@code address} waiting for an earlier one to finish.
+     */
+    int getPendingCount(String address) {
+        synchronized (mLock) {
+            Queue<Operation> queue = mPending.get(address);
+            return queue == null ? 0 : queue.size();
+        }
+    }
+
+    private void startNext(String address) {
+        while (true) {
+            Operation next;
+            synchronized (mLock) {
+                Queue<Operation> queue = mPending.get(address);
+                next = queue == null ? null : queue.poll();
+                if (next == null) {
+                    mPending.remove(address);
+                    mInFlight.remove(address);
+                    return;
+                }
+            }
+            // Issue the request outside the lock: the stack may call back on another thread
+            // before start() returns.
+            if (next.start()) {
+                return;
+            }
+            next.onStartFailed();
+        }
+    }
+}
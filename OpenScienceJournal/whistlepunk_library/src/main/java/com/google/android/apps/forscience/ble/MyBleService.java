@@ -31,9 +31,11 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.os.Binder;
+import android.os.Build;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Message;
+import android.os.SystemClock;
 import android.support.annotation.VisibleForTesting;
 import android.support.v4.content.LocalBroadcastManager;
 import android.util.ArrayMap;
@@ -59,6 +61,11 @@ public class MyBleService extends Service {
     private static final int MSG_PRUNE = 1011;
     static int MAX_NO_DEVICES = 100;
 
+    // Largest ATT MTU whose packets still fit a single link-layer packet when the controller
+    // supports data length extension; devices that can't go that high negotiate down.
+    @VisibleForTesting
+    static final int STREAMING_MTU = 247;
+
     /**
      * The local binder for this service.
      */
@@ -73,6 +80,7 @@ public class MyBleService extends Service {
     public static String UUID = "uuid";
     public static String FLAGS = "flags";
     public static String INT_PARAM = "int_param";
+    public static String ISSUER = "issuer";
 
     private BluetoothManager bluetoothManager;
     private BluetoothAdapter btAdapter;
@@ -92,7 +100,36 @@ public class MyBleService extends Service {
 
     private List<BleDeviceListener> mDeviceListeners;
 
-    private Set<String> mOutstandingServiceDiscoveryAddresses = new ArraySet<>();
+    // The issuers waiting for each device's service discovery to finish.  A device is in here
+    // while its discovery is outstanding.  Guarded by itself.
+    private final Map<String, Set<String>> mServiceDiscoveryWaiters = new ArrayMap<>();
+
+    // The issuers waiting for each device to connect.  Guarded by itself.
+    private final Map<String, Set<String>> mConnectWaiters = new ArrayMap<>();
+
+    private final GattOperationQueue mOperations = new GattOperationQueue();
+
+    // Who issued the operation in flight on each device, so that its result goes back to them.
+    private final Map<String, String> mOperationIssuers =
+            Collections.synchronizedMap(new ArrayMap<String, String>());
+
+    // How many flows are currently using each device's connection.  Guarded by itself.
+    private final Map<String, Integer> mConnectionHolders = new ArrayMap<>();
+
+    // The characteristics each device is sending notifications for.  Guarded by itself.
+    private final Map<String, Set<UUID>> mStreamingCharacteristics = new ArrayMap<>();
+
+    // Devices we have already asked for a larger MTU on their current connection.
+    private final Set<String> mMtuRequested =
+            Collections.synchronizedSet(new ArraySet<String>());
+
+    // Devices whose outstanding MTU request was made by this service rather than by a BleFlow, so
+    // that the result isn't broadcast to flows that aren't waiting for it.
+    private final Set<String> mInternalMtuRequests =
+            Collections.synchronizedSet(new ArraySet<String>());
+
+    private final Map<String, DeviceConnectionStats> mStats =
+            Collections.synchronizedMap(new ArrayMap<String, DeviceConnectionStats>());
 
     // BLE callback
     BluetoothAdapter.LeScanCallback scanCallback = new BluetoothAdapter.LeScanCallback() {
@@ -130,6 +167,7 @@ public class MyBleService extends Service {
             mConnectionStatuses.put(address, newState);
 
             if (status != BluetoothGatt.GATT_SUCCESS) {
+                onConnectionLost(address);
                 sendGattBroadcast(address, BleEvents.GATT_CONNECT_FAIL, null);
                 addressToGattClient.remove(address);
                 gatt.close();
@@ -139,11 +177,15 @@ public class MyBleService extends Service {
             if (newState == BluetoothProfile.STATE_CONNECTED) {
                 // TODO: extract testable code here
                 if (isActualChange) {
-                    sendGattBroadcast(address, BleEvents.GATT_CONNECT, null);
+                    getConnectionStats(address).onConnected(SystemClock.elapsedRealtime());
+                    for (String issuer : takeWaiters(mConnectWaiters, address)) {
+                        sendGattBroadcast(address, BleEvents.GATT_CONNECT, null, issuer);
+                    }
                 }
                 return;
             }
             if (newState == BluetoothProfile.STATE_DISCONNECTED) {
+                onConnectionLost(address);
                 sendGattBroadcast(address, BleEvents.GATT_DISCONNECT, null);
                 addressToGattClient.remove(address);
                 gatt.close();
@@ -155,12 +197,15 @@ public class MyBleService extends Service {
         @Override
         public void onServicesDiscovered(BluetoothGatt gatt, int status) {
             String address = getAddressFromGatt(gatt);
-            mOutstandingServiceDiscoveryAddresses.remove(address);
-            if (status == BluetoothGatt.GATT_SUCCESS) {
-                if (DEBUG) Log.d(TAG, "Sending the action: " + BleEvents.SERVICES_OK);
-                sendServiceDiscoveryIntent(MyBleService.this, address, SERVICES_RETRY_COUNT);
-            } else {
-                sendGattBroadcast(address, BleEvents.SERVICES_FAIL, null);
+            completeOperation(address);
+            for (String issuer : takeWaiters(mServiceDiscoveryWaiters, address)) {
+                if (status == BluetoothGatt.GATT_SUCCESS) {
+                    if (DEBUG) Log.d(TAG, "Sending the action: " + BleEvents.SERVICES_OK);
+                    sendServiceDiscoveryIntent(MyBleService.this, address, issuer,
+                            SERVICES_RETRY_COUNT);
+                } else {
+                    sendGattBroadcast(address, BleEvents.SERVICES_FAIL, null, issuer);
+                }
             }
         }
 
@@ -168,8 +213,11 @@ public class MyBleService extends Service {
         public void onCharacteristicChanged(BluetoothGatt gatt,
                                             BluetoothGattCharacteristic characteristic) {
             if (DEBUG) Log.d(TAG, "Got notification from " + characteristic.getUuid());
-            sendGattBroadcast(getAddressFromGatt(gatt), BleEvents.CHAR_CHANGED,
-                    characteristic);
+            String address = getAddressFromGatt(gatt);
+            byte[] value = characteristic.getValue();
+            getConnectionStats(address).onNotification(value == null ? 0 : value.length,
+                    SystemClock.elapsedRealtime());
+            sendGattBroadcast(address, BleEvents.CHAR_CHANGED, characteristic);
         }
 
         @Override
@@ -183,8 +231,10 @@ public class MyBleService extends Service {
                 Log.d(TAG, "Characteristic value: " + characteristic.getStringValue(0).toString());
             }
 
-            sendGattBroadcast(getAddressFromGatt(gatt), status == BluetoothGatt.GATT_SUCCESS
-                    ? BleEvents.READ_CHAR_OK : BleEvents.READ_CHAR_FAIL, characteristic);
+            String address = getAddressFromGatt(gatt);
+            String issuer = completeOperation(address);
+            sendGattBroadcast(address, status == BluetoothGatt.GATT_SUCCESS
+                    ? BleEvents.READ_CHAR_OK : BleEvents.READ_CHAR_FAIL, characteristic, issuer);
         }
 
         @Override
@@ -192,42 +242,107 @@ public class MyBleService extends Service {
                                           BluetoothGattCharacteristic characteristic, int status) {
             if (DEBUG) Log.d(TAG, "Characteristic write result: "
                     + characteristic.getUuid() + " - " + (status == BluetoothGatt.GATT_SUCCESS));
-            sendGattBroadcast(getAddressFromGatt(gatt),
+            String address = getAddressFromGatt(gatt);
+            String issuer = completeOperation(address);
+            sendGattBroadcast(address,
                     status == BluetoothGatt.GATT_SUCCESS
-                            ? BleEvents.WRITE_CHAR_OK : BleEvents.WRITE_CHAR_FAIL, characteristic);
+                            ? BleEvents.WRITE_CHAR_OK : BleEvents.WRITE_CHAR_FAIL, characteristic,
+                    issuer);
         }
 
         @Override
         public void onDescriptorRead(BluetoothGatt gatt,
                                      BluetoothGattDescriptor descriptor, int status) {
-            sendGattBroadcast(getAddressFromGatt(gatt), status == BluetoothGatt.GATT_SUCCESS
-                    ? BleEvents.READ_DESC_OK : BleEvents.READ_DESC_FAIL, null);
+            String address = getAddressFromGatt(gatt);
+            String issuer = completeOperation(address);
+            sendGattBroadcast(address, status == BluetoothGatt.GATT_SUCCESS
+                    ? BleEvents.READ_DESC_OK : BleEvents.READ_DESC_FAIL, null, issuer);
         }
 
         @Override
         public void onDescriptorWrite(BluetoothGatt gatt,
                                       BluetoothGattDescriptor descriptor, int status) {
-            sendGattBroadcast(getAddressFromGatt(gatt), status == BluetoothGatt.GATT_SUCCESS
-                    ? BleEvents.WRITE_DESC_OK : BleEvents.WRITE_DESC_FAIL, null);
+            String address = getAddressFromGatt(gatt);
+            String issuer = completeOperation(address);
+            sendGattBroadcast(address, status == BluetoothGatt.GATT_SUCCESS
+                    ? BleEvents.WRITE_DESC_OK : BleEvents.WRITE_DESC_FAIL, null, issuer);
         }
 
         @Override
         public void onReliableWriteCompleted(BluetoothGatt gatt, int status) {
-            sendGattBroadcast(getAddressFromGatt(gatt), status == BluetoothGatt.GATT_SUCCESS
-                    ? BleEvents.COMMIT_OK : BleEvents.COMMIT_FAIL, null);
+            String address = getAddressFromGatt(gatt);
+            String issuer = completeOperation(address);
+            sendGattBroadcast(address, status == BluetoothGatt.GATT_SUCCESS
+                    ? BleEvents.COMMIT_OK : BleEvents.COMMIT_FAIL, null, issuer);
         }
 
         @Override
         public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
-            sendGattBroadcast(getAddressFromGatt(gatt), status == BluetoothGatt.GATT_SUCCESS
-                    ? BleEvents.MTU_CHANGE_OK : BleEvents.MTU_CHANGE_OK, null);
+            String address = getAddressFromGatt(gatt);
+            String issuer = completeOperation(address);
+            if (status == BluetoothGatt.GATT_SUCCESS) {
+                getConnectionStats(address).onMtuChanged(mtu);
+            }
+            if (mInternalMtuRequests.remove(address)) {
+                return;
+            }
+            sendGattBroadcast(address, status == BluetoothGatt.GATT_SUCCESS
+                    ? BleEvents.MTU_CHANGE_OK : BleEvents.MTU_CHANGE_FAIL, null, issuer);
         }
     };
 
-    public static void sendServiceDiscoveryIntent(Context context, String address,
+    /**
+     * A GATT request that goes through {@link #mOperations}.  If there is no connection to the
+     * device, or the request can't be issued, {@code failureAction} is broadcast instead of
+     * waiting for a callback that will never come.  Either way the result is tagged with the
+     * issuer of the request.
+     */
+    private abstract class GattOperation implements GattOperationQueue.Operation {
+        private final String mAddress;
+        private final String mIssuer;
+        private final String mFailureAction;
+
+        /**
+         * @param failureAction the event to broadcast if the request can't be issued, or null to
+         *                      fail silently.
+         */
+        GattOperation(String address, String issuer, String failureAction) {
+            mAddress = address;
+            mIssuer = issuer;
+            mFailureAction = failureAction;
+        }
+
+        @Override
+        public boolean start() {
+            BluetoothGatt bluetoothGatt = addressToGattClient.get(mAddress);
+            if (bluetoothGatt == null) {
+                Log.w(TAG, "No connection found for: " + mAddress);
+                return false;
+            }
+            // Recorded before issuing the request, as the callback can arrive before it returns.
+            mOperationIssuers.put(mAddress, mIssuer);
+            if (start(bluetoothGatt)) {
+                return true;
+            }
+            mOperationIssuers.remove(mAddress);
+            return false;
+        }
+
+        @Override
+        public void onStartFailed() {
+            if (mFailureAction != null) {
+                sendGattBroadcast(mAddress, mFailureAction, null, mIssuer);
+            }
+        }
+
+        protected abstract boolean start(BluetoothGatt bluetoothGatt);
+    }
+
+    public static void sendServiceDiscoveryIntent(Context context, String address, String issuer,
             int retriesLeft) {
         Intent newIntent = BleEvents.createIntent(BleEvents.SERVICES_OK, address);
         newIntent.putExtra(INT_PARAM, retriesLeft);
+        newIntent.putExtra(ISSUER, issuer);
         LocalBroadcastManager.getInstance(context).sendBroadcast(newIntent);
     }
 
@@ -238,9 +353,22 @@ public class MyBleService extends Service {
 
     private final IBinder binder = new LocalBinder();
 
+    /**
+     * Broadcasts an event that concerns every flow talking to {@code address}, such as a
+     * notification or the connection going away.
+     */
+    private void sendGattBroadcast(String address, String gattAction,
+            BluetoothGattCharacteristic characteristic) {
+        sendGattBroadcast(address, gattAction, characteristic, null);
+    }
+
+    /**
+     * @param issuer who asked for the event, so that only they act on it, or null if it is for
+     *               everyone.
+     */
     @VisibleForTesting
     protected void sendGattBroadcast(String address, String gattAction,
-            BluetoothGattCharacteristic characteristic) {
+            BluetoothGattCharacteristic characteristic, String issuer) {
         if (DEBUG) Log.d(TAG, "Sending the action: " + gattAction);
         Intent newIntent = BleEvents.createIntent(gattAction, address);
         if (characteristic != null) {
@@ -248,9 +376,48 @@ public class MyBleService extends Service {
             newIntent.putExtra(FLAGS, characteristic.getProperties());
             newIntent.putExtra(DATA, characteristic.getValue());
         }
+        if (issuer != null) {
+            newIntent.putExtra(ISSUER, issuer);
+        }
         LocalBroadcastManager.getInstance(this).sendBroadcast(newIntent);
     }
 
+    /**
+     * Marks the operation in flight on {@code address} as done, starting the next one.
+     *
+     * @return the issuer of the operation that finished.
+     */
+    private String completeOperation(String address) {
+        // Taken before the next operation starts and records its own issuer.
+        String issuer = mOperationIssuers.remove(address);
+        mOperations.operationCompleted(address);
+        return issuer;
+    }
+
+    /**
+     * @return true if {@code issuer} is the first one waiting on {@code address}.
+     */
+    private static boolean addWaiter(Map<String, Set<String>> waiters, String address,
+            String issuer) {
+        synchronized (waiters) {
+            Set<String> issuers = waiters.get(address);
+            boolean first = issuers == null;
+            if (first) {
+                issuers = new ArraySet<>();
+                waiters.put(address, issuers);
+            }
+            issuers.add(issuer);
+            return first;
+        }
+    }
+
+    private static Set<String> takeWaiters(Map<String, Set<String>> waiters, String address) {
+        synchronized (waiters) {
+            Set<String> issuers = waiters.remove(address);
+            return issuers == null ? Collections.<String>emptySet() : issuers;
+        }
+    }
+
     public BluetoothDevice getSelectedDevice() {
         return selectedDevice;
     }
@@ -330,7 +497,7 @@ public class MyBleService extends Service {
         return btAdapter != null && btAdapter.isEnabled();
     }
 
-    public boolean connect(String address) {
+    public boolean connect(String address, String issuer) {
         BluetoothDevice device = btAdapter.getRemoteDevice(address);
         //  Explicitly check if Ble is enabled, otherwise it attempts a connection
         //  that never timesout even though it should.
@@ -340,30 +507,51 @@ public class MyBleService extends Service {
         BluetoothGatt bluetoothGatt = addressToGattClient.get(address);
         int connectionState = bluetoothManager.getConnectionState(device,
                 BluetoothProfile.GATT);
-        if (bluetoothGatt != null && connectionState != BluetoothProfile.STATE_CONNECTED) {
-            return bluetoothGatt.connect();
-        }
         if (bluetoothGatt != null && connectionState == BluetoothProfile.STATE_CONNECTED) {
-            sendGattBroadcast(address, BleEvents.GATT_CONNECT, null);
+            // Another sensor on the same device is already connected: share its connection
+            // rather than making a new one.
+            addConnectionHolder(address);
+            getConnectionStats(address).onConnectionShared();
+            sendGattBroadcast(address, BleEvents.GATT_CONNECT, null, issuer);
             return true;
         }
 
+        getConnectionStats(address).onConnectRequested(SystemClock.elapsedRealtime());
         if (bluetoothGatt != null) {
-            bluetoothGatt.close();
+            if (!bluetoothGatt.connect()) {
+                return false;
+            }
+            addConnectionHolder(address);
+            addWaiter(mConnectWaiters, address, issuer);
+            return true;
         }
+
+        addWaiter(mConnectWaiters, address, issuer);
         bluetoothGatt = device.connectGatt(this, false,  // autoConnect = false
                 gattCallbacks);
         addressToGattClient.put(address, bluetoothGatt);
+        addConnectionHolder(address);
         return true;
     }
 
-    public void disconnectDevice(String address) {
+    /**
+     * Lets go of one of the holds on the connection to {@code address} taken by
+     * {@link #connect(String, String)}, and disconnects once no one else is holding it.
+     *
+     * @return true if the device is being disconnected, in which case
+     * {@link BleEvents#GATT_DISCONNECT} will be broadcast, or false if other flows are still using
+     * the connection, which stays open.
+     */
+    public boolean disconnectDevice(String address) {
+        if (releaseConnectionHolder(address)) {
+            return false;
+        }
         BluetoothGatt bluetoothGatt = addressToGattClient.get(address);
         if (btAdapter == null || address == null || bluetoothGatt == null) {
             // Broadcast the disconnect so BleFlow doesn't hang waiting for it; something else
             // already disconnected us in this case.
             sendGattBroadcast(address, BleEvents.GATT_DISCONNECT, null);
-            return;
+            return true;
         }
         BluetoothDevice device = btAdapter.getRemoteDevice(address);
         int bleState = bluetoothManager.getConnectionState(device,
@@ -374,8 +562,69 @@ public class MyBleService extends Service {
         } else {
             bluetoothGatt.close();
             addressToGattClient.remove(address);
+            onConnectionLost(address);
             sendGattBroadcast(address, BleEvents.GATT_DISCONNECT, null);
         }
+        return true;
+    }
+
+    private void addConnectionHolder(String address) {
+        synchronized (mConnectionHolders) {
+            Integer holders = mConnectionHolders.get(address);
+            mConnectionHolders.put(address, holders == null ? 1 : holders + 1);
+        }
+    }
+
+    /**
+     * @return true if the connection to {@code address} still has other holders.
+     */
+    private boolean releaseConnectionHolder(String address) {
+        synchronized (mConnectionHolders) {
+            Integer holders = mConnectionHolders.get(address);
+            if (holders == null || holders <= 1) {
+                mConnectionHolders.remove(address);
+                return false;
+            }
+            mConnectionHolders.put(address, holders - 1);
+            return true;
+        }
+    }
+
+    /**
+     * Forgets everything tied to the current connection to {@code address}.
+     */
+    private void onConnectionLost(String address) {
+        mOperations.clear(address);
+        mOperationIssuers.remove(address);
+        takeWaiters(mConnectWaiters, address);
+        takeWaiters(mServiceDiscoveryWaiters, address);
+        synchronized (mConnectionHolders) {
+            mConnectionHolders.remove(address);
+        }
+        synchronized (mStreamingCharacteristics) {
+            mStreamingCharacteristics.remove(address);
+        }
+        mMtuRequested.remove(address);
+        mInternalMtuRequests.remove(address);
+        DeviceConnectionStats stats = mStats.get(address);
+        if (stats != null) {
+            Log.v(TAG, "Connection closed: " + stats);
+            stats.resetStreaming();
+        }
+    }
+
+    /**
+     * @return connect latency and notification throughput measurements for {@code address}.
+     */
+    public DeviceConnectionStats getConnectionStats(String address) {
+        synchronized (mStats) {
+            DeviceConnectionStats stats = mStats.get(address);
+            if (stats == null) {
+                stats = new DeviceConnectionStats(address);
+                mStats.put(address, stats);
+            }
+            return stats;
+        }
     }
 
     void resetGatt() {
@@ -412,12 +661,25 @@ public class MyBleService extends Service {
         if (DEBUG) Log.d(TAG, "Device: " + selectedDevice.getAddress());
     }
 
-    public boolean discoverServices(String address) {
-        if (mOutstandingServiceDiscoveryAddresses.contains(address)) {
+    public boolean discoverServices(final String address, String issuer) {
+        if (!addWaiter(mServiceDiscoveryWaiters, address, issuer)) {
+            // Already discovering: the result goes to this issuer too.
             return addressToGattClient.containsKey(address);
         }
-        mOutstandingServiceDiscoveryAddresses.add(address);
-        return internalDiscoverServices(address);
+        mOperations.enqueue(address, new GattOperationQueue.Operation() {
+            @Override
+            public boolean start() {
+                return internalDiscoverServices(address);
+            }
+
+            @Override
+            public void onStartFailed() {
+                for (String waiter : takeWaiters(mServiceDiscoveryWaiters, address)) {
+                    sendGattBroadcast(address, BleEvents.SERVICES_FAIL, null, waiter);
+                }
+            }
+        });
+        return true;
     }
 
     @VisibleForTesting
@@ -496,76 +758,137 @@ public class MyBleService extends Service {
         }
     }
 
-    void readValue(String address, BluetoothGattCharacteristic theCharacteristic) {
-        BluetoothGatt bluetoothGatt = addressToGattClient.get(address);
-        if (bluetoothGatt == null) {
-            Log.w(TAG, "No connection found for: " + address);
-            sendGattBroadcast(address, BleEvents.READ_CHAR_FAIL, null);
-            return;
-        }
-        bluetoothGatt.readCharacteristic(theCharacteristic);
+    void readValue(String address, final BluetoothGattCharacteristic theCharacteristic,
+            String issuer) {
+        mOperations.enqueue(address, new GattOperation(address, issuer,
+                BleEvents.READ_CHAR_FAIL) {
+            @Override
+            protected boolean start(BluetoothGatt bluetoothGatt) {
+                return bluetoothGatt.readCharacteristic(theCharacteristic);
+            }
+        });
     }
 
-    void writeValue(String address, BluetoothGattCharacteristic theCharacteristic, byte[] value) {
-        BluetoothGatt bluetoothGatt = addressToGattClient.get(address);
-        if (bluetoothGatt == null) {
-            Log.w(TAG, "No connection found for: " + address);
-            sendGattBroadcast(address, BleEvents.WRITE_CHAR_FAIL, null);
-            return;
-        }
-        theCharacteristic.setValue(value);
-        bluetoothGatt.writeCharacteristic(theCharacteristic);
+    void writeValue(String address, final BluetoothGattCharacteristic theCharacteristic,
+            final byte[] value, String issuer) {
+        mOperations.enqueue(address, new GattOperation(address, issuer,
+                BleEvents.WRITE_CHAR_FAIL) {
+            @Override
+            protected boolean start(BluetoothGatt bluetoothGatt) {
+                // Set the value only now: an earlier queued write may share the characteristic.
+                return theCharacteristic.setValue(value)
+                        && bluetoothGatt.writeCharacteristic(theCharacteristic);
+            }
+        });
     }
 
-    void commit(String address) {
-        BluetoothGatt bluetoothGatt = addressToGattClient.get(address);
-        if (bluetoothGatt == null) {
-            Log.w(TAG, "No connection found for: " + address);
-            sendGattBroadcast(address, BleEvents.COMMIT_FAIL, null);
-            return;
-        }
-        bluetoothGatt.executeReliableWrite();
+    void commit(String address, String issuer) {
+        mOperations.enqueue(address, new GattOperation(address, issuer, BleEvents.COMMIT_FAIL) {
+            @Override
+            protected boolean start(BluetoothGatt bluetoothGatt) {
+                return bluetoothGatt.executeReliableWrite();
+            }
+        });
     }
 
-    public void writeValue(String address, BluetoothGattDescriptor descriptor, byte[] value) {
+    public void writeValue(String address, final BluetoothGattDescriptor descriptor,
+            final byte[] value, String issuer) {
+        mOperations.enqueue(address, new GattOperation(address, issuer,
+                BleEvents.WRITE_DESC_FAIL) {
+            @Override
+            protected boolean start(BluetoothGatt bluetoothGatt) {
+                return descriptor.setValue(value) && bluetoothGatt.writeDescriptor(descriptor);
+            }
+        });
+    }
+
+    @TargetApi(21)
+    public void setMtu(String address, final int mtu, String issuer) {
+        mOperations.enqueue(address, new GattOperation(address, issuer,
+                BleEvents.MTU_CHANGE_FAIL) {
+            @Override
+            protected boolean start(BluetoothGatt bluetoothGatt) {
+                return bluetoothGatt.requestMtu(mtu);
+            }
+        });
+    }
+
+    boolean setNotificationsFor(String address, BluetoothGattCharacteristic characteristic,
+                                boolean enable) {
         BluetoothGatt bluetoothGatt = addressToGattClient.get(address);
         if (bluetoothGatt == null) {
             Log.w(TAG, "No connection found for: " + address);
-            sendGattBroadcast(address, BleEvents.WRITE_DESC_FAIL, null);
-            return;
+            return false;
         }
 
-        BluetoothGattCharacteristic characteristic = descriptor.getCharacteristic();
-        BluetoothGattService service = characteristic.getService();
-
-        if (!descriptor.setValue(value) || !bluetoothGatt.writeDescriptor(descriptor)) {
-            sendGattBroadcast(address, BleEvents.WRITE_DESC_FAIL, descriptor.getCharacteristic());
+        if (!bluetoothGatt.setCharacteristicNotification(characteristic, enable)) {
+            return false;
         }
+        onStreamingChanged(address, bluetoothGatt, characteristic.getUuid(), enable);
+        return true;
     }
 
-    @TargetApi(21)
-    public void setMtu(String address, int mtu) {
-        BluetoothGatt bluetoothGatt = addressToGattClient.get(address);
-        if (bluetoothGatt == null) {
-            Log.w(TAG, "No connection found for: " + address);
-            sendGattBroadcast(address, BleEvents.MTU_CHANGE_FAIL, null);
+    /**
+     * Devices that are streaming notifications get a high-priority (short interval) connection
+     * and a larger MTU; once the last notification is turned off, the connection goes back to the
+     * balanced default to save power.
+     */
+    private void onStreamingChanged(String address, BluetoothGatt bluetoothGatt,
+            UUID characteristicId, boolean enable) {
+        boolean wasStreaming;
+        boolean isStreaming;
+        synchronized (mStreamingCharacteristics) {
+            Set<UUID> characteristics = mStreamingCharacteristics.get(address);
+            if (characteristics == null) {
+                characteristics = new ArraySet<>();
+                mStreamingCharacteristics.put(address, characteristics);
+            }
+            wasStreaming = !characteristics.isEmpty();
+            if (enable) {
+                characteristics.add(characteristicId);
+            } else {
+                characteristics.remove(characteristicId);
+            }
+            isStreaming = !characteristics.isEmpty();
+        }
+        if (wasStreaming == isStreaming
+                || Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
             return;
         }
-        bluetoothGatt.requestMtu(mtu);
+        if (isStreaming) {
+            requestStreamingParameters(address, bluetoothGatt);
+        } else {
+            requestBalancedParameters(bluetoothGatt);
+        }
     }
 
-    boolean setNotificationsFor(String address, BluetoothGattCharacteristic characteristic,
-                                boolean enable) {
-        BluetoothGatt bluetoothGatt = addressToGattClient.get(address);
-        if (bluetoothGatt == null) {
-            Log.w(TAG, "No connection found for: " + address);
-            return false;
+    @TargetApi(21)
+    private void requestStreamingParameters(final String address, BluetoothGatt bluetoothGatt) {
+        bluetoothGatt.requestConnectionPriority(BluetoothGatt.CONNECTION_PRIORITY_HIGH);
+        if (!mMtuRequested.add(address)) {
+            return;
         }
+        // Queued ahead of the descriptor write that turns the notifications on, so the device
+        // knows the MTU before it starts sending.
+        mOperations.enqueue(address, new GattOperation(address, null, null) {
+            @Override
+            protected boolean start(BluetoothGatt bluetoothGatt) {
+                mInternalMtuRequests.add(address);
+                if (bluetoothGatt.requestMtu(STREAMING_MTU)) {
+                    return true;
+                }
+                mInternalMtuRequests.remove(address);
+                return false;
+            }
+        });
+    }
 
-        return bluetoothGatt.setCharacteristicNotification(characteristic, enable);
+    @TargetApi(21)
+    private void requestBalancedParameters(BluetoothGatt bluetoothGatt) {
+        bluetoothGatt.requestConnectionPriority(BluetoothGatt.CONNECTION_PRIORITY_BALANCED);
     }
 
-    public void startTransaction(String address) {
+    public void startTransaction(String address, String issuer) {
         BluetoothGatt bluetoothGatt = addressToGattClient.get(address);
         if (bluetoothGatt == null) {
             Log.w(TAG, "No connection found for: " + address);
@@ -575,7 +898,7 @@ public class MyBleService extends Service {
                 address,
                 (bluetoothGatt.beginReliableWrite() ? BleEvents.START_TX_OK
                         : BleEvents.START_TX_FAIL),
-                null);
+                null, issuer);
     }
 
     public void setMaxNoDevices(int maxNoDevices) {
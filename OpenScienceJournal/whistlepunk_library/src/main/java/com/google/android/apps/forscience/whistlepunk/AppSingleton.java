@@ -19,15 +19,26 @@ package com.google.android.apps.forscience.whistlepunk;
 import android.content.Context;
 import android.os.Handler;
 import android.os.Looper;
+import android.view.Choreographer;
 import android.support.annotation.NonNull;
 
 import com.google.android.apps.forscience.ble.BleClient;
 import com.google.android.apps.forscience.ble.BleClientImpl;
 import com.google.android.apps.forscience.javalib.Consumer;
 import com.google.android.apps.forscience.javalib.FailureListener;
+import com.google.android.apps.forscience.javalib.Success;
 import com.google.android.apps.forscience.whistlepunk.devicemanager.ExternalSensorDiscoverer;
 import com.google.android.apps.forscience.whistlepunk.metadata.SimpleMetaDataManager;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.AvailableSensors;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.CachingAvailableSensors;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.FrameDispatcher;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorEnvironment;
+import com.google.android.apps.forscience.whistlepunk.sensordb.CachingSensorDatabase;
+import com.google.android.apps.forscience.whistlepunk.sensordb.FileRunPartitionStore;
+import com.google.android.apps.forscience.whistlepunk.sensordb.ReadingTileCache;
+import com.google.android.apps.forscience.whistlepunk.sensordb.RunPartitionedSensorDatabase;
+import com.google.android.apps.forscience.whistlepunk.sensordb.SensorDataLanes;
+import com.google.android.apps.forscience.whistlepunk.sensordb.SensorDatabase;
 import com.google.android.apps.forscience.whistlepunk.sensordb.SensorDatabaseImpl;
 
 import java.util.HashMap;
@@ -41,8 +52,10 @@ public class AppSingleton {
     private static AppSingleton sInstance;
     private final Context mApplicationContext;
     private DataControllerImpl mDataController;
+    private SensorDataLanes mSensorDataLanes;
 
     private static Executor sUiThreadExecutor = null;
+    private static FrameDispatcher sFrameDispatcher = null;
     private SensorAppearanceProviderImpl mSensorAppearanceProvider;
     private final Clock mCurrentTimeClock = new CurrentTimeClock();
     private BleClientImpl mBleClient;
@@ -51,6 +64,7 @@ public class AppSingleton {
     private SensorRegistry mSensorRegistry;
     private PrefsSensorHistoryStorage mPrefsSensorHistoryStorage;
     private Map<String, ExternalSensorProvider> mExternalSensorProviders;
+    private CachingAvailableSensors mAvailableSensors;
 
     private SensorEnvironment mSensorEnvironment = new SensorEnvironment() {
                 @Override
@@ -82,6 +96,33 @@ public class AppSingleton {
         return mPrefsSensorHistoryStorage;
     }
 
+    /**
+     * @return the dispatcher that delivers live sensor data to the UI, once per frame, on the
+     *         main thread
+     */
+    public static FrameDispatcher getFrameDispatcher() {
+        if (sFrameDispatcher == null) {
+            sFrameDispatcher = new FrameDispatcher(new FrameDispatcher.FrameSource() {
+                @Override
+                public void postFrameCallback(final FrameDispatcher dispatcher) {
+                    Choreographer.getInstance().postFrameCallback(
+                            new Choreographer.FrameCallback() {
+                                @Override
+                                public void doFrame(long frameTimeNanos) {
+                                    dispatcher.doFrame(frameTimeNanos);
+                                }
+                            });
+                }
+
+                @Override
+                public long nanoTime() {
+                    return System.nanoTime();
+                }
+            });
+        }
+        return sFrameDispatcher;
+    }
+
     public static Executor getUiThreadExecutor() {
         if (sUiThreadExecutor == null) {
             final Handler handler = new Handler(Looper.getMainLooper());
@@ -110,19 +151,79 @@ public class AppSingleton {
         return internalGetDataController();
     }
 
+    /**
+     * Gets started, off the main thread, on what the first screen will need: opens both
+     * databases (running any upgrades), prefetches the last used project and experiment, and
+     * asks which hardware sensors the device has.  Once the first screen's metadata is in, starts
+     * moving readings from before runs were stored separately.  Call once, from the main thread,
+     * as the application is created.
+     */
+    public void warmUp(final ColdStartMarkers markers) {
+        internalGetDataController().openSensorDatabase(new LoggingConsumer<Success>(TAG,
+                "Opening sensor database") {
+            @Override
+            public void success(Success value) {
+                markers.mark(ColdStartMarkers.SENSOR_DATABASE_OPEN);
+            }
+        });
+        getMetadataController().prefetch(new Runnable() {
+            @Override
+            public void run() {
+                markers.mark(ColdStartMarkers.METADATA_PREFETCHED);
+                internalGetDataController().migrateSensorDataToRuns();
+            }
+        });
+        final AvailableSensors available = getAvailableSensors();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                SensorRegistry.prefetchBuiltinAvailability(available);
+                markers.mark(ColdStartMarkers.BUILTIN_SENSORS_RESOLVED);
+            }
+        }, "SensorAvailability");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    private AvailableSensors getAvailableSensors() {
+        if (mAvailableSensors == null) {
+            mAvailableSensors = new CachingAvailableSensors(
+                    SensorRegistry.systemAvailableSensors(mApplicationContext));
+        }
+        return mAvailableSensors;
+    }
+
     @NonNull
     private DataControllerImpl internalGetDataController() {
         if (mDataController == null) {
-            mDataController = new DataControllerImpl(
-                    new SensorDatabaseImpl(mApplicationContext, SENSOR_DATABASE_NAME),
+            SensorDataLanes lanes = getSensorDataLanes();
+            SensorDatabase sensorDatabase = new CachingSensorDatabase(
+                    new RunPartitionedSensorDatabase(
+                            new SensorDatabaseImpl(mApplicationContext, SENSOR_DATABASE_NAME),
+                            new FileRunPartitionStore(mApplicationContext)),
+                    new ReadingTileCache(ReadingTileCache.DEFAULT_MAX_BYTES),
+                    lanes.getExecutor(SensorDataLanes.Lane.BACKGROUND_READ));
+            mDataController = new DataControllerImpl(sensorDatabase,
                     getUiThreadExecutor(), Executors.newSingleThreadExecutor(),
-                    Executors.newSingleThreadExecutor(),
+                    lanes.getExecutor(SensorDataLanes.Lane.WRITE),
+                    lanes.getExecutor(SensorDataLanes.Lane.INTERACTIVE_READ),
+                    lanes.getExecutor(SensorDataLanes.Lane.BACKGROUND_READ),
                     new SimpleMetaDataManager(mApplicationContext), getDefaultClock(),
                     getExternalSensorProviders());
         }
         return mDataController;
     }
 
+    /**
+     * The threads that sensor data is read and written on, with their latency statistics.
+     */
+    public SensorDataLanes getSensorDataLanes() {
+        if (mSensorDataLanes == null) {
+            mSensorDataLanes = new SensorDataLanes(SensorDataLanes.DEFAULT_READER_THREADS);
+        }
+        return mSensorDataLanes;
+    }
+
     public SensorAppearanceProvider getSensorAppearanceProvider() {
         if (mSensorAppearanceProvider == null) {
             mSensorAppearanceProvider = new SensorAppearanceProviderImpl(getDataController());
@@ -193,7 +294,8 @@ public class AppSingleton {
 
     public SensorRegistry getSensorRegistry() {
         if (mSensorRegistry == null) {
-            mSensorRegistry = SensorRegistry.createWithBuiltinSensors(mApplicationContext);
+            mSensorRegistry = SensorRegistry.createWithBuiltinSensors(mApplicationContext,
+                    getAvailableSensors());
             withRecorderController(TAG, new Consumer<RecorderController>() {
                 @Override
                 public void take(RecorderController rc) {
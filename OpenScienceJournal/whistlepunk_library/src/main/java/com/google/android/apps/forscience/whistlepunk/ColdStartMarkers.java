@@ -0,0 +1,63 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk;
+
+import android.util.Log;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Logs how long after the application was created each step of a cold start was reached, so
+ * that changes to startup can be compared.  Each step is logged only the first time it's reached
+ * in a process.  To see them: {@code adb shell setprop log.tag.ColdStart DEBUG}.
+ */
+public class ColdStartMarkers {
+    private static final String TAG = "ColdStart";
+
+    public static final String APPLICATION_CREATED = "application created";
+    public static final String SENSOR_DATABASE_OPEN = "sensor database open";
+    public static final String METADATA_PREFETCHED = "last used experiment prefetched";
+    public static final String BUILTIN_SENSORS_RESOLVED = "built-in sensors resolved";
+    public static final String MAIN_ACTIVITY_CREATED = "main activity created";
+    public static final String FIRST_EXPERIMENT_SHOWN = "first experiment shown";
+
+    private final Clock mClock;
+    private final long mStartMillis;
+    private final Set<String> mReached = new HashSet<>();
+
+    public ColdStartMarkers(Clock clock) {
+        mClock = clock;
+        mStartMillis = clock.getNow();
+    }
+
+    /**
+     * Notes that a step was reached.  Can be called from any thread.
+     */
+    public void mark(String step) {
+        long elapsed = mClock.getNow() - mStartMillis;
+        synchronized (this) {
+            if (!mReached.add(step)) {
+                return;
+            }
+        }
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, step + ": " + elapsed + "ms");
+        }
+    }
+}
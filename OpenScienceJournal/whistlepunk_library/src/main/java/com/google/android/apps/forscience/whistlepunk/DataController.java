@@ -24,7 +24,9 @@ import com.google.android.apps.forscience.whistlepunk.metadata.ApplicationLabel;
 import com.google.android.apps.forscience.whistlepunk.metadata.Experiment;
 import com.google.android.apps.forscience.whistlepunk.metadata.ExperimentRun;
 import com.google.android.apps.forscience.whistlepunk.metadata.ExperimentSensors;
+import com.google.android.apps.forscience.whistlepunk.metadata.ExperimentSummary;
 import com.google.android.apps.forscience.whistlepunk.metadata.ExternalSensorSpec;
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciSparkline;
 import com.google.android.apps.forscience.whistlepunk.metadata.Label;
 import com.google.android.apps.forscience.whistlepunk.metadata.Project;
 import com.google.android.apps.forscience.whistlepunk.metadata.Run;
@@ -42,9 +44,27 @@ import java.util.Map;
  * later on the UI thread.
  */
 public interface DataController {
+    /**
+     * How urgently a read of sensor data is needed.  Queued interactive reads run before queued
+     * background reads.
+     */
+    enum ReadPriority {
+        /** The user is waiting to see the result, for example in a chart. */
+        INTERACTIVE,
+
+        /** Bulk work such as export or cropping, which can wait. */
+        BACKGROUND
+    }
+
+    /**
+     * Same as the version with a {@link ReadPriority}, at {@link ReadPriority#INTERACTIVE}.
+     */
     void getScalarReadings(String databaseTag, final int resolutionTier, TimeRange timeRange,
             int maxRecords, MaybeConsumer<ScalarReadingList> onSuccess);
 
+    void getScalarReadings(String databaseTag, int resolutionTier, TimeRange timeRange,
+            int maxRecords, ReadPriority priority, MaybeConsumer<ScalarReadingList> onSuccess);
+
     void addLabel(Label label, MaybeConsumer<Label> onSuccess);
 
     void startRun(Experiment experiment, MaybeConsumer<ApplicationLabel> onSuccess);
@@ -57,6 +77,12 @@ public interface DataController {
 
     void deleteRun(ExperimentRun run, MaybeConsumer<Success> onSuccess);
 
+    /**
+     * Reports the bytes on disk taken by the sensor readings of the experiment's runs.  Runs
+     * recorded before readings were stored per run are not counted until they have been moved.
+     */
+    void getSensorDataBytes(String experimentId, MaybeConsumer<Long> onSuccess);
+
     void createExperiment(Project project, MaybeConsumer<Experiment> onSuccess);
 
     void deleteExperiment(Experiment experiment, MaybeConsumer<Success> onSuccess);
@@ -71,6 +97,14 @@ public interface DataController {
     void getExperimentRuns(String experiment, boolean includeArchived,
             MaybeConsumer<List<ExperimentRun>> onSuccess);
 
+    /**
+     * Passes to onSuccess up to maxNumber valid runs, newest first, starting after the run with
+     * ID afterRunId (or with the newest, if it is null).  Fewer than maxNumber runs means that
+     * there are no more.
+     */
+    void getExperimentRuns(String experiment, boolean includeArchived, String afterRunId,
+            int maxNumber, MaybeConsumer<List<ExperimentRun>> onSuccess);
+
     void createProject(MaybeConsumer<Project> onSuccess);
 
     void updateProject(Project project, MaybeConsumer<Success> onSuccess);
@@ -80,6 +114,13 @@ public interface DataController {
     void getProjects(int maxNumber, boolean includeArchived,
                      MaybeConsumer<List<Project>> onSuccess);
 
+    /**
+     * Passes to onSuccess up to maxNumber projects, most recently used first, starting after
+     * {@code after} (or with the first, if it is null).
+     */
+    void getProjects(int maxNumber, boolean includeArchived, Project after,
+            MaybeConsumer<List<Project>> onSuccess);
+
     void editLabel(Label updatedLabel, MaybeConsumer<Label> onSuccess);
 
     void deleteLabel(Label label, MaybeConsumer<Success> onSuccess);
@@ -91,6 +132,20 @@ public interface DataController {
     void getExperimentsForProject(Project project, boolean includeArchived,
                                   MaybeConsumer<List<Experiment>> onSuccess);
 
+    /**
+     * Passes to onSuccess up to maxNumber of the project's experiments, most recently used first,
+     * starting after {@code after} (or with the first, if it is null).
+     */
+    void getExperimentsForProject(Project project, boolean includeArchived, Experiment after,
+            int maxNumber, MaybeConsumer<List<Experiment>> onSuccess);
+
+    /**
+     * Passes to onSuccess a map from experiment ids to the summaries shown in experiment lists,
+     * for every experiment in the project.
+     */
+    void getExperimentSummaries(Project project,
+            MaybeConsumer<Map<String, ExperimentSummary>> onSuccess);
+
     void getProjectById(String projectId, MaybeConsumer<Project> onSuccess);
 
     void getExternalSensors(MaybeConsumer<Map<String, ExternalSensorSpec>> onSuccess);
@@ -148,6 +203,20 @@ public interface DataController {
     void updateRunStats(final String runId, final String sensorId, final RunStats runStats,
             MaybeConsumer<Success> onSuccess);
 
+    /**
+     * Get the preview summary for the given run and sensor, or null if none was stored.
+     *
+     * @param runId (previously startLabelId) identifies the run
+     */
+    void getSparkline(String runId, String sensorId,
+            MaybeConsumer<GoosciSparkline.Sparkline> onSuccess);
+
+    /**
+     * Replaces the preview summary for the given run and sensor, for example after a crop
+     */
+    void updateSparkline(String runId, String sensorId, GoosciSparkline.Sparkline sparkline,
+            MaybeConsumer<Success> onSuccess);
+
     /**
      * Get the aggregated stats for an entire experiment for all sensors.
      *
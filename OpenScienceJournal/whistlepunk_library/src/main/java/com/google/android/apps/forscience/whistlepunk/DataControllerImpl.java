@@ -29,13 +29,16 @@ import com.google.android.apps.forscience.whistlepunk.metadata.ApplicationLabel;
 import com.google.android.apps.forscience.whistlepunk.metadata.Experiment;
 import com.google.android.apps.forscience.whistlepunk.metadata.ExperimentRun;
 import com.google.android.apps.forscience.whistlepunk.metadata.ExperimentSensors;
+import com.google.android.apps.forscience.whistlepunk.metadata.ExperimentSummary;
 import com.google.android.apps.forscience.whistlepunk.metadata.ExternalSensorSpec;
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciSparkline;
 import com.google.android.apps.forscience.whistlepunk.metadata.Label;
 import com.google.android.apps.forscience.whistlepunk.metadata.MetaDataManager;
 import com.google.android.apps.forscience.whistlepunk.metadata.Project;
 import com.google.android.apps.forscience.whistlepunk.metadata.Run;
 import com.google.android.apps.forscience.whistlepunk.metadata.RunStats;
 import com.google.android.apps.forscience.whistlepunk.metadata.SensorTrigger;
+import com.google.android.apps.forscience.whistlepunk.sensordb.PendingWrites;
 import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarReadingList;
 import com.google.android.apps.forscience.whistlepunk.sensordb.SensorDatabase;
 import com.google.android.apps.forscience.whistlepunk.sensordb.TimeRange;
@@ -43,10 +46,13 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.Range;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 
 public class DataControllerImpl implements DataController, RecordingDataController {
@@ -54,6 +60,10 @@ public class DataControllerImpl implements DataController, RecordingDataControll
     private final Executor mUiThread;
     private final Executor mMetaDataThread;
     private final Executor mSensorDataThread;
+    private final Executor mInteractiveReadThread;
+    private final Executor mBackgroundReadThread;
+    private final PendingWrites mPendingWrites = new PendingWrites();
+    private final ConcurrentMap<String, WriteBuffer> mWriteBuffers = new ConcurrentHashMap<>();
     private MetaDataManager mMetaDataManager;
     private Clock mClock;
     private Map<String, FailureListener> mSensorFailureListeners = new HashMap<>();
@@ -64,10 +74,25 @@ public class DataControllerImpl implements DataController, RecordingDataControll
             Executor metaDataThread,
             Executor sensorDataThread, MetaDataManager metaDataManager, Clock clock,
             Map<String, ExternalSensorProvider> providerMap) {
+        this(sensorDatabase, uiThread, metaDataThread, sensorDataThread, sensorDataThread,
+                sensorDataThread, metaDataManager, clock, providerMap);
+    }
+
+    /**
+     * @param sensorDataThread runs all sensor data writes, in order
+     * @param interactiveReadThread runs sensor data reads that the user is waiting on
+     * @param backgroundReadThread runs bulk sensor data reads, like exports
+     */
+    public DataControllerImpl(SensorDatabase sensorDatabase, Executor uiThread,
+            Executor metaDataThread, Executor sensorDataThread, Executor interactiveReadThread,
+            Executor backgroundReadThread, MetaDataManager metaDataManager, Clock clock,
+            Map<String, ExternalSensorProvider> providerMap) {
         mSensorDatabase = sensorDatabase;
         mUiThread = uiThread;
         mMetaDataThread = metaDataThread;
         mSensorDataThread = sensorDataThread;
+        mInteractiveReadThread = interactiveReadThread;
+        mBackgroundReadThread = backgroundReadThread;
         mMetaDataManager = metaDataManager;
         mClock = clock;
         mProviderMap = providerMap;
@@ -104,6 +129,12 @@ public class DataControllerImpl implements DataController, RecordingDataControll
                 MaybeConsumers.chainFailure(onSuccess, new Consumer<ApplicationLabel>() {
                     @Override
                     public void take(final ApplicationLabel applicationLabel) {
+                        mSensorDataThread.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                mSensorDatabase.endRun(runId, applicationLabel.getTimeStamp());
+                            }
+                        });
                         background(DataControllerImpl.this.mMetaDataThread, onSuccess,
                                 new Callable<ApplicationLabel>() {
                             @Override
@@ -140,28 +171,164 @@ public class DataControllerImpl implements DataController, RecordingDataControll
     }
 
     private void removeRunSensorData(final ExperimentRun run) {
+        for (String tag : run.getSensorTags()) {
+            mPendingWrites.add(tag, run.getFirstTimestamp());
+        }
         mSensorDataThread.execute(new Runnable() {
 
             @Override
             public void run() {
-                TimeRange times = TimeRange.oldest(Range.closed(run.getFirstTimestamp(),
-                        run.getLastTimestamp()));
-                for (String tag : run.getSensorTags()) {
-                    mSensorDatabase.deleteScalarReadings(tag, times);
+                try {
+                    if (mSensorDatabase.deleteRun(run.getRunId(), run.getSensorTags())) {
+                        return;
+                    }
+                    // Not partitioned yet, so delete it row by row.
+                    TimeRange times = TimeRange.oldest(Range.closed(run.getFirstTimestamp(),
+                            run.getLastTimestamp()));
+                    for (String tag : run.getSensorTags()) {
+                        mSensorDatabase.deleteScalarReadings(tag, times);
+                    }
+                } finally {
+                    for (String tag : run.getSensorTags()) {
+                        mPendingWrites.done(tag);
+                    }
                 }
             }
         });
     }
 
     @Override
-    public void addScalarReading(final String sensorId, final int resolutionTier,
-            final long timestampMillis, final double value) {
+    public void addScalarReading(String sensorId, int resolutionTier, long timestampMillis,
+            double value) {
+        WriteBuffer buffer = mWriteBuffers.get(sensorId);
+        if (buffer == null) {
+            mWriteBuffers.putIfAbsent(sensorId, new WriteBuffer(sensorId));
+            buffer = mWriteBuffers.get(sensorId);
+        }
+        if (buffer.add(resolutionTier, timestampMillis, value)) {
+            mSensorDataThread.execute(buffer);
+        }
+    }
+
+    /**
+     * Single readings for one sensor, at any tier, waiting to be written.  The first reading of a
+     * batch queues the write, and the ones that arrive before it runs join the same batch, so
+     * that {@link PendingWrites} and the write thread are visited once per batch instead of once
+     * per reading.
+     */
+    private class WriteBuffer implements Runnable {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private final String mSensorId;
+
+        // All guarded by this
+        private int[] mTiers = new int[INITIAL_CAPACITY];
+        private long[] mTimestamps = new long[INITIAL_CAPACITY];
+        private double[] mValues = new double[INITIAL_CAPACITY];
+        private int mCount = 0;
+        private long mEarliestTimestamp;
+        // How many times this batch has been added to mPendingWrites.
+        private int mPendingCount = 0;
+
+        public WriteBuffer(String sensorId) {
+            mSensorId = sensorId;
+        }
+
+        /**
+         * @return true if this reading started a new batch, which the caller must queue
+         */
+        public synchronized boolean add(int tier, long timestampMillis, double value) {
+            if (mCount == 0 || timestampMillis < mEarliestTimestamp) {
+                // Higher tiers can lag behind tier 0, so make sure reads know how far back the
+                // batch reaches.
+                mPendingWrites.add(mSensorId, timestampMillis);
+                mPendingCount++;
+                mEarliestTimestamp = timestampMillis;
+            }
+            if (mCount == mTimestamps.length) {
+                mTiers = Arrays.copyOf(mTiers, mCount * 2);
+                mTimestamps = Arrays.copyOf(mTimestamps, mCount * 2);
+                mValues = Arrays.copyOf(mValues, mCount * 2);
+            }
+            mTiers[mCount] = tier;
+            mTimestamps[mCount] = timestampMillis;
+            mValues[mCount] = value;
+            mCount++;
+            return mCount == 1;
+        }
+
+        @Override
+        public void run() {
+            int[] tiers;
+            long[] timestamps;
+            double[] values;
+            int count;
+            int pendingCount;
+            synchronized (this) {
+                tiers = mTiers;
+                timestamps = mTimestamps;
+                values = mValues;
+                count = mCount;
+                pendingCount = mPendingCount;
+                int capacity = Math.max(INITIAL_CAPACITY, count);
+                mTiers = new int[capacity];
+                mTimestamps = new long[capacity];
+                mValues = new double[capacity];
+                mCount = 0;
+                mPendingCount = 0;
+            }
+            try {
+                writeByTier(tiers, timestamps, values, count);
+            } catch (final Exception e) {
+                mUiThread.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        notifyFailureListener(mSensorId, e);
+                    }
+                });
+            } finally {
+                for (int i = 0; i < pendingCount; i++) {
+                    mPendingWrites.done(mSensorId);
+                }
+            }
+        }
+
+        private void writeByTier(int[] tiers, long[] timestamps, double[] values, int count) {
+            int maxTier = 0;
+            for (int i = 0; i < count; i++) {
+                maxTier = Math.max(maxTier, tiers[i]);
+            }
+            long[] tierTimestamps = new long[count];
+            double[] tierValues = new double[count];
+            for (int tier = 0; tier <= maxTier; tier++) {
+                int tierCount = 0;
+                for (int i = 0; i < count; i++) {
+                    if (tiers[i] == tier) {
+                        tierTimestamps[tierCount] = timestamps[i];
+                        tierValues[tierCount] = values[i];
+                        tierCount++;
+                    }
+                }
+                if (tierCount > 0) {
+                    mSensorDatabase.addScalarReadings(mSensorId, tier, tierTimestamps,
+                            tierValues, tierCount);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void addScalarReadings(final String sensorId, final int resolutionTier,
+            long[] timestampsMillis, double[] values, final int count) {
+        final long[] timestampsCopy = Arrays.copyOf(timestampsMillis, count);
+        final double[] valuesCopy = Arrays.copyOf(values, count);
+        mPendingWrites.add(sensorId, count > 0 ? timestampsCopy[0] : Long.MAX_VALUE);
         mSensorDataThread.execute(new Runnable() {
             @Override
             public void run() {
                 try {
-                    mSensorDatabase.addScalarReading(sensorId, resolutionTier, timestampMillis,
-                            value);
+                    mSensorDatabase.addScalarReadings(sensorId, resolutionTier, timestampsCopy,
+                            valuesCopy, count);
                 } catch (final Exception e) {
                     mUiThread.execute(new Runnable() {
                         @Override
@@ -169,6 +336,8 @@ public class DataControllerImpl implements DataController, RecordingDataControll
                             notifyFailureListener(sensorId, e);
                         }
                     });
+                } finally {
+                    mPendingWrites.done(sensorId);
                 }
             }
         });
@@ -185,8 +354,17 @@ public class DataControllerImpl implements DataController, RecordingDataControll
     public void getScalarReadings(final String databaseTag, final int resolutionTier,
             final TimeRange timeRange, final int maxRecords,
             final MaybeConsumer<ScalarReadingList> onSuccess) {
+        getScalarReadings(databaseTag, resolutionTier, timeRange, maxRecords,
+                ReadPriority.INTERACTIVE, onSuccess);
+    }
+
+    @Override
+    public void getScalarReadings(final String databaseTag, final int resolutionTier,
+            final TimeRange timeRange, final int maxRecords, ReadPriority priority,
+            final MaybeConsumer<ScalarReadingList> onSuccess) {
         Preconditions.checkNotNull(databaseTag);
-        background(mSensorDataThread, onSuccess, new Callable<ScalarReadingList>() {
+        background(chooseReadThread(databaseTag, timeRange, priority), onSuccess,
+                new Callable<ScalarReadingList>() {
             @Override
             public ScalarReadingList call() throws Exception {
                 return mSensorDatabase.getScalarReadings(databaseTag, timeRange, resolutionTier,
@@ -195,6 +373,16 @@ public class DataControllerImpl implements DataController, RecordingDataControll
         });
     }
 
+    private Executor chooseReadThread(String databaseTag, TimeRange timeRange,
+            ReadPriority priority) {
+        if (mPendingWrites.mightOverlap(databaseTag, timeRange)) {
+            // Queue behind the writes, so that the read sees them.
+            return mSensorDataThread;
+        }
+        return priority == ReadPriority.INTERACTIVE ? mInteractiveReadThread
+                : mBackgroundReadThread;
+    }
+
     public void addLabel(final Label label, final MaybeConsumer<Label> onSuccess) {
         background(mMetaDataThread, onSuccess, new Callable<Label>() {
             @Override
@@ -239,9 +427,23 @@ public class DataControllerImpl implements DataController, RecordingDataControll
 
     @Override public void startRun(
             final Experiment experiment, final MaybeConsumer<ApplicationLabel> onSuccess) {
-        String id = generateNewLabelId();
-        addApplicationLabelWithId(
-                experiment, ApplicationLabel.TYPE_RECORDING_START, id, id, onSuccess);
+        final String id = generateNewLabelId();
+        addApplicationLabelWithId(experiment, ApplicationLabel.TYPE_RECORDING_START, id, id,
+                MaybeConsumers.chainFailure(onSuccess, new Consumer<ApplicationLabel>() {
+                    @Override
+                    public void take(final ApplicationLabel label) {
+                        // Queued before any recording starts, so the run's first readings
+                        // already land in its partition.
+                        mSensorDataThread.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                mSensorDatabase.beginRun(id, experiment.getExperimentId(),
+                                        label.getTimeStamp());
+                            }
+                        });
+                        onSuccess.success(label);
+                    }
+                }));
     }
 
     private void addApplicationLabel(
@@ -359,6 +561,36 @@ public class DataControllerImpl implements DataController, RecordingDataControll
         });
     }
 
+    @Override
+    public void getExperimentRuns(final String experimentId, final boolean includeArchived,
+            final String afterRunId, final int maxNumber,
+            final MaybeConsumer<List<ExperimentRun>> onSuccess) {
+        background(mMetaDataThread, onSuccess, new Callable<List<ExperimentRun>>() {
+            @Override
+            public List<ExperimentRun> call() throws Exception {
+                final List<ExperimentRun> runs = new ArrayList<>();
+                String lastRunId = afterRunId;
+                List<String> startLabelIds;
+                int requested;
+                // Invalid runs are skipped, so keep reading until the page is full or the runs
+                // run out.
+                do {
+                    requested = maxNumber - runs.size();
+                    startLabelIds = mMetaDataManager.getExperimentRunIds(experimentId,
+                            includeArchived, lastRunId, requested);
+                    for (String startLabelId : startLabelIds) {
+                        ExperimentRun run = buildExperimentRunOnDataThread(startLabelId);
+                        if (run.isValidRun()) {
+                            runs.add(run);
+                        }
+                        lastRunId = startLabelId;
+                    }
+                } while (runs.size() < maxNumber && startLabelIds.size() == requested);
+                return runs;
+            }
+        });
+    }
+
     private List<ExperimentRun> getExperimentRunsOnDataThread(final String experimentId,
             final boolean includeArchived, boolean includeInvalid) {
         final List<ExperimentRun> runs = new ArrayList<>();
@@ -379,6 +611,116 @@ public class DataControllerImpl implements DataController, RecordingDataControll
         return ExperimentRun.fromLabels(run, allLabels);
     }
 
+    @Override
+    public void getSensorDataBytes(final String experimentId,
+            final MaybeConsumer<Long> onSuccess) {
+        background(mBackgroundReadThread, onSuccess, new Callable<Long>() {
+            @Override
+            public Long call() throws Exception {
+                return mSensorDatabase.getDiskUsageBytes(experimentId);
+            }
+        });
+    }
+
+    /**
+     * Opens the sensor database on the sensor data write thread, running any upgrade it needs, so
+     * that the first readings asked for by the UI don't wait for it.
+     */
+    public void openSensorDatabase(MaybeConsumer<Success> onSuccess) {
+        background(mSensorDataThread, onSuccess, new Callable<Success>() {
+            @Override
+            public Success call() throws Exception {
+                mSensorDatabase.open();
+                return Success.SUCCESS;
+            }
+        });
+    }
+
+    /**
+     * Moves readings recorded before runs were partitioned into each run's own storage.  Runs are
+     * loaded one experiment at a time on the metadata thread, and moved one run at a time on the
+     * sensor data write thread, so that neither new readings nor metadata requests ever wait
+     * behind more than one of them.
+     */
+    public void migrateSensorDataToRuns() {
+        mSensorDataThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!mSensorDatabase.isRunMigrationNeeded()) {
+                    return;
+                }
+                mMetaDataThread.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        List<String> experimentIds = new ArrayList<>();
+                        for (Project project : mMetaDataManager.getProjects(Integer.MAX_VALUE,
+                                true)) {
+                            for (Experiment experiment :
+                                    mMetaDataManager.getExperimentsForProject(project, true)) {
+                                experimentIds.add(experiment.getExperimentId());
+                            }
+                        }
+                        mSensorDataThread.execute(new RunMigration(experimentIds));
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Runs on the sensor data write thread, except for {@link #loadNextExperiment}, which runs on
+     * the metadata thread.  Each hands off to the other through its executor.
+     */
+    private class RunMigration implements Runnable {
+        private final List<String> mExperimentIds;
+        private int mNextExperiment = 0;
+        private List<ExperimentRun> mRuns = new ArrayList<>();
+        private int mNextRun = 0;
+
+        public RunMigration(List<String> experimentIds) {
+            mExperimentIds = experimentIds;
+        }
+
+        private void loadNextExperiment() {
+            mRuns = getExperimentRunsOnDataThread(mExperimentIds.get(mNextExperiment++), true,
+                    false);
+            mNextRun = 0;
+            mSensorDataThread.execute(this);
+        }
+
+        @Override
+        public void run() {
+            if (mNextRun == mRuns.size()) {
+                if (mNextExperiment == mExperimentIds.size()) {
+                    mSensorDatabase.finishRunMigration();
+                    return;
+                }
+                mMetaDataThread.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        loadNextExperiment();
+                    }
+                });
+                return;
+            }
+            ExperimentRun run = mRuns.get(mNextRun++);
+            // Readings are briefly in both places while they move, so keep readers behind us.
+            for (String tag : run.getSensorTags()) {
+                mPendingWrites.add(tag, run.getOriginalFirstTimestamp());
+            }
+            try {
+                mSensorDatabase.migrateRun(run.getRunId(), run.getExperimentId(),
+                        run.getSensorTags(), run.getOriginalFirstTimestamp(),
+                        run.getOriginalLastTimestamp());
+            } finally {
+                for (String tag : run.getSensorTags()) {
+                    mPendingWrites.done(tag);
+                }
+            }
+            mSensorDataThread.execute(this);
+        }
+    }
+
     @Override public void createProject(final MaybeConsumer<Project> onSuccess) {
         background(mMetaDataThread, onSuccess, new Callable<Project>() {
             @Override
@@ -425,6 +767,17 @@ public class DataControllerImpl implements DataController, RecordingDataControll
         });
     }
 
+    @Override
+    public void getProjects(final int maxNumber, final boolean includeArchived,
+            final Project after, final MaybeConsumer<List<Project>> onSuccess) {
+        background(mMetaDataThread, onSuccess, new Callable<List<Project>>() {
+            @Override
+            public List<Project> call() throws Exception {
+                return mMetaDataManager.getProjects(maxNumber, includeArchived, after);
+            }
+        });
+    }
+
     @Override public void getExperimentsForProject(final Project project,
             final boolean includeArchived, final MaybeConsumer<List<Experiment>> onSuccess) {
         background(mMetaDataThread, onSuccess, new Callable<List<Experiment>>() {
@@ -435,6 +788,30 @@ public class DataControllerImpl implements DataController, RecordingDataControll
         });
     }
 
+    @Override
+    public void getExperimentsForProject(final Project project, final boolean includeArchived,
+            final Experiment after, final int maxNumber,
+            final MaybeConsumer<List<Experiment>> onSuccess) {
+        background(mMetaDataThread, onSuccess, new Callable<List<Experiment>>() {
+            @Override
+            public List<Experiment> call() throws Exception {
+                return mMetaDataManager.getExperimentsForProject(project, includeArchived, after,
+                        maxNumber);
+            }
+        });
+    }
+
+    @Override
+    public void getExperimentSummaries(final Project project,
+            MaybeConsumer<Map<String, ExperimentSummary>> onSuccess) {
+        background(mMetaDataThread, onSuccess, new Callable<Map<String, ExperimentSummary>>() {
+            @Override
+            public Map<String, ExperimentSummary> call() throws Exception {
+                return mMetaDataManager.getExperimentSummaries(project.getProjectId());
+            }
+        });
+    }
+
     @Override
     public void getProjectById(final String projectId, final MaybeConsumer<Project> onSuccess) {
         background(mMetaDataThread, onSuccess, new Callable<Project>() {
@@ -579,6 +956,35 @@ public class DataControllerImpl implements DataController, RecordingDataControll
         });
     }
 
+    @Override
+    public void getSparkline(final String runId, final String sensorId,
+            MaybeConsumer<GoosciSparkline.Sparkline> onSuccess) {
+        background(mMetaDataThread, onSuccess, new Callable<GoosciSparkline.Sparkline>() {
+            @Override
+            public GoosciSparkline.Sparkline call() throws Exception {
+                return mMetaDataManager.getSparkline(runId, sensorId);
+            }
+        });
+    }
+
+    @Override
+    public void updateSparkline(String runId, String sensorId,
+            GoosciSparkline.Sparkline sparkline, MaybeConsumer<Success> onSuccess) {
+        setSparkline(runId, sensorId, sparkline, onSuccess);
+    }
+
+    @Override
+    public void setSparkline(final String runId, final String sensorId,
+            final GoosciSparkline.Sparkline sparkline, MaybeConsumer<Success> onSuccess) {
+        background(mMetaDataThread, onSuccess, new Callable<Success>() {
+            @Override
+            public Success call() throws Exception {
+                mMetaDataManager.setSparkline(runId, sensorId, sparkline);
+                return Success.SUCCESS;
+            }
+        });
+    }
+
     @Override
     public void setDataErrorListenerForSensor(String sensorId, FailureListener listener) {
         mSensorFailureListeners.put(sensorId, listener);
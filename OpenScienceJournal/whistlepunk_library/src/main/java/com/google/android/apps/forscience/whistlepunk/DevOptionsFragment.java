@@ -26,6 +26,8 @@ import android.preference.PreferenceFragment;
 import android.preference.PreferenceManager;
 import android.support.annotation.VisibleForTesting;
 
+import com.google.android.apps.forscience.whistlepunk.sensorapi.FrameDispatcher;
+
 /**
  * Holder for Developer Testing Options
  */
@@ -37,6 +39,10 @@ public class DevOptionsFragment extends PreferenceFragment {
 
     private static final String KEY_MAGNETOMETER = "enable_magnetometer_sensor";
     private static final String KEY_VIDEO_SENSOR = "enable_video_sensor";
+    private static final String KEY_SPECTRAL_AUDIO_SENSORS = "enable_spectral_audio_sensors";
+    private static final String KEY_WEIGHTED_SOUND_SENSORS = "enable_weighted_sound_sensors";
+    private static final String KEY_SENSOR_BATCHING = "enable_sensor_batching";
+    private static final String KEY_FRAME_STATS = "live_frame_stats";
     private static final String KEY_DEV_TOOLS = "dev_tools";
     private static final String KEY_LEAK_CANARY = "leak_canary";
     public static final String KEY_DEV_SONIFICATION_TYPES = "enable_dev_sonification_types";
@@ -86,6 +92,23 @@ public class DevOptionsFragment extends PreferenceFragment {
         } else {
             getPreferenceScreen().removePreference(leakPref);
         }
+
+        findPreference(KEY_FRAME_STATS).setOnPreferenceClickListener(
+                new Preference.OnPreferenceClickListener() {
+                    @Override
+                    public boolean onPreferenceClick(Preference preference) {
+                        AppSingleton.getFrameDispatcher().resetCounters();
+                        updateFrameStats();
+                        return true;
+                    }
+                });
+    }
+
+    private void updateFrameStats() {
+        FrameDispatcher dispatcher = AppSingleton.getFrameDispatcher();
+        findPreference(KEY_FRAME_STATS).setSummary(getString(R.string.live_frame_stats_summary,
+                dispatcher.getFrameCount(), dispatcher.getDroppedFrameCount(),
+                dispatcher.getLastQueueDepth(), dispatcher.getMaxQueueDepth()));
     }
 
     @Override
@@ -93,6 +116,7 @@ public class DevOptionsFragment extends PreferenceFragment {
         super.onResume();
         getPreferenceManager().getSharedPreferences().registerOnSharedPreferenceChangeListener(
                 mSensorsChangedListener);
+        updateFrameStats();
     }
 
     @Override
@@ -119,6 +143,18 @@ public class DevOptionsFragment extends PreferenceFragment {
         return getBoolean(KEY_VIDEO_SENSOR, false, context);
     }
 
+    public static boolean isWeightedSoundSensorsEnabled(Context context) {
+        return getBoolean(KEY_WEIGHTED_SOUND_SENSORS, false, context);
+    }
+
+    public static boolean isSpectralAudioSensorsEnabled(Context context) {
+        return getBoolean(KEY_SPECTRAL_AUDIO_SENSORS, false, context);
+    }
+
+    public static boolean isSensorBatchingEnabled(Context context) {
+        return getBoolean(KEY_SENSOR_BATCHING, false, context);
+    }
+
     public static boolean isDevToolsEnabled(Context context) {
         return getBoolean(KEY_DEV_TOOLS, false, context);
     }
@@ -17,35 +17,94 @@
 package com.google.android.apps.forscience.whistlepunk;
 
 import android.support.annotation.NonNull;
-import android.support.v4.util.Pair;
+import android.support.annotation.VisibleForTesting;
 
 import com.google.android.apps.forscience.javalib.FailureListener;
 import com.google.android.apps.forscience.javalib.FallibleConsumer;
 import com.google.android.apps.forscience.javalib.MaybeConsumers;
-import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarReading;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamConsumer;
 import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarReadingList;
 import com.google.android.apps.forscience.whistlepunk.sensordb.TimeRange;
 import com.google.common.collect.DiscreteDomain;
 import com.google.common.collect.Range;
 
+import java.util.ArrayList;
 import java.util.List;
 
 // TODO(saff): port tests from Weather
 public class GraphPopulator {
-    // How many datapoints do we grab from the database at one time?
-    private static final int MAX_DATAPOINTS_PER_SENSOR_LOAD = 100;
+    // How many datapoints do we grab from the database at one time, at least and at most?
+    private static final int MIN_DATAPOINTS_PER_SENSOR_LOAD = 100;
+    private static final int MAX_DATAPOINTS_PER_SENSOR_LOAD = 4000;
+
+    // The first page fills the screen: roughly a low and a high point per pixel column.
+    private static final int DATAPOINTS_PER_PIXEL = 2;
+
+    // If the chart hasn't been laid out yet, assume a phone-sized screen.
+    private static final int DEFAULT_PIXEL_WIDTH = 1080;
 
     private Range<Long> mRequestedTimes = null;
     private ObservationDisplay mObservationDisplay;
     private boolean mRequestInFlight = false;
     private final long mRequestId;
+    private final Clock mClock;
+    private int mPixelWidth = DEFAULT_PIXEL_WIDTH;
+    private int mPageSize = 0;
+
+    // Pages that arrived while an earlier page was still being displayed, which can happen when
+    // the data controller answers on the calling thread.
+    private final List<Runnable> mQueuedPages = new ArrayList<>();
+    private boolean mDisplayingPage = false;
+
+    private long mFirstPageMillis = -1;
+    private long mFullLoadMillis = -1;
+    private LoadTimingListener mLoadTimingListener = null;
 
     // TODO: can we pass in the request id, rather than generating it here?
     public GraphPopulator(ObservationDisplay observationDisplay, Clock clock) {
         mObservationDisplay = observationDisplay;
+        mClock = clock;
         mRequestId = clock.getNow();
     }
 
+    /**
+     * @param pixelWidth the width of the chart being filled, used to size the first page of
+     *                   readings.  Ignored if not positive.
+     */
+    public void setPixelWidth(int pixelWidth) {
+        if (pixelWidth > 0) {
+            mPixelWidth = pixelWidth;
+        }
+    }
+
+    /**
+     * @param listener told how long loading took, once it finishes; may be null
+     */
+    public void setLoadTimingListener(LoadTimingListener listener) {
+        mLoadTimingListener = listener;
+    }
+
+    /**
+     * @return how many readings to ask for in the first page: about a screenful.
+     */
+    @VisibleForTesting
+    public static int getFirstPageSize(int pixelWidth) {
+        return Math.min(MAX_DATAPOINTS_PER_SENSOR_LOAD,
+                Math.max(MIN_DATAPOINTS_PER_SENSOR_LOAD, pixelWidth * DATAPOINTS_PER_PIXEL));
+    }
+
+    /**
+     * @return how many readings to ask for after a full page of {@code previousPageSize}.  Pages
+     * grow, since once the screen has something on it, fewer round trips matter more than a
+     * quick answer.  Tier 0 readings are the densest, and for runs recorded before there were
+     * higher tiers, may be all there is, so those pages grow faster.
+     */
+    @VisibleForTesting
+    public static int getNextPageSize(int previousPageSize, int resolutionTier) {
+        int growth = resolutionTier == 0 ? 4 : 2;
+        return Math.min(MAX_DATAPOINTS_PER_SENSOR_LOAD, previousPageSize * growth);
+    }
+
     /**
      * GraphStatus for a graph that is not changing its x axis.
      */
@@ -75,6 +134,8 @@ public class GraphPopulator {
      * If the graphStatus shows that there are still values that need to be fetched to fill the
      * currently-displayed graph, this method will begin fetching them.
      * <p/>
+     * While each page is being displayed, the request for the next page is already in flight.
+     * <p/>
      * Call only on the UI thread.
      */
     public void requestObservations(final GraphStatus graphStatus,
@@ -85,68 +146,109 @@ public class GraphPopulator {
         }
         final TimeRange r = getRequestRange(graphStatus);
         if (r == null) {
-            mObservationDisplay.onFinish(mRequestId);
+            finish();
         } else {
-            mRequestInFlight = true;
-            dataController.getScalarReadings(sensorId, resolutionTier, r,
-                    MAX_DATAPOINTS_PER_SENSOR_LOAD, MaybeConsumers.chainFailure(failureListener,
-                            new FallibleConsumer<ScalarReadingList>() {
-                                @Override
-                                public void take(ScalarReadingList observations) {
-                                    mRequestInFlight = false;
-                                    if (graphStatus.graphIsStillValid()) {
-                                        final Pair<Range<Long>, Range<Double>> received =
-                                                addObservationsToDisplay(observations);
-                                        if (received.first != null) {
-                                            mObservationDisplay.addRange(observations,
-                                                    received.second, mRequestId);
-                                        }
-                                        addToRequestedTimes(getEffectiveAddedRange(r,
-                                                received.first));
-                                        requestObservations(graphStatus, dataController,
-                                                failureListener, resolutionTier, sensorId);
-                                    }
-                                }
-
-                                public void addToRequestedTimes(Range<Long> effectiveAdded) {
-                                    mRequestedTimes = Ranges.span(mRequestedTimes, effectiveAdded);
-                                }
+            sendRequest(r, graphStatus, dataController, failureListener, resolutionTier,
+                    sensorId);
+        }
+    }
 
-                                public Pair<Range<Long>, Range<Double>> addObservationsToDisplay(
-                                        ScalarReadingList observations) {
-                                    List<ScalarReading> points = ScalarReading.slurp(observations);
-                                    long xMin = Long.MAX_VALUE;
-                                    long xMax = Long.MIN_VALUE;
-                                    double yMin = Double.MAX_VALUE;
-                                    double yMax = Double.MIN_VALUE;
-                                    Range<Long> timeRange = null;
-                                    Range<Double> valueRange = null;
-                                    for (ScalarReading point : points) {
-                                        if (point.getCollectedTimeMillis() < xMin) {
-                                            xMin = point.getCollectedTimeMillis();
-                                        }
-                                        if (point.getCollectedTimeMillis() > xMax) {
-                                            xMax = point.getCollectedTimeMillis();
-                                        }
-                                        if (point.getValue() < yMin) {
-                                            yMin = point.getValue();
-                                        }
-                                        if (point.getValue() > yMax) {
-                                            yMax = point.getValue();
-                                        }
-                                    }
-                                    if (xMin <= xMax) {
-                                        timeRange = Range.closed(xMin, xMax);
+    private void sendRequest(final TimeRange r, final GraphStatus graphStatus,
+            final DataController dataController, final FailureListener failureListener,
+            final int resolutionTier, final String sensorId) {
+        if (mPageSize == 0) {
+            mPageSize = getFirstPageSize(mPixelWidth);
+        }
+        final int pageSize = mPageSize;
+        mRequestInFlight = true;
+        dataController.getScalarReadings(sensorId, resolutionTier, r, pageSize,
+                MaybeConsumers.chainFailure(failureListener,
+                        new FallibleConsumer<ScalarReadingList>() {
+                            @Override
+                            public void take(final ScalarReadingList observations) {
+                                mQueuedPages.add(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        onPageLoaded(r, pageSize, observations, graphStatus,
+                                                dataController, failureListener, resolutionTier,
+                                                sensorId);
                                     }
-                                    if (yMin <= yMax) {
-                                        valueRange = Range.closed(yMin, yMax);
+                                });
+                                if (!mDisplayingPage) {
+                                    mDisplayingPage = true;
+                                    while (!mQueuedPages.isEmpty()) {
+                                        mQueuedPages.remove(0).run();
                                     }
-                                    return new Pair<>(timeRange, valueRange);
+                                    mDisplayingPage = false;
                                 }
-                            })
-            );
+                            }
+                        }));
+    }
+
+    private void onPageLoaded(TimeRange r, int pageSize, ScalarReadingList observations,
+            GraphStatus graphStatus, DataController dataController,
+            FailureListener failureListener, int resolutionTier, String sensorId) {
+        mRequestInFlight = false;
+        if (!graphStatus.graphIsStillValid()) {
+            return;
+        }
+        ReceivedRanges received = new ReceivedRanges();
+        observations.deliver(received);
+        Range<Long> receivedTimes = received.getTimeRange();
+        if (observations.size() < pageSize) {
+            // A short page means there is nothing more in the requested range.
+            receivedTimes = null;
+        } else {
+            mPageSize = getNextPageSize(pageSize, resolutionTier);
+        }
+        mRequestedTimes = Ranges.span(mRequestedTimes, getEffectiveAddedRange(r, receivedTimes));
+
+        // Get the next page on its way before displaying this one.
+        TimeRange next = getRequestRange(graphStatus);
+        if (next != null) {
+            sendRequest(next, graphStatus, dataController, failureListener, resolutionTier,
+                    sensorId);
+        }
+        if (received.getTimeRange() != null) {
+            mObservationDisplay.addRange(observations, received.getValueRange(), mRequestId);
+            if (mFirstPageMillis < 0) {
+                mFirstPageMillis = mClock.getNow() - mRequestId;
+            }
+        }
+        if (next == null) {
+            finish();
+        }
+    }
+
+    private void finish() {
+        mFullLoadMillis = mClock.getNow() - mRequestId;
+        mObservationDisplay.onFinish(mRequestId);
+        if (mLoadTimingListener != null) {
+            mLoadTimingListener.onLoadTimes(mFirstPageMillis, mFullLoadMillis);
+        }
+    }
+
+    private static class ReceivedRanges implements StreamConsumer {
+        private long mXMin = Long.MAX_VALUE;
+        private long mXMax = Long.MIN_VALUE;
+        private double mYMin = Double.MAX_VALUE;
+        private double mYMax = Double.MIN_VALUE;
+
+        @Override
+        public void addData(long timestampMillis, double value) {
+            mXMin = Math.min(mXMin, timestampMillis);
+            mXMax = Math.max(mXMax, timestampMillis);
+            mYMin = Math.min(mYMin, value);
+            mYMax = Math.max(mYMax, value);
+        }
+
+        Range<Long> getTimeRange() {
+            return mXMin <= mXMax ? Range.closed(mXMin, mXMax) : null;
+        }
+
+        Range<Double> getValueRange() {
+            return mYMin <= mYMax ? Range.closed(mYMin, mYMax) : null;
         }
-        return;
     }
 
     private TimeRange getRequestRange(GraphStatus graphStatus) {
@@ -200,6 +302,15 @@ public class GraphPopulator {
         boolean graphIsStillValid();
     }
 
+    public interface LoadTimingListener {
+        /**
+         * @param firstPageMillis milliseconds until the first readings were displayed, or -1 if
+         *                        there were none
+         * @param fullLoadMillis milliseconds until every reading was displayed
+         */
+        void onLoadTimes(long firstPageMillis, long fullLoadMillis);
+    }
+
     public interface ObservationDisplay {
         void addRange(ScalarReadingList observations, Range<Double> valueRange, long requestId);
 
@@ -141,6 +141,8 @@ public class MainActivity extends AppCompatActivity
         };
 
         setVolumeControlStream(AudioManager.STREAM_MUSIC);
+        WhistlePunkApplication.getColdStartMarkers(this).mark(
+                ColdStartMarkers.MAIN_ACTIVITY_CREATED);
     }
 
     private void exitMetadataIfNeeded() {
@@ -302,6 +304,10 @@ public class MainActivity extends AppCompatActivity
             FragmentTransaction transaction = fragmentManager.beginTransaction();
             Fragment fragment;
             int itemId = menuItem.getItemId();
+            if (itemId != R.id.navigation_item_observe) {
+                // The experiment it prefetched may be changed before the observe screen shows.
+                AppSingleton.getInstance(this).getMetadataController().discardPrefetch();
+            }
 
             final String tag = String.valueOf(itemId);
             fragment = getFragmentManager().findFragmentByTag(tag);
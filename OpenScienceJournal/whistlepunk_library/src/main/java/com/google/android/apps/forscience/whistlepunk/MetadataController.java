@@ -42,6 +42,9 @@ public class MetadataController {
     private Experiment mSelectedExperiment = null;
     private Project mSelectedProject = null;
     private MetadataChangeListener mExperimentChangeListener;
+    private Prefetch mPrefetch = null;
+    // A prefetch that a listener has asked for, but that hasn't finished loading yet.
+    private Prefetch mPrefetchInUse = null;
 
     public MetadataController(DataController dataController,
             FailureListenerFactory listenerFactory) {
@@ -85,6 +88,81 @@ public class MetadataController {
     public void setExperimentChangeListener(MetadataChangeListener listener) {
         mExperimentChangeListener = listener;
         mSelectedExperiment = null;
+        // Whoever was waiting for the prefetch has been replaced, and is loading for itself below;
+        // if both went ahead, an empty database would get two default projects.
+        cancelPrefetchInUse();
+        if (mPrefetch != null) {
+            // Only the first listener can use the prefetch; after that it may be out of date.
+            Prefetch prefetch = mPrefetch;
+            mPrefetch = null;
+            mPrefetchInUse = prefetch;
+            prefetch.use();
+            return;
+        }
+        loadLastUsedProject();
+    }
+
+    /**
+     * Starts loading the last used project and its experiments, so that the first call to
+     * {@link #setExperimentChangeListener} can find them already loaded.  Loading them is also
+     * the first use of the metadata database, so any upgrade it needs happens now.
+     *
+     * @param onLoaded run on the main thread once loading is done, whether or not it worked
+     */
+    public void prefetch(final Runnable onLoaded) {
+        if (mPrefetch != null) {
+            return;
+        }
+        final Prefetch prefetch = new Prefetch(onLoaded);
+        mPrefetch = prefetch;
+        getDataController().getLastUsedProject(new LoggingConsumer<Project>(TAG,
+                "Prefetching last used project") {
+            @Override
+            public void success(final Project project) {
+                if (project == null) {
+                    prefetch.succeed(null, null);
+                    return;
+                }
+                getDataController().getExperimentsForProject(project, false /* no archived */,
+                        new LoggingConsumer<List<Experiment>>(TAG, "Prefetching experiments") {
+                            @Override
+                            public void success(List<Experiment> experiments) {
+                                prefetch.succeed(project, experiments);
+                            }
+
+                            @Override
+                            public void fail(Exception e) {
+                                super.fail(e);
+                                prefetch.fail();
+                            }
+                        });
+            }
+
+            @Override
+            public void fail(Exception e) {
+                super.fail(e);
+                prefetch.fail();
+            }
+        });
+    }
+
+    /**
+     * Forgets a prefetch that hasn't been used yet, because whatever it loaded may be changed
+     * before anyone asks for it.
+     */
+    public void discardPrefetch() {
+        mPrefetch = null;
+        cancelPrefetchInUse();
+    }
+
+    private void cancelPrefetchInUse() {
+        if (mPrefetchInUse != null) {
+            mPrefetchInUse.cancel();
+            mPrefetchInUse = null;
+        }
+    }
+
+    private void loadLastUsedProject() {
         getDataController().getLastUsedProject(
                 doOrReportFailure("Loading last used project", new Consumer<Project>() {
                     @Override
@@ -99,6 +177,78 @@ public class MetadataController {
                 }));
     }
 
+    /**
+     * Results of {@link #prefetch}, which can be asked for before they arrive.
+     */
+    private class Prefetch {
+        private final Runnable mOnLoaded;
+        private boolean mLoaded = false;
+        private boolean mFailed = false;
+        private boolean mWanted = false;
+        private boolean mCancelled = false;
+        private Project mProject;
+        private List<Experiment> mExperiments;
+
+        Prefetch(Runnable onLoaded) {
+            mOnLoaded = onLoaded;
+        }
+
+        void succeed(Project project, List<Experiment> experiments) {
+            mProject = project;
+            mExperiments = experiments;
+            onLoaded();
+        }
+
+        void fail() {
+            mFailed = true;
+            onLoaded();
+        }
+
+        private void onLoaded() {
+            mLoaded = true;
+            if (mOnLoaded != null) {
+                mOnLoaded.run();
+            }
+            if (mWanted) {
+                deliver();
+            }
+        }
+
+        void use() {
+            mWanted = true;
+            if (mLoaded) {
+                deliver();
+            }
+        }
+
+        /**
+         * Makes sure that the results are never delivered, because something else has loaded or is
+         * loading them since.
+         */
+        void cancel() {
+            mCancelled = true;
+        }
+
+        // Makes the same choices as loading without a prefetch.
+        private void deliver() {
+            if (mPrefetchInUse == this) {
+                mPrefetchInUse = null;
+            }
+            if (mCancelled) {
+                return;
+            }
+            if (mFailed) {
+                loadLastUsedProject();
+            } else if (mProject == null) {
+                createDefaultProjectAndExperiment();
+            } else if (mExperiments.isEmpty()) {
+                createExperimentInProject(mProject);
+            } else {
+                setMetadata(mExperiments, mProject);
+            }
+        }
+    }
+
     void loadExperiments(final Project project) {
         Preconditions.checkNotNull(project);
         getDataController().getExperimentsForProject(project,
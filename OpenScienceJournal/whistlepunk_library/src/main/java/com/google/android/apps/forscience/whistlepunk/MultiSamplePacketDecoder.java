@@ -0,0 +1,180 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk;
+
+import android.util.Log;
+
+import com.google.android.apps.forscience.whistlepunk.data.GoosciSensor;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.ClockOffsetEstimator;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorStatusListener;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamConsumer;
+import com.google.android.apps.forscience.whistlepunk.sensors.BluetoothSensor;
+
+/**
+ * Decodes value notifications from devices that were asked for
+ * {@link GoosciSensor#PACKED_SAMPLES}.  Each notification stands on its own and carries one or
+ * more readings:
+ *
+ * <pre>
+ *   byte 0    number of readings, at least 1
+ *   byte 1    value encoding: VALUES_INT, VALUES_DIGITAL or VALUES_FLOAT
+ *   varint    device timestamp of the first reading, in the same base as
+ *             SensorData.timestamp_key
+ *   value     the first reading
+ *   and then, for each further reading:
+ *   varint    milliseconds since the previous reading
+ *   value     the reading
+ * </pre>
+ *
+ * Varints are unsigned base-128, as in protocol buffers.  Integer and digital values are the
+ * zigzag-encoded varint difference from the previous reading in the packet (for the first
+ * reading, from zero); float values are 4-byte little-endian IEEE 754.
+ *
+ * <p>Readings are handed to the consumer straight out of the notification, without allocating
+ * anything per packet or per reading.</p>
+ */
+public class MultiSamplePacketDecoder implements BlePacketDecoder {
+    private static final String TAG = "MultiSamplePacket";
+    private static final boolean DEBUG = false;
+
+    public static final int VALUES_INT = 0;
+    public static final int VALUES_DIGITAL = 1;
+    public static final int VALUES_FLOAT = 2;
+
+    static final int HEADER_SIZE = 2;
+
+    // Timestamps are uint32, and zigzagged differences between int32 values need 33 bits, so
+    // five varint bytes are always enough.
+    private static final int MAX_VARINT_SHIFT = 35;
+    private static final long MALFORMED = -1;
+
+    private final StreamConsumer mC;
+    private final Clock mDefaultClock;
+    private final BluetoothSensor mBluetoothSensor;
+    private final SensorStatusListener mListener;
+
+    // Read position in the packet being decoded.
+    private int mPosition;
+
+    public MultiSamplePacketDecoder(StreamConsumer c, Clock defaultClock, BluetoothSensor bs,
+            SensorStatusListener listener) {
+        mC = c;
+        mDefaultClock = defaultClock;
+        mBluetoothSensor = bs;
+        mListener = listener;
+    }
+
+    @Override
+    public void append(byte[] value) {
+        int count = value.length < HEADER_SIZE ? 0 : value[0] & 0xFF;
+        int encoding = value.length < HEADER_SIZE ? -1 : value[1];
+        if (count == 0 || encoding < VALUES_INT || encoding > VALUES_FLOAT) {
+            emitMalformed();
+            return;
+        }
+
+        // Check that the whole packet is there before handing on any of it, and find the newest
+        // reading, which is the one taken closest to when the packet was sent.
+        long newestTimestamp = decode(value, count, encoding, null);
+        if (newestTimestamp == MALFORMED) {
+            emitMalformed();
+            return;
+        }
+
+        ClockOffsetEstimator clockOffsets = mBluetoothSensor.getClockOffsets();
+        clockOffsets.addObservation(newestTimestamp, mDefaultClock.getNow());
+        decode(value, count, encoding, clockOffsets);
+    }
+
+    /**
+     * @return the device timestamp of the last reading, or {@link #MALFORMED} if the packet is
+     * shorter than its header says.  Readings are only emitted if {@code clockOffsets} is given.
+     */
+    private long decode(byte[] packet, int count, int encoding,
+            ClockOffsetEstimator clockOffsets) {
+        mPosition = HEADER_SIZE;
+        long timestamp = 0;
+        long intValue = 0;
+        for (int i = 0; i < count; i++) {
+            long delta = readVarint(packet);
+            if (delta == MALFORMED) {
+                return MALFORMED;
+            }
+            timestamp += delta;
+
+            double reading;
+            if (encoding == VALUES_FLOAT) {
+                if (mPosition + 4 > packet.length) {
+                    return MALFORMED;
+                }
+                reading = readFloat(packet);
+            } else {
+                long zigzag = readVarint(packet);
+                if (zigzag == MALFORMED) {
+                    return MALFORMED;
+                }
+                intValue += (zigzag >>> 1) ^ -(zigzag & 1);
+                if (encoding == VALUES_DIGITAL) {
+                    reading = intValue != 0 ? PacketAssembler.DIGITAL_HIGH
+                            : PacketAssembler.DIGITAL_LOW;
+                } else {
+                    reading = intValue;
+                }
+            }
+            if (clockOffsets != null) {
+                long appTime = clockOffsets.toAppTime(timestamp);
+                if (appTime != ClockOffsetEstimator.DROP) {
+                    mC.addData(appTime, reading);
+                }
+            }
+        }
+        return timestamp;
+    }
+
+    private long readVarint(byte[] packet) {
+        long result = 0;
+        for (int shift = 0; shift < MAX_VARINT_SHIFT; shift += 7) {
+            if (mPosition >= packet.length) {
+                return MALFORMED;
+            }
+            byte b = packet[mPosition++];
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        return MALFORMED;
+    }
+
+    private float readFloat(byte[] packet) {
+        int bits = (packet[mPosition] & 0xFF)
+                | (packet[mPosition + 1] & 0xFF) << 8
+                | (packet[mPosition + 2] & 0xFF) << 16
+                | (packet[mPosition + 3] & 0xFF) << 24;
+        mPosition += 4;
+        return Float.intBitsToFloat(bits);
+    }
+
+    private void emitMalformed() {
+        mListener.onSourceError(mBluetoothSensor.getId(), SensorStatusListener.ERROR_INVALID_PROTO,
+                "Unable to read data from external sensor");
+        if (DEBUG) {
+            Log.d(TAG, "Malformed packed sample packet");
+        }
+    }
+}
@@ -19,6 +19,7 @@ package com.google.android.apps.forscience.whistlepunk;
 import android.util.Log;
 
 import com.google.android.apps.forscience.whistlepunk.data.GoosciSensor;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.ClockOffsetEstimator;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorStatusListener;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamConsumer;
 import com.google.android.apps.forscience.whistlepunk.sensors.BluetoothSensor;
@@ -27,7 +28,7 @@ import com.google.protobuf.nano.InvalidProtocolBufferNanoException;
 
 import java.io.ByteArrayOutputStream;
 
-public class PacketAssembler {
+public class PacketAssembler implements BlePacketDecoder {
     private static final String TAG = "PacketAssembler";
 
     private final StreamConsumer mC;
@@ -38,8 +39,8 @@ public class PacketAssembler {
     private static final boolean DEBUG = false;
     private final ByteArrayOutputStream mOutputStream = new ByteArrayOutputStream();
 
-    private static float DIGITAL_HIGH = 1023f;
-    private static float DIGITAL_LOW = 0f;
+    static final float DIGITAL_HIGH = 1023f;
+    static final float DIGITAL_LOW = 0f;
 
     public PacketAssembler(final StreamConsumer c, final Clock defaultClock,
                            final BluetoothSensor bs, final SensorStatusListener listener) {
@@ -102,28 +103,24 @@ public class PacketAssembler {
             }
 
             relativeTime = sensorData.timestampKey;
-            long timeSkew = mBluetoothSensor.getTimeSkew();
-            if (timeSkew == -1) {
-                if (DEBUG) Log.d(TAG, "Reset timeskew");
-                // Haven't seen a value yet. Let's calculate the time skew assuming no
-                // delay.
-                timeSkew = mDefaultClock.getNow() - relativeTime;
-                mBluetoothSensor.setTimeSkew(timeSkew);
-            }
+            long appTime = mBluetoothSensor.getClockOffsets().map(relativeTime,
+                    mDefaultClock.getNow());
 
             if (DEBUG) {
                 Log.d(TAG, "timestampKey: " + sensorData.timestampKey);
                 Log.d(TAG, "relative time: " + relativeTime);
-                Log.d(TAG, "timeSkew: " + timeSkew);
-                Log.d(TAG, "add data time: " + (relativeTime + timeSkew));
+                Log.d(TAG, "add data time: " + appTime);
+            }
+            if (appTime != ClockOffsetEstimator.DROP) {
+                mC.addData(appTime, data);
             }
-            mC.addData(relativeTime + timeSkew, data);
         } else {
             emitProtoError("Unable to read data from external sensor");
             Log.d(TAG, "Sensor data missing data");
         }
     }
 
+    @Override
     public void append(byte[] value) {
         int len = (int) value[0];
 
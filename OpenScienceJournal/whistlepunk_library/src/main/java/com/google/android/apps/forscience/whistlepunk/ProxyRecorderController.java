@@ -17,11 +17,11 @@
 package com.google.android.apps.forscience.whistlepunk;
 
 import android.content.Intent;
-import android.os.Bundle;
 import android.os.RemoteException;
 import android.util.ArrayMap;
 
 import com.google.android.apps.forscience.javalib.FailureListener;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.ObservedValue;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorObserver;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorStatusListener;
 import com.google.android.apps.forscience.whistlepunk.wireapi.IRecorderController;
@@ -84,12 +84,12 @@ public class ProxyRecorderController extends IRecorderController.Stub {
             boolean mValid = true;
 
             @Override
-            public void onNewData(long timestamp, Bundle data) {
+            public void onNewData(long timestamp, ObservedValue data) {
                 if (!mValid) {
                     return;
                 }
                 try {
-                    observer.onNewData(timestamp, data);
+                    observer.onNewData(timestamp, data.toBundle());
                 } catch (RemoteException e) {
                     mFailureListener.fail(e);
                     mValid = false;
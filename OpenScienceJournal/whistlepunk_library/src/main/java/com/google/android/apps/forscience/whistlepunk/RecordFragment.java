@@ -426,6 +426,8 @@ public class RecordFragment extends Fragment implements AddNoteDialog.AddNoteDia
                                 // The recording UI shows the current experiment in the toolbar,
                                 // so it cannot be set up until experiments are loaded.
                                 onRecordingMetadataUpdated();
+                                WhistlePunkApplication.getColdStartMarkers(getActivity()).mark(
+                                        ColdStartMarkers.FIRST_EXPERIMENT_SHOWN);
                             }
                         });
             }
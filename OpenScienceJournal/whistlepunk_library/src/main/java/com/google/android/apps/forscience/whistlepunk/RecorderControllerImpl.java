@@ -18,7 +18,6 @@ package com.google.android.apps.forscience.whistlepunk;
 
 import android.content.Context;
 import android.content.Intent;
-import android.os.Bundle;
 import android.os.RemoteException;
 import android.support.annotation.NonNull;
 import android.support.annotation.VisibleForTesting;
@@ -44,7 +43,7 @@ import com.google.android.apps.forscience.whistlepunk.metadata.Project;
 import com.google.android.apps.forscience.whistlepunk.metadata.SensorTrigger;
 import com.google.android.apps.forscience.whistlepunk.metadata.SensorTriggerLabel;
 import com.google.android.apps.forscience.whistlepunk.metadata.TriggerHelper;
-import com.google.android.apps.forscience.whistlepunk.sensorapi.ScalarSensor;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.ObservedValue;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorChoice;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorEnvironment;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorObserver;
@@ -211,14 +210,20 @@ public class RecorderControllerImpl implements RecorderController {
     private void addServiceObserverIfNeeded(String sensorId,
             final List<SensorTrigger> activeTriggers) {
         if (!mServiceObservers.containsKey(sensorId)) {
+            if (activeTriggers == null || activeTriggers.isEmpty()) {
+                // Nothing to watch for, so don't ask for data: with no cards showing either, the
+                // sensor can then record without passing each sample to the main thread.
+                mServiceObservers.put(sensorId, mRegistry.putListeners(sensorId, null, null));
+                return;
+            }
             String serviceObserverId = mRegistry.putListeners(sensorId,
                     new SensorObserver() {
                         @Override
-                        public void onNewData(long timestamp, Bundle data) {
-                            if (!ScalarSensor.hasValue(data)) {
+                        public void onNewData(long timestamp, ObservedValue data) {
+                            if (!data.hasValue()) {
                                 return;
                             }
-                            double value = ScalarSensor.getValue(data);
+                            double value = data.getValue();
                             // Fire triggers.
                             for (SensorTrigger trigger : activeTriggers) {
                                 if (!isRecording() && trigger.shouldTriggerOnlyWhenRecording()) {
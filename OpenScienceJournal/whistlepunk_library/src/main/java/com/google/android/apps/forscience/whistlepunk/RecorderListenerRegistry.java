@@ -16,18 +16,13 @@
 
 package com.google.android.apps.forscience.whistlepunk;
 
-import android.os.Bundle;
-
+import com.google.android.apps.forscience.whistlepunk.sensorapi.DetachableSensorObserver;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.ObservedValue;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorObserver;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorStatusListener;
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimap;
 
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -37,10 +32,36 @@ import java.util.Map;
  * Is itself a SensorStatusListener, and makes routing SensorObservers that can be handed to
  * recorders so that recorders don't have to care about UI elements coming and going.
  *
- * These methods should all only be called on the service's main thread.
+ * These methods should all only be called on the service's main thread, except that the
+ * recorders' observers can be asked from any thread whether anyone is listening.
  */
 public class RecorderListenerRegistry implements SensorStatusListener {
-    private Multimap<String, ListenerSet> mListeners = HashMultimap.create();
+    private static final ListenerSet[] NO_LISTENERS = new ListenerSet[0];
+
+    /**
+     * Listeners for one sensor.  The array is replaced, never changed, so that delivering a
+     * sample is a plain loop, and listeners may remove themselves while being called.
+     */
+    private static class SensorListeners {
+        public ListenerSet[] sets = NO_LISTENERS;
+
+        // How many of the sets have an observer; read by recorders on their own threads.
+        public volatile int observerCount = 0;
+
+        public void setSets(ListenerSet[] newSets) {
+            int count = 0;
+            for (ListenerSet set : newSets) {
+                if (set.observer != null) {
+                    count++;
+                }
+            }
+            sets = newSets;
+            observerCount = count;
+        }
+    }
+
+    // Entries are never removed, since recorders' observers hold on to them.
+    private Map<String, SensorListeners> mListeners = new HashMap<>();
 
     private static class ListenerSet {
         public final String observerId;
@@ -63,7 +84,7 @@ public class RecorderListenerRegistry implements SensorStatusListener {
     public void onSourceStatus(String id, @Status int status) {
         mCurrentStatus.put(id, status);
         mCurrentErrors.put(id, false);
-        for (ListenerSet set : mListeners.get(id)) {
+        for (ListenerSet set : getListeners(id).sets) {
             if (set.statusListener != null) {
                 set.statusListener.onSourceStatus(id, status);
             }
@@ -73,11 +94,9 @@ public class RecorderListenerRegistry implements SensorStatusListener {
     @Override
     public void onSourceError(String id, @Error int error, String errorMessage) {
         mCurrentErrors.put(id, true);
-        // Since onSourceError can call a disconnect and remove a listener, need to keep this safe
-        // for concurrent modification by copying it elsewhere.
-        List<ListenerSet> listenerList = new ArrayList<>();
-        listenerList.addAll(mListeners.get(id));
-        for (ListenerSet set : listenerList) {
+        // onSourceError can call a disconnect and remove a listener, which replaces the array
+        // rather than changing the one we're iterating.
+        for (ListenerSet set : getListeners(id).sets) {
             if (set.statusListener != null) {
                 set.statusListener.onSourceError(id, error, errorMessage);
             }
@@ -103,11 +122,19 @@ public class RecorderListenerRegistry implements SensorStatusListener {
                 getSourceStatus(id) == SensorStatusListener.STATUS_CONNECTED;
     }
 
+    /**
+     * @param observer receives new data, or null if this is only here to keep the sensor's
+     *                 recorder in use
+     * @param listener receives status changes, or null
+     */
     public String putListeners(String sensorId, SensorObserver observer,
             SensorStatusListener listener) {
         String observerId = sensorId + (++mObserverCount);
 
-        mListeners.put(sensorId, new ListenerSet(observerId, listener, observer));
+        SensorListeners listeners = getListeners(sensorId);
+        ListenerSet[] sets = Arrays.copyOf(listeners.sets, listeners.sets.length + 1);
+        sets[sets.length - 1] = new ListenerSet(observerId, listener, observer);
+        listeners.setSets(sets);
 
         Integer status = mCurrentStatus.get(sensorId);
         if (status != null && listener != null) {
@@ -117,14 +144,16 @@ public class RecorderListenerRegistry implements SensorStatusListener {
     }
 
     public void remove(String sensorId, String observerId) {
-        Collection<ListenerSet> sensorListeners = mListeners.get(sensorId);
-        Iterator<ListenerSet> iterator = sensorListeners.iterator();
-        while (iterator.hasNext()) {
-            if (iterator.next().observerId.equals(observerId)) {
-                iterator.remove();
+        SensorListeners listeners = getListeners(sensorId);
+        ListenerSet[] kept = new ListenerSet[listeners.sets.length];
+        int keptCount = 0;
+        for (ListenerSet set : listeners.sets) {
+            if (!set.observerId.equals(observerId)) {
+                kept[keptCount++] = set;
             }
         }
-        if (sensorListeners.isEmpty()) {
+        listeners.setSets(keptCount == 0 ? NO_LISTENERS : Arrays.copyOf(kept, keptCount));
+        if (keptCount == 0) {
             // Then we've just removed the last listener for this sensorID.
             // Remove the status and errors state too.
             if (mCurrentErrors.containsKey(sensorId)) {
@@ -134,25 +163,44 @@ public class RecorderListenerRegistry implements SensorStatusListener {
     }
 
     public int countListeners(String sensorId) {
-        Collection<ListenerSet> sensorListeners = mListeners.get(sensorId);
-        if (sensorListeners == null) {
+        SensorListeners listeners = mListeners.get(sensorId);
+        if (listeners == null) {
             return 0;
         }
-        return sensorListeners.size();
+        return listeners.sets.length;
+    }
+
+    private SensorListeners getListeners(String sensorId) {
+        SensorListeners listeners = mListeners.get(sensorId);
+        if (listeners == null) {
+            listeners = new SensorListeners();
+            mListeners.put(sensorId, listeners);
+        }
+        return listeners;
     }
 
     /**
      * Returns a new SensorObserver that routes new data to the currently-active UI listener, if
-     * any, for the given sensor.
+     * any, for the given sensor.  While there are none, it reports itself detached, so that a
+     * recorder in the background doesn't pass its data to the main thread only to drop it.
      */
-    public SensorObserver makeObserverForRecorder(final String sensorId) {
-        return new SensorObserver() {
+    public DetachableSensorObserver makeObserverForRecorder(final String sensorId) {
+        final SensorListeners listeners = getListeners(sensorId);
+        return new DetachableSensorObserver() {
             @Override
-            public void onNewData(long timestamp, Bundle bundle) {
-                for (ListenerSet set : mListeners.get(sensorId)) {
-                    set.observer.onNewData(timestamp, bundle);
+            public void onNewData(long timestamp, ObservedValue data) {
+                ListenerSet[] sets = listeners.sets;
+                for (int i = 0; i < sets.length; i++) {
+                    if (sets[i].observer != null) {
+                        sets[i].observer.onNewData(timestamp, data);
+                    }
                 }
             }
+
+            @Override
+            public boolean isAttached() {
+                return listeners.observerCount > 0;
+            }
         };
     }
 }
@@ -19,18 +19,32 @@ package com.google.android.apps.forscience.whistlepunk;
 import com.google.android.apps.forscience.javalib.FailureListener;
 import com.google.android.apps.forscience.javalib.MaybeConsumer;
 import com.google.android.apps.forscience.javalib.Success;
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciSparkline;
 import com.google.android.apps.forscience.whistlepunk.metadata.RunStats;
+import com.google.android.apps.forscience.whistlepunk.sensordb.SensorDatabase;
 
 /**
  * Data interface for sensor recorders
  */
 public interface RecordingDataController {
     /**
-     * @see com.google.android.apps.forscience.whistlepunk.sensordb.SensorDatabase#addScalarReading(String, int, long, double)
+     * Stores a single reading.  Readings that arrive while earlier ones are still waiting to be
+     * written are stored along with them, as a batch.
+     *
+     * @see SensorDatabase#addScalarReading
      */
     void addScalarReading(String sensorId, final int resolutionTier, long timestampMillis,
             double value);
 
+    /**
+     * Stores the first {@code count} readings from the given arrays, which may be reused by the
+     * caller once this returns.
+     *
+     * @see SensorDatabase#addScalarReadings
+     */
+    void addScalarReadings(String sensorId, int resolutionTier, long[] timestampsMillis,
+            double[] values, int count);
+
     /**
      * Set the statistics for the given run and sensor
      *
@@ -39,6 +53,14 @@ public interface RecordingDataController {
     void setStats(String runId, String sensorId, RunStats runStats,
             MaybeConsumer<Success> onSuccess);
 
+    /**
+     * Set the preview summary for the given run and sensor
+     *
+     * @param runId (previously startLabelId) identifies the run
+     */
+    void setSparkline(String runId, String sensorId, GoosciSparkline.Sparkline sparkline,
+            MaybeConsumer<Success> onSuccess);
+
     /**
      * If an error is encountered storing data or stats for {@code sensorId}, notify {@code
      * listener}
@@ -26,6 +26,7 @@ import com.google.android.apps.forscience.whistlepunk.sensors.BarometerSensor;
 import com.google.android.apps.forscience.whistlepunk.sensors.DecibelSensor;
 import com.google.android.apps.forscience.whistlepunk.sensors.MagneticRotationSensor;
 import com.google.android.apps.forscience.whistlepunk.sensors.SineWavePseudoSensor;
+import com.google.android.apps.forscience.whistlepunk.sensors.SpectralAudioSensor;
 import com.google.android.apps.forscience.whistlepunk.sensors.VideoSensor;
 import com.google.common.base.Preconditions;
 
@@ -111,6 +112,24 @@ public class SensorAppearanceProviderImpl implements SensorAppearanceProvider {
                     SensorAnimationBehavior.TYPE_RELATIVE_SCALE),
                 BuiltInSensorAppearance.DEFAULT_POINTS_AFTER_DECIMAL));
 
+        putSoundAppearance(DecibelSensor.Level.A_WEIGHTED.getSensorId(),
+                R.string.decibel_a_weighted, R.string.decibel_a_units);
+        putSoundAppearance(DecibelSensor.Level.C_WEIGHTED.getSensorId(),
+                R.string.decibel_c_weighted, R.string.decibel_c_units);
+        putSoundAppearance(DecibelSensor.Level.PEAK.getSensorId(), R.string.decibel_peak,
+                R.string.decibel_units);
+
+        putSoundAppearance(SpectralAudioSensor.Measure.DOMINANT_FREQUENCY.getSensorId(),
+                R.string.audio_dominant_frequency, R.string.hertz_units);
+        putSoundAppearance(SpectralAudioSensor.Measure.SPECTRAL_CENTROID.getSensorId(),
+                R.string.audio_spectral_centroid, R.string.hertz_units);
+        putSoundAppearance(SpectralAudioSensor.Measure.LOW_BAND_LEVEL.getSensorId(),
+                R.string.audio_low_band_level, R.string.decibel_units);
+        putSoundAppearance(SpectralAudioSensor.Measure.MID_BAND_LEVEL.getSensorId(),
+                R.string.audio_mid_band_level, R.string.decibel_units);
+        putSoundAppearance(SpectralAudioSensor.Measure.HIGH_BAND_LEVEL.getSensorId(),
+                R.string.audio_high_band_level, R.string.decibel_units);
+
         putAppearance(BarometerSensor.ID, new BuiltInSensorAppearance(R.string.barometer,
                 R.drawable.ic_sensor_barometer_white_24dp, R.string.barometer_units,
                 R.string.sensor_desc_short_barometer,
@@ -131,6 +150,14 @@ public class SensorAppearanceProviderImpl implements SensorAppearanceProvider {
                 R.drawable.ic_sensor_video_white_24dp));
     }
 
+    private void putSoundAppearance(String sensorId, int nameStringId, int unitsStringId) {
+        putAppearance(sensorId, new BuiltInSensorAppearance(nameStringId,
+                R.drawable.ic_sensor_decibels_white_24dp, unitsStringId, 0, 0, 0, 0,
+                new SensorAnimationBehavior(R.drawable.decibel_level_drawable,
+                        SensorAnimationBehavior.TYPE_RELATIVE_SCALE),
+                BuiltInSensorAppearance.DEFAULT_POINTS_AFTER_DECIMAL));
+    }
+
     private void putExternalSensorAppearance(String sensorId, ExternalSensorSpec sensor) {
         putAppearance(sensorId, sensor.getSensorAppearance());
     }
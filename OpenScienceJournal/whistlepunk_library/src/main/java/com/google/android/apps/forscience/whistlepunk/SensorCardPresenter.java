@@ -25,7 +25,6 @@ import android.content.res.ColorStateList;
 import android.content.res.Resources;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
-import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.annotation.VisibleForTesting;
 import android.support.design.widget.TabLayout;
@@ -51,10 +50,12 @@ import com.google.android.apps.forscience.whistlepunk.metadata.TriggerListActivi
 import com.google.android.apps.forscience.whistlepunk.scalarchart.ScalarDisplayOptions;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.BlankReadableSensorOptions;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.DataViewOptions;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.FrameCoalescingObserver;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.FrameDispatcher;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.NewOptionsStorage;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.ObservedValue;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.OptionsListener;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.ReadableSensorOptions;
-import com.google.android.apps.forscience.whistlepunk.sensorapi.ScalarSensor;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorChoice;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorObserver;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorPresenter;
@@ -199,6 +200,10 @@ public class SensorCardPresenter {
     private long mLastUpdatedIconTimestamp = -1;
     private long mLastUpdatedTextTimestamp = -1;
     private boolean mTextTimeHasElapsed = false;
+    private long mLatestTimestamp = -1;
+    private boolean mLatestHasValue = false;
+    private double mLatestValue;
+    private FrameDispatcher mFrameDispatcher = AppSingleton.getFrameDispatcher();
 
     private NumberFormat mNumberFormat;
     private LocalSensorOptionsStorage mCardOptions = new LocalSensorOptionsStorage();
@@ -245,11 +250,25 @@ public class SensorCardPresenter {
                 }, mParentFragment);
     }
 
-    public void onNewData(long timestamp, Bundle bundle) {
+    public void onNewData(long timestamp, ObservedValue data) {
         if (mSensorPresenter == null) {
             return;
         }
-        mSensorPresenter.onNewData(timestamp, bundle);
+        mSensorPresenter.onNewData(timestamp, data);
+        mLatestTimestamp = timestamp;
+        mLatestHasValue = data.hasValue();
+        mLatestValue = data.getValue();
+    }
+
+    /**
+     * Shows the newest value in the card's text and icon.  Runs at most once per frame, after
+     * that frame's data has gone to the graph.
+     */
+    private void updateLiveDisplay() {
+        if (mSensorPresenter == null) {
+            return;
+        }
+        long timestamp = mLatestTimestamp;
         boolean iconTimeHasElapsed =
                 timestamp > mLastUpdatedIconTimestamp + MAX_ICON_UPDATE_TIME_MS;
         mTextTimeHasElapsed = timestamp > mLastUpdatedTextTimestamp + MAX_TEXT_UPDATE_TIME_MS;
@@ -266,8 +285,8 @@ public class SensorCardPresenter {
         if (mCardViewHolder == null) {
             return;
         }
-        if (ScalarSensor.hasValue(bundle)) {
-            double value = ScalarSensor.getValue(bundle);
+        if (mLatestHasValue) {
+            double value = mLatestValue;
             if (mTextTimeHasElapsed) {
                 String valueString = mNumberFormat.format(value);
                 SpannableString spannable = new SpannableString(valueString);
@@ -398,12 +417,27 @@ public class SensorCardPresenter {
             List<SensorTrigger> triggers) {
         mCardTriggerPresenter.setSensorTriggers(triggers);
         mObserverId = mRecorderController.startObserving(mCurrentSource.getId(), triggers,
-                new SensorObserver() {
+                new FrameCoalescingObserver(mFrameDispatcher, new SensorObserver() {
                     @Override
-                    public void onNewData(long timestamp, Bundle value) {
+                    public void onNewData(long timestamp, ObservedValue value) {
                         SensorCardPresenter.this.onNewData(timestamp, value);
                     }
-                }, getSensorStatusListener(),
+                }, new FrameCoalescingObserver.FrameListener() {
+                    @Override
+                    public void onFrameStarting() {
+                        if (mSensorPresenter != null) {
+                            mSensorPresenter.beginDataBatch();
+                        }
+                    }
+
+                    @Override
+                    public void onFrameDelivered() {
+                        if (mSensorPresenter != null) {
+                            mSensorPresenter.endDataBatch();
+                        }
+                        updateLiveDisplay();
+                    }
+                }), getSensorStatusListener(),
                 AbstractReadableSensorOptions.makeTransportable(readOptions));
         if (mCardStatus.isConnected() && mParentFragment != null) {
             updateAudio(mLayout.audioEnabled, getSonificationType(mParentFragment.getActivity()));
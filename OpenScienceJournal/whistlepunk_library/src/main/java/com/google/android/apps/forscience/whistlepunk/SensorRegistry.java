@@ -27,15 +27,18 @@ import com.google.android.apps.forscience.javalib.Consumer;
 import com.google.android.apps.forscience.whistlepunk.devicemanager.ConnectableSensor;
 import com.google.android.apps.forscience.whistlepunk.metadata.ExternalSensorSpec;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.AvailableSensors;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.CachingAvailableSensors;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.ScalarSensor;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorChoice;
 import com.google.android.apps.forscience.whistlepunk.sensors.AccelerometerSensor;
 import com.google.android.apps.forscience.whistlepunk.sensors.AmbientLightSensor;
 import com.google.android.apps.forscience.whistlepunk.sensors.AmbientTemperatureSensor;
+import com.google.android.apps.forscience.whistlepunk.sensors.AudioSource;
 import com.google.android.apps.forscience.whistlepunk.sensors.BarometerSensor;
 import com.google.android.apps.forscience.whistlepunk.sensors.DecibelSensor;
 import com.google.android.apps.forscience.whistlepunk.sensors.MagneticRotationSensor;
 import com.google.android.apps.forscience.whistlepunk.sensors.SineWavePseudoSensor;
+import com.google.android.apps.forscience.whistlepunk.sensors.SpectralAudioSensor;
 import com.google.android.apps.forscience.whistlepunk.sensors.VideoSensor;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.HashMultimap;
@@ -90,12 +93,56 @@ public class SensorRegistry {
     private SensorRegistryListener mSensorRegistryListener;
     private List<ConnectableSensor> mMostRecentExternalSensors;
 
+    // Shared by every built-in sensor that listens to the microphone.
+    private AudioSource mAudioSource;
+
+    // Null to ask the system directly.
+    private AvailableSensors mAvailableSensors;
+
     public static SensorRegistry createWithBuiltinSensors(final Context context) {
+        return createWithBuiltinSensors(context, systemAvailableSensors(context));
+    }
+
+    /**
+     * @param available which hardware sensors the device has, perhaps already looked up by
+     *                  {@link #prefetchBuiltinAvailability}
+     */
+    public static SensorRegistry createWithBuiltinSensors(Context context,
+            AvailableSensors available) {
         final SensorRegistry sc = new SensorRegistry();
+        sc.mAvailableSensors = available;
         sc.addAvailableBuiltinSensors(context);
         return sc;
     }
 
+    /**
+     * @return the hardware sensors reported by the system SensorManager.  Each answer is a call
+     * to the system, so use a {@link CachingAvailableSensors} to ask more than once.
+     */
+    public static AvailableSensors systemAvailableSensors(Context context) {
+        final Context appContext = context.getApplicationContext();
+        return new AvailableSensors() {
+            @Override
+            public boolean isSensorAvailable(int sensorType) {
+                return ScalarSensor.getSensorManager(appContext).getDefaultSensor(sensorType)
+                        != null;
+            }
+        };
+    }
+
+    /**
+     * Asks {@code available} about every hardware sensor the registry may add, so that a caching
+     * {@code available} already has the answers when the registry is created.  Can be called
+     * from any thread.
+     */
+    public static void prefetchBuiltinAvailability(AvailableSensors available) {
+        AmbientLightSensor.isAmbientLightAvailable(available);
+        AccelerometerSensor.isAccelerometerAvailable(available);
+        BarometerSensor.isBarometerSensorAvailable(available);
+        MagneticRotationSensor.isMagneticRotationSensorAvailable(available);
+        AmbientTemperatureSensor.isAmbientTemperatureSensorAvailable(available);
+    }
+
     public void refreshBuiltinSensors(Context context) {
         removeBuiltInSensors();
         addAvailableBuiltinSensors(context);
@@ -183,14 +230,10 @@ public class SensorRegistry {
     }
 
     private void addAvailableBuiltinSensors(Context context) {
-        final Context appContext = context.getApplicationContext();
-        AvailableSensors available = new AvailableSensors() {
-            @Override
-            public boolean isSensorAvailable(int sensorType) {
-                return ScalarSensor.getSensorManager(appContext).getDefaultSensor(sensorType)
-                        != null;
-            }
-        };
+        AvailableSensors available = mAvailableSensors;
+        if (available == null) {
+            available = systemAvailableSensors(context);
+        }
 
         // Add the sensors in the order of SensorCardPresenter.SENSOR_ID_ORDER. If new sensors are
         // added to this list of built-ins, make sure to update that list if they are not added
@@ -199,7 +242,10 @@ public class SensorRegistry {
         if (AmbientLightSensor.isAmbientLightAvailable(available)) {
             addBuiltInSensor(new AmbientLightSensor());
         }
-        addBuiltInSensor(new DecibelSensor());
+        if (mAudioSource == null) {
+            mAudioSource = new AudioSource();
+        }
+        addBuiltInSensor(new DecibelSensor(DecibelSensor.Level.UNWEIGHTED, mAudioSource));
 
         if (AccelerometerSensor.isAccelerometerAvailable(available)) {
             addBuiltInSensor(new AccelerometerSensor(AccelerometerSensor.Axis.X));
@@ -227,6 +273,18 @@ public class SensorRegistry {
             addBuiltInSensor(new SineWavePseudoSensor());
         }
 
+        if (DevOptionsFragment.isWeightedSoundSensorsEnabled(context)) {
+            addBuiltInSensor(new DecibelSensor(DecibelSensor.Level.A_WEIGHTED, mAudioSource));
+            addBuiltInSensor(new DecibelSensor(DecibelSensor.Level.C_WEIGHTED, mAudioSource));
+            addBuiltInSensor(new DecibelSensor(DecibelSensor.Level.PEAK, mAudioSource));
+        }
+
+        if (DevOptionsFragment.isSpectralAudioSensorsEnabled(context)) {
+            for (SpectralAudioSensor.Measure measure : SpectralAudioSensor.Measure.values()) {
+                addBuiltInSensor(new SpectralAudioSensor(measure, mAudioSource));
+            }
+        }
+
         if (DevOptionsFragment.isVideoSensorEnabled(context)) {
             if (VideoSensor.isCameraAvailable(context.getApplicationContext())) {
                 addBuiltInSensor(new VideoSensor(context.getApplicationContext()));
@@ -16,10 +16,10 @@
 
 package com.google.android.apps.forscience.whistlepunk;
 
-import android.os.Bundle;
 import android.support.annotation.IntDef;
 
 import com.google.android.apps.forscience.whistlepunk.metadata.RunStats;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.ObservedValue;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamStat;
 import com.google.android.apps.forscience.whistlepunk.wireapi.RecordingMetadata;
 
@@ -72,9 +72,10 @@ public class StatsAccumulator {
             mAvgStat.clear();
         }
 
-        public void updateFromBundle(Bundle bundle) {
-            updateStreamStats(bundle.getDouble(KEY_MIN), bundle.getDouble(KEY_MAX),
-                    bundle.getDouble(KEY_AVERAGE));
+        public void updateFromObservedValue(ObservedValue data) {
+            if (data.hasStats()) {
+                updateStreamStats(data.getMin(), data.getMax(), data.getAverage());
+            }
         }
 
         public List<StreamStat> updateStreamStats(double yMin, double yMax, double average) {
@@ -162,7 +163,15 @@ public class StatsAccumulator {
         }
     }
 
-    private double getAverage() {
+    public double getMin() {
+        return mMin;
+    }
+
+    public double getMax() {
+        return mMax;
+    }
+
+    public double getAverage() {
         return mSum / mStatSize;
     }
 
@@ -170,16 +179,8 @@ public class StatsAccumulator {
         return mLatestTimestamp;
     }
 
-    public void addStatsToBundle(Bundle data) {
-        data.putDouble(KEY_MIN, mMin);
-        data.putDouble(KEY_MAX, mMax);
-        data.putDouble(KEY_AVERAGE, getAverage());
-    }
-
     public void updateDisplayDirectly(StatsDisplay display) {
-        final Bundle bundle = new Bundle();
-        addStatsToBundle(bundle);
-        display.updateFromBundle(bundle);
+        display.updateStreamStats(mMin, mMax, getAverage());
     }
 
     public RunStats makeSaveableStats() {
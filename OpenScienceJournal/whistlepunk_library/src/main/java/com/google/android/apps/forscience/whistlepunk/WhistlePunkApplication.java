@@ -24,6 +24,7 @@ import com.google.android.apps.forscience.whistlepunk.devicemanager.ExternalSens
 import com.google.android.apps.forscience.whistlepunk.featurediscovery.FeatureDiscoveryProvider;
 import com.google.android.apps.forscience.whistlepunk.feedback.FeedbackProvider;
 import com.google.android.apps.forscience.whistlepunk.review.RunReviewExporter;
+import com.google.android.apps.forscience.whistlepunk.scalarchart.UptimeClock;
 import com.squareup.leakcanary.LeakCanary;
 import com.squareup.leakcanary.RefWatcher;
 
@@ -37,6 +38,7 @@ import javax.inject.Inject;
 public abstract class WhistlePunkApplication extends Application {
 
     private RefWatcher mRefWatcher;
+    private ColdStartMarkers mColdStartMarkers;
 
     @Inject
     UsageTracker mUsageTracker;
@@ -55,6 +57,11 @@ public abstract class WhistlePunkApplication extends Application {
         return app.mRefWatcher;
     }
 
+    public static ColdStartMarkers getColdStartMarkers(Context context) {
+        WhistlePunkApplication app = (WhistlePunkApplication) context.getApplicationContext();
+        return app.mColdStartMarkers;
+    }
+
     public static UsageTracker getUsageTracker(Context context) {
         if (context == null) {
             return UsageTracker.STUB;
@@ -82,6 +89,7 @@ public abstract class WhistlePunkApplication extends Application {
     @Override
     public void onCreate() {
         super.onCreate();
+        mColdStartMarkers = new ColdStartMarkers(new UptimeClock());
         if (LeakCanary.isInAnalyzerProcess(this)) {
             // This process is dedicated to LeakCanary for heap analysis.
             // You should not init your app in this process.
@@ -89,8 +97,10 @@ public abstract class WhistlePunkApplication extends Application {
         }
         mRefWatcher = installLeakCanary();
         onCreateInjector();
+        AppSingleton.getInstance(this).warmUp(mColdStartMarkers);
         RunReviewExporter.cleanOldFiles(this);
         setupBackupAgent();
+        mColdStartMarkers.mark(ColdStartMarkers.APPLICATION_CREATED);
     }
 
     protected void setupBackupAgent() {
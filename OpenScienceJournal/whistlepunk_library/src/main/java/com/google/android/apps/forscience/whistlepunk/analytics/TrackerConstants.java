@@ -58,6 +58,7 @@ public final class TrackerConstants {
     public static final String CATEGORY_APP = "App";
     public static final String CATEGORY_TRIGGERS = "Triggers";
     public static final String CATEGORY_API = "API";
+    public static final String CATEGORY_PERFORMANCE = "Performance";
 
     // Event actions
     public static final String ACTION_CREATE = "Create";
@@ -73,6 +74,10 @@ public final class TrackerConstants {
     public static final String ACTION_TRY_STOP_RECORDING_FROM_TRIGGER =
             "TryStopRecordingFromTrigger";
     public static final String ACTION_API_SCAN_TIMEOUT = "ApiScanTimeout";
+    public static final String ACTION_SENSOR_OUTPUT_RATE = "SensorOutputRate";
+    public static final String ACTION_SENSOR_MAX_LATENCY = "SensorMaxLatency";
+    public static final String ACTION_CHART_FIRST_PAINT = "ChartFirstPaint";
+    public static final String ACTION_CHART_FULL_LOAD = "ChartFullLoad";
 
     // Labels
     public static final String LABEL_RECORD = "record";
@@ -75,6 +75,11 @@ public class InputDeviceSpec extends ExternalSensorSpec {
 
         }
 
+        @Override
+        public void clearScanCache() {
+
+        }
+
         @Override
         public ExternalSensorProvider getProvider() {
             return PROVIDER;
@@ -29,6 +29,7 @@ import com.google.android.apps.forscience.javalib.Delay;
 import com.google.android.apps.forscience.javalib.FailureListener;
 import com.google.android.apps.forscience.javalib.Scheduler;
 import com.google.android.apps.forscience.whistlepunk.AppSingleton;
+import com.google.android.apps.forscience.whistlepunk.CurrentTimeClock;
 import com.google.android.apps.forscience.whistlepunk.ExternalSensorProvider;
 import com.google.android.apps.forscience.whistlepunk.R;
 import com.google.android.apps.forscience.whistlepunk.analytics.TrackerConstants;
@@ -37,10 +38,12 @@ import com.google.android.apps.forscience.whistlepunk.devicemanager.ConnectableS
 import com.google.android.apps.forscience.whistlepunk.devicemanager.ExternalSensorDiscoverer;
 import com.google.android.apps.forscience.whistlepunk.metadata.ExternalSensorSpec;
 import com.google.android.apps.forscience.whistlepunk.sensors.SystemScheduler;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 public class ScalarInputDiscoverer implements ExternalSensorDiscoverer {
     private static final long DEFAULT_SCAN_TIMEOUT_MILLIS = 10_000;
@@ -53,6 +56,8 @@ public class ScalarInputDiscoverer implements ExternalSensorDiscoverer {
     private final Executor mUiThreadExecutor;
     private final Scheduler mScheduler;
     private final long mScanTimeoutMillis;
+    private final ScalarInputScanCache mScanCache;
+    private final Executor mScanExecutor;
     private UsageTracker mUsageTracker;
     private ScanListener mScanListener;
     private List<String> mActiveServices = new ArrayList<>();
@@ -60,7 +65,10 @@ public class ScalarInputDiscoverer implements ExternalSensorDiscoverer {
     public ScalarInputDiscoverer(Consumer<AppDiscoveryCallbacks> serviceFinder,
             Context context, UsageTracker usageTracker) {
         this(serviceFinder, defaultStringSource(context), AppSingleton.getUiThreadExecutor(),
-                new SystemScheduler(), DEFAULT_SCAN_TIMEOUT_MILLIS, usageTracker);
+                new SystemScheduler(), DEFAULT_SCAN_TIMEOUT_MILLIS, usageTracker,
+                new ScalarInputScanCache(ScalarInputScanCache.packageManagerStamps(context),
+                        new CurrentTimeClock(), ScalarInputScanCache.DEFAULT_TTL_MILLIS),
+                Executors.newCachedThreadPool());
     }
 
     private static ScalarInputStringSource defaultStringSource(final Context context) {
@@ -84,12 +92,30 @@ public class ScalarInputDiscoverer implements ExternalSensorDiscoverer {
             ScalarInputStringSource stringSource,
             Executor uiThreadExecutor, Scheduler scheduler, long scanTimeoutMillis,
             UsageTracker usageTracker) {
+        this(serviceFinder, stringSource, uiThreadExecutor, scheduler, scanTimeoutMillis,
+                usageTracker, ScalarInputScanCache.uncached(new CurrentTimeClock()),
+                MoreExecutors.directExecutor());
+    }
+
+    /**
+     * @param scanCache    results of earlier scans, shared between scans
+     * @param scanExecutor where to make the calls that start each service's scan, so that a slow
+     *                     service doesn't hold up the others
+     */
+    @VisibleForTesting
+    public ScalarInputDiscoverer(
+            Consumer<AppDiscoveryCallbacks> serviceFinder,
+            ScalarInputStringSource stringSource,
+            Executor uiThreadExecutor, Scheduler scheduler, long scanTimeoutMillis,
+            UsageTracker usageTracker, ScalarInputScanCache scanCache, Executor scanExecutor) {
         mServiceFinder = serviceFinder;
         mStringSource = stringSource;
         mUiThreadExecutor = uiThreadExecutor;
         mScheduler = scheduler;
         mScanTimeoutMillis = scanTimeoutMillis;
         mUsageTracker = usageTracker;
+        mScanCache = scanCache;
+        mScanExecutor = scanExecutor;
         if (usageTracker == null) {
             if (Log.isLoggable(TAG, Log.WARN)) {
                 Log.w(TAG, "Configuration error: No usage tracking in ScalarInputDiscoverer");
@@ -106,6 +132,19 @@ public class ScalarInputDiscoverer implements ExternalSensorDiscoverer {
     @Override
     public boolean startScanning(final ScanListener listener, final FailureListener onScanError) {
         mScanListener = listener;
+
+        // Show what earlier scans found straight away.  Services are only scanned again below if
+        // their cached results have gone stale.
+        final List<ScalarInputScanCache.Entry> cached = mScanCache.getUsableEntries();
+        mUiThreadExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (ScalarInputScanCache.Entry entry : cached) {
+                    showCachedScan(entry);
+                }
+            }
+        });
+
         final String discoveryTaskId = "DISCOVERY";
         final TaskPool pool = new TaskPool(new Runnable() {
             @Override
@@ -124,46 +163,20 @@ public class ScalarInputDiscoverer implements ExternalSensorDiscoverer {
                 if (Log.isLoggable(TAG, Log.DEBUG)) {
                     Log.d(TAG, "Found service: " + serviceId);
                 }
-                try {
-                    final String serviceName = service.getName();
-                    mUiThreadExecutor.execute(new Runnable() {
-                        @Override
-                        public void run() {
-                            if (mScanListener == null) {
-                                return;
-                            }
-                            mActiveServices.add(serviceId);
-                            mScanListener.onServiceFound(new DiscoveredService() {
-                                @Override
-                                public String getServiceId() {
-                                    return serviceId;
-                                }
-
-                                @Override
-                                public String getName() {
-                                    return serviceName;
-                                }
-
-                                @Override
-                                public Drawable getIconDrawable(Context context) {
-                                    return ScalarInputSpec.getServiceDrawable(serviceId, context);
-                                }
-
-                                @Override
-                                public ServiceConnectionError getConnectionErrorIfAny() {
-                                    // TODO: implement this?
-                                    return null;
-                                }
-                            });
-                        }
-                    });
-
-                    service.scanDevices(makeDeviceConsumer(service, serviceId, pool));
-                } catch (RemoteException e) {
-                    onScanError.fail(e);
-                } catch (RuntimeException e) {
-                    onScanError.fail(e);
+                if (mScanCache.getFreshEntry(serviceId) != null) {
+                    // Already shown, and nothing has changed since it was scanned.
+                    return;
                 }
+                // Added before discovery can finish, so that the pool doesn't think the whole
+                // scan is done while this service is still waiting for the executor.
+                final String serviceTaskId = "SERVICE:" + serviceId;
+                pool.addTask(serviceTaskId);
+                mScanExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        scanService(serviceId, service, pool, serviceTaskId, onScanError);
+                    }
+                });
             }
 
             @Override
@@ -174,15 +187,179 @@ public class ScalarInputDiscoverer implements ExternalSensorDiscoverer {
         return true;
     }
 
+    private void showCachedScan(ScalarInputScanCache.Entry entry) {
+        if (mScanListener == null) {
+            return;
+        }
+        mScanListener.onServiceFound(entry.getService());
+        for (DiscoveredDevice device : entry.getDevices()) {
+            mScanListener.onDeviceFound(device);
+        }
+        for (DiscoveredSensor sensor : entry.getSensors()) {
+            mScanListener.onSensorFound(sensor);
+        }
+        mScanListener.onServiceScanComplete(entry.getService().getServiceId());
+    }
+
+    private void scanService(final String serviceId, ISensorDiscoverer service, TaskPool pool,
+            String serviceTaskId, FailureListener onScanError) {
+        try {
+            final String serviceName = service.getName();
+            final DiscoveredService discoveredService = new DiscoveredService() {
+                @Override
+                public String getServiceId() {
+                    return serviceId;
+                }
+
+                @Override
+                public String getName() {
+                    return serviceName;
+                }
+
+                @Override
+                public Drawable getIconDrawable(Context context) {
+                    return ScalarInputSpec.getServiceDrawable(serviceId, context);
+                }
+
+                @Override
+                public ServiceConnectionError getConnectionErrorIfAny() {
+                    // TODO: implement this?
+                    return null;
+                }
+            };
+            final ScalarInputScanCache.Entry shown = mScanCache.getEntry(serviceId);
+            mUiThreadExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (mScanListener == null) {
+                        return;
+                    }
+                    mActiveServices.add(serviceId);
+                    if (shown == null) {
+                        mScanListener.onServiceFound(discoveredService);
+                    }
+                }
+            });
+
+            ServiceScan scan = new ServiceScan(mScanCache.startEntry(discoveredService), shown);
+            service.scanDevices(makeDeviceConsumer(service, serviceId, pool, serviceTaskId,
+                    scan));
+        } catch (RemoteException e) {
+            pool.taskDone(serviceTaskId);
+            onScanError.fail(e);
+        } catch (RuntimeException e) {
+            pool.taskDone(serviceTaskId);
+            onScanError.fail(e);
+        }
+    }
+
+    /**
+     * Tracks one scan of one service, collecting what it finds for the cache.
+     */
+    private class ServiceScan {
+        private final ScalarInputScanCache.Entry mEntry;
+        // What the listener has already been shown for this service, or null.
+        private final ScalarInputScanCache.Entry mShown;
+        private int mDevicesScanning = 0;
+        private boolean mDevicesDone = false;
+        private boolean mFinished = false;
+        private boolean mTimedOut = false;
+
+        ServiceScan(ScalarInputScanCache.Entry entry, ScalarInputScanCache.Entry shown) {
+            mEntry = entry;
+            mShown = shown;
+        }
+
+        /**
+         * @return true if the device hasn't been shown already.
+         */
+        boolean addDevice(DiscoveredDevice device) {
+            mEntry.addDevice(device);
+            synchronized (this) {
+                mDevicesScanning++;
+            }
+            return mShown == null || !mShown.hasDevice(device.getSpec());
+        }
+
+        /**
+         * @return true if the sensor hasn't been shown already.
+         */
+        boolean addSensor(DiscoveredSensor sensor) {
+            mEntry.addSensor(sensor);
+            return mShown == null || !mShown.hasSensor(sensor.getSpec());
+        }
+
+        synchronized void onDeviceScanned() {
+            mDevicesScanning--;
+            maybeFinish();
+        }
+
+        synchronized void onDevicesDone() {
+            mDevicesDone = true;
+            maybeFinish();
+        }
+
+        synchronized void onTimeout() {
+            if (!mFinished) {
+                // Some of what the service has is missing, so don't let it stand in for a scan.
+                mTimedOut = true;
+            }
+        }
+
+        private void maybeFinish() {
+            if (mDevicesDone && mDevicesScanning == 0 && !mFinished && !mTimedOut) {
+                mFinished = true;
+                mScanCache.put(mEntry);
+                if (mShown != null) {
+                    showLost();
+                }
+            }
+        }
+
+        /**
+         * Takes back whatever was shown from the cache that this complete scan didn't find.
+         */
+        private void showLost() {
+            final List<DiscoveredDevice> lostDevices = new ArrayList<>();
+            for (DiscoveredDevice device : mShown.getDevices()) {
+                if (!mEntry.hasDevice(device.getSpec())) {
+                    lostDevices.add(device);
+                }
+            }
+            final List<DiscoveredSensor> lostSensors = new ArrayList<>();
+            for (DiscoveredSensor sensor : mShown.getSensors()) {
+                if (!mEntry.hasSameSensor(sensor.getSpec())) {
+                    lostSensors.add(sensor);
+                }
+            }
+            if (lostDevices.isEmpty() && lostSensors.isEmpty()) {
+                return;
+            }
+            mUiThreadExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (mScanListener == null) {
+                        return;
+                    }
+                    for (DiscoveredSensor sensor : lostSensors) {
+                        mScanListener.onSensorLost(sensor);
+                    }
+                    for (DiscoveredDevice device : lostDevices) {
+                        mScanListener.onDeviceLost(device);
+                    }
+                }
+            });
+        }
+    }
+
     @NonNull
     private IDeviceConsumer.Stub makeDeviceConsumer(final ISensorDiscoverer service,
-            final String serviceId,
-            final TaskPool pool) {
-        final String serviceTaskId = "SERVICE:" + serviceId;
-        pool.addTask(serviceTaskId);
+            final String serviceId, final TaskPool pool, final String serviceTaskId,
+            final ServiceScan scan) {
         mScheduler.schedule(Delay.millis(mScanTimeoutMillis), new Runnable() {
             @Override
             public void run() {
+                scan.onTimeout();
                 markTaskTimeout(pool, serviceTaskId);
                 mActiveServices.remove(serviceId);
                 if (mScanListener != null) {
@@ -201,33 +378,35 @@ public class ScalarInputDiscoverer implements ExternalSensorDiscoverer {
                 pool.addTask(deviceTaskId);
                 scheduleTaskTimeout(pool, deviceTaskId);
 
-                mUiThreadExecutor.execute(new Runnable() {
+                final DiscoveredDevice device = new DiscoveredDevice() {
                     @Override
-                    public void run() {
-                        if (mScanListener == null) {
-                            return;
-                        }
-                        mScanListener.onDeviceFound(new DiscoveredDevice() {
-                            @Override
-                            public String getServiceId() {
-                                return serviceId;
-                            }
+                    public String getServiceId() {
+                        return serviceId;
+                    }
 
-                            @Override
-                            public InputDeviceSpec getSpec() {
-                                return new InputDeviceSpec(ScalarInputSpec.TYPE,
-                                        ScalarInputSpec.makeApiDeviceAddress(serviceId, deviceId),
-                                        name);
-                            }
-                        });
+                    @Override
+                    public InputDeviceSpec getSpec() {
+                        return new InputDeviceSpec(ScalarInputSpec.TYPE,
+                                ScalarInputSpec.makeApiDeviceAddress(serviceId, deviceId), name);
                     }
-                });
+                };
+                if (scan.addDevice(device)) {
+                    mUiThreadExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (mScanListener == null) {
+                                return;
+                            }
+                            mScanListener.onDeviceFound(device);
+                        }
+                    });
+                }
 
-                // TODO: restructure to create an object-per-service-scan to hold intermediate data.
                 service.scanSensors(deviceId,
-                        makeSensorConsumer(serviceId, deviceId, new Runnable() {
+                        makeSensorConsumer(serviceId, deviceId, scan, new Runnable() {
                             @Override
                             public void run() {
+                                scan.onDeviceScanned();
                                 pool.taskDone(deviceTaskId);
                             }
                         }));
@@ -235,6 +414,7 @@ public class ScalarInputDiscoverer implements ExternalSensorDiscoverer {
 
             @Override
             public void onScanDone() throws RemoteException {
+                scan.onDevicesDone();
                 mUiThreadExecutor.execute(new Runnable() {
                     @Override
                     public void run() {
@@ -266,7 +446,7 @@ public class ScalarInputDiscoverer implements ExternalSensorDiscoverer {
 
     @NonNull
     private ISensorConsumer.Stub makeSensorConsumer(final String serviceId,
-            final String deviceId, final Runnable onScanDone) {
+            final String deviceId, final ServiceScan scan, final Runnable onScanDone) {
         return new ISensorConsumer.Stub() {
             @Override
             public void onSensorFound(String sensorAddress, String name,
@@ -278,46 +458,49 @@ public class ScalarInputDiscoverer implements ExternalSensorDiscoverer {
 
                 final ScalarInputSpec spec = new ScalarInputSpec(name, serviceId, sensorAddress,
                         behavior, ids, deviceId);
-                mUiThreadExecutor.execute(new Runnable() {
+                final DiscoveredSensor sensor = new DiscoveredSensor() {
                     @Override
-                    public void run() {
-                        if (mScanListener == null) {
-                            return;
-                        }
-                        mScanListener.onSensorFound(new DiscoveredSensor() {
-                            @Override
-                            public ExternalSensorSpec getSpec() {
-                                return spec;
-                            }
+                    public ExternalSensorSpec getSpec() {
+                        return spec;
+                    }
 
+                    @Override
+                    public SettingsInterface getSettingsInterface() {
+                        if (behavior == null || behavior.settingsIntent == null) {
+                            return null;
+                        }
+                        return new SettingsInterface() {
                             @Override
-                            public SettingsInterface getSettingsInterface() {
-                                if (behavior == null || behavior.settingsIntent == null) {
-                                    return null;
-                                }
-                                return new SettingsInterface() {
-                                    @Override
-                                    public void show(String experimentId, String sensorId,
-                                            FragmentManager fragmentManager,
-                                            boolean showForgetButton) {
-                                        try {
-                                            behavior.settingsIntent.send();
-                                        } catch (PendingIntent.CanceledException e) {
-                                            if (Log.isLoggable(TAG, Log.ERROR)) {
-                                                Log.e(TAG, "Could not open settings", e);
-                                            }
-                                        }
+                            public void show(String experimentId, String sensorId,
+                                    FragmentManager fragmentManager, boolean showForgetButton) {
+                                try {
+                                    behavior.settingsIntent.send();
+                                } catch (PendingIntent.CanceledException e) {
+                                    if (Log.isLoggable(TAG, Log.ERROR)) {
+                                        Log.e(TAG, "Could not open settings", e);
                                     }
-                                };
+                                }
                             }
+                        };
+                    }
 
-                            @Override
-                            public boolean shouldReplaceStoredSensor(ConnectableSensor oldSensor) {
-                                // The scalar API only has one set of settings per external sensor
-                                // in its current form, so any old settings are now invalid
-                                return true;
-                            }
-                        });
+                    @Override
+                    public boolean shouldReplaceStoredSensor(ConnectableSensor oldSensor) {
+                        // The scalar API only has one set of settings per external sensor
+                        // in its current form, so any old settings are now invalid
+                        return true;
+                    }
+                };
+                if (!scan.addSensor(sensor)) {
+                    return;
+                }
+                mUiThreadExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mScanListener == null) {
+                            return;
+                        }
+                        mScanListener.onSensorFound(sensor);
                     }
                 });
             }
@@ -329,6 +512,11 @@ public class ScalarInputDiscoverer implements ExternalSensorDiscoverer {
         };
     }
 
+    @Override
+    public void clearScanCache() {
+        mScanCache.clear();
+    }
+
     @Override
     public void stopScanning() {
         markAllScansDone();
@@ -0,0 +1,238 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.api.scalarinput;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+
+import com.google.android.apps.forscience.whistlepunk.Clock;
+import com.google.android.apps.forscience.whistlepunk.devicemanager.ExternalSensorDiscoverer;
+import com.google.android.apps.forscience.whistlepunk.metadata.ExternalSensorSpec;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers what the last scan of each scalar input service found, so that the device list can
+ * show it straight away instead of waiting for every service to be bound and scanned again.
+ *
+ * An entry is only used while the service's package is still at the version it was scanned from;
+ * once the package is updated or removed, the entry is dropped.  Entries younger than the TTL are
+ * trusted without scanning the service again.  Older ones are still shown while the service is
+ * rescanned.
+ */
+public class ScalarInputScanCache {
+    public static final long NO_STAMP = -1;
+    public static final long DEFAULT_TTL_MILLIS = 10 * 60 * 1000;
+
+    public interface PackageStamps {
+        /**
+         * @return a value that changes whenever the package is installed or updated, or
+         * {@link #NO_STAMP} if it isn't installed or can't be checked.
+         */
+        long getStamp(String packageName);
+    }
+
+    /**
+     * Stamps packages with their last update time.
+     */
+    public static PackageStamps packageManagerStamps(Context context) {
+        final PackageManager pm = context.getPackageManager();
+        return new PackageStamps() {
+            @Override
+            public long getStamp(String packageName) {
+                try {
+                    return pm.getPackageInfo(packageName, 0).lastUpdateTime;
+                } catch (PackageManager.NameNotFoundException e) {
+                    return NO_STAMP;
+                }
+            }
+        };
+    }
+
+    /**
+     * A cache that never has anything usable in it, so that every service is always scanned.
+     */
+    public static ScalarInputScanCache uncached(Clock clock) {
+        return new ScalarInputScanCache(new PackageStamps() {
+            @Override
+            public long getStamp(String packageName) {
+                return NO_STAMP;
+            }
+        }, clock, 0);
+    }
+
+    /**
+     * Everything one scan of one service found.  Filled in as the scan goes, possibly from
+     * several threads, and only cached once the scan has finished.
+     */
+    public static class Entry {
+        private final ExternalSensorDiscoverer.DiscoveredService mService;
+        private final long mPackageStamp;
+        private final long mScannedAtMillis;
+        private final List<ExternalSensorDiscoverer.DiscoveredDevice> mDevices =
+                new ArrayList<>();
+        private final List<ExternalSensorDiscoverer.DiscoveredSensor> mSensors =
+                new ArrayList<>();
+
+        private Entry(ExternalSensorDiscoverer.DiscoveredService service, long packageStamp,
+                long scannedAtMillis) {
+            mService = service;
+            mPackageStamp = packageStamp;
+            mScannedAtMillis = scannedAtMillis;
+        }
+
+        public ExternalSensorDiscoverer.DiscoveredService getService() {
+            return mService;
+        }
+
+        public synchronized void addDevice(ExternalSensorDiscoverer.DiscoveredDevice device) {
+            mDevices.add(device);
+        }
+
+        public synchronized void addSensor(ExternalSensorDiscoverer.DiscoveredSensor sensor) {
+            mSensors.add(sensor);
+        }
+
+        public synchronized List<ExternalSensorDiscoverer.DiscoveredDevice> getDevices() {
+            return new ArrayList<>(mDevices);
+        }
+
+        public synchronized List<ExternalSensorDiscoverer.DiscoveredSensor> getSensors() {
+            return new ArrayList<>(mSensors);
+        }
+
+        /**
+         * @return true if this entry has a device with the same address as {@code device}.
+         */
+        public synchronized boolean hasDevice(InputDeviceSpec device) {
+            for (ExternalSensorDiscoverer.DiscoveredDevice mine : mDevices) {
+                if (mine.getSpec().isSameSensor(device)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return true if this entry has a sensor with the same address as {@code sensor},
+         * whatever its settings.
+         */
+        public synchronized boolean hasSameSensor(ExternalSensorSpec sensor) {
+            for (ExternalSensorDiscoverer.DiscoveredSensor mine : mSensors) {
+                if (mine.getSpec().isSameSensor(sensor)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return true if this entry has a sensor with exactly the same spec as {@code sensor}.
+         */
+        public synchronized boolean hasSensor(ExternalSensorSpec sensor) {
+            for (ExternalSensorDiscoverer.DiscoveredSensor mine : mSensors) {
+                if (mine.getSpec().isSameSensorAndSpec(sensor)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final PackageStamps mStamps;
+    private final Clock mClock;
+    private final long mTtlMillis;
+    private final Map<String, Entry> mEntries = new HashMap<>();
+
+    public ScalarInputScanCache(PackageStamps stamps, Clock clock, long ttlMillis) {
+        mStamps = stamps;
+        mClock = clock;
+        mTtlMillis = ttlMillis;
+    }
+
+    /**
+     * @return a new, empty entry for a scan of {@code service} that is starting now.
+     */
+    public Entry startEntry(ExternalSensorDiscoverer.DiscoveredService service) {
+        return new Entry(service, getStamp(service.getServiceId()), mClock.getNow());
+    }
+
+    /**
+     * Caches a finished scan, replacing any earlier one of the same service.
+     */
+    public synchronized void put(Entry entry) {
+        if (entry.mPackageStamp != NO_STAMP) {
+            mEntries.put(entry.getService().getServiceId(), entry);
+        }
+    }
+
+    /**
+     * @return the cached scans that still match their installed packages, whatever their age.
+     * Scans of packages that have since changed are forgotten.
+     */
+    public synchronized List<Entry> getUsableEntries() {
+        List<Entry> usable = new ArrayList<>();
+        Iterator<Entry> iter = mEntries.values().iterator();
+        while (iter.hasNext()) {
+            Entry entry = iter.next();
+            if (entry.mPackageStamp == getStamp(entry.getService().getServiceId())) {
+                usable.add(entry);
+            } else {
+                iter.remove();
+            }
+        }
+        return usable;
+    }
+
+    /**
+     * @return the cached scan of {@code serviceId}, if there is one that is young enough and still
+     * matches the installed package that it doesn't need to be scanned again.  Otherwise null.
+     */
+    public synchronized Entry getFreshEntry(String serviceId) {
+        Entry entry = mEntries.get(serviceId);
+        if (entry == null || entry.mPackageStamp != getStamp(serviceId)
+                || mClock.getNow() - entry.mScannedAtMillis > mTtlMillis) {
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * @return the cached scan of {@code serviceId} however old it is, or null.
+     */
+    public synchronized Entry getEntry(String serviceId) {
+        return mEntries.get(serviceId);
+    }
+
+    public synchronized void clear() {
+        mEntries.clear();
+    }
+
+    private long getStamp(String serviceId) {
+        if (serviceId == null) {
+            return NO_STAMP;
+        }
+        // Service ids are "package/class".
+        int slash = serviceId.indexOf('/');
+        return mStamps.getStamp(slash < 0 ? serviceId : serviceId.substring(0, slash));
+    }
+}
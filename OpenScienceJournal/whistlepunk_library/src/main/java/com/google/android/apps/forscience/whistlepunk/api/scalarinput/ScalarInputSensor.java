@@ -23,6 +23,7 @@ import com.google.android.apps.forscience.javalib.Delay;
 import com.google.android.apps.forscience.javalib.Scheduler;
 import com.google.android.apps.forscience.whistlepunk.Clock;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.AbstractSensorRecorder;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.ClockOffsetEstimator;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.ScalarSensor;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorEnvironment;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorRecorder;
@@ -38,6 +39,10 @@ import java.util.concurrent.Executor;
 class ScalarInputSensor extends ScalarSensor {
     public static final Delay CONNECTION_TIME_OUT = Delay.seconds(20);
     private static final int MINIMUM_REFRESH_RATE_MILLIS = 1000;
+
+    // Most providers stamp readings with the same wall clock as the app, and then the offsets
+    // seen are just delivery latency, which shouldn't be added to their timestamps.
+    private static final long SAME_CLOCK_TOLERANCE_MILLIS = 250;
     private final String mAddress;
     private final String mServiceId;
     private final Scheduler mScheduler;
@@ -80,6 +85,8 @@ class ScalarInputSensor extends ScalarSensor {
 
             class RefreshableObserver extends ISensorObserver.Stub {
                 private final StreamConsumer mConsumer;
+                private final ClockOffsetEstimator mClockOffsets =
+                        new ClockOffsetEstimator(SAME_CLOCK_TOLERANCE_MILLIS);
 
                 public RefreshableObserver(StreamConsumer consumer) {
                     mConsumer = consumer;
@@ -87,6 +94,16 @@ class ScalarInputSensor extends ScalarSensor {
 
                 @Override
                 public void onNewData(long timestamp, double data) {
+                    long appTime = mClockOffsets.map(timestamp, clock.getNow());
+                    if (appTime != ClockOffsetEstimator.DROP) {
+                        deliver(appTime, data);
+                    }
+                }
+
+                /**
+                 * @param appTime already on the app clock
+                 */
+                public void deliver(long appTime, double data) {
                     if (mConnector == null) {
                         // We're disconnected, nothing to do here.
                         return;
@@ -95,7 +112,7 @@ class ScalarInputSensor extends ScalarSensor {
                     mScheduler.unschedule(mRefreshRunnable);
                     mScheduler.schedule(Delay.millis(MINIMUM_REFRESH_RATE_MILLIS),
                             mRefreshRunnable);
-                    mConsumer.addData(timestamp, data);
+                    mConsumer.addData(appTime, data);
 
                     // Some sensors may forget to set to connected, but if we're getting data,
                     //   we're probably connected.  (This actually happened in a version of the
@@ -158,7 +175,7 @@ class ScalarInputSensor extends ScalarSensor {
                         mRefreshRunnable = new Runnable() {
                             @Override
                             public void run() {
-                                observer.onNewData(clock.getNow(), mLatestData);
+                                observer.deliver(clock.getNow(), mLatestData);
                             }
                         };
 
@@ -20,7 +20,7 @@ import java.util.Set;
 
 /**
  * Keep track of a set of remaining tasks, using unique string id's.  When all tasks are completed,
- * call a final Runnable.
+ * call a final Runnable.  Tasks can be added and completed from any thread.
  */
 public class TaskPool {
     private final Set<String> mTaskIds = new HashSet<>();
@@ -33,15 +33,23 @@ public class TaskPool {
         }
     }
 
-    public void addTask(String taskId) {
+    public synchronized void addTask(String taskId) {
         mTaskIds.add(taskId);
     }
 
     public boolean taskDone(String taskId) {
-        boolean wasRemoved = mTaskIds.remove(taskId);
-        if (mTaskIds.isEmpty() && mOnDone != null) {
-            mOnDone.run();
-            mOnDone = null;
+        boolean wasRemoved;
+        Runnable onDone = null;
+        synchronized (this) {
+            wasRemoved = mTaskIds.remove(taskId);
+            if (mTaskIds.isEmpty()) {
+                onDone = mOnDone;
+                mOnDone = null;
+            }
+        }
+        // Outside the lock, so that it can't deadlock with whatever onDone waits on.
+        if (onDone != null) {
+            onDone.run();
         }
         return wasRemoved;
     }
@@ -23,15 +23,11 @@ import android.view.ViewTreeObserver;
 import com.google.android.apps.forscience.javalib.MaybeConsumer;
 import com.google.android.apps.forscience.whistlepunk.DataController;
 import com.google.android.apps.forscience.whistlepunk.RunReviewOverlay;
-import com.google.android.apps.forscience.whistlepunk.scalarchart.ChartController;
-import com.google.android.apps.forscience.whistlepunk.scalarchart.ChartData;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamConsumer;
 import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarReadingList;
 import com.google.android.apps.forscience.whistlepunk.sensordb.TimeRange;
 import com.google.common.collect.Range;
 
-import java.util.ArrayList;
-import java.util.List;
-
 public class AudioPlaybackController {
 
     public interface AudioPlaybackListener {
@@ -42,10 +38,12 @@ public class AudioPlaybackController {
 
     public static final String TAG = "AudioPlaybackController";
 
-    public static final int LAST_TONE_DURATION_MS = 10;
+    // How often the UI is told which timestamp is playing, and the buffered data is checked.
+    private static final int PROGRESS_UPDATE_MS = 50;
 
-    // NOTE: For sensors with more than 100 datapoints in 1 second, these constants may need to be
-    // adjusted!
+    // Data points per load at normal speed. Loads get bigger at higher speeds so that each one
+    // still covers the same amount of playing time.
+    // NOTE: For sensors with more than 100 datapoints in 1 second, this may need to be adjusted!
     private static final int DATAPOINTS_PER_AUDIO_PLAYBACK_LOAD = 200;
     private static final int PLAYBACK_STATUS_NOT_PLAYING = 0;
     private static final int PLAYBACK_STATUS_LOADING = 1;
@@ -53,14 +51,16 @@ public class AudioPlaybackController {
     private int mPlaybackStatus = PLAYBACK_STATUS_NOT_PLAYING;
     private SimpleJsynAudioGenerator mAudioGenerator;
     private Handler mHandler;
-    private Runnable mPlaybackRunnable;
+    private Runnable mProgressRunnable;
     private AudioPlaybackListener mAudioPlaybackListener;
+    private double mPlaybackSpeed = SonificationScheduler.MIN_SPEED;
 
     private double mYMin;
     private double mYMax;
 
     public AudioPlaybackController(AudioPlaybackListener listener) {
         mAudioGenerator = new SimpleJsynAudioGenerator();
+        mAudioGenerator.setRealtime(false);
         mAudioPlaybackListener = listener;
     }
 
@@ -70,7 +70,6 @@ public class AudioPlaybackController {
             return;
         }
         final long xMax = lastTimestamp;
-        final List<ChartData.DataPoint> audioData = new ArrayList<>();
 
         if (xMinToLoad == RunReviewOverlay.NO_TIMESTAMP_SELECTED) {
             xMinToLoad = firstTimestamp;
@@ -81,113 +80,104 @@ public class AudioPlaybackController {
                 xMinToLoad = firstTimestamp;
             }
         }
+        final long playbackStart = xMinToLoad;
 
         mHandler = new Handler();
-        mPlaybackRunnable = new Runnable() {
+        mAudioGenerator.setPlaybackSpeed(mPlaybackSpeed);
+        mProgressRunnable = new Runnable() {
+            // The last timestamp handed to the audio generator.
+            long mLastLoadedTimestamp = playbackStart;
             boolean mFullyLoaded = false;
             boolean mLoading = false;
 
             @Override
             public void run() {
-                if (audioData.size() == 0) {
-                    if (mFullyLoaded) {
+                long timestamp = mAudioGenerator.getCurrentTimestamp();
+                if (mPlaybackStatus == PLAYBACK_STATUS_PLAYING && mAudioPlaybackListener != null
+                        && timestamp != SonificationScheduler.NOTHING_PLAYED) {
+                    mAudioPlaybackListener.onTimestampUpdated(
+                            Math.min(timestamp, mLastLoadedTimestamp));
+                }
+                if (mFullyLoaded) {
+                    if (mAudioGenerator.isDrained()) {
                         stopPlayback();
-                    } else {
-                        // Wait for more data to come in.
-                        mHandler.postDelayed(mPlaybackRunnable, LAST_TONE_DURATION_MS);
+                        return;
                     }
-                    return;
+                } else if (!mLoading && mAudioGenerator.getQueuedSampleCount() < getPageSize()) {
+                    loadPage();
                 }
+                mHandler.postDelayed(mProgressRunnable, PROGRESS_UPDATE_MS);
+            }
 
-                // Every time we play a data point, we remove it from the list.
-                ChartData.DataPoint point = audioData.remove(0);
-                long timestamp = point.getX();
-
-                // Load more data when needed, i.e. when only 10% of the loaded data points are
-                // left in the list, and we aren't fully loaded yet.
-                long lastTimestamp = audioData.size() == 0 ? timestamp :
-                        audioData.get(audioData.size() - 1).getX();
-                if (audioData.size() < DATAPOINTS_PER_AUDIO_PLAYBACK_LOAD / 10 && !mFullyLoaded &&
-                        !mLoading) {
-                    mLoading = true;
-                    dataController.getScalarReadings(sensorId, /* tier 0 */ 0,
-                            TimeRange.oldest(Range.openClosed(lastTimestamp, xMax)),
-                            DATAPOINTS_PER_AUDIO_PLAYBACK_LOAD,
-                            new MaybeConsumer<ScalarReadingList>() {
-                                @Override
-                                public void success(ScalarReadingList list) {
-                                    mLoading = false;
-                                    if (list.size() == 0) {
-                                        mFullyLoaded = true;
-                                    }
-                                    audioData.addAll(list.asDataPoints());
+            private void loadPage() {
+                mLoading = true;
+                // The first load includes the starting point, later loads start after the
+                // last point already loaded.
+                Range<Long> range = mPlaybackStatus == PLAYBACK_STATUS_LOADING
+                        ? Range.closed(mLastLoadedTimestamp, xMax)
+                        : Range.openClosed(mLastLoadedTimestamp, xMax);
+                final int pageSize = getPageSize();
+                dataController.getScalarReadings(sensorId, /* tier 0 */ 0,
+                        TimeRange.oldest(range), pageSize,
+                        new MaybeConsumer<ScalarReadingList>() {
+                            @Override
+                            public void success(ScalarReadingList list) {
+                                if (mPlaybackStatus == PLAYBACK_STATUS_NOT_PLAYING) {
+                                    return;
                                 }
-
-                                @Override
-                                public void fail(Exception e) {
-                                    Log.e(TAG, "Error loading audio playback data");
-                                    stopPlayback();
+                                mLoading = false;
+                                addToAudioGenerator(list);
+                                if (list.size() < pageSize) {
+                                    mFullyLoaded = true;
                                 }
-                            });
-                }
+                                if (mPlaybackStatus == PLAYBACK_STATUS_LOADING) {
+                                    onFirstPageLoaded();
+                                }
+                            }
+
+                            @Override
+                            public void fail(Exception e) {
+                                Log.e(TAG, "Error loading audio playback data");
+                                stopPlayback();
+                            }
+                        });
+            }
 
-                // Now play the tone, and get set up for the next callback, if one is needed.
-                try {
-                    mAudioGenerator.addData(timestamp, point.getY(), mYMin, mYMax);
-                    if (mAudioPlaybackListener != null) {
-                        mAudioPlaybackListener.onTimestampUpdated(timestamp);
-                    }
-                } finally {
-                    // If this is the second to last point, some special handling
-                    // needs to be done to determine when to make the last tone.
-                    if (audioData.size() > 0) {
-                        // Play the next note after the time between this point and the
-                        // next point has elapsed.
-                        // mPlaybackIndex is now the index of the next point.
-                        mHandler.postDelayed(mPlaybackRunnable,
-                                audioData.get(0).getX() - timestamp);
-                    } else {
-                        // The last note gets some duration.
-                        mHandler.postDelayed(mPlaybackRunnable, LAST_TONE_DURATION_MS);
+            private void addToAudioGenerator(ScalarReadingList list) {
+                list.deliver(new StreamConsumer() {
+                    @Override
+                    public void addData(long timestampMillis, double value) {
+                        mLastLoadedTimestamp = timestampMillis;
+                        mAudioGenerator.addData(timestampMillis, value, mYMin, mYMax);
                     }
+                });
+            }
+
+            private void onFirstPageLoaded() {
+                if (mAudioPlaybackListener == null) {
+                    stopPlayback();
+                    return;
                 }
+                mAudioGenerator.startPlaying();
+                mPlaybackStatus = PLAYBACK_STATUS_PLAYING;
+                mAudioPlaybackListener.onAudioPlaybackStarted();
             }
         };
 
         // Load the first set of scalar readings, and start playing as soon as they are loaded.
-        dataController.getScalarReadings(sensorId, /* tier 0 */ 0,
-                TimeRange.oldest(Range.closed(xMinToLoad, xMax)),
-                DATAPOINTS_PER_AUDIO_PLAYBACK_LOAD, new MaybeConsumer<ScalarReadingList>() {
-                    @Override
-                    public void success(ScalarReadingList list) {
-                        if (mAudioPlaybackListener != null) {
-                            audioData.addAll(list.asDataPoints());
-                            mAudioGenerator.startPlaying();
-                            mPlaybackRunnable.run();
-                            mPlaybackStatus = PLAYBACK_STATUS_PLAYING;
-                            mAudioPlaybackListener.onAudioPlaybackStarted();
-                        } else {
-                            stopPlayback();
-                        }
-                    }
-
-                    @Override
-                    public void fail(Exception e) {
-                        if (Log.isLoggable(TAG, Log.ERROR)) {
-                            Log.e(TAG, "Error loading audio playback data");
-                            stopPlayback();
-                        }
-                    }
-                });
-
         mPlaybackStatus = PLAYBACK_STATUS_LOADING;
+        mProgressRunnable.run();
+    }
+
+    private int getPageSize() {
+        return (int) (DATAPOINTS_PER_AUDIO_PLAYBACK_LOAD * mPlaybackSpeed);
     }
 
     public void stopPlayback() {
         if (mPlaybackStatus == PLAYBACK_STATUS_NOT_PLAYING) {
             return;
         }
-        mHandler.removeCallbacks(mPlaybackRunnable);
+        mHandler.removeCallbacks(mProgressRunnable);
         mAudioGenerator.stopPlaying();
         mPlaybackStatus = PLAYBACK_STATUS_NOT_PLAYING;
         if (mAudioPlaybackListener != null) {
@@ -215,4 +205,18 @@ public class AudioPlaybackController {
         mYMin = yMin;
         mYMax = yMax;
     }
+
+    /**
+     * @param speed how many times faster than it was recorded to play data back, between
+     *              {@link SonificationScheduler#MIN_SPEED} and
+     *              {@link SonificationScheduler#MAX_SPEED}. Takes effect immediately.
+     */
+    public void setPlaybackSpeed(double speed) {
+        mPlaybackSpeed = speed;
+        mAudioGenerator.setPlaybackSpeed(speed);
+    }
+
+    public double getPlaybackSpeed() {
+        return mPlaybackSpeed;
+    }
 }
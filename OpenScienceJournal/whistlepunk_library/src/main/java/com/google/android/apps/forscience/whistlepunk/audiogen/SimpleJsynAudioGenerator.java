@@ -23,18 +23,41 @@ import com.jsyn.JSyn;
 import com.jsyn.Synthesizer;
 import com.jsyn.devices.android.AndroidAudioForJSyn;
 import com.jsyn.unitgen.LineOut;
+import com.softsynth.shared.time.TimeStamp;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Generates audio by mapping the input data to a range of frequencies.
+ *
+ * Data is queued with its timestamps and turned into notes on a separate scheduling thread, so
+ * the timing of the notes follows the timing of the data rather than the timing of the calls to
+ * {@link #addData}.
  */
 public class SimpleJsynAudioGenerator implements AudioGenerator {
     // Logging tag is truncated because it cannot be more than 24 characters long.
     private static final String TAG = "SimpleJsynAudioGenerato";
     private static final int SAMPLE_RATE = 44100;
 
+    // Enough for several pages of playback data at the highest speed.
+    private static final int SAMPLE_QUEUE_CAPACITY = 8192;
+
+    // How often queued samples are turned into notes. Must be well under the scheduler's
+    // latency budget.
+    private static final long SCHEDULING_PERIOD_MILLIS = 10;
+
+    // How long stopping waits for a tick in progress to finish.
+    private static final long STOP_SCHEDULING_TIMEOUT_MILLIS = 500;
+
     private final AndroidAudioForJSyn mAudioManager;
     private final Synthesizer mSynth;
-    private JsynUnitVoiceAdapterInterface mAdapter = null;
+    private final SonificationScheduler mScheduler;
+    private ScheduledExecutorService mSchedulingThread;
+    // Read on the scheduling thread.
+    private volatile JsynUnitVoiceAdapterInterface mAdapter = null;
     private LineOut mLineOut;
     private String mSonificationType = "";
 
@@ -47,6 +70,18 @@ public class SimpleJsynAudioGenerator implements AudioGenerator {
         mSynth = JSyn.createSynthesizer(mAudioManager);
         // Add an output mixer.
         mSynth.add(mLineOut = new LineOut());
+        mScheduler = new SonificationScheduler(
+                new SonificationSampleQueue(SAMPLE_QUEUE_CAPACITY),
+                new SonificationScheduler.NoteSink() {
+                    @Override
+                    public void playNote(double value, double min, double max,
+                            double audioTimeSeconds) {
+                        JsynUnitVoiceAdapterInterface adapter = mAdapter;
+                        if (adapter != null) {
+                            adapter.noteOn(value, min, max, new TimeStamp(audioTimeSeconds));
+                        }
+                    }
+                });
         setSonificationType(sonificationType);
     }
 
@@ -56,10 +91,15 @@ public class SimpleJsynAudioGenerator implements AudioGenerator {
         mSynth.start(SAMPLE_RATE, mAudioManager.getDefaultInputDeviceID(), 0,
                 mAudioManager.getDefaultOutputDeviceID(), 2);
         mLineOut.start();
+        startScheduling();
     }
 
     @Override
     public void stopPlaying() {
+        stopScheduling();
+        // The scheduling thread is gone, so the reset can't race a tick, and data queued for the
+        // next startPlaying() survives it.
+        mScheduler.reset();
         if (mLineOut != null) {
             mLineOut.stop();
         }
@@ -68,6 +108,48 @@ public class SimpleJsynAudioGenerator implements AudioGenerator {
         }
     }
 
+    private void startScheduling() {
+        if (mSchedulingThread != null) {
+            return;
+        }
+        mSchedulingThread = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Sonification");
+                thread.setPriority(Thread.MAX_PRIORITY);
+                return thread;
+            }
+        });
+        mSchedulingThread.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mScheduler.tick(mSynth.getCurrentTime());
+                } catch (RuntimeException e) {
+                    // An exception would cancel all future ticks.
+                    Log.e(TAG, "Error scheduling notes", e);
+                }
+            }
+        }, 0, SCHEDULING_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void stopScheduling() {
+        if (mSchedulingThread == null) {
+            return;
+        }
+        mSchedulingThread.shutdownNow();
+        try {
+            // Otherwise a tick still running could overlap the next scheduling thread's.
+            if (!mSchedulingThread.awaitTermination(STOP_SCHEDULING_TIMEOUT_MILLIS,
+                    TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "Scheduling thread did not stop in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mSchedulingThread = null;
+    }
+
     @Override
     public void destroy() {
         reset();
@@ -82,16 +164,49 @@ public class SimpleJsynAudioGenerator implements AudioGenerator {
     }
 
     @Override
-    public void addData(long unusedTimestamp, double value, double min, double max) {
-        // Assume data is only added near now, and in order.
-        // TODO: use Jsyn scheduling to play data in timestamp order.
+    public void addData(long timestamp, double value, double min, double max) {
         if (mAdapter == null) {
             return;
         }
         if (min >= max) {
             return;
         }
-        mAdapter.noteOn(value, min, max, mSynth.createTimeStamp());
+        mScheduler.addSample(timestamp, value, min, max);
+    }
+
+    /**
+     * @param realtime true for live data, false for data read ahead from storage
+     */
+    public void setRealtime(boolean realtime) {
+        mScheduler.setRealtime(realtime);
+    }
+
+    /**
+     * @param speed how many times faster than it was recorded data is played, between
+     *              {@link SonificationScheduler#MIN_SPEED} and
+     *              {@link SonificationScheduler#MAX_SPEED}
+     */
+    public void setPlaybackSpeed(double speed) {
+        mScheduler.setSpeed(speed);
+    }
+
+    public int getQueuedSampleCount() {
+        return mScheduler.getQueuedSampleCount();
+    }
+
+    /**
+     * @return the timestamp of the data being heard now, or
+     * {@link SonificationScheduler#NOTHING_PLAYED}
+     */
+    public long getCurrentTimestamp() {
+        return mScheduler.getTimestampAt(mSynth.getCurrentTime());
+    }
+
+    /**
+     * @return true if all the data added so far has started playing
+     */
+    public boolean isDrained() {
+        return mScheduler.isDrained(mSynth.getCurrentTime());
     }
 
     @Override
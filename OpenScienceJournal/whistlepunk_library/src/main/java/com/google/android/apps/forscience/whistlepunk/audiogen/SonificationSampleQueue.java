@@ -0,0 +1,126 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.audiogen;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed-size queue of timestamped samples waiting to be sonified, passed from the thread that
+ * receives data to the thread that schedules notes without taking locks.  There must be only
+ * one thread calling {@link #offer} and only one thread calling the other methods.  When the
+ * queue is full, new samples are dropped and counted.
+ */
+public class SonificationSampleQueue {
+    private final long[] mTimestamps;
+    private final double[] mValues;
+    private final double[] mMins;
+    private final double[] mMaxes;
+    private final int mMask;
+
+    // Index of the next sample to read, only advanced by the consumer.
+    private final AtomicLong mHead = new AtomicLong();
+    // Index of the next sample to write, only advanced by the producer.
+    private final AtomicLong mTail = new AtomicLong();
+    private final AtomicLong mDropped = new AtomicLong();
+
+    /**
+     * @param capacity the number of samples the queue can hold; must be a power of two
+     */
+    public SonificationSampleQueue(int capacity) {
+        Preconditions.checkArgument(capacity > 0 && Integer.bitCount(capacity) == 1,
+                "capacity must be a power of two");
+        mTimestamps = new long[capacity];
+        mValues = new double[capacity];
+        mMins = new double[capacity];
+        mMaxes = new double[capacity];
+        mMask = capacity - 1;
+    }
+
+    /**
+     * Adds a sample, from the producer thread.
+     * @return false if the queue was full and the sample was dropped
+     */
+    public boolean offer(long timestamp, double value, double min, double max) {
+        long tail = mTail.get();
+        if (tail - mHead.get() > mMask) {
+            mDropped.incrementAndGet();
+            return false;
+        }
+        int index = (int) (tail & mMask);
+        mTimestamps[index] = timestamp;
+        mValues[index] = value;
+        mMins[index] = min;
+        mMaxes[index] = max;
+        // Publishes the writes above to the consumer.
+        mTail.lazySet(tail + 1);
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return mHead.get() == mTail.get();
+    }
+
+    /**
+     * @return the number of samples waiting; safe to call from either thread
+     */
+    public int size() {
+        return (int) (mTail.get() - mHead.get());
+    }
+
+    public long peekTimestamp() {
+        return mTimestamps[headIndex()];
+    }
+
+    public double peekValue() {
+        return mValues[headIndex()];
+    }
+
+    public double peekMin() {
+        return mMins[headIndex()];
+    }
+
+    public double peekMax() {
+        return mMaxes[headIndex()];
+    }
+
+    /**
+     * Removes the oldest sample, after it has been read with the peek methods.
+     */
+    public void remove() {
+        Preconditions.checkState(!isEmpty());
+        // Publishes the freed slot to the producer.
+        mHead.lazySet(mHead.get() + 1);
+    }
+
+    /**
+     * Removes all waiting samples, from the consumer thread.
+     */
+    public void clear() {
+        mHead.lazySet(mTail.get());
+    }
+
+    public long getDroppedCount() {
+        return mDropped.get();
+    }
+
+    private int headIndex() {
+        return (int) (mHead.get() & mMask);
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.audiogen;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Turns timestamped samples into notes at precise audio times.
+ *
+ * Samples are queued with their sensor timestamps from any single thread, and {@link #tick} is
+ * called regularly from a scheduling thread with the synthesizer's current time. The first sample
+ * is scheduled {@link #getLatencySeconds()} into the future, and every later sample keeps its
+ * spacing from that one (divided by the playback speed), so the notes keep the sensor's timing
+ * no matter how unevenly the samples arrived. Samples that fall into the same control period are
+ * averaged into a single note, so fast sensors and fast playback don't flood the synthesizer.
+ */
+public class SonificationScheduler {
+    /**
+     * Plays a single note.
+     */
+    public interface NoteSink {
+        /**
+         * @param audioTimeSeconds the synthesizer time at which the note should start
+         */
+        void playNote(double value, double min, double max, double audioTimeSeconds);
+    }
+
+    public static final long NOTHING_PLAYED = Long.MIN_VALUE;
+
+    // How far ahead of the synthesizer notes are scheduled. Jitter in sample delivery smaller
+    // than this is not audible.
+    public static final double DEFAULT_LATENCY_SECONDS = 0.1;
+
+    // At most one note is started per control period.
+    public static final double DEFAULT_CONTROL_PERIOD_SECONDS = 0.01;
+
+    public static final double MIN_SPEED = 1;
+    public static final double MAX_SPEED = 16;
+
+    private final SonificationSampleQueue mQueue;
+    private final NoteSink mSink;
+    private final double mLatencySeconds;
+    private final double mControlPeriodSeconds;
+
+    private volatile double mSpeed = MIN_SPEED;
+    private volatile boolean mRealtime = true;
+    private volatile boolean mReanchorRequested = false;
+
+    // Anchor pairing a sensor timestamp with the audio time it is played at. Read by other
+    // threads only to show progress.
+    private volatile boolean mAnchored = false;
+    private volatile long mAnchorTimestamp;
+    private volatile double mAnchorAudioTime;
+    private long mLastDequeuedTimestamp = NOTHING_PLAYED;
+    private volatile double mLastNoteAudioTime = Double.NEGATIVE_INFINITY;
+
+    // Samples being averaged into the next note.
+    private volatile int mGroupCount = 0;
+    private double mGroupSum;
+    private double mGroupMin;
+    private double mGroupMax;
+    private double mGroupAudioTime;
+
+    public SonificationScheduler(SonificationSampleQueue queue, NoteSink sink) {
+        this(queue, sink, DEFAULT_LATENCY_SECONDS, DEFAULT_CONTROL_PERIOD_SECONDS);
+    }
+
+    public SonificationScheduler(SonificationSampleQueue queue, NoteSink sink,
+            double latencySeconds, double controlPeriodSeconds) {
+        mQueue = Preconditions.checkNotNull(queue);
+        mSink = Preconditions.checkNotNull(sink);
+        mLatencySeconds = latencySeconds;
+        mControlPeriodSeconds = controlPeriodSeconds;
+    }
+
+    /**
+     * Queues a sample. Call from one thread only.
+     * @return false if the sample was dropped because the scheduler is too far behind
+     */
+    public boolean addSample(long timestamp, double value, double min, double max) {
+        return mQueue.offer(timestamp, value, min, max);
+    }
+
+    /**
+     * @param realtime true if samples arrive as they are measured, in which case the schedule is
+     *                 pulled back whenever samples start arriving further ahead than the latency
+     *                 budget; false if samples are read ahead from storage.
+     */
+    public void setRealtime(boolean realtime) {
+        mRealtime = realtime;
+    }
+
+    /**
+     * Sets how many milliseconds of sensor time pass per millisecond of audio.
+     */
+    public void setSpeed(double speed) {
+        Preconditions.checkArgument(speed >= MIN_SPEED && speed <= MAX_SPEED);
+        mSpeed = speed;
+        mReanchorRequested = true;
+    }
+
+    public double getSpeed() {
+        return mSpeed;
+    }
+
+    public double getLatencySeconds() {
+        return mLatencySeconds;
+    }
+
+    /**
+     * Drops all queued samples and forgets the schedule, so that the next sample is played as if
+     * it were the first. Call from the thread that calls {@link #tick}, or once that thread has
+     * stopped; samples queued afterwards are kept.
+     */
+    public void reset() {
+        mQueue.clear();
+        mReanchorRequested = false;
+        mAnchored = false;
+        mGroupCount = 0;
+        mLastDequeuedTimestamp = NOTHING_PLAYED;
+        // The synthesizer's clock may restart from zero, so earlier notes say nothing about when
+        // the next one can be played.
+        mLastNoteAudioTime = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * @return the number of samples waiting to be scheduled
+     */
+    public int getQueuedSampleCount() {
+        return mQueue.size();
+    }
+
+    /**
+     * Schedules every queued sample due before {@code audioNowSeconds} plus the latency budget.
+     * Call regularly, from a single thread, at least once per latency budget.
+     * @return the number of notes scheduled
+     */
+    public int tick(double audioNowSeconds) {
+        if (mReanchorRequested) {
+            mReanchorRequested = false;
+            mAnchored = false;
+        }
+        double horizon = audioNowSeconds + mLatencySeconds;
+        int notes = 0;
+        while (!mQueue.isEmpty()) {
+            long timestamp = mQueue.peekTimestamp();
+            if (!mAnchored || timestamp < mLastDequeuedTimestamp) {
+                anchor(timestamp, audioNowSeconds);
+            }
+            double audioTime = toAudioTime(timestamp);
+            if (audioTime < audioNowSeconds
+                    || (mRealtime && audioTime > horizon + mLatencySeconds)) {
+                // Too late to play on schedule, or arriving ahead of schedule: start over from
+                // this sample.
+                anchor(timestamp, audioNowSeconds);
+                audioTime = toAudioTime(timestamp);
+            }
+            if (audioTime > horizon) {
+                break;
+            }
+            if (mGroupCount > 0 && audioTime - mGroupAudioTime >= mControlPeriodSeconds) {
+                playGroup();
+                notes++;
+            }
+            if (mGroupCount == 0) {
+                mGroupAudioTime = Math.max(audioTime, mLastNoteAudioTime + mControlPeriodSeconds);
+                mGroupSum = 0;
+            }
+            mGroupSum += mQueue.peekValue();
+            mGroupMin = mQueue.peekMin();
+            mGroupMax = mQueue.peekMax();
+            mGroupCount++;
+            mLastDequeuedTimestamp = timestamp;
+            mQueue.remove();
+        }
+        // Once no more samples can join the pending note, play it.
+        if (mGroupCount > 0 && horizon - mGroupAudioTime >= mControlPeriodSeconds) {
+            playGroup();
+            notes++;
+        }
+        return notes;
+    }
+
+    /**
+     * @return true if nothing is queued and every scheduled note has started. Safe to call from
+     * any thread.
+     */
+    public boolean isDrained(double audioNowSeconds) {
+        return mQueue.isEmpty() && mGroupCount == 0 && audioNowSeconds >= mLastNoteAudioTime;
+    }
+
+    /**
+     * @return the sensor timestamp being heard at {@code audioNowSeconds}, or
+     * {@link #NOTHING_PLAYED}. Safe to call from any thread.
+     */
+    public long getTimestampAt(double audioNowSeconds) {
+        if (!mAnchored || audioNowSeconds < mAnchorAudioTime) {
+            return NOTHING_PLAYED;
+        }
+        return mAnchorTimestamp + (long) ((audioNowSeconds - mAnchorAudioTime) * 1000 * mSpeed);
+    }
+
+    private void anchor(long timestamp, double audioNowSeconds) {
+        mAnchorTimestamp = timestamp;
+        mAnchorAudioTime = audioNowSeconds + mLatencySeconds;
+        mAnchored = true;
+    }
+
+    private double toAudioTime(long timestamp) {
+        return mAnchorAudioTime + (timestamp - mAnchorTimestamp) / 1000.0 / mSpeed;
+    }
+
+    private void playGroup() {
+        mSink.playNote(mGroupSum / mGroupCount, mGroupMin, mGroupMax, mGroupAudioTime);
+        mLastNoteAudioTime = mGroupAudioTime;
+        mGroupCount = 0;
+    }
+}
@@ -16,18 +16,30 @@
 
 package com.google.android.apps.forscience.whistlepunk.audiogen;
 
-import com.google.android.apps.forscience.whistlepunk.audiogen.voices
-        .DefaultVoice;
+import com.google.android.apps.forscience.whistlepunk.audiogen.voices.AmplitudeVoice;
 import com.google.android.apps.forscience.whistlepunk.audiogen.voices.ConductorVoice;
 import com.google.android.apps.forscience.whistlepunk.audiogen.voices
-        .NotesVoice;
-import com.google.android.apps.forscience.whistlepunk.audiogen.voices
-        .AmplitudeVoice;
-import com.google.android.apps.forscience.whistlepunk.audiogen.voices.ScaleVoice;
+        .DataToScalePitchSimpleJsynUnitVoiceAdapter;
+import com.google.android.apps.forscience.whistlepunk.audiogen.voices.DefaultVoice;
+import com.google.android.apps.forscience.whistlepunk.audiogen.voices.NotesVoice;
+import com.google.android.apps.forscience.whistlepunk.audiogen.voices.PitchTable;
 import com.jsyn.Synthesizer;
 
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Registry of the voices that data can be sonified with, by sonification type.
+ */
 public class SonificationTypeAdapterFactory {
 
+    /**
+     * Creates a new voice of one sonification type.
+     */
+    public interface VoiceFactory {
+        JsynUnitVoiceAdapterInterface createVoice(Synthesizer synth);
+    }
+
     public static final String DEFAULT_SONIFICATION_TYPE = "d2p";
     public static final String SCALE_SONIFICATION_TYPE = "d2ps";
     public static final String NOTES_SONIFICATION_TYPE = "d2pe";
@@ -40,22 +52,64 @@ public class SonificationTypeAdapterFactory {
             SCALE_SONIFICATION_TYPE, NOTES_SONIFICATION_TYPE, CONDUCTOR_SONIFICATION_TYPE,
             AMPLITUDE_SONIFICATION_TYPE};
 
-    public static JsynUnitVoiceAdapterInterface getSonificationTypeAdapter(
-            Synthesizer synth, String sonification_type) {
-        if (sonification_type.equals(DEFAULT_SONIFICATION_TYPE)) {
-            return new DefaultVoice(synth);
-        } else if (sonification_type.equals(AMPLITUDE_SONIFICATION_TYPE)) {
-            return new AmplitudeVoice(synth);
-        } else if (sonification_type.equals(NOTES_SONIFICATION_TYPE)) {
-            return new NotesVoice(synth);
-        } else if (sonification_type.equals(SCALE_SONIFICATION_TYPE)) {
-            return new ScaleVoice(synth);
-        } else if (sonification_type.equals(CONDUCTOR_SONIFICATION_TYPE)) {
+    private static final Map<String, VoiceFactory> VOICE_FACTORIES = new HashMap<>();
+
+    static {
+        register(DEFAULT_SONIFICATION_TYPE, new VoiceFactory() {
+            @Override
+            public JsynUnitVoiceAdapterInterface createVoice(Synthesizer synth) {
+                return new DefaultVoice(synth);
+            }
+        });
+        register(AMPLITUDE_SONIFICATION_TYPE, new VoiceFactory() {
+            @Override
+            public JsynUnitVoiceAdapterInterface createVoice(Synthesizer synth) {
+                return new AmplitudeVoice(synth);
+            }
+        });
+        register(NOTES_SONIFICATION_TYPE, new VoiceFactory() {
+            @Override
+            public JsynUnitVoiceAdapterInterface createVoice(Synthesizer synth) {
+                return new NotesVoice(synth);
+            }
+        });
+        // Pentatonic C major, over the same frequencies as the default voice.
+        register(SCALE_SONIFICATION_TYPE, scaleVoice(PitchTable.forFrequencies(
+                PitchTable.PENTATONIC_SCALE, JsynUnitVoiceAdapter.FREQ_MIN,
+                JsynUnitVoiceAdapter.FREQ_MAX)));
+        register(CONDUCTOR_SONIFICATION_TYPE, new VoiceFactory() {
+            @Override
+            public JsynUnitVoiceAdapterInterface createVoice(Synthesizer synth) {
                 return new ConductorVoice(synth);
-        } else {
-            return null;
-        }
+            }
+        });
+    }
+
+    /**
+     * Makes {@code sonificationType} create voices with {@code factory}. A type that should be
+     * selectable by users must also be added to {@link #SONIFICATION_TYPES} and the matching
+     * string arrays.
+     */
+    public static void register(String sonificationType, VoiceFactory factory) {
+        VOICE_FACTORIES.put(sonificationType, factory);
     }
 
+    /**
+     * @return a factory for voices which play the pitches in {@code pitchTable}. The table is
+     * shared by all of the voices, so it is only computed once.
+     */
+    public static VoiceFactory scaleVoice(final PitchTable pitchTable) {
+        return new VoiceFactory() {
+            @Override
+            public JsynUnitVoiceAdapterInterface createVoice(Synthesizer synth) {
+                return new DataToScalePitchSimpleJsynUnitVoiceAdapter(synth, pitchTable);
+            }
+        };
+    }
 
+    public static JsynUnitVoiceAdapterInterface getSonificationTypeAdapter(
+            Synthesizer synth, String sonification_type) {
+        VoiceFactory factory = VOICE_FACTORIES.get(sonification_type);
+        return factory == null ? null : factory.createVoice(synth);
+    }
 }
@@ -21,7 +21,6 @@ import android.util.Log;
 import com.google.android.apps.forscience.whistlepunk.audiogen.JsynUnitVoiceAdapter;
 import com.jsyn.Synthesizer;
 import com.jsyn.unitgen.EnvelopeDAHDSR;
-import com.softsynth.math.AudioMath;
 import com.softsynth.shared.time.TimeStamp;
 
 /**
@@ -38,15 +37,12 @@ public class ConductorVoice extends JsynUnitVoiceAdapter {
     public static final String TAG = "ConductorVoice";
     private static final boolean LOCAL_LOGV = false;
 
-    private final int[] mPitches;
-
-    private static final int scale[] = {
-            0 /* C */, 2 /* D */, 4 /* E */, 7 /* G */, 9 /* A */}; // pentatonic scale
     // Range of generated frequencies is one octave
     protected static final double FREQ_MIN = 261.63;
     protected static final double FREQ_MAX = 440.0;
-    private static final int PITCH_MIN = (int) Math.floor(AudioMath.frequencyToPitch(FREQ_MIN));
-    private static final int PITCH_MAX = (int) Math.floor(AudioMath.frequencyToPitch(FREQ_MAX));
+    // Shared by every conductor voice.
+    private static final PitchTable PITCHES = PitchTable.forFrequencies(
+            PitchTable.PENTATONIC_SCALE, FREQ_MIN, FREQ_MAX);
     private double min = Double.MAX_VALUE;
     private double max = Double.MIN_VALUE;
     private int prevIndex = -1;
@@ -55,7 +51,6 @@ public class ConductorVoice extends JsynUnitVoiceAdapter {
     double oldValue = Double.MIN_VALUE;
 
     public ConductorVoice(Synthesizer synth) {
-        mPitches = PitchGenerator.generatePitches(scale, PITCH_MIN, PITCH_MAX);
         mVoice = new SineEnvelope();
         synth.add(mVoice);
         EnvelopeDAHDSR DAHDSR = ((SineEnvelope)getVoice()).getDAHDSR();
@@ -91,12 +86,12 @@ public class ConductorVoice extends JsynUnitVoiceAdapter {
             if (LOCAL_LOGV && oldValue != value) {
                 Log.v(TAG, "value: " + value + " above threshold: " + thresh);
             }
-            int index = (int) Math.floor((value - thresh) / (max - thresh) * (mPitches.length - 1));
+            int index = PITCHES.indexOf((value - thresh) / (max - thresh));
             if (index != prevIndex) {
                 if (LOCAL_LOGV) {
                     Log.v(TAG, "New Index: " + index);
                 }
-                double freq = AudioMath.pitchToFrequency(mPitches[index]);
+                double freq = PITCHES.getFrequency(index);
                 mVoice.noteOn(freq, AMP_VALUE, timeStamp);
                 playing = true;
                 prevIndex = index;
@@ -22,7 +22,6 @@ import com.google.android.apps.forscience.whistlepunk.audiogen.JsynUnitVoiceAdap
 import com.google.android.apps.forscience.whistlepunk.audiogen.JsynUnitVoiceAdapterInterface;
 import com.google.common.primitives.Doubles;
 import com.jsyn.Synthesizer;
-import com.softsynth.math.AudioMath;
 import com.softsynth.shared.time.TimeStamp;
 
 import java.util.ArrayList;
@@ -32,28 +31,33 @@ import java.util.Arrays;
  * Base class to adapt the SimpleJsynUnitVoice to the SimpleJsynAudioGenerator using a scale.
  * <p>
  * Adapt the SimpleJsynUnitVoice to the SimpleJsynAudioGenerator.
- * This implementation does nothing.
+ * This implementation maps the data from the range (min-max) linearly to the pitches in a
+ * {@link PitchTable}, and does nothing if the table is empty.
  * </p>
  */
 public class DataToScalePitchSimpleJsynUnitVoiceAdapter extends JsynUnitVoiceAdapter {
-    protected final int[] mPitches;
+    protected final PitchTable mPitchTable;
 
     public DataToScalePitchSimpleJsynUnitVoiceAdapter(Synthesizer synth, int[] scale,
                                                               int pitchMin, int pitchMax) {
-        mPitches = PitchGenerator.generatePitches(scale, pitchMin, pitchMax);
+        this(synth, new PitchTable(scale, pitchMin, pitchMax));
+    }
+
+    /**
+     * @param pitchTable the pitches to play; may be shared with other voices
+     */
+    public DataToScalePitchSimpleJsynUnitVoiceAdapter(Synthesizer synth, PitchTable pitchTable) {
+        mPitchTable = pitchTable;
         mVoice = new SimpleJsynUnitVoice();
         synth.add(mVoice);
     }
 
     public void noteOn(double value, double min, double max, TimeStamp timeStamp) {
         // Default implementation (or any implementation with no pitches) does nothing.
-        if (mPitches.length == 0) return;
-        // Range checking, in case min or max is higher or lower than value (respectively).
-        if (value < min) value = min;
-        if (value > max) value = max;
+        if (mPitchTable.size() == 0) return;
 
-        int index = (int) Math.floor((value - min) / (max - min) * (mPitches.length-1));
-        double freq = AudioMath.pitchToFrequency(mPitches[index]);
+        // The table clamps values outside of min-max.
+        double freq = mPitchTable.frequencyOf((value - min) / (max - min));
         mVoice.noteOn(freq, AMP_VALUE, timeStamp);
     }
-}
\ No newline at end of file
+}
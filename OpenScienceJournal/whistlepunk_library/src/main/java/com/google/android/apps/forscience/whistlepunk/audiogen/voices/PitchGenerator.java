@@ -18,9 +18,6 @@ package com.google.android.apps.forscience.whistlepunk.audiogen.voices;
 
 import android.util.Log;
 
-import com.google.common.primitives.Ints;
-import java.util.ArrayList;
-
 /**
  * Given a scale (an integer array of zero-based note indices), expand the scale to include all
  * pitches in [pitchMin, pitchMax] that are valid members of the scale.
@@ -36,17 +33,20 @@ import java.util.ArrayList;
 class PitchGenerator {
 
     public static int[] generatePitches(int scale[], int pitchMin, int pitchMax) {
-        ArrayList<Integer> pitches = new ArrayList<>();
-
+        // Count first, so that the pitches can go straight into an int array.
+        int count = 0;
         for (int pitch = pitchMin; pitch <= pitchMax; pitch += 12) {
-            for (int i = 0; i < scale.length; i++) {
-                if (pitch + scale[i] > pitchMax) {
-                    break;
-                }
-                pitches.add(pitch + scale[i]);
+            for (int i = 0; i < scale.length && pitch + scale[i] <= pitchMax; i++) {
+                count++;
             }
         }
-
-        return Ints.toArray(pitches);
+        int[] pitches = new int[count];
+        int index = 0;
+        for (int pitch = pitchMin; pitch <= pitchMax; pitch += 12) {
+            for (int i = 0; i < scale.length && pitch + scale[i] <= pitchMax; i++) {
+                pitches[index++] = pitch + scale[i];
+            }
+        }
+        return pitches;
     }
 }
@@ -0,0 +1,91 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.audiogen.voices;
+
+import com.softsynth.math.AudioMath;
+
+/**
+ * The frequencies of every pitch of a scale within a range, computed once so that mapping a data
+ * point to a note is a multiply and an array lookup instead of log and pow calls per sample.
+ * Tables are immutable and can be shared by any number of voices.
+ */
+public class PitchTable {
+    public static final int[] PENTATONIC_SCALE = {
+            0 /* C */, 2 /* D */, 4 /* E */, 7 /* G */, 9 /* A */ };
+
+    private final int[] mPitches;
+    private final double[] mFrequencies;
+
+    /**
+     * @param scale see {@link PitchGenerator#generatePitches}
+     * @param pitchMin the lowest pitch in the table
+     * @param pitchMax the highest pitch the table may contain
+     */
+    public PitchTable(int[] scale, int pitchMin, int pitchMax) {
+        mPitches = PitchGenerator.generatePitches(scale, pitchMin, pitchMax);
+        mFrequencies = new double[mPitches.length];
+        for (int i = 0; i < mPitches.length; i++) {
+            mFrequencies[i] = AudioMath.pitchToFrequency(mPitches[i]);
+        }
+    }
+
+    /**
+     * Makes a table of the pitches of {@code scale} between the pitches nearest below
+     * {@code freqMin} and {@code freqMax}.
+     */
+    public static PitchTable forFrequencies(int[] scale, double freqMin, double freqMax) {
+        return new PitchTable(scale, (int) Math.floor(AudioMath.frequencyToPitch(freqMin)),
+                (int) Math.floor(AudioMath.frequencyToPitch(freqMax)));
+    }
+
+    public int size() {
+        return mPitches.length;
+    }
+
+    public int getPitch(int index) {
+        return mPitches[index];
+    }
+
+    public double getFrequency(int index) {
+        return mFrequencies[index];
+    }
+
+    /**
+     * @param normalized a value scaled so that the bottom of its range is 0 and the top is 1.
+     *                   Values outside that range are clamped.
+     * @return the index of the table entry for that value, or -1 if the table is empty
+     */
+    public int indexOf(double normalized) {
+        if (mPitches.length == 0) {
+            return -1;
+        }
+        if (normalized < 0) {
+            normalized = 0;
+        } else if (normalized > 1) {
+            normalized = 1;
+        }
+        return (int) Math.floor(normalized * (mPitches.length - 1));
+    }
+
+    /**
+     * @return the frequency of the table entry for {@code normalized}; see {@link #indexOf}
+     */
+    public double frequencyOf(double normalized) {
+        return mFrequencies[indexOf(normalized)];
+    }
+}
@@ -238,6 +238,9 @@ public class ConnectableSensorRegistry {
 
         for (final Map.Entry<String, ExternalSensorDiscoverer> entry : mDiscoverers.entrySet()) {
             ExternalSensorDiscoverer discoverer = entry.getValue();
+            if (clearDeviceCache) {
+                discoverer.clearScanCache();
+            }
             startScanning(entry.getKey(), discoverer, pool, keysSeen, true);
         }
         mPresenter.refreshScanningUI();
@@ -274,6 +277,16 @@ public class ConnectableSensorRegistry {
                         }
                     }
 
+                    @Override
+                    public void onDeviceLost(ExternalSensorDiscoverer.DiscoveredDevice device) {
+                        getAvailableGroup().removeAvailableDevice(device.getSpec());
+                    }
+
+                    @Override
+                    public void onSensorLost(ExternalSensorDiscoverer.DiscoveredSensor sensor) {
+                        ConnectableSensorRegistry.this.onSensorLost(sensor, keysSeen);
+                    }
+
                     @Override
                     public void onScanDone() {
                         pool.taskDone(providerId);
@@ -344,6 +357,18 @@ public class ConnectableSensorRegistry {
         }
     }
 
+    private void onSensorLost(ExternalSensorDiscoverer.DiscoveredSensor ds,
+            Set<String> availableKeysSeen) {
+        String sensorKey = findSensorKey(ConnectableSensor.disconnected(ds.getSpec()));
+        if (sensorKey == null || mSensors.get(sensorKey).isPaired()) {
+            // Paired sensors stay listed whether or not a scan finds them.
+            return;
+        }
+        availableKeysSeen.remove(sensorKey);
+        mMostRecentlySeen.remove(sensorKey);
+        getAvailableGroup().removeSensor(sensorKey);
+    }
+
     private void replaceSensorDataDuringScan(final String sensorKey, ConnectableSensor oldSensor,
             final ExternalSensorDiscoverer.DiscoveredSensor newSensor) {
         mSettingsIntents.put(sensorKey, newSensor.getSettingsInterface());
@@ -228,6 +228,11 @@ public class ExpandableDeviceAdapter extends
         // Don't need anything here; we'll grab from DeviceRegistry if this is My Device
     }
 
+    @Override
+    public void removeAvailableDevice(InputDeviceSpec device) {
+        // My Devices stay listed whether or not a scan finds them
+    }
+
     @Override
     public void setMyDevices(List<InputDeviceSpec> myDevices) {
         List<InputDeviceSpec> unaccountedDevices = new ArrayList<>(myDevices);
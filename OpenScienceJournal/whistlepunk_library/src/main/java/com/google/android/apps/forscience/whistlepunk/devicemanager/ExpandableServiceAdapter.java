@@ -262,6 +262,17 @@ public class ExpandableServiceAdapter extends
         }
     }
 
+    @Override
+    public void removeAvailableDevice(InputDeviceSpec device) {
+        ArrayList<InputDeviceSpec> devices = Lists.newArrayList(device);
+        for (int i = 0; i < mParentItemList.size(); i++) {
+            List<Integer> removedIndices = mParentItemList.get(i).removeAnyOf(devices);
+            for (Integer childIndex : removedIndices) {
+                notifyChildItemRemoved(i, childIndex);
+            }
+        }
+    }
+
     /**
      * Set which devices are going to be listed in "My Devices" (and therefore should _not_ be
      * listed as "available".)
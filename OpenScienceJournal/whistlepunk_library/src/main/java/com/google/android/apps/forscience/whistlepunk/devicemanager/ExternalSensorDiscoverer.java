@@ -102,6 +102,18 @@ public interface ExternalSensorDiscoverer {
          */
         void onSensorFound(DiscoveredSensor sensor);
 
+        /**
+         * Called when a device that was found by an earlier scan is no longer there (on the UI
+         * thread).
+         */
+        void onDeviceLost(DiscoveredDevice device);
+
+        /**
+         * Called when a sensor that was found by an earlier scan is no longer there (on the UI
+         * thread).
+         */
+        void onSensorLost(DiscoveredSensor sensor);
+
         /**
          * Called when all devices have been discovered on the service with the given id, or the
          * scan has timed out.  No more devices are forthcoming.
@@ -125,6 +137,11 @@ public interface ExternalSensorDiscoverer {
      */
     void stopScanning();
 
+    /**
+     * Forgets anything kept from earlier scans, so that the next scan finds everything afresh.
+     */
+    void clearScanCache();
+
     /**
      * @return the provider that can be used to generate a SensorChoice from the stored spec.
      */
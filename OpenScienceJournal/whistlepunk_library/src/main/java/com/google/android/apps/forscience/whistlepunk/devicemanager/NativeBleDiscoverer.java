@@ -158,6 +158,11 @@ public class NativeBleDiscoverer implements ExternalSensorDiscoverer {
         return DeviceDiscoverer.getNewInstance(context);
     }
 
+    @Override
+    public void clearScanCache() {
+        // Nothing is kept between BLE scans
+    }
+
     @Override
     public void stopScanning() {
         if (mDeviceDiscoverer != null) {
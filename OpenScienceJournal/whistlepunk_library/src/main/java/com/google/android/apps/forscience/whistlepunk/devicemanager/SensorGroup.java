@@ -58,6 +58,11 @@ public interface SensorGroup {
 
     void addAvailableDevice(ExternalSensorDiscoverer.DiscoveredDevice device);
 
+    /**
+     * Stops listing a device added by {@link #addAvailableDevice}, which a scan no longer finds.
+     */
+    void removeAvailableDevice(InputDeviceSpec device);
+
     // TODO: too many methods that only some implementors care about
     void setMyDevices(List<InputDeviceSpec> device);
 
@@ -32,6 +32,7 @@ import com.google.android.apps.forscience.whistlepunk.LoggingConsumer;
 import com.google.android.apps.forscience.whistlepunk.R;
 import com.google.android.apps.forscience.whistlepunk.StatsAccumulator;
 import com.google.android.apps.forscience.whistlepunk.data.GoosciSensorLayout;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.SparklineRecorder;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamConsumer;
 import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarReadingList;
 import com.google.android.apps.forscience.whistlepunk.sensordb.TimeRange;
@@ -218,22 +219,25 @@ public class CropHelper {
         mCropStatsExecutor.execute(runnable);
     }
 
-    // A class that recalculates and resaves the stats in a run.
+    // A class that recalculates and resaves the stats and preview summary in a run.
     private class StatsAdjuster {
         private final String mSensorId;
         private final ExperimentRun mExperimentRun;
         private StatsAccumulator mStatsAccumulator;
+        private SparklineRecorder mSparklineRecorder;
         StreamConsumer mStreamConsumer;
         private Context mContext;
 
         public StatsAdjuster(String sensorId, ExperimentRun run, Context context) {
             mStatsAccumulator = new StatsAccumulator();
+            mSparklineRecorder = new SparklineRecorder();
             mSensorId = sensorId;
             mExperimentRun = run;
             mStreamConsumer = new StreamConsumer() {
                 @Override
                 public void addData(long timestampMillis, double value) {
                     mStatsAccumulator.updateRecordingStreamStats(timestampMillis, value);
+                    mSparklineRecorder.addData(timestampMillis, value);
                 }
             };
             mContext = context;
@@ -246,8 +250,9 @@ public class CropHelper {
         }
 
         private void addReadingsToStats(final DataController dc, final TimeRange range) {
-            dc.getScalarReadings(mSensorId, /* tier 0 */ 0, range,
-                    DATAPOINTS_PER_LOAD, new MaybeConsumer<ScalarReadingList>() {
+            dc.getScalarReadings(mSensorId, /* tier 0 */ 0, range, DATAPOINTS_PER_LOAD,
+                    DataController.ReadPriority.BACKGROUND,
+                    new MaybeConsumer<ScalarReadingList>() {
                         @Override
                         public void success(ScalarReadingList list) {
                             list.deliver(mStreamConsumer);
@@ -263,15 +268,25 @@ public class CropHelper {
                                 // Note that we only need to save the stats we have changed, because
                                 // each stat is stored separately. We do not need to update stats
                                 // like zoom tiers and zoom levels.
-                                RunStats runStats = mStatsAccumulator.makeSaveableStats();
+                                final RunStats runStats =
+                                        mStatsAccumulator.makeSaveableStats();
                                 runStats.putStat(StatsAccumulator.KEY_STATUS,
                                         StatsAccumulator.STATUS_VALID);
-                                dc.updateRunStats(mExperimentRun.getRunId(), mSensorId, runStats,
-                                        new LoggingConsumer<Success>(TAG, "update stats") {
+                                // Replace the preview first, so that the stats broadcast
+                                // redraws run cards from the cropped summary.  The stats are
+                                // saved even if the preview can't be.
+                                dc.updateSparkline(mExperimentRun.getRunId(), mSensorId,
+                                        mSparklineRecorder.makeSparkline(),
+                                        new LoggingConsumer<Success>(TAG, "update sparkline") {
                                             @Override
                                             public void success(Success value) {
-                                                sendStatsUpdatedBroadcast(mContext, mSensorId,
-                                                        mExperimentRun.getRunId());
+                                                saveStats(dc, runStats);
+                                            }
+
+                                            @Override
+                                            public void fail(Exception e) {
+                                                super.fail(e);
+                                                saveStats(dc, runStats);
                                             }
                                         });
                             } else {
@@ -288,6 +303,17 @@ public class CropHelper {
                         }
                     });
         }
+
+        private void saveStats(DataController dc, RunStats runStats) {
+            dc.updateRunStats(mExperimentRun.getRunId(), mSensorId, runStats,
+                    new LoggingConsumer<Success>(TAG, "update stats") {
+                        @Override
+                        public void success(Success value) {
+                            sendStatsUpdatedBroadcast(mContext, mSensorId,
+                                    mExperimentRun.getRunId());
+                        }
+                    });
+        }
     }
 
     // Use a Broadcast to tell RunReviewFragment or ExperimentDetailsFragment or anyone who uses
@@ -0,0 +1,98 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.metadata;
+
+import com.google.common.base.Objects;
+
+/**
+ * What an experiment list shows about an experiment's contents, kept up to date by
+ * {@link MetaDataManager} whenever runs or labels change so that it never has to be derived from
+ * the runs themselves.
+ */
+public class ExperimentSummary {
+    public static final long NO_RUNS = -1;
+
+    private final String mExperimentId;
+    private final int mRunCount;
+    private final long mLastRunTimestamp;
+    private final String mCoverPicturePath;
+    private final int mLabelCount;
+
+    public ExperimentSummary(String experimentId, int runCount, long lastRunTimestamp,
+            String coverPicturePath, int labelCount) {
+        mExperimentId = experimentId;
+        mRunCount = runCount;
+        mLastRunTimestamp = lastRunTimestamp;
+        mCoverPicturePath = coverPicturePath;
+        mLabelCount = labelCount;
+    }
+
+    public String getExperimentId() {
+        return mExperimentId;
+    }
+
+    /**
+     * @return how many runs the experiment has, not counting archived ones.
+     */
+    public int getRunCount() {
+        return mRunCount;
+    }
+
+    /**
+     * @return when the most recent unarchived run starts, counting from its crop if it has one,
+     * or {@link #NO_RUNS}.
+     */
+    public long getLastRunTimestamp() {
+        return mLastRunTimestamp;
+    }
+
+    /**
+     * @return the path of the picture to show for the experiment, or null if it has none. This is
+     * the first picture in the most recent run that has one, or else the first picture anywhere
+     * in the experiment.
+     */
+    public String getCoverPicturePath() {
+        return mCoverPicturePath;
+    }
+
+    /**
+     * @return how many notes (text, picture or trigger labels) the experiment has.
+     */
+    public int getLabelCount() {
+        return mLabelCount;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof ExperimentSummary)) {
+            return false;
+        }
+        ExperimentSummary other = (ExperimentSummary) o;
+        return Objects.equal(mExperimentId, other.mExperimentId)
+                && mRunCount == other.mRunCount
+                && mLastRunTimestamp == other.mLastRunTimestamp
+                && Objects.equal(mCoverPicturePath, other.mCoverPicturePath)
+                && mLabelCount == other.mLabelCount;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(mExperimentId, mRunCount, mLastRunTimestamp, mCoverPicturePath,
+                mLabelCount);
+    }
+}
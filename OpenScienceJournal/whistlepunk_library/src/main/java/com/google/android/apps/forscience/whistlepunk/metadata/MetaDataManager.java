@@ -38,6 +38,12 @@ public interface MetaDataManager {
      */
     public List<Project> getProjects(int maxNumber, boolean archived);
 
+    /**
+     * @return up to maxNumber saved projects, most recently used first, starting with the one
+     * that follows {@code after} in that order (or with the first, if {@code after} is null).
+     */
+    public List<Project> getProjects(int maxNumber, boolean archived, Project after);
+
     /**
      * @return a new project with a random ID.
      */
@@ -75,6 +81,14 @@ public interface MetaDataManager {
      */
     public List<Experiment> getExperimentsForProject(Project project, boolean includeArchived);
 
+    /**
+     * @return up to maxNumber experiments for a given project, most recently used first, starting
+     * with the one that follows {@code after} in that order (or with the first, if {@code after}
+     * is null).
+     */
+    public List<Experiment> getExperimentsForProject(Project project, boolean includeArchived,
+            Experiment after, int maxNumber);
+
     /**
      * Saves label to storage.
      */
@@ -96,8 +110,31 @@ public interface MetaDataManager {
 
     RunStats getStats(String startLabelId, String sensorId);
 
+    /**
+     * Stores a preview summary of a sensor's data in a run, replacing any earlier one.
+     */
+    void setSparkline(String runId, String sensorId, GoosciSparkline.Sparkline sparkline);
+
+    /**
+     * @return the summary stored by {@link #setSparkline}, or null if there is none (for example,
+     * for runs recorded before summaries were kept).
+     */
+    GoosciSparkline.Sparkline getSparkline(String runId, String sensorId);
+
     List<String> getExperimentRunIds(String experimentId, boolean includeArchived);
 
+    /**
+     * @return up to maxNumber run IDs for a given experiment, newest first, starting with the run
+     * that follows the one with ID {@code afterRunId} (or with the newest, if it is null).
+     */
+    List<String> getExperimentRunIds(String experimentId, boolean includeArchived,
+            String afterRunId, int maxNumber);
+
+    /**
+     * @return the summary of every experiment in the project, keyed by experiment ID.
+     */
+    Map<String, ExperimentSummary> getExperimentSummaries(String projectId);
+
     /**
      * Updates the value and timestamp of a label in the database.
      * @param updatedLabel
@@ -19,6 +19,7 @@ package com.google.android.apps.forscience.whistlepunk.metadata;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteStatement;
@@ -43,6 +44,7 @@ import com.google.protobuf.nano.InvalidProtocolBufferNanoException;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -86,7 +88,62 @@ public class SimpleMetaDataManager implements MetaDataManager {
         String EXPERIMENT_SENSOR_LAYOUT = "experiment_sensor_layout";
         String SENSOR_TRIGGERS = "sensor_triggers";
         String MY_DEVICES = "my_devices";
-    }
+        String RUN_SPARKLINES = "run_sparklines";
+        String EXPERIMENT_SUMMARIES = "experiment_summaries";
+    }
+
+    // Selections used on hot paths.  Each needs an index; see DatabaseHelper#createIndexes.
+    private static final String LABELS_BY_EXPERIMENT = LabelColumns.EXPERIMENT_ID + "=?";
+    private static final String LABELS_BY_START_LABEL = LabelColumns.START_LABEL_ID + "=?";
+    private static final String LABELS_BY_LABEL_ID = LabelColumns.LABEL_ID + "=?";
+    private static final String EXPERIMENTS_BY_PROJECT = ExperimentColumns.PROJECT_ID + "=?";
+    private static final String STATS_BY_RUN_AND_SENSOR = RunStatsColumns.START_LABEL_ID
+            + " =? AND " + RunStatsColumns.SENSOR_TAG + " =?";
+    // Runs joined to their start labels, which is where the experiment ID is stored.
+    private static final String RUNS_WITH_START_LABELS = Tables.RUNS + " AS r JOIN "
+            + Tables.LABELS + " AS l ON " + RunsColumns.RUN_ID + "=" + LabelColumns.START_LABEL_ID;
+    private static final String RUNS_BY_EXPERIMENT = LabelColumns.LABEL_ID + "="
+            + LabelColumns.START_LABEL_ID + " AND " + LabelColumns.EXPERIMENT_ID + "=?";
+    private static final String UNARCHIVED_RUNS = "(" + RunsColumns.ARCHIVED + "=0 OR "
+            + RunsColumns.ARCHIVED + " IS NULL)";
+    // Keysets for paged lists: the rows that sort after a given row in each list's order.
+    private static final String PROJECTS_AFTER = "(" + ProjectColumns.LAST_USED_TIME + "<? OR ("
+            + ProjectColumns.LAST_USED_TIME + "=? AND " + BaseColumns._ID + "<?))";
+    private static final String EXPERIMENTS_AFTER = "(" + ExperimentColumns.LAST_USED_TIME
+            + "<? OR (" + ExperimentColumns.LAST_USED_TIME + "=? AND " + BaseColumns._ID
+            + "<?))";
+    private static final String RUN_TIMESTAMP_BY_ID = "(SELECT " + RunsColumns.TIMESTAMP
+            + " FROM " + Tables.RUNS + " WHERE " + RunsColumns.RUN_ID + "=?)";
+    private static final String RUNS_AFTER = "(r." + RunsColumns.TIMESTAMP + "<"
+            + RUN_TIMESTAMP_BY_ID + " OR (r." + RunsColumns.TIMESTAMP + "=" + RUN_TIMESTAMP_BY_ID
+            + " AND r." + RunsColumns.RUN_ID + "<?))";
+    private static final String SUMMARIES_BY_PROJECT = ExperimentSummaryColumns.EXPERIMENT_ID
+            + " IN (SELECT " + ExperimentColumns.EXPERIMENT_ID + " FROM " + Tables.EXPERIMENTS
+            + " WHERE " + ExperimentColumns.PROJECT_ID + "=?)";
+    private static final String SPARKLINE_BY_RUN_AND_SENSOR = RunSparklinesColumns.RUN_ID
+            + " =? AND " + RunSparklinesColumns.SENSOR_ID + " =?";
+    private static final String RUN_BY_ID = RunsColumns.RUN_ID + "=?";
+    private static final String RUN_SENSORS_BY_RUN = RunSensorsColumns.RUN_ID + "=?";
+    private static final String EXPERIMENT_SENSORS_BY_EXPERIMENT =
+            ExperimentSensorColumns.EXPERIMENT_ID + "=?";
+    private static final String TRIGGERS_BY_SENSOR = SensorTriggerColumns.SENSOR_ID + "=?";
+
+    /**
+     * Table and selection of each lookup that must use an index rather than scan the table.
+     */
+    /* Visible for testing */ static final String[][] INDEXED_LOOKUPS = {
+            {Tables.LABELS, LABELS_BY_EXPERIMENT},
+            {Tables.LABELS, LABELS_BY_START_LABEL},
+            {Tables.LABELS, LABELS_BY_LABEL_ID},
+            {Tables.EXPERIMENTS, EXPERIMENTS_BY_PROJECT},
+            {Tables.RUN_STATS, STATS_BY_RUN_AND_SENSOR},
+            {Tables.RUN_SPARKLINES, SPARKLINE_BY_RUN_AND_SENSOR},
+            {Tables.EXPERIMENT_SUMMARIES, SUMMARIES_BY_PROJECT},
+            {Tables.RUNS, RUN_BY_ID},
+            {Tables.RUN_SENSORS, RUN_SENSORS_BY_RUN},
+            {Tables.EXPERIMENT_SENSORS, EXPERIMENT_SENSORS_BY_EXPERIMENT},
+            {Tables.SENSOR_TRIGGERS, TRIGGERS_BY_SENSOR},
+    };
 
     public SimpleMetaDataManager(Context context) {
         this(context, null /* default filename */, new CurrentTimeClock());
@@ -138,22 +195,31 @@ public class SimpleMetaDataManager implements MetaDataManager {
 
     @Override
     public List<Project> getProjects(int maxNumber, boolean includeArchived) {
+        return getProjects(maxNumber, includeArchived, null);
+    }
+
+    @Override
+    public List<Project> getProjects(int maxNumber, boolean includeArchived, Project after) {
         List<Project> projects = new ArrayList<Project>();
         synchronized (mLock) {
             final SQLiteDatabase db = mDbHelper.getReadableDatabase();
 
-            String selection = ProjectColumns.ARCHIVED + "=?";
-            String[] selectionArgs = new String[]{"0"};
-            if (includeArchived) {
-                selection = null;
-                selectionArgs = null;
+            List<String> selections = new ArrayList<>();
+            List<String> selectionArgs = new ArrayList<>();
+            if (!includeArchived) {
+                selections.add(ProjectColumns.ARCHIVED + "=?");
+                selectionArgs.add("0");
+            }
+            if (after != null) {
+                selections.add(PROJECTS_AFTER);
+                addKeysetArgs(selectionArgs, after.getLastUsedTime(), after.getId());
             }
 
             Cursor cursor = null;
             try {
                 cursor = db.query(
-                        Tables.PROJECTS, ProjectColumns.GET_COLUMNS, selection, selectionArgs,
-                        null, null,
+                        Tables.PROJECTS, ProjectColumns.GET_COLUMNS, and(selections),
+                        selectionArgs.toArray(new String[selectionArgs.size()]), null, null,
                         ProjectColumns.LAST_USED_TIME + " DESC, " + BaseColumns._ID + " DESC",
                         String.valueOf(maxNumber));
                 while (cursor.moveToNext()) {
@@ -258,7 +324,17 @@ public class SimpleMetaDataManager implements MetaDataManager {
         values.put(ExperimentColumns.TIMESTAMP, getCurrentTime());
         synchronized (mLock) {
             final SQLiteDatabase db = mDbHelper.getWritableDatabase();
-            long id = db.insert(Tables.EXPERIMENTS, null, values);
+            long id;
+            db.beginTransaction();
+            try {
+                id = db.insert(Tables.EXPERIMENTS, null, values);
+                if (id != -1) {
+                    updateExperimentSummary(db, experimentId);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
             if (id != -1) {
                 Experiment experiment = new Experiment(id);
                 experiment.setExperimentId(experimentId);
@@ -289,6 +365,8 @@ public class SimpleMetaDataManager implements MetaDataManager {
                     experimentArgs);
             db.delete(Tables.EXPERIMENT_SENSOR_LAYOUT, ExperimentSensorLayoutColumns.EXPERIMENT_ID
                     + "=?", experimentArgs);
+            db.delete(Tables.EXPERIMENT_SUMMARIES, ExperimentSummaryColumns.EXPERIMENT_ID + "=?",
+                    experimentArgs);
         }
     }
 
@@ -313,20 +391,32 @@ public class SimpleMetaDataManager implements MetaDataManager {
 
     @Override
     public List<Experiment> getExperimentsForProject(Project project, boolean includeArchived) {
+        return getExperimentsForProject(project, includeArchived, null, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<Experiment> getExperimentsForProject(Project project, boolean includeArchived,
+            Experiment after, int maxNumber) {
         List<Experiment> experiments = new ArrayList<Experiment>();
         synchronized (mLock) {
             final SQLiteDatabase db = mDbHelper.getReadableDatabase();
 
-            String selection = ExperimentColumns.PROJECT_ID + "=?";
+            List<String> selections = Lists.newArrayList(EXPERIMENTS_BY_PROJECT);
+            List<String> selectionArgs = Lists.newArrayList(project.getProjectId());
             if (!includeArchived) {
-                selection += " AND " + ExperimentColumns.ARCHIVED + "=0";
+                selections.add(ExperimentColumns.ARCHIVED + "=0");
+            }
+            if (after != null) {
+                selections.add(EXPERIMENTS_AFTER);
+                addKeysetArgs(selectionArgs, after.getLastUsedTime(), after.getId());
             }
-            String[] selectionArgs = new String[]{project.getProjectId()};
             Cursor cursor = null;
             try {
-                cursor = db.query(Tables.EXPERIMENTS, ExperimentColumns.GET_COLUMNS, selection,
-                        selectionArgs, null, null,
-                        ExperimentColumns.LAST_USED_TIME + " DESC, " + BaseColumns._ID + " DESC");
+                cursor = db.query(Tables.EXPERIMENTS, ExperimentColumns.GET_COLUMNS,
+                        and(selections), selectionArgs.toArray(new String[selectionArgs.size()]),
+                        null, null,
+                        ExperimentColumns.LAST_USED_TIME + " DESC, " + BaseColumns._ID + " DESC",
+                        String.valueOf(maxNumber));
                 while (cursor.moveToNext()) {
                     experiments.add(createExperimentFromCursor(cursor));
                 }
@@ -409,8 +499,16 @@ public class SimpleMetaDataManager implements MetaDataManager {
                 /* include archived runs for indexing */ true);
         int runIndex = runIds.size();
         synchronized (mLock) {
-            insertRun(runId, runIndex);
-            insertRunSensors(runId, sensorLayouts);
+            final SQLiteDatabase db = mDbHelper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                insertRun(runId, runIndex);
+                insertRunSensors(runId, sensorLayouts);
+                updateExperimentSummary(db, experiment.getExperimentId());
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
         }
 
         return new Run(runId, runIndex, sensorLayouts, /* enable auto zoom by default */ true);
@@ -469,8 +567,16 @@ public class SimpleMetaDataManager implements MetaDataManager {
             values.put(RunsColumns.TITLE, run.getTitle());
             values.put(RunsColumns.ARCHIVED, run.isArchived());
             values.put(RunsColumns.AUTO_ZOOM_ENABLED, run.getAutoZoomEnabled());
-            db.update(Tables.RUNS, values, RunsColumns.RUN_ID + "=?",
-                    new String[]{run.getId()});
+            db.beginTransaction();
+            try {
+                db.update(Tables.RUNS, values, RunsColumns.RUN_ID + "=?",
+                        new String[]{run.getId()});
+                // Archiving or unarchiving changes what the experiment lists show.
+                updateExperimentSummary(db, getExperimentIdForLabel(db, run.getId()));
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
         }
         updateRunSensors(run.getId(), run.getSensorLayouts());
     }
@@ -486,7 +592,6 @@ public class SimpleMetaDataManager implements MetaDataManager {
         synchronized (mLock) {
             final SQLiteDatabase db = mDbHelper.getReadableDatabase();
 
-            final String selection = RunSensorsColumns.RUN_ID + "=?";
             final String[] selectionArgs = new String[]{runId};
 
             Cursor cursor = null;
@@ -494,7 +599,7 @@ public class SimpleMetaDataManager implements MetaDataManager {
                 cursor = db.query(Tables.RUNS, new String[]{RunsColumns.RUN_INDEX,
                                 RunsColumns.TITLE, RunsColumns.ARCHIVED,
                                 RunsColumns.AUTO_ZOOM_ENABLED},
-                        selection, selectionArgs, null, null, null);
+                        RUN_BY_ID, selectionArgs, null, null, null);
                 if (cursor != null & cursor.moveToFirst()) {
                     runIndex = cursor.getInt(0);
                     title = cursor.getString(1);
@@ -512,8 +617,8 @@ public class SimpleMetaDataManager implements MetaDataManager {
             int defaultColor = mContext.getResources().getColor(R.color.graph_line_color_blue);
             try {
                 cursor = db.query(Tables.RUN_SENSORS, new String[]{RunSensorsColumns.LAYOUT,
-                                RunSensorsColumns.SENSOR_ID}, selection, selectionArgs, null, null,
-                        RunSensorsColumns.POSITION + " ASC");
+                                RunSensorsColumns.SENSOR_ID}, RUN_SENSORS_BY_RUN, selectionArgs,
+                        null, null, RunSensorsColumns.POSITION + " ASC");
                 while (cursor.moveToNext()) {
                     try {
                         byte[] blob = cursor.getBlob(0);
@@ -620,16 +725,33 @@ public class SimpleMetaDataManager implements MetaDataManager {
 
     @Override
     public void deleteRun(String runId) {
-        for (Label label : getLabelsWithStartId(runId)) {
-            deleteLabel(label);
-        }
+        List<Label> labels = getLabelsWithStartId(runId);
         synchronized (mLock) {
             final SQLiteDatabase db = mDbHelper.getWritableDatabase();
             String selectionRunId = RunsColumns.RUN_ID + "=?";
             String[] runIdArgs = new String[]{runId};
-            db.delete(Tables.RUN_SENSORS, selectionRunId, runIdArgs);
-            db.delete(Tables.RUN_STATS, RunStatsColumns.START_LABEL_ID + "=?", runIdArgs);
-            db.delete(Tables.RUNS, selectionRunId, runIdArgs);
+            db.beginTransaction();
+            try {
+                // Look this up before the start label goes.
+                String experimentId = getExperimentIdForLabel(db, runId);
+                for (Label label : labels) {
+                    db.delete(Tables.LABELS, LABELS_BY_LABEL_ID,
+                            new String[]{label.getLabelId()});
+                }
+                db.delete(Tables.RUN_SENSORS, selectionRunId, runIdArgs);
+                db.delete(Tables.RUN_STATS, RunStatsColumns.START_LABEL_ID + "=?", runIdArgs);
+                db.delete(Tables.RUN_SPARKLINES, RunSparklinesColumns.RUN_ID + "=?", runIdArgs);
+                db.delete(Tables.RUNS, selectionRunId, runIdArgs);
+                updateExperimentSummary(db, experimentId);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+        // Only once nothing refers to them any more, so a failed delete can't leave labels
+        // pointing at missing files.
+        for (Label label : labels) {
+            deletePictureFile(label);
         }
     }
 
@@ -706,7 +828,14 @@ public class SimpleMetaDataManager implements MetaDataManager {
         values.put(LabelColumns.VALUE, ProtoUtils.makeBlob(label.getValue()));
         synchronized (mLock) {
             final SQLiteDatabase db = mDbHelper.getWritableDatabase();
-            db.insert(Tables.LABELS, null, values);
+            db.beginTransaction();
+            try {
+                db.insert(Tables.LABELS, null, values);
+                updateSummaryForLabel(db, experimentId, label, 1);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
         }
     }
 
@@ -732,72 +861,76 @@ public class SimpleMetaDataManager implements MetaDataManager {
 
     @Override
     public List<Label> getLabelsForExperiment(Experiment experiment) {
-        final String selection = LabelColumns.EXPERIMENT_ID + "=?";
+        final String selection = LABELS_BY_EXPERIMENT;
         final String[] selectionArgs = new String[]{experiment.getExperimentId()};
         return getLabels(selection, selectionArgs);
     }
 
     private List<Label> getLabels(String selection, String[] selectionArgs) {
-        List<Label> labels = new ArrayList<>();
         synchronized (mLock) {
-            final SQLiteDatabase db = mDbHelper.getReadableDatabase();
-            Cursor cursor = null;
-            try {
-                cursor = db.query(Tables.LABELS, LabelQuery.PROJECTION, selection, selectionArgs,
-                        null, null, null);
-                while (cursor.moveToNext()) {
-                    String type = cursor.getString(LabelQuery.TYPE_INDEX);
-                    Label label;
-                    // TODO: fix code smell: perhaps make a factory?
-                    final String labelId = cursor.getString(LabelQuery.LABEL_ID_INDEX);
-                    final String startLabelId = cursor.getString(LabelQuery.START_LABEL_ID_INDEX);
-                    long timestamp = cursor.getLong(LabelQuery.TIMESTAMP_INDEX);
-                    GoosciLabelValue.LabelValue value = null;
-                    try {
-                        byte[] blob = cursor.getBlob(LabelQuery.VALUE_INDEX);
-                        if (blob != null) {
-                            value = GoosciLabelValue.LabelValue.parseFrom(blob);
-                        }
-                    } catch (InvalidProtocolBufferNanoException ex) {
-                        Log.d(TAG, "Unable to parse label value");
+            return readLabels(mDbHelper.getReadableDatabase(), selection, selectionArgs);
+        }
+    }
+
+    private static List<Label> readLabels(SQLiteDatabase db, String selection,
+            String[] selectionArgs) {
+        List<Label> labels = new ArrayList<>();
+        Cursor cursor = null;
+        try {
+            cursor = db.query(Tables.LABELS, LabelQuery.PROJECTION, selection, selectionArgs,
+                    null, null, null);
+            while (cursor.moveToNext()) {
+                String type = cursor.getString(LabelQuery.TYPE_INDEX);
+                Label label;
+                // TODO: fix code smell: perhaps make a factory?
+                final String labelId = cursor.getString(LabelQuery.LABEL_ID_INDEX);
+                final String startLabelId = cursor.getString(LabelQuery.START_LABEL_ID_INDEX);
+                long timestamp = cursor.getLong(LabelQuery.TIMESTAMP_INDEX);
+                GoosciLabelValue.LabelValue value = null;
+                try {
+                    byte[] blob = cursor.getBlob(LabelQuery.VALUE_INDEX);
+                    if (blob != null) {
+                        value = GoosciLabelValue.LabelValue.parseFrom(blob);
                     }
-                    if (value != null) {
-                        // Add new types of labels to this list.
-                        if (TextLabel.isTag(type)) {
-                            label = new TextLabel(labelId, startLabelId, timestamp, value);
-                        } else if (PictureLabel.isTag(type)) {
-                            label = new PictureLabel(labelId, startLabelId, timestamp, value);
-                        } else if (ApplicationLabel.isTag(type)) {
-                            label = new ApplicationLabel(labelId, startLabelId, timestamp, value);
-                        } else if (SensorTriggerLabel.isTag(type)) {
-                            label = new SensorTriggerLabel(labelId, startLabelId, timestamp, value);
-                        } else {
-                            throw new IllegalStateException("Unknown label type: " + type);
-                        }
+                } catch (InvalidProtocolBufferNanoException ex) {
+                    Log.d(TAG, "Unable to parse label value");
+                }
+                if (value != null) {
+                    // Add new types of labels to this list.
+                    if (TextLabel.isTag(type)) {
+                        label = new TextLabel(labelId, startLabelId, timestamp, value);
+                    } else if (PictureLabel.isTag(type)) {
+                        label = new PictureLabel(labelId, startLabelId, timestamp, value);
+                    } else if (ApplicationLabel.isTag(type)) {
+                        label = new ApplicationLabel(labelId, startLabelId, timestamp, value);
+                    } else if (SensorTriggerLabel.isTag(type)) {
+                        label = new SensorTriggerLabel(labelId, startLabelId, timestamp, value);
                     } else {
-                        // Old text, picture and application labels were added when label data
-                        // was stored as a string. New types of labels should not be added to this
-                        // list.
-                        final String data = cursor.getString(LabelQuery.DATA_INDEX);
-                        if (TextLabel.isTag(type)) {
-                            label = new TextLabel(data, labelId, startLabelId, timestamp);
-                        } else if (PictureLabel.isTag(type)) {
-                            // Early picture labels had no captions.
-                            label = new PictureLabel(data, "", labelId, startLabelId, timestamp);
-                        } else if (ApplicationLabel.isTag(type)) {
-                            label = new ApplicationLabel(data, labelId, startLabelId, timestamp);
-                        } else {
-                            throw new IllegalStateException("Unknown label type: " + type);
-                        }
+                        throw new IllegalStateException("Unknown label type: " + type);
+                    }
+                } else {
+                    // Old text, picture and application labels were added when label data
+                    // was stored as a string. New types of labels should not be added to this
+                    // list.
+                    final String data = cursor.getString(LabelQuery.DATA_INDEX);
+                    if (TextLabel.isTag(type)) {
+                        label = new TextLabel(data, labelId, startLabelId, timestamp);
+                    } else if (PictureLabel.isTag(type)) {
+                        // Early picture labels had no captions.
+                        label = new PictureLabel(data, "", labelId, startLabelId, timestamp);
+                    } else if (ApplicationLabel.isTag(type)) {
+                        label = new ApplicationLabel(data, labelId, startLabelId, timestamp);
+                    } else {
+                        throw new IllegalStateException("Unknown label type: " + type);
                     }
-                    label.setTimestamp(timestamp);
-                    label.setExperimentId(cursor.getString(LabelQuery.EXPERIMENT_ID_INDEX));
-                    labels.add(label);
-                }
-            } finally {
-                if (cursor != null) {
-                    cursor.close();
                 }
+                label.setTimestamp(timestamp);
+                label.setExperimentId(cursor.getString(LabelQuery.EXPERIMENT_ID_INDEX));
+                labels.add(label);
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
             }
         }
         return labels;
@@ -805,7 +938,7 @@ public class SimpleMetaDataManager implements MetaDataManager {
 
     @Override
     public List<Label> getLabelsWithStartId(String startLabelId) {
-        final String selection = LabelColumns.START_LABEL_ID + "=?";
+        final String selection = LABELS_BY_START_LABEL;
         final String[] selectionArgs = new String[]{startLabelId};
         return getLabels(selection, selectionArgs);
     }
@@ -834,9 +967,8 @@ public class SimpleMetaDataManager implements MetaDataManager {
             try {
                 cursor = db.query(Tables.RUN_STATS,
                         new String[]{RunStatsColumns.STAT_NAME, RunStatsColumns.STAT_VALUE},
-                        RunStatsColumns.START_LABEL_ID + " =? AND " + RunStatsColumns.SENSOR_TAG
-                                + " =?",
-                        new String[]{startLabelId, sensorId}, null, null, null);
+                        STATS_BY_RUN_AND_SENSOR, new String[]{startLabelId, sensorId}, null, null,
+                        null);
                 while (cursor.moveToNext()) {
                     final String statName = cursor.getString(0);
                     final double statValue = cursor.getDouble(1);
@@ -852,25 +984,70 @@ public class SimpleMetaDataManager implements MetaDataManager {
         return runStats;
     }
 
+    @Override
+    public void setSparkline(String runId, String sensorId,
+            GoosciSparkline.Sparkline sparkline) {
+        ContentValues values = new ContentValues();
+        values.put(RunSparklinesColumns.RUN_ID, runId);
+        values.put(RunSparklinesColumns.SENSOR_ID, sensorId);
+        values.put(RunSparklinesColumns.SPARKLINE, ProtoUtils.makeBlob(sparkline));
+        synchronized (mLock) {
+            final SQLiteDatabase db = mDbHelper.getWritableDatabase();
+            db.insert(Tables.RUN_SPARKLINES, null, values);
+        }
+    }
+
+    @Override
+    public GoosciSparkline.Sparkline getSparkline(String runId, String sensorId) {
+        synchronized (mLock) {
+            final SQLiteDatabase db = mDbHelper.getReadableDatabase();
+            Cursor cursor = null;
+            try {
+                cursor = db.query(Tables.RUN_SPARKLINES,
+                        new String[]{RunSparklinesColumns.SPARKLINE},
+                        SPARKLINE_BY_RUN_AND_SENSOR, new String[]{runId, sensorId}, null, null,
+                        null);
+                if (cursor.moveToFirst()) {
+                    return GoosciSparkline.Sparkline.parseFrom(cursor.getBlob(0));
+                }
+            } catch (InvalidProtocolBufferNanoException e) {
+                Log.d(TAG, "Couldn't parse sparkline", e);
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+        }
+        return null;
+    }
+
     @Override
     public List<String> getExperimentRunIds(String experimentId, boolean includeArchived) {
-        // TODO: use start index as offset.
+        return getExperimentRunIds(experimentId, includeArchived, null, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<String> getExperimentRunIds(String experimentId, boolean includeArchived,
+            String afterRunId, int maxNumber) {
         List<String> ids = new ArrayList<>();
         synchronized (mLock) {
             final SQLiteDatabase db = mDbHelper.getReadableDatabase();
             Cursor cursor = null;
             try {
-                String selection = LabelColumns.LABEL_ID + "=" + LabelColumns.START_LABEL_ID +
-                        " AND " + LabelColumns.EXPERIMENT_ID + "=?";
+                List<String> selections = Lists.newArrayList(RUNS_BY_EXPERIMENT);
+                List<String> selectionArgs = Lists.newArrayList(experimentId);
                 if (!includeArchived) {
-                    selection += " AND (" + RunsColumns.ARCHIVED + "=0 OR " +
-                            RunsColumns.ARCHIVED + " IS NULL)";
+                    selections.add(UNARCHIVED_RUNS);
                 }
-                cursor = db.query(
-                        Tables.RUNS + " AS r JOIN " + Tables.LABELS + " AS l ON "
-                                + RunsColumns.RUN_ID + "=" + LabelColumns.START_LABEL_ID,
-                        new String[]{RunsColumns.RUN_ID}, selection, new String[]{experimentId},
-                        null, null, "r." + RunsColumns.TIMESTAMP + " DESC", null);
+                if (afterRunId != null) {
+                    selections.add(RUNS_AFTER);
+                    Collections.addAll(selectionArgs, afterRunId, afterRunId, afterRunId);
+                }
+                cursor = db.query(RUNS_WITH_START_LABELS,
+                        new String[]{RunsColumns.RUN_ID}, and(selections),
+                        selectionArgs.toArray(new String[selectionArgs.size()]), null, null,
+                        "r." + RunsColumns.TIMESTAMP + " DESC, r." + RunsColumns.RUN_ID + " DESC",
+                        String.valueOf(maxNumber));
                 while (cursor.moveToNext()) {
                     ids.add(cursor.getString(0));
                 }
@@ -891,13 +1068,41 @@ public class SimpleMetaDataManager implements MetaDataManager {
             final ContentValues values = new ContentValues();
             values.put(LabelColumns.VALUE, ProtoUtils.makeBlob(updatedLabel.getValue()));
             values.put(LabelColumns.TIMESTAMP, updatedLabel.getTimeStamp());
-            db.update(Tables.LABELS, values, LabelColumns.LABEL_ID + "=?",
-                    new String[]{updatedLabel.getLabelId()});
+            db.beginTransaction();
+            try {
+                db.update(Tables.LABELS, values, LABELS_BY_LABEL_ID,
+                        new String[]{updatedLabel.getLabelId()});
+                updateSummaryForLabel(db, getExperimentIdForLabel(db,
+                        updatedLabel.getLabelId()), updatedLabel, 0);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
         }
     }
 
     @Override
     public void deleteLabel(Label label) {
+        synchronized (mLock) {
+            final SQLiteDatabase db = mDbHelper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                String experimentId = getExperimentIdForLabel(db, label.getLabelId());
+                db.delete(Tables.LABELS, LABELS_BY_LABEL_ID, new String[]{label.getLabelId()});
+                updateSummaryForLabel(db, experimentId, label, -1);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+        deletePictureFile(label);
+    }
+
+    /**
+     * Deletes the file behind a picture label.  Only call this once the label is gone from the
+     * database.
+     */
+    private void deletePictureFile(Label label) {
         if (label instanceof PictureLabel) {
             File file = new File(((PictureLabel) label).getAbsoluteFilePath());
             boolean deleted = file.delete();
@@ -906,11 +1111,231 @@ public class SimpleMetaDataManager implements MetaDataManager {
             }
             PictureUtils.scanFile(file.getAbsolutePath(), mContext);
         }
-        String selection = LabelColumns.LABEL_ID + "=?";
+    }
+
+    /**
+     * @return the given selections joined with AND, or null if there are none.
+     */
+    private static String and(List<String> selections) {
+        return selections.isEmpty() ? null : TextUtils.join(" AND ", selections);
+    }
+
+    /**
+     * Adds the arguments for {@link #PROJECTS_AFTER} or {@link #EXPERIMENTS_AFTER}.
+     */
+    private static void addKeysetArgs(List<String> selectionArgs, long lastUsedTime, long id) {
+        Collections.addAll(selectionArgs, String.valueOf(lastUsedTime),
+                String.valueOf(lastUsedTime), String.valueOf(id));
+    }
+
+    /**
+     * @return the experiment that a label (or, given a run ID, a run's start label) belongs to, or
+     * null if there is no such label.
+     */
+    private static String getExperimentIdForLabel(SQLiteDatabase db, String labelId) {
+        Cursor cursor = null;
+        try {
+            cursor = db.query(Tables.LABELS, new String[]{LabelColumns.EXPERIMENT_ID},
+                    LABELS_BY_LABEL_ID, new String[]{labelId}, null, null, null, "1");
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Recomputes the stored {@link ExperimentSummary} for an experiment.  Every change to an
+     * experiment's runs calls this inside the same transaction, so the summary can never disagree
+     * with what it summarizes.  Label changes, which are far more frequent, use
+     * {@link #updateSummaryForLabel} instead.
+     */
+    private static void updateExperimentSummary(SQLiteDatabase db, String experimentId) {
+        if (experimentId == null) {
+            return;
+        }
+        // Unarchived runs, newest first, with the time each one started.
+        List<String> runIds = new ArrayList<>();
+        long lastRunTimestamp = ExperimentSummary.NO_RUNS;
+        Cursor cursor = null;
+        try {
+            cursor = queryUnarchivedRuns(db, experimentId);
+            while (cursor.moveToNext()) {
+                if (runIds.isEmpty()) {
+                    lastRunTimestamp = getRunFirstTimestamp(db, cursor.getString(0),
+                            cursor.getLong(1));
+                }
+                runIds.add(cursor.getString(0));
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+
+        long labelCount = DatabaseUtils.queryNumEntries(db, Tables.LABELS,
+                LABELS_BY_EXPERIMENT + " AND " + LabelColumns.TYPE + "!=? COLLATE NOCASE",
+                new String[]{experimentId, ApplicationLabel.TAG});
+
+        ContentValues values = new ContentValues();
+        values.put(ExperimentSummaryColumns.EXPERIMENT_ID, experimentId);
+        values.put(ExperimentSummaryColumns.RUN_COUNT, runIds.size());
+        values.put(ExperimentSummaryColumns.LAST_RUN_TIMESTAMP, lastRunTimestamp);
+        values.put(ExperimentSummaryColumns.COVER_PICTURE_PATH,
+                findCoverPicturePath(db, experimentId, runIds));
+        values.put(ExperimentSummaryColumns.LABEL_COUNT, labelCount);
+        db.insert(Tables.EXPERIMENT_SUMMARIES, null, values);
+    }
+
+    /**
+     * Brings the stored {@link ExperimentSummary} up to date after a label has been added, edited
+     * or deleted, inside the same transaction.  Only picture labels can change the cover, and only
+     * crop labels can change when the last run started, so other labels just adjust the count.
+     *
+     * @param countChange 1 if the label was added, -1 if deleted, 0 if edited
+     */
+    private static void updateSummaryForLabel(SQLiteDatabase db, String experimentId,
+            Label label, int countChange) {
+        if (experimentId == null) {
+            return;
+        }
+        if (countChange != 0 && !(label instanceof ApplicationLabel)) {
+            db.execSQL("UPDATE " + Tables.EXPERIMENT_SUMMARIES + " SET "
+                    + ExperimentSummaryColumns.LABEL_COUNT + "="
+                    + ExperimentSummaryColumns.LABEL_COUNT + "+? WHERE "
+                    + ExperimentSummaryColumns.EXPERIMENT_ID + "=?",
+                    new Object[]{countChange, experimentId});
+        }
+        if (isCropStart(label)) {
+            Cursor cursor = null;
+            try {
+                cursor = queryUnarchivedRuns(db, experimentId);
+                if (cursor.moveToFirst() && cursor.getString(0).equals(label.getRunId())) {
+                    ContentValues values = new ContentValues();
+                    values.put(ExperimentSummaryColumns.LAST_RUN_TIMESTAMP,
+                            getRunFirstTimestamp(db, cursor.getString(0), cursor.getLong(1)));
+                    db.update(Tables.EXPERIMENT_SUMMARIES, values,
+                            ExperimentSummaryColumns.EXPERIMENT_ID + "=?",
+                            new String[]{experimentId});
+                }
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+        }
+        if (label instanceof PictureLabel) {
+            List<String> runIds = new ArrayList<>();
+            Cursor cursor = null;
+            try {
+                cursor = queryUnarchivedRuns(db, experimentId);
+                while (cursor.moveToNext()) {
+                    runIds.add(cursor.getString(0));
+                }
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+            ContentValues values = new ContentValues();
+            values.put(ExperimentSummaryColumns.COVER_PICTURE_PATH,
+                    findCoverPicturePath(db, experimentId, runIds));
+            db.update(Tables.EXPERIMENT_SUMMARIES, values,
+                    ExperimentSummaryColumns.EXPERIMENT_ID + "=?", new String[]{experimentId});
+        }
+    }
+
+    private static boolean isCropStart(Label label) {
+        return label instanceof ApplicationLabel
+                && ((ApplicationLabel) label).getType() == ApplicationLabel.TYPE_CROP_START;
+    }
+
+    /**
+     * @param startTimestamp the time of the run's start label
+     * @return when the run begins, as {@link ExperimentRun#getFirstTimestamp()} has it: the start
+     * of the crop if the run has been cropped, otherwise {@code startTimestamp}
+     */
+    private static long getRunFirstTimestamp(SQLiteDatabase db, String runId,
+            long startTimestamp) {
+        List<Label> applicationLabels = readLabels(db,
+                LABELS_BY_START_LABEL + " AND " + LabelColumns.TYPE + "=? COLLATE NOCASE",
+                new String[]{runId, ApplicationLabel.TAG});
+        for (Label label : applicationLabels) {
+            if (isCropStart(label)) {
+                return label.getTimeStamp();
+            }
+        }
+        return startTimestamp;
+    }
+
+    /**
+     * @return the run ID and start time of each unarchived run in the experiment, newest first
+     */
+    private static Cursor queryUnarchivedRuns(SQLiteDatabase db, String experimentId) {
+        return db.query(RUNS_WITH_START_LABELS,
+                new String[]{RunsColumns.RUN_ID, "l." + LabelColumns.TIMESTAMP},
+                RUNS_BY_EXPERIMENT + " AND " + UNARCHIVED_RUNS, new String[]{experimentId},
+                null, null, "r." + RunsColumns.TIMESTAMP + " DESC");
+    }
+
+    /**
+     * @param runIds the experiment's unarchived runs, newest first
+     * @return the first picture of the newest run that has one, or failing that the first picture
+     * in the experiment, or null if there are no pictures
+     */
+    private static String findCoverPicturePath(SQLiteDatabase db, String experimentId,
+            List<String> runIds) {
+        List<Label> pictures = readLabels(db,
+                LABELS_BY_EXPERIMENT + " AND " + LabelColumns.TYPE + "=? COLLATE NOCASE",
+                new String[]{experimentId, PictureLabel.TAG});
+        String coverPicturePath = null;
+        if (!pictures.isEmpty()) {
+            Map<String, PictureLabel> firstPictureByRun = new HashMap<>();
+            for (Label picture : pictures) {
+                if (!firstPictureByRun.containsKey(picture.getRunId())) {
+                    firstPictureByRun.put(picture.getRunId(), (PictureLabel) picture);
+                }
+            }
+            PictureLabel cover = (PictureLabel) pictures.get(0);
+            for (String runId : runIds) {
+                if (firstPictureByRun.containsKey(runId)) {
+                    cover = firstPictureByRun.get(runId);
+                    break;
+                }
+            }
+            coverPicturePath = cover.getFilePath();
+        }
+        return coverPicturePath;
+    }
+
+    @Override
+    public Map<String, ExperimentSummary> getExperimentSummaries(String projectId) {
+        Map<String, ExperimentSummary> summaries = new HashMap<>();
         synchronized (mLock) {
-            final SQLiteDatabase db = mDbHelper.getWritableDatabase();
-            db.delete(Tables.LABELS, selection, new String[]{label.getLabelId()});
+            final SQLiteDatabase db = mDbHelper.getReadableDatabase();
+            Cursor cursor = null;
+            try {
+                cursor = db.query(Tables.EXPERIMENT_SUMMARIES, new String[]{
+                                ExperimentSummaryColumns.EXPERIMENT_ID,
+                                ExperimentSummaryColumns.RUN_COUNT,
+                                ExperimentSummaryColumns.LAST_RUN_TIMESTAMP,
+                                ExperimentSummaryColumns.COVER_PICTURE_PATH,
+                                ExperimentSummaryColumns.LABEL_COUNT},
+                        SUMMARIES_BY_PROJECT, new String[]{projectId}, null, null, null);
+                while (cursor.moveToNext()) {
+                    String experimentId = cursor.getString(0);
+                    summaries.put(experimentId, new ExperimentSummary(experimentId,
+                            cursor.getInt(1), cursor.getLong(2), cursor.getString(3),
+                            cursor.getInt(4)));
+                }
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
         }
+        return summaries;
     }
 
     @NonNull
@@ -1061,7 +1486,7 @@ public class SimpleMetaDataManager implements MetaDataManager {
                 c = db.query(Tables.EXPERIMENT_SENSORS,
                         new String[]{ExperimentSensorColumns.SENSOR_TAG,
                                 ExperimentSensorColumns.INCLUDED},
-                        ExperimentSensorColumns.EXPERIMENT_ID + "=?",
+                        EXPERIMENT_SENSORS_BY_EXPERIMENT,
                         new String[]{experimentId}, null, null, BaseColumns._ID + " ASC");
                 while (c.moveToNext()) {
                     String tag = c.getString(0);
@@ -1219,7 +1644,7 @@ public class SimpleMetaDataManager implements MetaDataManager {
         synchronized (mLock) {
             final SQLiteDatabase db = mDbHelper.getReadableDatabase();
             Cursor c = null;
-            String selection = SensorTriggerColumns.SENSOR_ID + "=?";
+            String selection = TRIGGERS_BY_SENSOR;
             String[] selectionArgs = new String[]{sensorId};
             try {
                 c = db.query(Tables.SENSOR_TRIGGERS, new String[]{
@@ -1453,6 +1878,50 @@ public class SimpleMetaDataManager implements MetaDataManager {
         String STAT_VALUE = "stat_value";
     }
 
+    public interface ExperimentSummaryColumns {
+        /**
+         * ID of the experiment being summarized.
+         */
+        String EXPERIMENT_ID = "experiment_id";
+
+        /**
+         * Number of unarchived runs.
+         */
+        String RUN_COUNT = "run_count";
+
+        /**
+         * When the most recent unarchived run started, or -1 if there is none.
+         */
+        String LAST_RUN_TIMESTAMP = "last_run_timestamp";
+
+        /**
+         * File path of the picture to show for the experiment. May be null.
+         */
+        String COVER_PICTURE_PATH = "cover_picture_path";
+
+        /**
+         * Number of labels, not counting the ones the app adds to mark recordings and crops.
+         */
+        String LABEL_COUNT = "label_count";
+    }
+
+    public interface RunSparklinesColumns {
+        /**
+         * ID for the run that this sparkline summarizes.
+         */
+        String RUN_ID = "run_id";
+
+        /**
+         * ID of the sensor that this sparkline summarizes.
+         */
+        String SENSOR_ID = "sensor_id";
+
+        /**
+         * The Sparkline proto.
+         */
+        String SPARKLINE = "sparkline";
+    }
+
     public interface RunsColumns {
         /**
          * ID for the run that this row is associated with.  (Matches "start_label_id" in some
@@ -1566,7 +2035,7 @@ public class SimpleMetaDataManager implements MetaDataManager {
      * Manages the SQLite database backing the data for the entire app.
      */
     private static class DatabaseHelper extends SQLiteOpenHelper {
-        private static final int DB_VERSION = 20;
+        private static final int DB_VERSION = 23;
         private static final String DB_NAME = "main.db";
 
         DatabaseHelper(Context context, String filename) {
@@ -1586,6 +2055,9 @@ public class SimpleMetaDataManager implements MetaDataManager {
             createExperimentSensorLayoutTable(db);
             createSensorTriggersTable(db);
             createMyDevicesTable(db);
+            createRunSparklinesTable(db);
+            createExperimentSummariesTable(db);
+            createIndexes(db);
         }
 
         private void createExperimentsTable(SQLiteDatabase db) {
@@ -1751,6 +2223,22 @@ public class SimpleMetaDataManager implements MetaDataManager {
                         ExperimentSensorColumns.INCLUDED + " INTEGER DEFAULT 1");
                 version = 20;
             }
+
+            if (version == 20 && version < newVersion) {
+                createIndexes(db);
+                version = 21;
+            }
+
+            if (version == 21 && version < newVersion) {
+                createRunSparklinesTable(db);
+                version = 22;
+            }
+
+            if (version == 22 && version < newVersion) {
+                createExperimentSummariesTable(db);
+                populateExperimentSummaries(db);
+                version = 23;
+            }
         }
 
         private void createProjectsTable(SQLiteDatabase db) {
@@ -1856,6 +2344,66 @@ public class SimpleMetaDataManager implements MetaDataManager {
                     + "UNIQUE (" + MyDevicesColumns.DEVICE_ID + ") ON CONFLICT REPLACE)");
         }
 
+        private void createRunSparklinesTable(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + Tables.RUN_SPARKLINES + " ("
+                    + BaseColumns._ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
+                    + RunSparklinesColumns.RUN_ID + " TEXT,"
+                    + RunSparklinesColumns.SENSOR_ID + " TEXT,"
+                    + RunSparklinesColumns.SPARKLINE + " BLOB,"
+                    + "UNIQUE(" + RunSparklinesColumns.RUN_ID + ","
+                    + RunSparklinesColumns.SENSOR_ID + ") ON CONFLICT REPLACE)");
+        }
+
+        private void createExperimentSummariesTable(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + Tables.EXPERIMENT_SUMMARIES + " ("
+                    + BaseColumns._ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
+                    + ExperimentSummaryColumns.EXPERIMENT_ID + " TEXT NOT NULL,"
+                    + ExperimentSummaryColumns.RUN_COUNT + " INTEGER NOT NULL DEFAULT 0,"
+                    + ExperimentSummaryColumns.LAST_RUN_TIMESTAMP + " INTEGER NOT NULL DEFAULT -1,"
+                    + ExperimentSummaryColumns.COVER_PICTURE_PATH + " TEXT,"
+                    + ExperimentSummaryColumns.LABEL_COUNT + " INTEGER NOT NULL DEFAULT 0,"
+                    + "UNIQUE (" + ExperimentSummaryColumns.EXPERIMENT_ID
+                    + ") ON CONFLICT REPLACE)");
+        }
+
+        private void populateExperimentSummaries(SQLiteDatabase db) {
+            List<String> experimentIds = new ArrayList<>();
+            Cursor cursor = null;
+            try {
+                cursor = db.query(Tables.EXPERIMENTS, new String[]{ExperimentColumns.EXPERIMENT_ID},
+                        null, null, null, null, null);
+                while (cursor.moveToNext()) {
+                    experimentIds.add(cursor.getString(0));
+                }
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+            for (String experimentId : experimentIds) {
+                updateExperimentSummary(db, experimentId);
+            }
+        }
+
+        /**
+         * Indexes for the selections in {@link SimpleMetaDataManager#INDEXED_LOOKUPS} that aren't
+         * already covered by a UNIQUE constraint.
+         */
+        private void createIndexes(SQLiteDatabase db) {
+            createIndex(db, Tables.LABELS, LabelColumns.EXPERIMENT_ID);
+            createIndex(db, Tables.LABELS, LabelColumns.START_LABEL_ID);
+            createIndex(db, Tables.LABELS, LabelColumns.LABEL_ID);
+            createIndex(db, Tables.EXPERIMENTS, ExperimentColumns.PROJECT_ID);
+            createIndex(db, Tables.EXPERIMENT_SENSORS, ExperimentSensorColumns.EXPERIMENT_ID);
+            createIndex(db, Tables.EXPERIMENT_SENSORS, ExperimentSensorColumns.SENSOR_TAG);
+            createIndex(db, Tables.SENSOR_TRIGGERS, SensorTriggerColumns.SENSOR_ID);
+        }
+
+        private void createIndex(SQLiteDatabase db, String table, String column) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS " + table + "_" + column + "_index ON "
+                    + table + " (" + column + ")");
+        }
+
         private void populateUpgradedRunsTable(SQLiteDatabase db) {
             db.execSQL("INSERT INTO " + Tables.RUNS + " SELECT (" + LabelColumns.START_LABEL_ID +
                     ") FROM " + Tables.LABELS + " WHERE " + LabelColumns.START_LABEL_ID +
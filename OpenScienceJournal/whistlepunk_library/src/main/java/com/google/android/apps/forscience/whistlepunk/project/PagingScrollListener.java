@@ -0,0 +1,82 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.project;
+
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+/**
+ * Asks for the next page of a paged list once the user scrolls close to the last item loaded so
+ * far, so that long lists open as quickly as short ones.
+ */
+public class PagingScrollListener extends RecyclerView.OnScrollListener {
+    /**
+     * How many items to load at a time.
+     */
+    public static final int PAGE_SIZE = 20;
+
+    /**
+     * How close to the last loaded item the user can scroll before the next page is requested.
+     */
+    private static final int PREFETCH_DISTANCE = PAGE_SIZE / 2;
+
+    public interface PageLoader {
+        /**
+         * Loads the page following the items already in the list, and then calls
+         * {@link PagingScrollListener#onPageLoaded}.
+         */
+        void loadNextPage();
+    }
+
+    private final PageLoader mLoader;
+    private boolean mLoading = false;
+    private boolean mHasMore = false;
+
+    public PagingScrollListener(PageLoader loader) {
+        mLoader = loader;
+    }
+
+    /**
+     * Called whenever a page of the list is loaded, whether it was asked for by
+     * {@link PageLoader#loadNextPage} or is a reload of the list from the start.
+     *
+     * @param requested how many items were asked for
+     * @param loaded how many items were returned.  Fewer than requested means that the list is
+     *               complete.
+     */
+    public void onPageLoaded(int requested, int loaded) {
+        mLoading = false;
+        mHasMore = loaded >= requested;
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        // This is also called with no movement when a layout changes what is visible, which takes
+        // care of lists whose first page doesn't fill the screen.
+        if (mLoading || !mHasMore) {
+            return;
+        }
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        int itemCount = layoutManager.getItemCount();
+        if (itemCount > 0
+                && layoutManager.findLastVisibleItemPosition() + PREFETCH_DISTANCE >= itemCount) {
+            mLoading = true;
+            mLoader.loadNextPage();
+        }
+    }
+}
@@ -35,6 +35,8 @@ import android.support.v4.graphics.drawable.RoundedBitmapDrawableFactory;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.app.ActionBar;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.Toolbar;
@@ -62,16 +64,17 @@ import com.google.android.apps.forscience.whistlepunk.RelativeTimeTextView;
 import com.google.android.apps.forscience.whistlepunk.WhistlePunkApplication;
 import com.google.android.apps.forscience.whistlepunk.analytics.TrackerConstants;
 import com.google.android.apps.forscience.whistlepunk.metadata.Experiment;
-import com.google.android.apps.forscience.whistlepunk.metadata.ExperimentRun;
-import com.google.android.apps.forscience.whistlepunk.metadata.Label;
-import com.google.android.apps.forscience.whistlepunk.metadata.PictureLabel;
+import com.google.android.apps.forscience.whistlepunk.metadata.ExperimentSummary;
 import com.google.android.apps.forscience.whistlepunk.metadata.Project;
 import com.google.android.apps.forscience.whistlepunk.project.experiment.ExperimentDetailsActivity;
 import com.google.android.apps.forscience.whistlepunk.project.experiment.UpdateExperimentActivity;
 import com.google.android.apps.forscience.whistlepunk.review.DeleteMetadataItemDialog;
+import com.google.common.base.Objects;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Project detail fragment also contains project experiments list.
@@ -91,6 +94,7 @@ public class ProjectDetailsFragment extends Fragment implements
     private Project mProject;
 
     private ProjectDetailAdapter mProjectDetailAdapter;
+    private PagingScrollListener mPagingListener;
     private boolean mIncludeArchived;
     private ImageView mProjectCover;
 
@@ -200,6 +204,13 @@ public class ProjectDetailsFragment extends Fragment implements
         detailList.setLayoutManager(new LinearLayoutManager(getActivity(),
                 LinearLayoutManager.VERTICAL, false));
         detailList.setAdapter(mProjectDetailAdapter);
+        mPagingListener = new PagingScrollListener(new PagingScrollListener.PageLoader() {
+            @Override
+            public void loadNextPage() {
+                loadMoreExperiments();
+            }
+        });
+        detailList.addOnScrollListener(mPagingListener);
 
         FloatingActionButton newExperimentButton = (FloatingActionButton) view.findViewById(
                 R.id.new_experiment);
@@ -247,22 +258,57 @@ public class ProjectDetailsFragment extends Fragment implements
     }
 
     private void loadExperiments() {
-        getDataController().getExperimentsForProject(mProject, mIncludeArchived,
+        // Reload as many experiments as the user has already scrolled through, so that they keep
+        // their place in the list.
+        final int count = Math.max(PagingScrollListener.PAGE_SIZE,
+                mProjectDetailAdapter.getExperimentCount());
+        getDataController().getExperimentsForProject(mProject, mIncludeArchived, null, count,
                 new LoggingConsumer<List<Experiment>>(TAG,
                         "Retrieve project experiments") {
                     @Override
+                    public void success(final List<Experiment> experiments) {
+                        mPagingListener.onPageLoaded(count, experiments.size());
+                        loadSummaries(experiments);
+                    }
+                });
+    }
+
+    private void loadMoreExperiments() {
+        final Experiment last = mProjectDetailAdapter.getLastExperiment();
+        getDataController().getExperimentsForProject(mProject, mIncludeArchived, last,
+                PagingScrollListener.PAGE_SIZE,
+                new LoggingConsumer<List<Experiment>>(TAG, "Retrieve more project experiments") {
+                    @Override
                     public void success(List<Experiment> experiments) {
-                        attachToExperiments(experiments);
+                        if (mProjectDetailAdapter.getLastExperiment() != last) {
+                            // The list was reloaded while this page was loading.
+                            return;
+                        }
+                        mPagingListener.onPageLoaded(PagingScrollListener.PAGE_SIZE,
+                                experiments.size());
+                        mProjectDetailAdapter.appendExperiments(experiments);
                     }
                 });
     }
 
-    private void attachToExperiments(final List<Experiment> experiments) {
+    private void loadSummaries(final List<Experiment> experiments) {
+        getDataController().getExperimentSummaries(mProject,
+                new LoggingConsumer<Map<String, ExperimentSummary>>(TAG,
+                        "Retrieve experiment summaries") {
+                    @Override
+                    public void success(Map<String, ExperimentSummary> summaries) {
+                        attachToExperiments(experiments, summaries);
+                    }
+                });
+    }
+
+    private void attachToExperiments(final List<Experiment> experiments,
+            Map<String, ExperimentSummary> summaries) {
         final View rootView = getView();
         if (rootView == null) {
             return;
         }
-        mProjectDetailAdapter.setData(mProject, experiments);
+        mProjectDetailAdapter.setData(mProject, experiments, summaries);
     }
 
     private DataController getDataController() {
@@ -396,20 +442,115 @@ public class ProjectDetailsFragment extends Fragment implements
 
         private Project mProject;
         private List<Experiment> mExperiments;
+        private Map<String, ExperimentSummary> mSummaries;
         private int mExperimentStartPosition;
 
         public ProjectDetailAdapter(Context context) {
             mExperiments = new ArrayList<>();
+            mSummaries = new HashMap<>();
             mPlaceHolderImage = context.getResources().getDrawable(
                     R.drawable.placeholder_experiment);
         }
 
-        void setData(Project project, List<Experiment> experiments) {
+        void setData(Project project, final List<Experiment> experiments,
+                final Map<String, ExperimentSummary> summaries) {
+            boolean hadData = mProject != null && !mExperiments.isEmpty();
+            int oldStartPosition = mExperimentStartPosition;
             mProject = project;
+            updateExperimentStartPosition();
+            if (!hadData || experiments.isEmpty()
+                    || oldStartPosition != mExperimentStartPosition) {
+                // The description or empty cards come or go, so rebuild everything.
+                replaceData(experiments, summaries);
+                notifyDataSetChanged();
+                return;
+            }
+
+            // Otherwise only rebind the cards that changed.
+            DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+                @Override
+                public int getOldListSize() {
+                    return mExperiments.size();
+                }
+
+                @Override
+                public int getNewListSize() {
+                    return experiments.size();
+                }
+
+                @Override
+                public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                    return TextUtils.equals(mExperiments.get(oldItemPosition).getExperimentId(),
+                            experiments.get(newItemPosition).getExperimentId());
+                }
+
+                @Override
+                public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                    Experiment oldExperiment = mExperiments.get(oldItemPosition);
+                    Experiment newExperiment = experiments.get(newItemPosition);
+                    String experimentId = newExperiment.getExperimentId();
+                    return TextUtils.equals(oldExperiment.getTitle(), newExperiment.getTitle())
+                            && oldExperiment.isArchived() == newExperiment.isArchived()
+                            && Objects.equal(mSummaries.get(experimentId),
+                                    summaries.get(experimentId));
+                }
+            });
+            replaceData(experiments, summaries);
+            if (mExperimentStartPosition > 0) {
+                // The project description may have changed.
+                notifyItemChanged(0);
+            }
+            diff.dispatchUpdatesTo(new ListUpdateCallback() {
+                @Override
+                public void onInserted(int position, int count) {
+                    notifyItemRangeInserted(position + mExperimentStartPosition, count);
+                }
+
+                @Override
+                public void onRemoved(int position, int count) {
+                    notifyItemRangeRemoved(position + mExperimentStartPosition, count);
+                }
+
+                @Override
+                public void onMoved(int fromPosition, int toPosition) {
+                    notifyItemMoved(fromPosition + mExperimentStartPosition,
+                            toPosition + mExperimentStartPosition);
+                }
+
+                @Override
+                public void onChanged(int position, int count, Object payload) {
+                    notifyItemRangeChanged(position + mExperimentStartPosition, count, payload);
+                }
+            });
+        }
+
+        private void replaceData(List<Experiment> experiments,
+                Map<String, ExperimentSummary> summaries) {
             mExperiments.clear();
             mExperiments.addAll(experiments);
-            updateExperimentStartPosition();
-            notifyDataSetChanged();
+            mSummaries.clear();
+            mSummaries.putAll(summaries);
+        }
+
+        void appendExperiments(List<Experiment> experiments) {
+            if (mExperiments.isEmpty()) {
+                // Nothing to append to: the list was emptied while this page was loading.
+                return;
+            }
+            int start = mExperimentStartPosition + mExperiments.size();
+            mExperiments.addAll(experiments);
+            notifyItemRangeInserted(start, experiments.size());
+        }
+
+        int getExperimentCount() {
+            return mExperiments.size();
+        }
+
+        /**
+         * @return the last experiment loaded so far, or null if there are none.
+         */
+        Experiment getLastExperiment() {
+            return mExperiments.isEmpty() ? null : mExperiments.get(mExperiments.size() - 1);
         }
 
         void updateExperimentStartPosition() {
@@ -478,15 +619,12 @@ public class ProjectDetailsFragment extends Fragment implements
 
         private void bindExperiment(final ViewHolder holder, final Experiment experiment) {
             Resources res = holder.itemView.getResources();
-            // First on the UI thread, set what experiment we're trying to load.
-            holder.overviewLoadStatus = ViewHolder.LOAD_STATUS_IN_PROGRESS;
             holder.experimentId = experiment.getExperimentId();
 
             // Set the data we know about.
             String experimentText = experiment.getDisplayTitle(holder.itemView.getContext());
             holder.experimentTitle.setText(experimentText);
             holder.experimentImage.setImageDrawable(mPlaceHolderImage);
-            // Set indeterminate states on the things we don't know.
             holder.experimentLastRun.setText("");
             holder.experimentRunTotals.setText("");
             holder.archivedIndicator.setVisibility(experiment.isArchived() ? View.VISIBLE :
@@ -509,9 +647,6 @@ public class ProjectDetailsFragment extends Fragment implements
 
             holder.itemView.setTag(R.id.experiment_title, experiment.getExperimentId());
 
-            final DataController dc = AppSingleton.getInstance(
-                    holder.itemView.getContext()).getDataController();
-
             holder.cardView.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
@@ -519,22 +654,10 @@ public class ProjectDetailsFragment extends Fragment implements
                 }
             });
 
-            // Start loading data for runs.
-            dc.getExperimentRuns(
-                    experiment.getExperimentId(), /* don't include archived runs */ false,
-                    new LoggingConsumer<List<ExperimentRun>>(TAG, "loading runs") {
-
-                        @Override
-                        public void success(List<ExperimentRun> runs) {
-                            if (!holder.experimentId.equals(experiment.getExperimentId())) {
-                                // Only load the data if we are have retrieved data for the same
-                                // item. Otherwise, exit.
-                                return;
-                            }
-                            holder.overviewLoadStatus = ViewHolder.LOAD_STATUS_IDLE;
-                            loadRunData(holder, experiment, runs);
-                        }
-                    });
+            ExperimentSummary summary = mSummaries.get(experiment.getExperimentId());
+            if (summary != null) {
+                bindSummary(holder, summary);
+            }
         }
 
         private void setCardColor(ViewHolder holder, int color) {
@@ -548,63 +671,22 @@ public class ProjectDetailsFragment extends Fragment implements
             }
         }
 
-        private void loadRunData(final ViewHolder holder, final Experiment experiment,
-                                 List<ExperimentRun> runs) {
+        private void bindSummary(ViewHolder holder, ExperimentSummary summary) {
             Context context = holder.itemView.getContext();
+            int runCount = summary.getRunCount();
             holder.experimentRunTotals.setText(context.getResources()
-                    .getQuantityString(R.plurals.experiment_run_count, runs.size(), runs.size()));
-            final DataController dc = AppSingleton.getInstance(
-                    holder.itemView.getContext()).getDataController();
-            final String experimentId = holder.experimentId;
-            if (runs.size() > 0) {
-                // Take the first run, which should be the last created run.
-                holder.experimentLastRun.setTime(runs.get(0).getFirstTimestamp());
-
-                PictureLabel expPhoto = null;
-                for (ExperimentRun run : runs) {
-                    if (run.getCoverPictureLabel() != null) {
-                        expPhoto = run.getCoverPictureLabel();
-                        break;
-                    }
-                }
-                if (expPhoto != null) {
-                    loadPhoto(holder, expPhoto);
-                } else {
-                    loadPhotoFromExperimentLabels(holder, experiment, dc, experimentId);
-                }
-            } else {
-                holder.experimentLastRun.setText("");
-                loadPhotoFromExperimentLabels(holder, experiment, dc, experimentId);
+                    .getQuantityString(R.plurals.experiment_run_count, runCount, runCount));
+            if (summary.getLastRunTimestamp() != ExperimentSummary.NO_RUNS) {
+                holder.experimentLastRun.setTime(summary.getLastRunTimestamp());
+            }
+            if (summary.getCoverPicturePath() != null) {
+                loadPhoto(holder, summary.getCoverPicturePath());
             }
         }
 
-        private void loadPhotoFromExperimentLabels(final ViewHolder holder, Experiment experiment,
-                                                   DataController dc, final String experimentId) {
-            holder.labelLoadStatus = ViewHolder.LOAD_STATUS_IN_PROGRESS;
-            dc.getLabelsForExperiment(experiment, new LoggingConsumer<List<Label>>(TAG,
-                    "Loading labels") {
-                @Override
-                public void success(List<Label> labels) {
-                    if (!experimentId.equals(holder.experimentId) ||
-                            holder.labelLoadStatus != ViewHolder.LOAD_STATUS_IN_PROGRESS) {
-                        // Don't load data if the experiment ID of the holder has changed or
-                        // if we didn't think we were loading.
-                        return;
-                    }
-                    holder.labelLoadStatus = ViewHolder.LOAD_STATUS_IDLE;
-                    for (Label label : labels) {
-                        if (label instanceof PictureLabel) {
-                            loadPhoto(holder, (PictureLabel) label);
-                            break;
-                        }
-                    }
-                }
-            });
-        }
-
-        private void loadPhoto(final ViewHolder holder, PictureLabel expPhoto) {
+        private void loadPhoto(final ViewHolder holder, String filePath) {
             Glide.with(holder.experimentImage.getContext())
-                    .load(expPhoto.getFilePath())
+                    .load(filePath)
                     .asBitmap()
                     .centerCrop()
                     .into(new BitmapImageViewTarget(holder.experimentImage) {
@@ -627,26 +709,13 @@ public class ProjectDetailsFragment extends Fragment implements
 
     public static class ViewHolder extends RecyclerView.ViewHolder {
 
-        static final int LOAD_STATUS_IN_PROGRESS = 1;
-        static final int LOAD_STATUS_IDLE = 2;
-
         // Accessing via fields for faster access.
 
         /**
-         * Experiment ID that is being loaded or has been loaded.
+         * Experiment ID that has been bound to this holder.
          */
         String experimentId;
 
-        /**
-         * Load status for the experiment overview.
-         */
-        int overviewLoadStatus;
-
-        /**
-         * Load status for labels.
-         */
-        int labelLoadStatus;
-
         TextView experimentTitle;
         RelativeTimeTextView experimentLastRun;
         TextView experimentRunTotals;
@@ -25,6 +25,7 @@ import android.support.design.widget.FloatingActionButton;
 import android.support.design.widget.Snackbar;
 import android.support.v4.app.ActivityOptionsCompat;
 import android.support.v4.view.ViewCompat;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.CardView;
 import android.support.v7.widget.DefaultItemAnimator;
 import android.support.v7.widget.GridLayoutManager;
@@ -59,9 +60,7 @@ import com.google.android.apps.forscience.whistlepunk.project.experiment.UpdateE
 import com.google.android.apps.forscience.whistlepunk.review.DeleteMetadataItemDialog;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
 
 /**
  * A simple {@link Fragment} subclass.
@@ -84,6 +83,7 @@ public class ProjectTabsFragment extends Fragment implements
     private RecyclerView mRecyclerView;
     private TextView mEmptyView;
     private ProjectAdapter mAdapter;
+    private PagingScrollListener mPagingListener;
     private boolean mIncludeArchived;
     private Snackbar mUndoSnackbar;
 
@@ -151,6 +151,13 @@ public class ProjectTabsFragment extends Fragment implements
         });
         mAdapter = new ProjectAdapter();
         mRecyclerView.setAdapter(mAdapter);
+        mPagingListener = new PagingScrollListener(new PagingScrollListener.PageLoader() {
+            @Override
+            public void loadNextPage() {
+                loadMoreProjects();
+            }
+        });
+        mRecyclerView.addOnScrollListener(mPagingListener);
         if (savedInstanceState != null) {
             mIncludeArchived = savedInstanceState.getBoolean(EXTRA_INCLUDE_ARCHIVED, false);
             getActivity().invalidateOptionsMenu();
@@ -208,16 +215,37 @@ public class ProjectTabsFragment extends Fragment implements
     }
 
     private void loadProjects() {
-        // TODO: remove limit on projects.
-        getDataController().getProjects(100, mIncludeArchived,
+        // Reload as many projects as the user has already scrolled through, so that they keep
+        // their place in the list.
+        final int count = Math.max(PagingScrollListener.PAGE_SIZE, mAdapter.getItemCount());
+        getDataController().getProjects(count, mIncludeArchived, null,
                 new LoggingConsumer<List<Project>>(TAG, "retrieve projects") {
                     @Override
                     public void success(List<Project> projects) {
+                        mPagingListener.onPageLoaded(count, projects.size());
                         attachToProjects(projects);
                     }
                 });
     }
 
+    private void loadMoreProjects() {
+        final Project last = mAdapter.getItem(mAdapter.getItemCount() - 1);
+        getDataController().getProjects(PagingScrollListener.PAGE_SIZE, mIncludeArchived, last,
+                new LoggingConsumer<List<Project>>(TAG, "retrieve more projects") {
+                    @Override
+                    public void success(List<Project> projects) {
+                        if (mAdapter.getItemCount() == 0
+                                || mAdapter.getItem(mAdapter.getItemCount() - 1) != last) {
+                            // The list was reloaded while this page was loading.
+                            return;
+                        }
+                        mPagingListener.onPageLoaded(PagingScrollListener.PAGE_SIZE,
+                                projects.size());
+                        mAdapter.append(projects);
+                    }
+                });
+    }
+
     private void attachToProjects(final List<Project> projects) {
         setContentViewVisibility(projects.size() > 0);
 
@@ -271,17 +299,50 @@ public class ProjectTabsFragment extends Fragment implements
             mProjects = new ArrayList<>();
         }
 
-        void setProjects(List<Project> projects, String activeProjectId) {
-            if (Objects.equals(mActiveProjectId, activeProjectId)
-                    && Arrays.deepEquals(mProjects.toArray(), projects.toArray())) {
-                // Everything is equal. Don't destroy all the views.
-                return;
-            }
+        void setProjects(final List<Project> projects, final String activeProjectId) {
+            // Only rebind the cards that changed, so that an unchanged list doesn't destroy all
+            // the views.
+            DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+                @Override
+                public int getOldListSize() {
+                    return mProjects.size();
+                }
+
+                @Override
+                public int getNewListSize() {
+                    return projects.size();
+                }
+
+                @Override
+                public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                    return TextUtils.equals(mProjects.get(oldItemPosition).getProjectId(),
+                            projects.get(newItemPosition).getProjectId());
+                }
+
+                @Override
+                public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                    Project oldProject = mProjects.get(oldItemPosition);
+                    Project newProject = projects.get(newItemPosition);
+                    return oldProject.equals(newProject)
+                            && isActive(oldProject, mActiveProjectId)
+                            == isActive(newProject, activeProjectId);
+                }
+            });
 
             mProjects.clear();
             mProjects.addAll(projects);
             mActiveProjectId = activeProjectId;
-            notifyDataSetChanged();
+            diff.dispatchUpdatesTo(this);
+        }
+
+        void append(List<Project> projects) {
+            int start = mProjects.size();
+            mProjects.addAll(projects);
+            notifyItemRangeInserted(start, projects.size());
+        }
+
+        private boolean isActive(Project project, String activeProjectId) {
+            return project.getProjectId().equals(activeProjectId);
         }
 
         Project getItem(int position) {
@@ -316,7 +377,7 @@ public class ProjectTabsFragment extends Fragment implements
             String projectText = project.getDisplayTitle(getActivity());
             holder.projectTitle.setText(projectText);
             holder.projectExperimentsCount.setText("");
-            holder.activeIndicator.setVisibility(project.getProjectId().equals(mActiveProjectId) ?
+            holder.activeIndicator.setVisibility(isActive(project, mActiveProjectId) ?
                     View.VISIBLE : View.GONE);
             holder.archivedIndicator.setVisibility(project.isArchived() ? View.VISIBLE : View.GONE);
             if (TextUtils.isEmpty(project.getCoverPhoto())) {
@@ -346,7 +407,8 @@ public class ProjectTabsFragment extends Fragment implements
 
                         @Override
                         public void onClick(View v) {
-                            showPopup(v, project, position);
+                            // Items can move without being rebound, so use the current position.
+                            showPopup(v, project, holder.getAdapterPosition());
                         }
                     });
             getDataController().getExperimentsForProject(project, false /* no archived */,
@@ -441,7 +503,7 @@ public class ProjectTabsFragment extends Fragment implements
                         public void success(Success value) {
                             if (mIncludeArchived) {
                                 // Just update, it's cleaner.
-                                notifyDataSetChanged();
+                                notifyItemChanged(position);
                             } else {
                                 if (archived) {
                                     mAdapter.remove(position);
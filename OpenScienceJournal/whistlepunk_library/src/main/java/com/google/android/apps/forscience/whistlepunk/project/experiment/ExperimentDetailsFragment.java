@@ -79,12 +79,14 @@ import com.google.android.apps.forscience.whistlepunk.metadata.CropHelper;
 import com.google.android.apps.forscience.whistlepunk.metadata.Experiment;
 import com.google.android.apps.forscience.whistlepunk.metadata.ExperimentRun;
 import com.google.android.apps.forscience.whistlepunk.metadata.GoosciLabelValue;
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciSparkline;
 import com.google.android.apps.forscience.whistlepunk.metadata.Label;
 import com.google.android.apps.forscience.whistlepunk.metadata.PictureLabel;
 import com.google.android.apps.forscience.whistlepunk.metadata.RunStats;
 import com.google.android.apps.forscience.whistlepunk.metadata.SensorTriggerLabel;
 import com.google.android.apps.forscience.whistlepunk.metadata.TextLabel;
 import com.google.android.apps.forscience.whistlepunk.metadata.TriggerHelper;
+import com.google.android.apps.forscience.whistlepunk.project.PagingScrollListener;
 import com.google.android.apps.forscience.whistlepunk.project.ProjectDetailsFragment;
 import com.google.android.apps.forscience.whistlepunk.review.DeleteMetadataItemDialog;
 import com.google.android.apps.forscience.whistlepunk.review.RunReviewActivity;
@@ -101,6 +103,7 @@ import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
 
@@ -123,6 +126,7 @@ public class ExperimentDetailsFragment extends Fragment
 
     private RecyclerView mDetails;
     private DetailsAdapter mAdapter;
+    private PagingScrollListener mPagingListener;
     FloatingActionButton mObserveButton;
 
     private Handler mHandler;
@@ -291,6 +295,13 @@ public class ExperimentDetailsFragment extends Fragment
                 LinearLayoutManager.VERTICAL, false));
         mAdapter = new DetailsAdapter(this, savedInstanceState);
         mDetails.setAdapter(mAdapter);
+        mPagingListener = new PagingScrollListener(new PagingScrollListener.PageLoader() {
+            @Override
+            public void loadNextPage() {
+                loadMoreRuns();
+            }
+        });
+        mDetails.addOnScrollListener(mPagingListener);
 
         mObserveButton = (FloatingActionButton) view.findViewById(R.id.observe);
 
@@ -331,7 +342,10 @@ public class ExperimentDetailsFragment extends Fragment
             });
         }
         final DataController dc = getDataController();
-        dc.getExperimentRuns(experiment.getExperimentId(), mIncludeArchived,
+        // Reload as many runs as the user has already scrolled through, so that they keep their
+        // place in the list.
+        final int count = Math.max(PagingScrollListener.PAGE_SIZE, mAdapter.getLoadedRunCount());
+        dc.getExperimentRuns(experiment.getExperimentId(), mIncludeArchived, null, count,
                 new LoggingConsumer<List<ExperimentRun>>(TAG, "loading runs") {
                     @Override
                     public void success(final List<ExperimentRun> runs) {
@@ -340,8 +354,9 @@ public class ExperimentDetailsFragment extends Fragment
                                         "loading labels") {
                                     @Override
                                     public void success(List<Label> labels) {
+                                        mPagingListener.onPageLoaded(count, runs.size());
                                         mAdapter.setData(experiment, runs, labels,
-                                                mScalarDisplayOptions);
+                                                runs.size() >= count, mScalarDisplayOptions);
                                     }
                                 });
 
@@ -349,6 +364,25 @@ public class ExperimentDetailsFragment extends Fragment
                 });
     }
 
+    private void loadMoreRuns() {
+        final String lastRunId = mAdapter.getLastRunId();
+        getDataController().getExperimentRuns(mExperimentId, mIncludeArchived, lastRunId,
+                PagingScrollListener.PAGE_SIZE,
+                new LoggingConsumer<List<ExperimentRun>>(TAG, "loading more runs") {
+                    @Override
+                    public void success(List<ExperimentRun> runs) {
+                        if (!TextUtils.equals(lastRunId, mAdapter.getLastRunId())) {
+                            // The list was reloaded while this page was loading.
+                            return;
+                        }
+                        mPagingListener.onPageLoaded(PagingScrollListener.PAGE_SIZE,
+                                runs.size());
+                        mAdapter.appendRuns(runs, runs.size() >= PagingScrollListener.PAGE_SIZE,
+                                mScalarDisplayOptions);
+                    }
+                });
+    }
+
     private void attachExperimentDetails(Experiment experiment) {
         mExperiment = experiment;
         final View rootView = getView();
@@ -688,12 +722,27 @@ public class ExperimentDetailsFragment extends Fragment
         private static final int VIEW_TYPE_EMPTY = 4;
         private static final int VIEW_TYPE_EXPERIMENT_TRIGGER_LABEL = 5;
 
+        private static final Comparator<ExperimentDetailItem> ITEMS_NEWEST_FIRST =
+                new Comparator<ExperimentDetailItem>() {
+                    @Override
+                    public int compare(ExperimentDetailItem lhs, ExperimentDetailItem rhs) {
+                        return Long.compare(rhs.getTimestamp(), lhs.getTimestamp());
+                    }
+                };
+
         private final WeakReference<ExperimentDetailsFragment> mParentReference;
         private Experiment mExperiment;
         private List<ExperimentDetailItem> mItems;
         private List<Integer> mSensorIndices = null;
         private boolean mHasRunsOrLabels;
 
+        // Runs are loaded a page at a time, newest first.  Experiment labels older than the
+        // oldest run loaded so far wait here until the page of runs that reaches them, so that
+        // they don't show up out of order at the end of the list.
+        private boolean mHasMoreRuns;
+        private long mOldestRunTimestamp;
+        private List<Label> mPendingLabels = new ArrayList<>();
+
         DetailsAdapter(ExperimentDetailsFragment parent, Bundle savedInstanceState) {
             mItems = new ArrayList<>();
             mParentReference = new WeakReference<ExperimentDetailsFragment>(parent);
@@ -867,6 +916,12 @@ public class ExperimentDetailsFragment extends Fragment
         }
 
         public void deleteNote(Label label) {
+            Iterator<Label> pending = mPendingLabels.iterator();
+            while (pending.hasNext()) {
+                if (TextUtils.equals(pending.next().getLabelId(), label.getLabelId())) {
+                    pending.remove();
+                }
+            }
             int position = findLabelIndex(label);
             if (position == -1) {
                 return;
@@ -899,6 +954,10 @@ public class ExperimentDetailsFragment extends Fragment
         }
 
         public void insertNote(Label label) {
+            if (isBeyondLoadedRuns(label)) {
+                mPendingLabels.add(label);
+                return;
+            }
             int size = mItems.size();
             long timestamp = label.getTimeStamp();
             boolean inserted = false;
@@ -940,11 +999,16 @@ public class ExperimentDetailsFragment extends Fragment
         }
 
         public void setData(Experiment experiment, List<ExperimentRun> runs, List<Label> labels,
-                ScalarDisplayOptions scalarDisplayOptions) {
+                boolean hasMoreRuns, ScalarDisplayOptions scalarDisplayOptions) {
             mHasRunsOrLabels = false;
             mExperiment = experiment;
             // TODO: compare data and see if anything has changed. If so, don't reload at all.
             mItems.clear();
+            mPendingLabels.clear();
+            mHasMoreRuns = hasMoreRuns;
+            if (!runs.isEmpty()) {
+                mOldestRunTimestamp = runs.get(runs.size() - 1).getFirstTimestamp();
+            }
             // As a safety check, if mSensorIndices is not the same size as the run list,
             // just ignore it.
             if (mSensorIndices != null && mSensorIndices.size() != runs.size()) {
@@ -961,7 +1025,11 @@ public class ExperimentDetailsFragment extends Fragment
                 if (TextUtils.equals(
                         label.getRunId(), RecordFragment.NOT_RECORDING_RUN_ID)) {
                     if (ExperimentDetailItem.canShowLabel(label)) {
-                        mItems.add(new ExperimentDetailItem(label));
+                        if (isBeyondLoadedRuns(label)) {
+                            mPendingLabels.add(label);
+                        } else {
+                            mItems.add(new ExperimentDetailItem(label));
+                        }
                         mHasRunsOrLabels = true;
                     }
                 }
@@ -983,6 +1051,67 @@ public class ExperimentDetailsFragment extends Fragment
             notifyDataSetChanged();
         }
 
+        /**
+         * Adds the next page of runs, along with the experiment labels that fall among them, to
+         * the end of the list.
+         */
+        public void appendRuns(List<ExperimentRun> runs, boolean hasMoreRuns,
+                ScalarDisplayOptions scalarDisplayOptions) {
+            mHasMoreRuns = hasMoreRuns;
+            if (!runs.isEmpty()) {
+                mOldestRunTimestamp = runs.get(runs.size() - 1).getFirstTimestamp();
+            }
+            List<ExperimentDetailItem> newItems = new ArrayList<>();
+            for (ExperimentRun run : runs) {
+                newItems.add(new ExperimentDetailItem(run, scalarDisplayOptions));
+            }
+            Iterator<Label> pending = mPendingLabels.iterator();
+            while (pending.hasNext()) {
+                Label label = pending.next();
+                if (!isBeyondLoadedRuns(label)) {
+                    newItems.add(new ExperimentDetailItem(label));
+                    pending.remove();
+                }
+            }
+            Collections.sort(newItems, ITEMS_NEWEST_FIRST);
+            int start = mItems.size();
+            mItems.addAll(newItems);
+            notifyItemRangeInserted(start, newItems.size());
+        }
+
+        /**
+         * @return how many runs have been loaded, or if none have been loaded yet, how many
+         * there were when instance state was saved.
+         */
+        int getLoadedRunCount() {
+            int count = 0;
+            for (ExperimentDetailItem item : mItems) {
+                if (item.getViewType() == VIEW_TYPE_RUN_CARD) {
+                    count++;
+                }
+            }
+            if (count == 0 && mSensorIndices != null) {
+                return mSensorIndices.size();
+            }
+            return count;
+        }
+
+        /**
+         * @return the ID of the oldest run loaded so far, or null if there are none.
+         */
+        String getLastRunId() {
+            for (int i = mItems.size() - 1; i >= 0; i--) {
+                if (mItems.get(i).getViewType() == VIEW_TYPE_RUN_CARD) {
+                    return mItems.get(i).getRun().getRunId();
+                }
+            }
+            return null;
+        }
+
+        private boolean isBeyondLoadedRuns(Label label) {
+            return mHasMoreRuns && label.getTimeStamp() < mOldestRunTimestamp;
+        }
+
         /**
          * Checks to see if we have any labels or runs. If so, hides the empty view. Otherwise,
          * add the empty view at the right location.
@@ -1208,42 +1337,70 @@ public class ExperimentDetailsFragment extends Fragment
                             // inappropriately.
                             holder.currentSensorStats = stats;
 
-                            // Load sensor readings into a chart.
-                            final ChartController chartController = item.getChartController();
-                            chartController.setChartView(holder.chartView);
-                            chartController.setProgressView(holder.progressView);
-                            holder.setSensorLayout(sensorLayout);
-                            chartController.loadRunData(run, sensorLayout, dc, holder, stats,
-                                    new ChartController.ChartDataLoadedCallback() {
-                                        @Override
-                                        public void onChartDataLoaded(long firstTimestamp,
-                                                long lastTimestamp) {
-                                            // Display the graph.
-                                            chartController.setXAxisWithBuffer(firstTimestamp,
-                                                    lastTimestamp);
-                                            chartController.setReviewYAxis(
-                                                    holder.currentSensorStats.getStat(
-                                                            StatsAccumulator.KEY_MIN),
-                                                    holder.currentSensorStats.getStat(
-                                                            StatsAccumulator.KEY_MAX), true);
-                                        }
-
-                                        @Override
-                                        public void onLoadAttemptStarted(boolean unused) {
-
-                                        }
-                                    });
+                            loadChart(dc, holder, item, sensorLayout, stats);
+                        }
+                    });
+        }
+
+        private void loadChart(final DataController dc, final ViewHolder holder,
+                final ExperimentDetailItem item,
+                final GoosciSensorLayout.SensorLayout sensorLayout, final RunStats stats) {
+            final ExperimentRun run = item.getRun();
+            final ChartController chartController = item.getChartController();
+            chartController.setChartView(holder.chartView);
+            chartController.setProgressView(holder.progressView);
+            holder.setSensorLayout(sensorLayout);
+
+            // Prefer the summary stored when the run was recorded, which needs no sensor database
+            // access. Runs recorded before summaries were kept fall back to loading readings.
+            dc.getSparkline(run.getRunId(), sensorLayout.sensorId,
+                    new LoggingConsumer<GoosciSparkline.Sparkline>(TAG, "loading sparkline") {
+                        @Override
+                        public void success(GoosciSparkline.Sparkline sparkline) {
+                            if (!run.getRunId().equals(holder.getRunId()) ||
+                                    holder.currentSensorStats != stats) {
+                                return;
+                            }
+                            if (sparkline == null) {
+                                loadRunData(dc, holder, chartController, run, sensorLayout,
+                                        stats);
+                                return;
+                            }
+                            chartController.loadSparkline(run, sensorLayout, sparkline);
+                            chartController.setXAxisWithBuffer(run.getFirstTimestamp(),
+                                    run.getLastTimestamp());
+                            setReviewYAxis(chartController, stats);
+                        }
+                    });
+        }
+
+        private void loadRunData(DataController dc, final ViewHolder holder,
+                final ChartController chartController, ExperimentRun run,
+                GoosciSensorLayout.SensorLayout sensorLayout, RunStats stats) {
+            chartController.loadRunData(run, sensorLayout, dc, holder, stats,
+                    new ChartController.ChartDataLoadedCallback() {
+                        @Override
+                        public void onChartDataLoaded(long firstTimestamp,
+                                long lastTimestamp) {
+                            // Display the graph.
+                            chartController.setXAxisWithBuffer(firstTimestamp, lastTimestamp);
+                            setReviewYAxis(chartController, holder.currentSensorStats);
+                        }
+
+                        @Override
+                        public void onLoadAttemptStarted(boolean unused) {
+
                         }
                     });
         }
 
+        private void setReviewYAxis(ChartController chartController, RunStats stats) {
+            chartController.setReviewYAxis(stats.getStat(StatsAccumulator.KEY_MIN),
+                    stats.getStat(StatsAccumulator.KEY_MAX), true);
+        }
+
         void sortItems() {
-            Collections.sort(mItems, new Comparator<ExperimentDetailItem>() {
-                @Override
-                public int compare(ExperimentDetailItem lhs, ExperimentDetailItem rhs) {
-                    return Long.compare(rhs.getTimestamp(), lhs.getTimestamp());
-                }
-            });
+            Collections.sort(mItems, ITEMS_NEWEST_FIRST);
         }
 
         public void onSaveInstanceState(Bundle outState) {
@@ -26,8 +26,10 @@ import android.support.annotation.VisibleForTesting;
 import android.util.Log;
 
 import com.google.android.apps.forscience.javalib.MaybeConsumer;
+import com.google.android.apps.forscience.javalib.Success;
 import com.google.android.apps.forscience.whistlepunk.DataController;
 import com.google.android.apps.forscience.whistlepunk.metadata.ExperimentRun;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamAligner;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamConsumer;
 import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarReadingList;
 import com.google.android.apps.forscience.whistlepunk.sensordb.TimeRange;
@@ -38,13 +40,20 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.util.List;
 
 public class RunReviewExporter implements Handler.Callback {
     private static final String TAG = "RunReviewExporter";
 
     private static final int MSG_WRITE = 121;
+    private static final int MSG_WRITE_ROWS = 122;
     private static final int MAX_RECORDS = 500;
 
+    // Spacing of the rows when exporting several sensors side by side.  Matches how often the
+    // graphs are refreshed while recording.
+    private static final long ALIGNED_PERIOD_MILLIS = 100;
+    private static final int ALIGNED_CAPACITY = 1000;
+
     private final DataController mDataController;
     private final Listener mListener;
 
@@ -93,13 +102,7 @@ public class RunReviewExporter implements Handler.Callback {
 
     public void startExport(Context context, final String experimentName, final ExperimentRun run,
             String sensorTag) {
-        mStop = false;
-        mRun = run;
         mSensorTag = sensorTag;
-        mContext = context.getApplicationContext();
-        mHandlerThread = new HandlerThread("export", Thread.MIN_PRIORITY);
-        mHandlerThread.start();
-        mHandler = new Handler(mHandlerThread.getLooper(), this);
         mStreamConsumer = new StreamConsumer() {
             @Override
             public void addData(final long timestampMillis, final double value) {
@@ -120,6 +123,72 @@ public class RunReviewExporter implements Handler.Callback {
                 }
             }
         };
+        openOutput(context, experimentName, run, new String[] {"timestamp", "value"});
+
+        mListener.onExportStarted();
+
+        Range<Long> times = Range.closed(mRun.getFirstTimestamp(), mRun.getLastTimestamp());
+        getReadings(TimeRange.oldest(times));
+    }
+
+    /**
+     * Exports several sensors into one file, resampled onto a common time grid so that each row
+     * has a value from every sensor.  The first column is the timestamp, followed by one column
+     * per sensor tag, which is left empty where that sensor has no value.
+     */
+    public void startAlignedExport(Context context, String experimentName, ExperimentRun run,
+            List<String> sensorTags) {
+        String[] header = new String[sensorTags.size() + 1];
+        header[0] = "timestamp";
+        for (int i = 0; i < sensorTags.size(); i++) {
+            header[i + 1] = sensorTags.get(i);
+        }
+        openOutput(context, experimentName, run, header);
+        final Handler handler = mHandler;
+
+        StreamAligner aligner = new StreamAligner(run.getFirstTimestamp(), ALIGNED_PERIOD_MILLIS,
+                ALIGNED_CAPACITY, new StreamAligner.RowConsumer() {
+            @Override
+            public void onRows(long firstTimestampMillis, double[][] values, int offset,
+                    int count) {
+                // The aligner reuses its arrays, so copy the rows before handing them over.
+                handler.sendMessage(Message.obtain(handler, MSG_WRITE_ROWS,
+                        new AlignedRows(firstTimestampMillis, values, offset, count)));
+            }
+        });
+        StoredRunAligner runAligner = new StoredRunAligner(mDataController, aligner);
+        for (String sensorTag : sensorTags) {
+            runAligner.addSensor(sensorTag, StreamAligner.Interpolation.LINEAR);
+        }
+
+        mListener.onExportStarted();
+
+        runAligner.align(run.getFirstTimestamp(), run.getLastTimestamp(),
+                new MaybeConsumer<Success>() {
+                    @Override
+                    public void success(Success value) {
+                        // Unless this export has been stopped in the meantime.
+                        if (mHandler == handler) {
+                            endExport();
+                        }
+                    }
+
+                    @Override
+                    public void fail(Exception e) {
+                        mListener.onExportError(e);
+                    }
+                });
+    }
+
+    private void openOutput(Context context, final String experimentName,
+            final ExperimentRun run, final String[] header) {
+        mStop = false;
+        mRun = run;
+        mLastTimeStampWritten = -1;
+        mContext = context.getApplicationContext();
+        mHandlerThread = new HandlerThread("export", Thread.MIN_PRIORITY);
+        mHandlerThread.start();
+        mHandler = new Handler(mHandlerThread.getLooper(), this);
         mHandler.post(new Runnable() {
 
             @Override
@@ -149,9 +218,12 @@ public class RunReviewExporter implements Handler.Callback {
 
                 mOutputStreamWriter = new OutputStreamWriter(fs);
                 try {
-                    mOutputStreamWriter.write("timestamp");
-                    mOutputStreamWriter.write(",");
-                    mOutputStreamWriter.write("value");
+                    for (int i = 0; i < header.length; i++) {
+                        if (i > 0) {
+                            mOutputStreamWriter.write(",");
+                        }
+                        mOutputStreamWriter.write(header[i]);
+                    }
                     mOutputStreamWriter.write("\n");
                 } catch (IOException e) {
                     mListener.onExportError(e);
@@ -159,11 +231,6 @@ public class RunReviewExporter implements Handler.Callback {
                 }
             }
         });
-
-        mListener.onExportStarted();
-
-        Range<Long> times = Range.closed(mRun.getFirstTimestamp(), mRun.getLastTimestamp());
-        getReadings(TimeRange.oldest(times));
     }
 
     @NonNull
@@ -196,7 +263,7 @@ public class RunReviewExporter implements Handler.Callback {
 
     private void getReadings(TimeRange range) {
         mDataController.getScalarReadings(mSensorTag, 0, range, MAX_RECORDS,
-                new MaybeConsumer<ScalarReadingList>() {
+                DataController.ReadPriority.BACKGROUND, new MaybeConsumer<ScalarReadingList>() {
                     @Override
                     public void success(ScalarReadingList value) {
                         addReadings(value);
@@ -259,6 +326,7 @@ public class RunReviewExporter implements Handler.Callback {
     public void stop() {
         mStop = true;
         mHandler.removeMessages(MSG_WRITE);
+        mHandler.removeMessages(MSG_WRITE_ROWS);
         closeStreamIfNecessary();
         destroy();
         mListener.onExportEnd(null);
@@ -283,10 +351,8 @@ public class RunReviewExporter implements Handler.Callback {
             if (mStop) {
                 return false;
             }
-            final long start = mRun.getFirstTimestamp();
+            reportProgress();
             final long end = mRun.getLastTimestamp();
-            int progress = (int) (((mLastTimeStampWritten - start) / (double) (end - start)) * 100);
-            mListener.onExportProgress(progress);
             if (list.size() == 0 || list.size() < MAX_RECORDS || mLastTimeStampWritten >= end) {
                 endExport();
             } else {
@@ -294,10 +360,47 @@ public class RunReviewExporter implements Handler.Callback {
                 getReadings(TimeRange.oldest(times));
             }
             return true;
+        } else if (msg.what == MSG_WRITE_ROWS) {
+            if (mStop) {
+                return false;
+            }
+            try {
+                writeRows((AlignedRows) msg.obj);
+            } catch (IOException e) {
+                mListener.onExportError(e);
+                return true;
+            }
+            reportProgress();
+            return true;
         }
         return false;
     }
 
+    private void writeRows(AlignedRows rows) throws IOException {
+        if (mOutputStreamWriter == null) {
+            throw new IOException("Output stream closed.");
+        }
+        for (int i = 0; i < rows.mCount; i++) {
+            long timestamp = rows.mFirstTimestampMillis + i * ALIGNED_PERIOD_MILLIS;
+            mOutputStreamWriter.write(Long.toString(timestamp));
+            for (double[] column : rows.mColumns) {
+                mOutputStreamWriter.write(",");
+                if (!Double.isNaN(column[i])) {
+                    mOutputStreamWriter.write(Double.toString(column[i]));
+                }
+            }
+            mOutputStreamWriter.write("\n");
+            mLastTimeStampWritten = timestamp;
+        }
+    }
+
+    private void reportProgress() {
+        final long start = mRun.getFirstTimestamp();
+        final long end = mRun.getLastTimestamp();
+        int progress = (int) (((mLastTimeStampWritten - start) / (double) (end - start)) * 100);
+        mListener.onExportProgress(progress);
+    }
+
     public boolean isExporting() {
         return mOutputStreamWriter != null;
     }
@@ -324,4 +427,23 @@ public class RunReviewExporter implements Handler.Callback {
     public static String sanitizeFilename(String inputName) {
         return inputName.replaceAll("[^ a-zA-Z0-9-_\\.]", "_");
     }
+
+    /**
+     * A copy of some consecutive rows from a {@link StreamAligner}, one array per column.
+     */
+    private static class AlignedRows {
+        final long mFirstTimestampMillis;
+        final double[][] mColumns;
+        final int mCount;
+
+        AlignedRows(long firstTimestampMillis, double[][] values, int offset, int count) {
+            mFirstTimestampMillis = firstTimestampMillis;
+            mColumns = new double[values.length][];
+            for (int c = 0; c < values.length; c++) {
+                mColumns[c] = new double[count];
+                System.arraycopy(values[c], offset, mColumns[c], 0, count);
+            }
+            mCount = count;
+        }
+    }
 };
@@ -16,12 +16,15 @@
 
 package com.google.android.apps.forscience.whistlepunk.review;
 
+import android.app.AlertDialog;
 import android.app.Fragment;
 import android.app.FragmentTransaction;
 import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.res.Configuration;
+import android.graphics.Color;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
@@ -51,6 +54,7 @@ import android.widget.ProgressBar;
 import android.widget.TextView;
 
 import com.google.android.apps.forscience.javalib.MaybeConsumer;
+import com.google.android.apps.forscience.javalib.MaybeConsumers;
 import com.google.android.apps.forscience.javalib.Success;
 import com.google.android.apps.forscience.whistlepunk.AccessibilityUtils;
 import com.google.android.apps.forscience.whistlepunk.AddNoteDialog;
@@ -64,6 +68,7 @@ import com.google.android.apps.forscience.whistlepunk.EditNoteDialog;
 import com.google.android.apps.forscience.whistlepunk.ElapsedTimeFormatter;
 import com.google.android.apps.forscience.whistlepunk.ExternalAxisController;
 import com.google.android.apps.forscience.whistlepunk.ExternalAxisView;
+import com.google.android.apps.forscience.whistlepunk.GraphPopulator;
 import com.google.android.apps.forscience.whistlepunk.LocalSensorOptionsStorage;
 import com.google.android.apps.forscience.whistlepunk.LoggingConsumer;
 import com.google.android.apps.forscience.whistlepunk.MultiWindowUtils;
@@ -97,11 +102,16 @@ import com.google.android.apps.forscience.whistlepunk.scalarchart.ChartControlle
 import com.google.android.apps.forscience.whistlepunk.scalarchart.ChartOptions;
 import com.google.android.apps.forscience.whistlepunk.scalarchart.ChartView;
 import com.google.android.apps.forscience.whistlepunk.scalarchart.GraphOptionsController;
+import com.google.android.apps.forscience.whistlepunk.scalarchart.OverlaidRun;
 import com.google.android.apps.forscience.whistlepunk.scalarchart.ScalarDisplayOptions;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.NewOptionsStorage;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamStat;
+import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarReadingList;
+import com.google.android.apps.forscience.whistlepunk.sensordb.TimeRange;
+import com.google.common.collect.Range;
 
 import java.text.NumberFormat;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -137,6 +147,15 @@ public class RunReviewFragment extends Fragment implements AddNoteDialog.AddNote
     public static final int LABEL_TYPE_TEXT = 0;
     public static final int LABEL_TYPE_PICTURE = 1;
 
+    // Enough runs to compare while keeping panning and zooming smooth.
+    private static final int MAX_OVERLAID_RUNS = 10;
+
+    // Speeds offered for audio playback of a run, as multiples of the recorded speed.
+    private static final int[] PLAYBACK_SPEEDS = {1, 2, 4, 8, 16};
+
+    // Overlaid runs are drawn partly transparent so that the reviewed run stands out.
+    private static final int OVERLAID_RUN_ALPHA = 0x99;
+
     private ImageButton mRunReviewPlaybackButton;
     private AudioPlaybackController mAudioPlaybackController;
     private boolean mWasPlayingBeforeTouch = false;
@@ -156,6 +175,9 @@ public class RunReviewFragment extends Fragment implements AddNoteDialog.AddNote
     private ProgressBar mExportProgress;
     private RunReviewExporter mRunReviewExporter;
     private RunStats mCurrentSensorStats;
+    private ExperimentRun mPreloadedRun;
+    // Incremented whenever overlaid runs are cleared, so that late loads are not added back.
+    private int mOverlayGeneration = 0;
     private boolean mShowStatsOverlay = false;
     private BroadcastReceiver mBroadcastReceiver;
     private Pair<Double, Double> mPreviousYPair;
@@ -495,8 +517,8 @@ public class RunReviewFragment extends Fragment implements AddNoteDialog.AddNote
     @Override
     public void onPrepareOptionsMenu(Menu menu) {
         boolean enableDevTools = DevOptionsFragment.isDevToolsEnabled(getActivity());
-        menu.findItem(R.id.action_export).setVisible(AgeVerifier.isOver13(
-                AgeVerifier.getUserAge(getActivity())));
+        boolean canExport = AgeVerifier.isOver13(AgeVerifier.getUserAge(getActivity()));
+        menu.findItem(R.id.action_export).setVisible(canExport);
         menu.findItem(R.id.action_graph_options).setVisible(false);  // b/29771945
 
         // Hide some menu buttons if the run isn't loaded yet.
@@ -514,6 +536,13 @@ public class RunReviewFragment extends Fragment implements AddNoteDialog.AddNote
             // You can only do a crop if the run length is long enough.
             menu.findItem(R.id.action_run_review_crop).setEnabled(
                     CropHelper.experimentIsLongEnoughForCrop(mExperimentRun));
+
+            boolean isComparing = mChartController != null && mChartController.hasOverlaidRuns();
+            menu.findItem(R.id.action_run_review_compare_runs).setVisible(!isComparing);
+            menu.findItem(R.id.action_run_review_stop_comparing).setVisible(isComparing);
+
+            menu.findItem(R.id.action_export_all_sensors).setVisible(
+                    canExport && mExperimentRun.getSensorLayouts().size() > 1);
         } else {
             menu.findItem(R.id.action_run_review_archive).setVisible(false);
             menu.findItem(R.id.action_run_review_unarchive).setVisible(false);
@@ -521,8 +550,13 @@ public class RunReviewFragment extends Fragment implements AddNoteDialog.AddNote
             menu.findItem(R.id.action_enable_auto_zoom).setVisible(false);
             menu.findItem(R.id.action_run_review_delete).setVisible(false);
             menu.findItem(R.id.action_run_review_crop).setVisible(false);
+            menu.findItem(R.id.action_run_review_compare_runs).setVisible(false);
+            menu.findItem(R.id.action_run_review_stop_comparing).setVisible(false);
+            menu.findItem(R.id.action_export_all_sensors).setVisible(false);
         }
         menu.findItem(R.id.action_export).setEnabled(!mRunReviewExporter.isExporting());
+        menu.findItem(R.id.action_export_all_sensors).setEnabled(
+                !mRunReviewExporter.isExporting());
 
         if (((RunReviewActivity) getActivity()).isFromRecord()) {
             // If this is from record, always enable deletion.
@@ -570,6 +604,14 @@ public class RunReviewFragment extends Fragment implements AddNoteDialog.AddNote
                         exportRun(run);
                     }
                 });
+        } else if (id == R.id.action_export_all_sensors) {
+            getDataController().getExperimentRun(mStartLabelId,
+                new LoggingConsumer<ExperimentRun>(TAG, "retrieve argument") {
+                    @Override
+                    public void success(final ExperimentRun run) {
+                        exportAllSensors(run);
+                    }
+                });
         } else if (id == R.id.action_run_review_crop) {
             if (mExperimentRun != null) {
                 launchCrop(getView());
@@ -604,6 +646,14 @@ public class RunReviewFragment extends Fragment implements AddNoteDialog.AddNote
             }
         } else if (id == R.id.action_run_review_audio_settings) {
             launchAudioSettings();
+        } else if (id == R.id.action_run_review_playback_speed) {
+            launchPlaybackSpeedDialog();
+        } else if (id == R.id.action_run_review_compare_runs) {
+            if (mExperimentRun != null) {
+                overlayOtherRuns();
+            }
+        } else if (id == R.id.action_run_review_stop_comparing) {
+            clearOverlaidRuns();
         }
         return super.onOptionsItemSelected(item);
     }
@@ -1023,6 +1073,8 @@ public class RunReviewFragment extends Fragment implements AddNoteDialog.AddNote
 
     private void loadRunData(final View rootView) {
         mAudioPlaybackController.stopPlayback();
+        // Overlaid runs are of the previously selected sensor.
+        clearOverlaidRuns();
         final GoosciSensorLayout.SensorLayout sensorLayout = getSensorLayout();
         populateSensorViews(rootView, sensorLayout);
         updateSwitchSensorArrows(rootView, mExperimentRun.getSensorTags(), sensorLayout.sensorId);
@@ -1052,6 +1104,7 @@ public class RunReviewFragment extends Fragment implements AddNoteDialog.AddNote
                                     public void onChartDataLoaded(long firstTimestamp,
                                             long lastTimestamp) {
                                         onDataLoaded();
+                                        preloadOtherSensors(getSensorLayout().sensorId);
                                     }
 
                                     @Override
@@ -1069,6 +1122,108 @@ public class RunReviewFragment extends Fragment implements AddNoteDialog.AddNote
                 });
     }
 
+    /**
+     * Starts loading the first screenful of every other sensor in the run, all at once and
+     * behind any reads the user is waiting on, so that switching sensors has data ready.
+     */
+    private void preloadOtherSensors(String currentSensorId) {
+        if (mPreloadedRun == mExperimentRun) {
+            return;
+        }
+        mPreloadedRun = mExperimentRun;
+        final DataController dataController = getDataController();
+        final long firstTimestamp = mExperimentRun.getFirstTimestamp();
+        final long lastTimestamp = mExperimentRun.getLastTimestamp();
+        final int pageSize = GraphPopulator.getFirstPageSize(
+                getResources().getDisplayMetrics().widthPixels);
+        for (final String sensorId : mExperimentRun.getSensorTags()) {
+            if (sensorId.equals(currentSensorId)) {
+                continue;
+            }
+            dataController.getStats(mExperimentRun.getRunId(), sensorId,
+                    new LoggingConsumer<RunStats>(TAG, "preload stats") {
+                        @Override
+                        public void success(RunStats runStats) {
+                            ZoomPresenter zoomPresenter = new ZoomPresenter();
+                            zoomPresenter.setRunStats(runStats);
+                            int tier = zoomPresenter.updateTier(lastTimestamp - firstTimestamp);
+                            dataController.getScalarReadings(sensorId, tier,
+                                    TimeRange.oldest(Range.closed(firstTimestamp, lastTimestamp)),
+                                    pageSize, DataController.ReadPriority.BACKGROUND,
+                                    MaybeConsumers.<ScalarReadingList>noop());
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Overlays the current sensor from up to {@link #MAX_OVERLAID_RUNS} other runs in this
+     * experiment, aligned to the start of this run. Stats and readings for all of them are
+     * requested at once.
+     */
+    private void overlayOtherRuns() {
+        final DataController dataController = getDataController();
+        final String sensorId = getSensorLayout().sensorId;
+        final int primaryColor = getSensorLayout().color;
+        final String primaryRunId = mExperimentRun.getRunId();
+        final long primaryStart = mExperimentRun.getFirstTimestamp();
+        final int[] colors = getResources().getIntArray(R.array.graph_colors_array);
+        final int generation = mOverlayGeneration;
+        dataController.getExperimentRuns(mExperimentRun.getExperimentId(), false,
+                new LoggingConsumer<List<ExperimentRun>>(TAG, "load runs to compare") {
+                    @Override
+                    public void success(List<ExperimentRun> runs) {
+                        int numOverlaid = 0;
+                        int colorIndex = 0;
+                        for (final ExperimentRun run : runs) {
+                            if (numOverlaid >= MAX_OVERLAID_RUNS) {
+                                break;
+                            }
+                            if (run.getRunId().equals(primaryRunId)
+                                    || !run.getSensorTags().contains(sensorId)) {
+                                continue;
+                            }
+                            numOverlaid++;
+                            int color = colors[colorIndex++ % colors.length];
+                            if (color == primaryColor) {
+                                color = colors[colorIndex++ % colors.length];
+                            }
+                            final int overlayColor = Color.argb(OVERLAID_RUN_ALPHA,
+                                    Color.red(color), Color.green(color), Color.blue(color));
+                            dataController.getStats(run.getRunId(), sensorId,
+                                    new LoggingConsumer<RunStats>(TAG, "load stats to compare") {
+                                        @Override
+                                        public void success(RunStats runStats) {
+                                            if (generation != mOverlayGeneration
+                                                    || mChartController == null) {
+                                                return;
+                                            }
+                                            long offset = OverlaidRun.getAlignmentOffset(
+                                                    primaryStart, run.getFirstTimestamp());
+                                            mChartController.addOverlaidRun(new OverlaidRun(
+                                                    run.getRunId(), run.getFirstTimestamp(),
+                                                    run.getLastTimestamp(), offset, overlayColor,
+                                                    runStats), dataController);
+                                            if (getActivity() != null) {
+                                                getActivity().invalidateOptionsMenu();
+                                            }
+                                        }
+                                    });
+                        }
+                    }
+                });
+    }
+
+    private void clearOverlaidRuns() {
+        mOverlayGeneration++;
+        if (mChartController != null && mChartController.hasOverlaidRuns()) {
+            mChartController.clearOverlaidRuns();
+            if (getActivity() != null) {
+                getActivity().invalidateOptionsMenu();
+            }
+        }
+    }
+
     private void populateStats(RunStats runStats, StatsList statsList, String sensorId) {
         mCurrentSensorStats = runStats;
         if (mCurrentSensorStats.getIntStat(StatsAccumulator.KEY_STATUS,
@@ -1533,6 +1688,28 @@ public class RunReviewFragment extends Fragment implements AddNoteDialog.AddNote
         dialog.show(getChildFragmentManager(), EditNoteDialog.TAG);
     }
 
+    private void launchPlaybackSpeedDialog() {
+        String[] labels = new String[PLAYBACK_SPEEDS.length];
+        int checked = 0;
+        for (int i = 0; i < PLAYBACK_SPEEDS.length; i++) {
+            labels[i] = getString(R.string.playback_speed_option, PLAYBACK_SPEEDS[i]);
+            if (PLAYBACK_SPEEDS[i] == mAudioPlaybackController.getPlaybackSpeed()) {
+                checked = i;
+            }
+        }
+        new AlertDialog.Builder(getActivity())
+                .setTitle(R.string.menu_item_playback_speed)
+                .setSingleChoiceItems(labels, checked, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        mAudioPlaybackController.setPlaybackSpeed(PLAYBACK_SPEEDS[which]);
+                        dialog.dismiss();
+                    }
+                })
+                .setNegativeButton(android.R.string.cancel, null)
+                .create().show();
+    }
+
     private void launchAudioSettings() {
         mAudioPlaybackController.stopPlayback();
 
@@ -1720,6 +1897,17 @@ public class RunReviewFragment extends Fragment implements AddNoteDialog.AddNote
         getActivity().invalidateOptionsMenu();
     }
 
+    private void exportAllSensors(final ExperimentRun run) {
+        List<String> sensorTags = new ArrayList<>();
+        for (GoosciSensorLayout.SensorLayout layout : run.getSensorLayouts()) {
+            sensorTags.add(layout.sensorId);
+        }
+        mRunReviewExporter.startAlignedExport(getActivity(), mExperiment.getDisplayTitle(
+                getActivity()), run, sensorTags);
+        // Disable the items.
+        getActivity().invalidateOptionsMenu();
+    }
+
     private void showExportUi() {
         mExportProgress.setMax(100);
         mExportProgress.setProgress(0);
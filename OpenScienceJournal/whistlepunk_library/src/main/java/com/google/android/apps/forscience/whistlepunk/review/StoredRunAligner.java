@@ -0,0 +1,180 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.review;
+
+import com.google.android.apps.forscience.javalib.MaybeConsumer;
+import com.google.android.apps.forscience.javalib.Success;
+import com.google.android.apps.forscience.whistlepunk.DataController;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamAligner;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamConsumer;
+import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarReadingList;
+import com.google.android.apps.forscience.whistlepunk.sensordb.TimeRange;
+import com.google.common.collect.Range;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Feeds the stored readings of several sensors into a {@link StreamAligner}, in timestamp order
+ * across all of them.  Readings are loaded a page at a time per sensor, so memory stays bounded no
+ * matter how long the run is.
+ */
+public class StoredRunAligner {
+    private static final int PAGE_SIZE = 500;
+
+    private final DataController mDataController;
+    private final StreamAligner mAligner;
+    private final List<Source> mSources = new ArrayList<>();
+    private long mLastTimestamp;
+    private MaybeConsumer<Success> mOnDone;
+
+    public StoredRunAligner(DataController dataController, StreamAligner aligner) {
+        mDataController = dataController;
+        mAligner = aligner;
+    }
+
+    /**
+     * Adds the stored readings for {@code databaseTag} as the next column of the aligner's output.
+     */
+    public void addSensor(String databaseTag, StreamAligner.Interpolation interpolation) {
+        mSources.add(new Source(databaseTag, mAligner.addChannel(interpolation)));
+    }
+
+    /**
+     * Delivers every stored reading between the given timestamps (inclusive), then flushes the
+     * aligner up to {@code lastTimestamp}.  Must be called from the UI thread, like the rest of
+     * {@link DataController}.
+     */
+    public void align(long firstTimestamp, long lastTimestamp, MaybeConsumer<Success> onDone) {
+        mLastTimestamp = lastTimestamp;
+        mOnDone = onDone;
+        for (Source source : mSources) {
+            source.mCursor = firstTimestamp;
+            source.mExhausted = false;
+            source.mCount = 0;
+            source.mPos = 0;
+        }
+        deliverUntilPageNeeded();
+    }
+
+    private void deliverUntilPageNeeded() {
+        for (Source source : mSources) {
+            if (source.needsPage()) {
+                loadPage(source);
+                return;
+            }
+        }
+        while (true) {
+            Source next = null;
+            for (Source source : mSources) {
+                if (source.hasReading() && (next == null
+                        || source.nextTimestamp() < next.nextTimestamp())) {
+                    next = source;
+                }
+            }
+            if (next == null) {
+                mAligner.flush(mLastTimestamp);
+                mOnDone.success(Success.SUCCESS);
+                return;
+            }
+            next.deliverOne();
+            if (next.needsPage()) {
+                // Its next reading may come before the others', so it has to be loaded first.
+                loadPage(next);
+                return;
+            }
+        }
+    }
+
+    private void loadPage(final Source source) {
+        if (source.mCursor > mLastTimestamp) {
+            source.mExhausted = true;
+            deliverUntilPageNeeded();
+            return;
+        }
+        TimeRange range = TimeRange.oldest(Range.closed(source.mCursor, mLastTimestamp));
+        mDataController.getScalarReadings(source.mDatabaseTag, /* tier 0 */ 0, range, PAGE_SIZE,
+                DataController.ReadPriority.BACKGROUND, new MaybeConsumer<ScalarReadingList>() {
+                    @Override
+                    public void success(ScalarReadingList readings) {
+                        source.load(readings);
+                        deliverUntilPageNeeded();
+                    }
+
+                    @Override
+                    public void fail(Exception e) {
+                        mOnDone.fail(e);
+                    }
+                });
+    }
+
+    private static class Source implements StreamConsumer {
+        private final String mDatabaseTag;
+        private final StreamConsumer mChannel;
+        private long[] mTimestamps = new long[PAGE_SIZE];
+        private double[] mValues = new double[PAGE_SIZE];
+        private int mCount;
+        private int mPos;
+        private long mCursor;
+        private boolean mExhausted;
+
+        Source(String databaseTag, StreamConsumer channel) {
+            mDatabaseTag = databaseTag;
+            mChannel = channel;
+        }
+
+        boolean hasReading() {
+            return mPos < mCount;
+        }
+
+        boolean needsPage() {
+            return !hasReading() && !mExhausted;
+        }
+
+        long nextTimestamp() {
+            return mTimestamps[mPos];
+        }
+
+        void deliverOne() {
+            mChannel.addData(mTimestamps[mPos], mValues[mPos]);
+            mPos++;
+        }
+
+        void load(ScalarReadingList readings) {
+            int size = readings.size();
+            if (size > mTimestamps.length) {
+                mTimestamps = new long[size];
+                mValues = new double[size];
+            }
+            mCount = 0;
+            mPos = 0;
+            readings.deliver(this);
+            mExhausted = mCount < PAGE_SIZE;
+            if (mCount > 0) {
+                mCursor = mTimestamps[mCount - 1] + 1;
+            }
+        }
+
+        @Override
+        public void addData(long timestampMillis, double value) {
+            mTimestamps[mCount] = timestampMillis;
+            mValues[mCount] = value;
+            mCount++;
+        }
+    }
+}
@@ -31,12 +31,17 @@ import com.google.android.apps.forscience.whistlepunk.DataController;
 import com.google.android.apps.forscience.whistlepunk.ExternalAxisController;
 import com.google.android.apps.forscience.whistlepunk.GraphPopulator;
 import com.google.android.apps.forscience.whistlepunk.LoggingConsumer;
+import com.google.android.apps.forscience.whistlepunk.WhistlePunkApplication;
+import com.google.android.apps.forscience.whistlepunk.analytics.TrackerConstants;
+import com.google.android.apps.forscience.whistlepunk.analytics.UsageTracker;
 import com.google.android.apps.forscience.whistlepunk.data.GoosciSensorLayout;
 import com.google.android.apps.forscience.whistlepunk.metadata.ExperimentRun;
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciSparkline;
 import com.google.android.apps.forscience.whistlepunk.metadata.Label;
 import com.google.android.apps.forscience.whistlepunk.metadata.RunStats;
 import com.google.android.apps.forscience.whistlepunk.metadata.SensorTrigger;
 import com.google.android.apps.forscience.whistlepunk.review.ZoomPresenter;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.SparklineRecorder;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamStat;
 import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarReadingList;
 import com.google.android.apps.forscience.whistlepunk.wireapi.RecordingMetadata;
@@ -122,6 +127,11 @@ public class ChartController {
     private final Clock mCurrentTimeClock;
     private List<ChartDataLoadedCallback> mChartDataLoadedCallbacks = new ArrayList<>();
 
+    // Points added since beginPointBatch, waiting to be drawn by endPointBatch.
+    private boolean mBatchingPoints = false;
+    private final List<ChartData.DataPoint> mPointBatch = new ArrayList<>();
+    private final List<OverlaidRun> mOverlaidRuns = new ArrayList<>();
+
     public ChartController(ChartOptions.ChartPlacementType type,
             ScalarDisplayOptions lineGraphOptions, Clock uptimeClock) {
         this(type, lineGraphOptions, ChartData.DEFAULT_THROWAWAY_THRESHOLD,
@@ -167,6 +177,7 @@ public class ChartController {
         if (mInteractionListener != null) {
             mChartView.addInteractionListener(mInteractionListener);
         }
+        mChartView.setOverlaidRuns(mOverlaidRuns);
         mChartView.initialize(mChartOptions, mChartData);
     }
 
@@ -185,6 +196,46 @@ public class ChartController {
                 mResetTime = -1;
             }
         }
+        if (mBatchingPoints) {
+            mChartData.addPoint(point);
+            mPointBatch.add(point);
+            return;
+        }
+        throwAwayOldData(point);
+
+        mChartData.addPoint(point);
+        if (mChartView != null && mChartView.isDrawn()) {
+            mChartView.addPointToEndOfPath(point);
+        }
+    }
+
+    /**
+     * Until {@link #endPointBatch}, points passed to {@link #addPoint} go into the chart data,
+     * but are not drawn.
+     */
+    public void beginPointBatch() {
+        mBatchingPoints = true;
+    }
+
+    /**
+     * Trims old data and draws every point added since {@link #beginPointBatch}, with a single
+     * update to the chart view.
+     */
+    public void endPointBatch() {
+        mBatchingPoints = false;
+        if (mPointBatch.isEmpty()) {
+            return;
+        }
+        // The newest point decides what is old enough to throw away; the rest of the batch is
+        // within a frame of it, so none of it is at risk.
+        throwAwayOldData(mPointBatch.get(mPointBatch.size() - 1));
+        if (mChartView != null && mChartView.isDrawn()) {
+            mChartView.addPointsToEndOfPath(mPointBatch);
+        }
+        mPointBatch.clear();
+    }
+
+    private void throwAwayOldData(ChartData.DataPoint newestPoint) {
         if (!mChartData.isEmpty()) {
             // Get rid of data too old to be interesting for "now", but too new to be likely
             // seen by scrolling from the current view.  If we're recording, we'll swap
@@ -193,15 +244,11 @@ public class ChartController {
             // TODO: Is it possible to call throwAwayBetween less frequently for performance?
             // no need to do so many binary searches in ChartData...
             // TODO: This throwAwayBetween is causing b/28614204.
-            long throwawayBefore = point.getX() - (KEEP_THIS_MANY_SCREENS * mDefaultGraphRange);
+            long throwawayBefore = newestPoint.getX() -
+                    (KEEP_THIS_MANY_SCREENS * mDefaultGraphRange);
             long throwawayAfter = mChartOptions.getRenderedXMax() + mDefaultGraphRange;
             mChartData.throwAwayBetween(throwawayAfter, throwawayBefore);
         }
-
-        mChartData.addPoint(point);
-        if (mChartView != null && mChartView.isDrawn()) {
-            mChartView.addPointToEndOfPath(point);
-        }
     }
 
     // Assume this is an ordered list.
@@ -242,6 +289,7 @@ public class ChartController {
         mChartData.clear();
         mCurrentLoadIds.clear();
         mChartDataLoadedCallbacks.clear();
+        mOverlaidRuns.clear();
     }
 
     public void onViewRecycled() {
@@ -535,6 +583,21 @@ public class ChartController {
                 stats, fullChartLoadDataCallback);
     }
 
+    /**
+     * Draws a run from its stored preview summary instead of loading its readings. Only suitable
+     * for charts that never zoom or scroll, like the run cards in an experiment.
+     */
+    public void loadSparkline(ExperimentRun run, GoosciSensorLayout.SensorLayout sensorLayout,
+            GoosciSparkline.Sparkline sparkline) {
+        updateColor(sensorLayout.color);
+        setShowProgress(false);
+        clearData();
+        mSensorId = sensorLayout.sensorId;
+        setData(SparklineRecorder.asDataPoints(sparkline));
+        mChartOptions.setRecordingTimes(run.getFirstTimestamp(), run.getLastTimestamp(),
+                run.getOriginalFirstTimestamp(), run.getOriginalLastTimestamp());
+    }
+
     // TODO: remove duplication with loadReadings?
     private void tryLoadingChartData(final String runId,
             final GoosciSensorLayout.SensorLayout sensorLayout,
@@ -595,6 +658,7 @@ public class ChartController {
         }, mUptimeClock);
 
         mCurrentLoadIds.add(graphPopulator.getRequestId());
+        prepareGraphPopulator(graphPopulator);
         graphPopulator.requestObservations(
                 GraphPopulator.constantGraphStatus(firstTimestamp, lastTimestamp), dc,
                 mDataFailureListener, currentTier, mSensorId);
@@ -640,6 +704,7 @@ public class ChartController {
             long buffer = isRecording ? mDataLoadBuffer : range / 8;
 
             if (isRunReview) {
+                updateOverlaidRuns(xMin, xMax, dataController);
                 int oldTier = mZoomPresenter.getCurrentTier();
                 int newTier = mZoomPresenter.updateTier(range);
                 if (oldTier != newTier) {
@@ -758,12 +823,121 @@ public class ChartController {
             }
         }, mUptimeClock);
         mCurrentLoadIds.add(graphPopulator.getRequestId());
+        prepareGraphPopulator(graphPopulator);
         graphPopulator.requestObservations(GraphPopulator.constantGraphStatus(minToLoad, maxToLoad),
                 dataController, mDataFailureListener, currentTier, mSensorId);
 
         callChartDataStartLoadingCallbacks(chartHiddenForLoad);
     }
 
+    /**
+     * Draws another run of the same sensor underneath this chart's data, and starts loading the
+     * part of it that is on screen. Loads for several overlaid runs proceed concurrently.
+     */
+    public void addOverlaidRun(OverlaidRun run, DataController dataController) {
+        mOverlaidRuns.add(run);
+        updateOverlaidRun(run, getRenderedXMin(), getRenderedXMax(), dataController);
+    }
+
+    public void clearOverlaidRuns() {
+        for (OverlaidRun run : mOverlaidRuns) {
+            // Makes sure that any loads still in flight are ignored.
+            run.clear();
+        }
+        mOverlaidRuns.clear();
+        refreshChartView();
+    }
+
+    public boolean hasOverlaidRuns() {
+        return !mOverlaidRuns.isEmpty();
+    }
+
+    private void updateOverlaidRuns(long xMin, long xMax, DataController dataController) {
+        for (OverlaidRun run : mOverlaidRuns) {
+            updateOverlaidRun(run, xMin, xMax, dataController);
+        }
+    }
+
+    // Loads an overlaid run the same way as this chart's own data: at the zoom tier for the
+    // range shown and the chart's width, with a buffer on either side, only fetching what isn't
+    // loaded yet.
+    private void updateOverlaidRun(OverlaidRun run, long xMin, long xMax,
+            DataController dataController) {
+        long range = xMax - xMin;
+        long buffer = range / 8;
+        Range<Long> loadable = run.getLoadableRange(xMin - buffer, xMax + buffer);
+        if (loadable == null) {
+            return;
+        }
+        long minToLoad = loadable.lowerEndpoint();
+        long maxToLoad = loadable.upperEndpoint();
+        int oldTier = run.getCurrentTier();
+        int newTier = run.updateTier(range, mChartView == null ? 0 : mChartView.getWidth());
+        if (oldTier != newTier || !run.hasLoadedAnything()) {
+            run.clear();
+            run.setLoadedRange(minToLoad, maxToLoad);
+            loadOverlaidReadings(run, dataController, minToLoad, maxToLoad, newTier);
+            return;
+        }
+        long prevMinLoadedX = run.getMinLoadedX();
+        long prevMaxLoadedX = run.getMaxLoadedX();
+        if (minToLoad < prevMinLoadedX) {
+            loadOverlaidReadings(run, dataController, minToLoad, prevMinLoadedX, newTier);
+        }
+        if (maxToLoad > prevMaxLoadedX) {
+            loadOverlaidReadings(run, dataController, prevMaxLoadedX, maxToLoad, newTier);
+        }
+        run.setLoadedRange(Math.min(minToLoad, prevMinLoadedX),
+                Math.max(maxToLoad, prevMaxLoadedX));
+    }
+
+    private void loadOverlaidReadings(final OverlaidRun run, DataController dataController,
+            long minToLoad, long maxToLoad, int tier) {
+        final int generation = run.getGeneration();
+        GraphPopulator graphPopulator = new GraphPopulator(new GraphPopulator.ObservationDisplay() {
+            @Override
+            public void addRange(ScalarReadingList observations, Range<Double> valueRange,
+                    long requestId) {
+                updateYRangeFromValueRange(valueRange);
+                run.addPoints(observations.asDataPoints(), generation);
+            }
+
+            @Override
+            public void onFinish(long requestId) {
+                if (run.getGeneration() == generation) {
+                    refreshChartView();
+                }
+            }
+        }, mUptimeClock);
+        if (mChartView != null) {
+            graphPopulator.setPixelWidth(mChartView.getWidth());
+        }
+        graphPopulator.requestObservations(GraphPopulator.constantGraphStatus(minToLoad, maxToLoad),
+                dataController, mDataFailureListener, tier, mSensorId);
+    }
+
+    private void prepareGraphPopulator(GraphPopulator graphPopulator) {
+        if (mChartView != null) {
+            graphPopulator.setPixelWidth(mChartView.getWidth());
+        }
+        graphPopulator.setLoadTimingListener(new GraphPopulator.LoadTimingListener() {
+            @Override
+            public void onLoadTimes(long firstPageMillis, long fullLoadMillis) {
+                if (mChartView == null) {
+                    return;
+                }
+                UsageTracker tracker = WhistlePunkApplication.getUsageTracker(
+                        mChartView.getContext());
+                if (firstPageMillis >= 0) {
+                    tracker.trackEvent(TrackerConstants.CATEGORY_PERFORMANCE,
+                            TrackerConstants.ACTION_CHART_FIRST_PAINT, mSensorId, firstPageMillis);
+                }
+                tracker.trackEvent(TrackerConstants.CATEGORY_PERFORMANCE,
+                        TrackerConstants.ACTION_CHART_FULL_LOAD, mSensorId, fullLoadMillis);
+            }
+        });
+    }
+
     public void addChartDataLoadedCallback(ChartDataLoadedCallback callback) {
         if (callback != null) {
             mChartDataLoadedCallbacks.add(callback);
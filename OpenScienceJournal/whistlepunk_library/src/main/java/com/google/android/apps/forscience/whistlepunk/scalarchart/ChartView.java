@@ -40,6 +40,7 @@ import com.google.android.apps.forscience.whistlepunk.R;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamStat;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class ChartView extends View {
@@ -72,6 +73,10 @@ public class ChartView extends View {
 
     private Paint mPathPaint;
     private Path mPath;
+    private Paint mOverlaidPathPaint;
+    // One path per overlaid run, drawn under mPath. May be longer than mOverlaidRuns.
+    private final List<Path> mOverlaidPaths = new ArrayList<>();
+    private List<OverlaidRun> mOverlaidRuns = Collections.emptyList();
     private boolean mHasPath;
 
     private Paint mAxisPaint;
@@ -179,6 +184,8 @@ public class ChartView extends View {
     private void createPaints() {
         mPathPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         mPathPaint.setStyle(Paint.Style.STROKE);
+        mOverlaidPathPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mOverlaidPathPaint.setStyle(Paint.Style.STROKE);
         mAxisPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         mAxisPaint.setStyle(Paint.Style.STROKE);
         mAxisTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
@@ -228,6 +235,8 @@ public class ChartView extends View {
         mPathPaint.setPathEffect(new CornerPathEffect(
                 res.getDimensionPixelSize(mChartOptions.getCornerPathRadiusId())));
         mPathPaint.setStrokeWidth(res.getDimensionPixelSize(mChartOptions.getLineWidthId()));
+        mOverlaidPathPaint.setPathEffect(mPathPaint.getPathEffect());
+        mOverlaidPathPaint.setStrokeWidth(mPathPaint.getStrokeWidth());
         mAxisPaint.setStrokeWidth(res.getDimensionPixelSize(
                 mChartOptions.getAxisLabelsLineWidthId()));
         mAxisTextHeight = res.getDimensionPixelSize(mChartOptions.getAxisLabelsTextSizeId());
@@ -533,6 +542,14 @@ public class ChartView extends View {
         mListeners.clear();
     }
 
+    /**
+     * Sets the runs to draw underneath the chart data. The list is owned by the caller, which
+     * should call {@link #redraw()} when it changes.
+     */
+    public void setOverlaidRuns(List<OverlaidRun> overlaidRuns) {
+        mOverlaidRuns = overlaidRuns;
+    }
+
     public void clear() {
         mIsDrawn = false;
         redraw();
@@ -597,13 +614,17 @@ public class ChartView extends View {
         int numPoints = mChartData.getNumPoints();
         mPath.reset();
 
+        // Overlaid runs are drawn even when this one has no data of its own, so they are always
+        // repopulated, or they would keep showing stale paths.
+        updatePathCalcs();
+        populateOverlaidPaths();
+
         if (numPoints == 0) {
             return;
         }
 
         // Just get the points in the range that we want to render, instead of all the points.
         // Adds some buffer to the load in case of scrolling, if those data points are available.
-        updatePathCalcs();
         List<ChartData.DataPoint> points;
         if (optimizePinnedToEnd) {
             // This is a slightly more efficient call, so use it when possible.
@@ -656,6 +677,94 @@ public class ChartView extends View {
         mWasPinnedToNow = mChartOptions.isPinnedToNow();
     }
 
+    /**
+     * Like {@link #addPointToEndOfPath}, for several points that have already been added to the
+     * chart data, but redraws the path and invalidates the view at most once for all of them.
+     * @param points The data points to add to the end of the path, in order.
+     */
+    public void addPointsToEndOfPath(List<ChartData.DataPoint> points) {
+        int numPoints = mChartData.getNumPoints();
+        int numPointsBefore = numPoints - points.size();
+        boolean crossedRedrawThreshold = numPoints / DRAWN_POINTS_REDRAW_THRESHOLD !=
+                numPointsBefore / DRAWN_POINTS_REDRAW_THRESHOLD;
+        boolean pinnedToNow = mChartOptions.isPinnedToNow();
+        if (!mHasPath || numPoints < MAXIMUM_NUM_POINTS_FOR_POPULATE_PATH ||
+                (pinnedToNow && (crossedRedrawThreshold || !mWasPinnedToNow))) {
+            populatePath(true);
+        } else {
+            int size = points.size();
+            for (int i = 0; i < size; i++) {
+                ChartData.DataPoint point = points.get(i);
+                if (pinnedToNow || mChartOptions.getRenderedXMax() >= point.getX() ||
+                        mLeadingEdgeIsDrawn) {
+                    mPath.lineTo(getPathX(point.getX()), getPathY(point.getY()));
+                    mXMaxInPath = point.getX();
+                }
+            }
+        }
+        postInvalidateOnAnimation();
+        mWasPinnedToNow = pinnedToNow;
+    }
+
+    /**
+     * Populates a path for each overlaid run, using the same range and path coordinates as the
+     * main path so that they can be transformed along with it.
+     */
+    private void populateOverlaidPaths() {
+        int numRuns = mOverlaidRuns.size();
+        while (mOverlaidPaths.size() < numRuns) {
+            mOverlaidPaths.add(new Path());
+        }
+        for (int i = 0; i < numRuns; i++) {
+            Path path = mOverlaidPaths.get(i);
+            path.reset();
+            List<ChartData.DataPoint> points = mOverlaidRuns.get(i).getChartData()
+                    .getPointsInRange(mChartOptions.getRenderedXMin() - BUFFER_MS,
+                            mChartOptions.getRenderedXMax() + BUFFER_MS);
+            if (points.isEmpty()) {
+                continue;
+            }
+            populateDecimatedPath(path, points);
+        }
+    }
+
+    /**
+     * Adds points to a path, but at most a low and a high point for each pixel column, since
+     * several overlaid runs may each have more points than the chart is wide.
+     */
+    private void populateDecimatedPath(Path path, List<ChartData.DataPoint> points) {
+        float x = getPathX(points.get(0).getX());
+        float y = getPathY(points.get(0).getY());
+        path.moveTo(x, y);
+        int column = (int) x;
+        float minY = y;
+        float maxY = y;
+        int numPoints = points.size();
+        for (int i = 1; i < numPoints; i++) {
+            ChartData.DataPoint point = points.get(i);
+            x = getPathX(point.getX());
+            y = getPathY(point.getY());
+            if ((int) x == column) {
+                minY = Math.min(minY, y);
+                maxY = Math.max(maxY, y);
+                continue;
+            }
+            addColumnRange(path, column, minY, maxY);
+            path.lineTo(x, y);
+            column = (int) x;
+            minY = y;
+            maxY = y;
+        }
+        addColumnRange(path, column, minY, maxY);
+    }
+
+    private void addColumnRange(Path path, int column, float minY, float maxY) {
+        if (maxY > minY) {
+            path.lineTo(column, minY);
+            path.lineTo(column, maxY);
+        }
+    }
+
     /**
      * Transform the path by stretching and translating it to meet the new rendered size.
      */
@@ -666,6 +775,9 @@ public class ChartView extends View {
                 getScreenX(mXMaxForPathCalcs), getScreenY(mYMinForPathCalcs));
         matrix.setRectToRect(mChartRect, mPreviousChartRect, Matrix.ScaleToFit.FILL);
         mPath.transform(matrix);
+        for (int i = 0; i < mOverlaidPaths.size(); i++) {
+            mOverlaidPaths.get(i).transform(matrix);
+        }
 
         updatePathCalcs();
         postInvalidateOnAnimation();
@@ -706,6 +818,11 @@ public class ChartView extends View {
 
         // Draw the Y label lines under the path.
         drawYAxis(canvas);
+        int numOverlaidRuns = Math.min(mOverlaidRuns.size(), mOverlaidPaths.size());
+        for (int i = 0; i < numOverlaidRuns; i++) {
+            mOverlaidPathPaint.setColor(mOverlaidRuns.get(i).getColor());
+            canvas.drawPath(mOverlaidPaths.get(i), mOverlaidPathPaint);
+        }
         canvas.drawPath(mPath, mPathPaint);
         // Try drawing the endpoints, if they are needed.
         tryDrawingEndpoints(canvas);
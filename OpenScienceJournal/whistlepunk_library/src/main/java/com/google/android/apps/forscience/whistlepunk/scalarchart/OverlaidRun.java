@@ -0,0 +1,191 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.scalarchart;
+
+import com.google.android.apps.forscience.whistlepunk.metadata.RunStats;
+import com.google.android.apps.forscience.whistlepunk.review.ZoomPresenter;
+import com.google.common.collect.Range;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One run of a sensor drawn underneath the run being reviewed, so that several runs can be
+ * compared on the same axes.
+ *
+ * Points are stored shifted onto the reviewed run's time base: a timestamp {@code t} in this run
+ * is drawn at {@code t + getTimeOffset()}. Loaded ranges are kept in this run's own time base,
+ * because that is what the database is queried with.
+ */
+public class OverlaidRun {
+    private static final long NOTHING_LOADED = -1;
+
+    // Up to ten runs can be overlaid, so each one is loaded at a tier with about one reading for
+    // every other pixel column; each tier keeps a low and a high reading per bucket.
+    private static final int PIXELS_PER_DISPLAYED_DATAPOINT = 2;
+
+    // If the chart hasn't been laid out yet, assume a phone-sized screen.
+    private static final int DEFAULT_PIXEL_WIDTH = 1080;
+
+    private final String mRunId;
+    private final long mFirstTimestamp;
+    private final long mLastTimestamp;
+    private final long mTimeOffset;
+    private final int mColor;
+    private final ChartData mChartData = new ChartData();
+    private final RunStats mRunStats;
+    private int mCurrentTier = 0;
+    private long mMinLoadedX = NOTHING_LOADED;
+    private long mMaxLoadedX = NOTHING_LOADED;
+    private int mGeneration = 0;
+
+    /**
+     * @param firstTimestamp the first timestamp of this run, in its own time base
+     * @param lastTimestamp the last timestamp of this run, in its own time base
+     * @param timeOffset added to this run's timestamps to place them on the reviewed run's
+     *                   time base; see {@link #getAlignmentOffset}
+     * @param stats the stats of this run for the overlaid sensor, used to pick a zoom tier
+     */
+    public OverlaidRun(String runId, long firstTimestamp, long lastTimestamp, long timeOffset,
+            int color, RunStats stats) {
+        mRunId = runId;
+        mFirstTimestamp = firstTimestamp;
+        mLastTimestamp = lastTimestamp;
+        mTimeOffset = timeOffset;
+        mColor = color;
+        mRunStats = stats;
+    }
+
+    /**
+     * Returns the offset which lines up {@code overlayAnchor} in an overlaid run with
+     * {@code primaryAnchor} in the reviewed run. Anchors are usually the recording start times,
+     * but can be the timestamps of matching labels.
+     */
+    public static long getAlignmentOffset(long primaryAnchor, long overlayAnchor) {
+        return primaryAnchor - overlayAnchor;
+    }
+
+    public String getRunId() {
+        return mRunId;
+    }
+
+    public int getColor() {
+        return mColor;
+    }
+
+    public long getTimeOffset() {
+        return mTimeOffset;
+    }
+
+    public ChartData getChartData() {
+        return mChartData;
+    }
+
+    /**
+     * Converts a timestamp on the reviewed run's time base into this run's time base.
+     */
+    public long toRunTime(long chartTime) {
+        return chartTime - mTimeOffset;
+    }
+
+    /**
+     * Converts a timestamp in this run's time base onto the reviewed run's time base.
+     */
+    public long toChartTime(long runTime) {
+        return runTime + mTimeOffset;
+    }
+
+    /**
+     * Returns the part of the chart range [chartMin, chartMax] that this run has data for, in
+     * this run's time base, or null if this run does not overlap that range at all.
+     */
+    public Range<Long> getLoadableRange(long chartMin, long chartMax) {
+        long min = Math.max(toRunTime(chartMin), mFirstTimestamp);
+        long max = Math.min(toRunTime(chartMax), mLastTimestamp);
+        if (min > max) {
+            return null;
+        }
+        return Range.closed(min, max);
+    }
+
+    int getCurrentTier() {
+        return mCurrentTier;
+    }
+
+    /**
+     * Picks the zoom tier to load for showing {@code range} milliseconds of this run across a
+     * chart {@code pixelWidth} pixels wide.
+     */
+    int updateTier(long range, int pixelWidth) {
+        if (pixelWidth <= 0) {
+            pixelWidth = DEFAULT_PIXEL_WIDTH;
+        }
+        int idealNumberOfDisplayedDatapoints =
+                Math.max(1, pixelWidth / PIXELS_PER_DISPLAYED_DATAPOINT);
+        mCurrentTier = ZoomPresenter.computeTier(mCurrentTier, idealNumberOfDisplayedDatapoints,
+                mRunStats, range);
+        return mCurrentTier;
+    }
+
+    boolean hasLoadedAnything() {
+        return mMinLoadedX != NOTHING_LOADED;
+    }
+
+    long getMinLoadedX() {
+        return mMinLoadedX;
+    }
+
+    long getMaxLoadedX() {
+        return mMaxLoadedX;
+    }
+
+    void setLoadedRange(long minLoadedX, long maxLoadedX) {
+        mMinLoadedX = minLoadedX;
+        mMaxLoadedX = maxLoadedX;
+    }
+
+    /**
+     * Drops all loaded points. Loads that were started before this call are ignored when they
+     * return, since they may be at a different zoom tier.
+     */
+    void clear() {
+        mChartData.clear();
+        mMinLoadedX = NOTHING_LOADED;
+        mMaxLoadedX = NOTHING_LOADED;
+        mGeneration++;
+    }
+
+    int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Adds points read from this run, in this run's time base, if they belong to the current
+     * generation of loads.
+     */
+    void addPoints(List<ChartData.DataPoint> points, int generation) {
+        if (generation != mGeneration || points.isEmpty()) {
+            return;
+        }
+        List<ChartData.DataPoint> shifted = new ArrayList<>(points.size());
+        for (ChartData.DataPoint point : points) {
+            shifted.add(new ChartData.DataPoint(toChartTime(point.getX()), point.getY()));
+        }
+        mChartData.addOrderedGroupOfPoints(shifted);
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensorapi;
+
+/**
+ * A {@link StreamConsumer} that can also take many readings in one call, for sources that produce
+ * them in bursts.
+ */
+public interface BatchStreamConsumer extends StreamConsumer {
+    /**
+     * The first {@code count} entries of the arrays are new values, oldest first.  The arrays may
+     * be reused by the caller once this returns.  Caveat implementor: this may be called from any
+     * thread.
+     */
+    void addData(long[] timestampsMillis, double[] values, int count);
+}
@@ -0,0 +1,46 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensorapi;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers the answers of another AvailableSensors, since the hardware doesn't change while the
+ * app runs.  Safe to use from several threads, so the answers can be looked up in the background
+ * before the sensor list needs them.
+ */
+public class CachingAvailableSensors implements AvailableSensors {
+    private final AvailableSensors mDelegate;
+    private final ConcurrentMap<Integer, Boolean> mAnswers = new ConcurrentHashMap<>();
+
+    public CachingAvailableSensors(AvailableSensors delegate) {
+        mDelegate = delegate;
+    }
+
+    @Override
+    public boolean isSensorAvailable(int sensorType) {
+        Boolean answer = mAnswers.get(sensorType);
+        if (answer == null) {
+            // Two threads asking at once may both look; they'll get the same answer.
+            answer = mDelegate.isSensorAvailable(sensorType);
+            mAnswers.put(sensorType, answer);
+        }
+        return answer;
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensorapi;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Maps timestamps from an external sensor's clock onto the app's clock, and keeps the mapping
+ * current for as long as the sensor streams.
+ *
+ * Each observation pairs a device timestamp with the app time at which it arrived.  Their
+ * difference is the clock offset plus however long delivery took, so the smallest differences
+ * are the best estimates of the offset.  Observations are grouped into buckets of
+ * {@code bucketMillis} of device time, and the smallest difference in each of the last
+ * {@code bucketCount} buckets is kept.  A line fitted under those minima follows drift between the
+ * two clocks, and the minimum in the bucket currently filling caps it, so a sudden drop in latency
+ * is picked up at once.
+ *
+ * Mapped times never go backwards: readings whose device time is not after the last one mapped
+ * are dropped, and a mapped time that would not be after the last one is moved to just after it.
+ * Counters for both are kept until {@link #reset()}.
+ */
+public class ClockOffsetEstimator {
+    /**
+     * Returned by {@link #toAppTime} and {@link #map} for a reading that should be dropped.
+     */
+    public static final long DROP = Long.MIN_VALUE;
+
+    public static final long DEFAULT_BUCKET_MILLIS = 2000;
+    public static final int DEFAULT_BUCKET_COUNT = 15;
+
+    // Crystal clocks are good to a few tens of parts per million; anything beyond this is latency
+    // noise rather than drift.
+    private static final double MAX_DRIFT = 0.001;
+
+    private static final long NONE = Long.MIN_VALUE;
+
+    private final long mBucketMillis;
+    private final long mSameClockToleranceMillis;
+
+    // Minimum offset, and the device time it was seen at, for each closed bucket.  Oldest first,
+    // starting at mOldestBucket.
+    private final long[] mBucketDeviceTimes;
+    private final long[] mBucketOffsets;
+    private int mOldestBucket;
+    private int mClosedBuckets;
+
+    private long mCurrentBucketStart;
+    private long mCurrentDeviceTime;
+    private long mCurrentOffset;
+    private long mLastObservedDeviceTime;
+
+    // offset(t) = mFitOffset + mFitSlope * (t - mFitDeviceTime)
+    private long mFitDeviceTime;
+    private double mFitOffset;
+    private double mFitSlope;
+
+    private long mLastDeviceTime;
+    private long mLastAppTime;
+
+    private long mDroppedCount;
+    private long mReorderedCount;
+    private long mCorrectedCount;
+
+    public ClockOffsetEstimator() {
+        this(0);
+    }
+
+    /**
+     * @param sameClockToleranceMillis offsets no larger than this are taken to mean that the
+     *                                 sensor already reports app time, and are not applied.
+     */
+    public ClockOffsetEstimator(long sameClockToleranceMillis) {
+        this(DEFAULT_BUCKET_MILLIS, DEFAULT_BUCKET_COUNT, sameClockToleranceMillis);
+    }
+
+    public ClockOffsetEstimator(long bucketMillis, int bucketCount,
+            long sameClockToleranceMillis) {
+        Preconditions.checkArgument(bucketMillis > 0);
+        Preconditions.checkArgument(bucketCount > 0);
+        Preconditions.checkArgument(sameClockToleranceMillis >= 0);
+        mBucketMillis = bucketMillis;
+        mSameClockToleranceMillis = sameClockToleranceMillis;
+        mBucketDeviceTimes = new long[bucketCount];
+        mBucketOffsets = new long[bucketCount];
+        reset();
+    }
+
+    /**
+     * Forgets everything seen so far, including the counters.  Call when the sensor starts
+     * streaming again.
+     */
+    public synchronized void reset() {
+        restartTimeline();
+        mLastAppTime = NONE;
+        mDroppedCount = 0;
+        mReorderedCount = 0;
+        mCorrectedCount = 0;
+    }
+
+    /**
+     * Records that a reading stamped {@code deviceTime} by the sensor arrived at {@code appTime}.
+     */
+    public synchronized void addObservation(long deviceTime, long appTime) {
+        if (mLastObservedDeviceTime != NONE
+                && deviceTime < mLastObservedDeviceTime - windowMillis()) {
+            // The sensor's clock went back further than any reordering could explain, so it has
+            // restarted.  Mapped times still only go forward.
+            restartTimeline();
+        }
+        mLastObservedDeviceTime = Math.max(mLastObservedDeviceTime, deviceTime);
+
+        long offset = appTime - deviceTime;
+        if (mCurrentBucketStart == NONE) {
+            mCurrentBucketStart = deviceTime;
+        } else if (deviceTime >= mCurrentBucketStart + mBucketMillis) {
+            closeCurrentBucket();
+            mCurrentBucketStart = deviceTime;
+        } else if (offset >= mCurrentOffset) {
+            return;
+        }
+        mCurrentDeviceTime = deviceTime;
+        mCurrentOffset = offset;
+    }
+
+    /**
+     * @return the app time of a reading stamped {@code deviceTime} by the sensor, or {@link #DROP}
+     * if it is not after the last reading mapped.  At least one observation must have been added.
+     */
+    public synchronized long toAppTime(long deviceTime) {
+        Preconditions.checkState(mCurrentBucketStart != NONE, "No observations yet");
+        if (mLastDeviceTime != NONE && deviceTime <= mLastDeviceTime) {
+            if (deviceTime < mLastDeviceTime) {
+                mReorderedCount++;
+            }
+            mDroppedCount++;
+            return DROP;
+        }
+        mLastDeviceTime = deviceTime;
+
+        long appTime = deviceTime + estimateOffset(deviceTime);
+        if (mLastAppTime != NONE && appTime <= mLastAppTime) {
+            appTime = mLastAppTime + 1;
+            mCorrectedCount++;
+        }
+        mLastAppTime = appTime;
+        return appTime;
+    }
+
+    /**
+     * Adds the observation and maps it in one step, for sensors that deliver one reading at a
+     * time.
+     */
+    public synchronized long map(long deviceTime, long appTime) {
+        addObservation(deviceTime, appTime);
+        return toAppTime(deviceTime);
+    }
+
+    /**
+     * @return how many readings were dropped because their device time was not after the last one
+     * mapped.  Includes the reordered ones.
+     */
+    public synchronized long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /**
+     * @return how many readings arrived with an earlier device time than one already mapped.
+     */
+    public synchronized long getReorderedCount() {
+        return mReorderedCount;
+    }
+
+    /**
+     * @return how many mapped times were moved forward to keep them after the previous one.
+     */
+    public synchronized long getCorrectedCount() {
+        return mCorrectedCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ClockOffsetEstimator{dropped=" + mDroppedCount + ", reordered=" + mReorderedCount
+                + ", corrected=" + mCorrectedCount + ", driftPpm=" + mFitSlope * 1e6 + "}";
+    }
+
+    private void restartTimeline() {
+        mOldestBucket = 0;
+        mClosedBuckets = 0;
+        mCurrentBucketStart = NONE;
+        mLastObservedDeviceTime = NONE;
+        mFitSlope = 0;
+        mLastDeviceTime = NONE;
+    }
+
+    private long windowMillis() {
+        return mBucketMillis * mBucketDeviceTimes.length;
+    }
+
+    private long estimateOffset(long deviceTime) {
+        long offset = mCurrentOffset;
+        if (mClosedBuckets > 0) {
+            long fitted = Math.round(mFitOffset + mFitSlope * (deviceTime - mFitDeviceTime));
+            offset = Math.min(offset, fitted);
+        }
+        if (Math.abs(offset) <= mSameClockToleranceMillis) {
+            return 0;
+        }
+        return offset;
+    }
+
+    private void closeCurrentBucket() {
+        int capacity = mBucketDeviceTimes.length;
+        int slot = (mOldestBucket + mClosedBuckets) % capacity;
+        if (mClosedBuckets == capacity) {
+            mOldestBucket = (mOldestBucket + 1) % capacity;
+        } else {
+            mClosedBuckets++;
+        }
+        mBucketDeviceTimes[slot] = mCurrentDeviceTime;
+        mBucketOffsets[slot] = mCurrentOffset;
+        refit();
+    }
+
+    private void refit() {
+        int capacity = mBucketDeviceTimes.length;
+        long baseTime = mBucketDeviceTimes[mOldestBucket];
+        long baseOffset = mBucketOffsets[mOldestBucket];
+
+        // Least-squares slope through the bucket minima...
+        double meanX = 0;
+        double meanY = 0;
+        for (int i = 0; i < mClosedBuckets; i++) {
+            int b = (mOldestBucket + i) % capacity;
+            meanX += mBucketDeviceTimes[b] - baseTime;
+            meanY += mBucketOffsets[b] - baseOffset;
+        }
+        meanX /= mClosedBuckets;
+        meanY /= mClosedBuckets;
+        double sxx = 0;
+        double sxy = 0;
+        for (int i = 0; i < mClosedBuckets; i++) {
+            int b = (mOldestBucket + i) % capacity;
+            double dx = mBucketDeviceTimes[b] - baseTime - meanX;
+            sxx += dx * dx;
+            sxy += dx * (mBucketOffsets[b] - baseOffset - meanY);
+        }
+        double slope = sxx > 0 ? sxy / sxx : 0;
+        mFitSlope = Math.max(-MAX_DRIFT, Math.min(MAX_DRIFT, slope));
+
+        // ...then lowered until it touches the lowest of them, since delivery only ever adds time.
+        double lowest = Double.MAX_VALUE;
+        for (int i = 0; i < mClosedBuckets; i++) {
+            int b = (mOldestBucket + i) % capacity;
+            lowest = Math.min(lowest, mBucketOffsets[b] - baseOffset
+                    - mFitSlope * (mBucketDeviceTimes[b] - baseTime));
+        }
+        mFitDeviceTime = baseTime;
+        mFitOffset = baseOffset + lowest;
+    }
+}
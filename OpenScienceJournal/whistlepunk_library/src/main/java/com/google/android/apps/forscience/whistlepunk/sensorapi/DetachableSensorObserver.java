@@ -0,0 +1,32 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensorapi;
+
+/**
+ * A SensorObserver that may have nobody behind it, like the one handed to a recorder while the
+ * record screen is in the background.  Recorders can check {@link #isAttached()} on their own
+ * thread and skip work, such as a hop to the main thread, that only an observer would see.
+ */
+public interface DetachableSensorObserver extends SensorObserver {
+    /**
+     * @return whether anything currently sees the data passed to {@link #onNewData}.  Safe to call
+     * from any thread.  The answer can be out of date by the time data arrives, which costs at
+     * most a sample delivered to nobody, or one an observer attaching right then doesn't see.
+     */
+    boolean isAttached();
+}
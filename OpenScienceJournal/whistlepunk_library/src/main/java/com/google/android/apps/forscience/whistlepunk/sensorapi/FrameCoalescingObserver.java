@@ -0,0 +1,78 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensorapi;
+
+/**
+ * Holds observations until the next frame, then hands all of them to the delegate at once, and
+ * tells the frame listener around them.  Expensive display work belongs in the frame listener, so
+ * that it runs at most once per frame however fast the sensor is.  All observers sharing a
+ * {@link FrameDispatcher} are drained in the same frame callback.
+ */
+public class FrameCoalescingObserver implements SensorObserver {
+    public interface FrameListener {
+        /**
+         * This frame's observations are about to be delivered to the delegate.
+         */
+        void onFrameStarting();
+
+        /**
+         * This frame's observations have all been delivered to the delegate.
+         */
+        void onFrameDelivered();
+    }
+
+    private final FrameDispatcher mDispatcher;
+    private final SensorObserver mDelegate;
+    private final FrameListener mFrameListener;
+    private final PendingObservations mPending = new PendingObservations();
+    private final FrameDispatcher.Client mDrain = new FrameDispatcher.Client() {
+        @Override
+        public int deliverFrame() {
+            if (mFrameListener != null) {
+                mFrameListener.onFrameStarting();
+            }
+            int delivered = mPending.drainTo(mDelegate);
+            if (mFrameListener != null) {
+                mFrameListener.onFrameDelivered();
+            }
+            return delivered;
+        }
+    };
+
+    /**
+     * @param frameListener told before and after each frame's observations are delivered; may be
+     *                      null
+     */
+    public FrameCoalescingObserver(FrameDispatcher dispatcher, SensorObserver delegate,
+            FrameListener frameListener) {
+        mDispatcher = dispatcher;
+        mDelegate = delegate;
+        mFrameListener = frameListener;
+    }
+
+    @Override
+    public void onNewData(long timestamp, ObservedValue data) {
+        if (!data.hasValue()) {
+            return;
+        }
+        if (mPending.add(timestamp, data.getValue(), data.getMin(), data.getMax(),
+                data.getAverage())) {
+            mDispatcher.schedule(mDrain);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensorapi;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs every scheduled {@link Client} in a single callback at the start of the next frame, so
+ * that any number of live cards cost one frame callback between them, rather than one each.
+ * <p/>
+ * Also keeps counts of how many frames started late, and how many observations were waiting at
+ * the start of each frame, for the developer options screen.
+ */
+public class FrameDispatcher {
+    /**
+     * Source of frame callbacks; on a device, the main thread's {@link android.view.Choreographer}
+     */
+    public interface FrameSource {
+        /**
+         * Calls {@link FrameDispatcher#doFrame} once, at the start of the next frame
+         */
+        void postFrameCallback(FrameDispatcher dispatcher);
+
+        /**
+         * @return the current time, on the same clock as the frame times passed to
+         *         {@link FrameDispatcher#doFrame}
+         */
+        long nanoTime();
+    }
+
+    public interface Client {
+        /**
+         * Delivers everything this client has buffered since its last frame.
+         *
+         * @return the number of observations delivered
+         */
+        int deliverFrame();
+    }
+
+    /* Visible for testing */
+    static final long FRAME_INTERVAL_NANOS = 1000000000L / 60;
+
+    private final FrameSource mFrameSource;
+
+    // Guarded by this
+    private List<Client> mScheduled = new ArrayList<>();
+    private List<Client> mRunning = new ArrayList<>();
+
+    // Only touched on the frame thread
+    private long mFrameCount = 0;
+    private long mDroppedFrameCount = 0;
+    private int mLastQueueDepth = 0;
+    private int mMaxQueueDepth = 0;
+
+    public FrameDispatcher(FrameSource frameSource) {
+        mFrameSource = frameSource;
+    }
+
+    /**
+     * Runs {@code client} at the start of the next frame.  Scheduling a client that is already
+     * waiting for the next frame has no further effect.  Safe to call from any thread.
+     */
+    public void schedule(Client client) {
+        boolean needsCallback;
+        synchronized (this) {
+            if (mScheduled.contains(client)) {
+                return;
+            }
+            needsCallback = mScheduled.isEmpty();
+            mScheduled.add(client);
+        }
+        if (needsCallback) {
+            mFrameSource.postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Called by the {@link FrameSource} at the start of a frame.
+     *
+     * @param frameTimeNanos the time at which the frame was due to start
+     */
+    public void doFrame(long frameTimeNanos) {
+        List<Client> running;
+        synchronized (this) {
+            running = mScheduled;
+            mScheduled = mRunning;
+            mRunning = running;
+        }
+
+        long lateNanos = mFrameSource.nanoTime() - frameTimeNanos;
+        if (lateNanos >= FRAME_INTERVAL_NANOS) {
+            mDroppedFrameCount += lateNanos / FRAME_INTERVAL_NANOS;
+        }
+        mFrameCount++;
+
+        int depth = 0;
+        int size = running.size();
+        for (int i = 0; i < size; i++) {
+            depth += running.get(i).deliverFrame();
+        }
+        running.clear();
+
+        mLastQueueDepth = depth;
+        mMaxQueueDepth = Math.max(mMaxQueueDepth, depth);
+    }
+
+    /**
+     * @return how many frames have delivered observations
+     */
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * @return how many frames were missed because a delivery frame started late
+     */
+    public long getDroppedFrameCount() {
+        return mDroppedFrameCount;
+    }
+
+    /**
+     * @return how many observations, across all clients, the most recent frame delivered
+     */
+    public int getLastQueueDepth() {
+        return mLastQueueDepth;
+    }
+
+    /**
+     * @return the most observations delivered in any one frame
+     */
+    public int getMaxQueueDepth() {
+        return mMaxQueueDepth;
+    }
+
+    public void resetCounters() {
+        mFrameCount = 0;
+        mDroppedFrameCount = 0;
+        mLastQueueDepth = 0;
+        mMaxQueueDepth = 0;
+    }
+}
@@ -16,13 +16,60 @@
 
 package com.google.android.apps.forscience.whistlepunk.sensorapi;
 
-import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarReading;
+/**
+ * Estimates frequency by counting crossings of the average value over a sliding window of
+ * readings.
+ *
+ * Readings are kept in a primitive ring buffer alongside a running sum, and are also linked into
+ * a treap (a randomly balanced binary search tree) ordered by value.  Every reading is kept
+ * classified as above or below the current average.  When a reading arrives or leaves, the
+ * average moves a little, and only the readings whose values it moved past change sides.  Those
+ * are found in the treap, and only the crossings next to them are updated.  So the result is the
+ * same as classifying the whole window against the latest average.
+ *
+ * Adding a reading costs O(log n) expected for the treap, plus a constant for each reading that
+ * changes sides.  For a steady periodic signal hardly any do, but noisy readings that sit right
+ * at the average can flip back and forth.
+ */
+public class FrequencyBuffer implements ValueFilter {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final long NO_CROSSING = -1;
+    private static final int NIL = -1;
 
-import java.util.LinkedList;
-import java.util.List;
+    // Ring buffer of readings, oldest at mHead.
+    private long[] mTimestamps = new long[INITIAL_CAPACITY];
+    private double[] mValues = new double[INITIAL_CAPACITY];
+    // Whether each reading is above mThreshold.
+    private boolean[] mHigher = new boolean[INITIAL_CAPACITY];
+    // Whether each reading is on the other side of the average from the one before it.  Never
+    // set on the oldest reading, since that's where time starts.
+    private boolean[] mCrossing = new boolean[INITIAL_CAPACITY];
+    private int mHead = 0;
+    private int mSize = 0;
 
-public class FrequencyBuffer implements ValueFilter {
-    private List<ScalarReading> mReadings = new LinkedList<>();
+    // Sequence number of the reading at mHead.  Goes up by one each time a reading is pruned.
+    private long mHeadSequence = 0;
+
+    // Treap of the readings, ordered by value and then age.  Nodes are ring buffer indexes, so
+    // the tree is rebuilt whenever the ring grows.
+    private int[] mLeft = new int[INITIAL_CAPACITY];
+    private int[] mRight = new int[INITIAL_CAPACITY];
+    private int[] mPriority = new int[INITIAL_CAPACITY];
+    private int mRoot = NIL;
+    private int mRandom = 0x2545F491;
+
+    private double mSum = 0;
+    private int mRemovalsSinceTotal = 0;
+
+    // The average that mHigher was worked out against.
+    private double mThreshold;
+    private int mCrossingCount = 0;
+    // Sequence numbers of the oldest and newest crossings, or NO_CROSSING if they need finding.
+    private long mFirstCrossing = NO_CROSSING;
+    private long mLastCrossing = NO_CROSSING;
+
+    // False when the settings have changed, and every reading needs to be classified again.
+    private boolean mCrossingsValid = true;
 
     private long mWindow;
     private final double mDenominatorInMillis;
@@ -42,55 +89,158 @@ public class FrequencyBuffer implements ValueFilter {
 
     public void changeWindow(long newWindowMillis) {
         mWindow = newWindowMillis;
-        if (!mReadings.isEmpty()) {
+        if (mSize > 0) {
             prune(getNewestTimestamp());
         }
+        mCrossingsValid = false;
     }
 
     @Override
     public double filterValue(long timestamp, double value) {
-        mReadings.add(new ScalarReading(timestamp, value));
+        append(timestamp, value);
         prune(timestamp);
+        if (mCrossingsValid) {
+            moveThreshold(computeAverageValue());
+        }
         return getLatestFrequency();
     }
 
+    private void append(long timestamp, double value) {
+        if (mSize == mValues.length) {
+            grow();
+        }
+        int offset = mSize;
+        int index = indexOf(offset);
+        mTimestamps[index] = timestamp;
+        mValues[index] = value;
+        mCrossing[index] = false;
+        mSize++;
+        mSum += value;
+        mPriority[index] = nextPriority();
+        mLeft[index] = NIL;
+        mRight[index] = NIL;
+        mRoot = insert(mRoot, index);
+        if (mCrossingsValid) {
+            // Against the old average for now; moveThreshold fixes it up along with the rest.
+            mHigher[index] = value > mThreshold;
+            updateCrossing(offset);
+        }
+    }
+
     private void prune(long timestamp) {
         long oldestRemaining = timestamp - mWindow;
-        while (mReadings.get(0).getCollectedTimeMillis() < oldestRemaining) {
-            mReadings.remove(0);
+        while (mSize > 0 && mTimestamps[mHead] < oldestRemaining) {
+            mSum -= mValues[mHead];
+            mRoot = remove(mRoot, mHead);
+            mHead = (mHead + 1) % mValues.length;
+            mSize--;
+            mHeadSequence++;
+            mRemovalsSinceTotal++;
+            if (mSize > 0) {
+                // The new oldest reading is where time starts.
+                setCrossing(0, false);
+            }
+        }
+
+        if (mRemovalsSinceTotal >= mValues.length) {
+            // Re-total every so often, so that rounding error from adding and removing values
+            // can't build up over a long recording.  Amortized, this is still constant time.
+            retotal();
         }
     }
 
-    public double getLatestFrequency() {
-        if (mReadings.size() < 2) {
-            return 0.0;
+    /**
+     * Reclassifies the readings that are on the other side of {@code threshold} from where they
+     * were against {@link #mThreshold}.
+     */
+    private void moveThreshold(double threshold) {
+        double low = Math.min(mThreshold, threshold);
+        double high = Math.max(mThreshold, threshold);
+        mThreshold = threshold;
+        if (low == high) {
+            return;
+        }
+        reclassifyBetween(mRoot, low, high);
+    }
+
+    /**
+     * Reclassifies the readings under {@code node} with values in (low, high], which are the ones
+     * that changed sides.
+     */
+    private void reclassifyBetween(int node, double low, double high) {
+        if (node == NIL) {
+            return;
+        }
+        double value = mValues[node];
+        if (value > low) {
+            reclassifyBetween(mLeft[node], low, high);
+            if (value <= high) {
+                int offset = offsetOf(node);
+                mHigher[node] = value > mThreshold;
+                updateCrossing(offset);
+                if (offset + 1 < mSize) {
+                    updateCrossing(offset + 1);
+                }
+            }
         }
+        if (value <= high) {
+            reclassifyBetween(mRight[node], low, high);
+        }
+    }
 
-        double average = computeAverageValue();
-        int crossings = 0;
-        long firstCrossingTime = -1;
-        long lastCrossingTime = -1;
-
-        boolean higherThanAverage = mReadings.get(0).getValue() > average;
-        for (ScalarReading reading : mReadings.subList(1, mReadings.size())) {
-            boolean thisReadingHigher = reading.getValue() > average;
-            if (higherThanAverage != thisReadingHigher) {
-                higherThanAverage = thisReadingHigher;
-                crossings++;
-                if (firstCrossingTime == -1) {
-                    firstCrossingTime = reading.getCollectedTimeMillis();
-                } else {
-                    lastCrossingTime = reading.getCollectedTimeMillis();
+    private void updateCrossing(int offset) {
+        setCrossing(offset, offset > 0 && mHigher[indexOf(offset)] != mHigher[indexOf(offset - 1)]);
+    }
+
+    private void setCrossing(int offset, boolean crossing) {
+        int index = indexOf(offset);
+        if (mCrossing[index] == crossing) {
+            return;
+        }
+        mCrossing[index] = crossing;
+        long sequence = mHeadSequence + offset;
+        if (crossing) {
+            mCrossingCount++;
+            if (mCrossingCount == 1) {
+                mFirstCrossing = sequence;
+                mLastCrossing = sequence;
+            } else {
+                if (mFirstCrossing != NO_CROSSING && sequence < mFirstCrossing) {
+                    mFirstCrossing = sequence;
+                }
+                if (mLastCrossing != NO_CROSSING && sequence > mLastCrossing) {
+                    mLastCrossing = sequence;
                 }
             }
+        } else {
+            mCrossingCount--;
+            if (sequence == mFirstCrossing) {
+                mFirstCrossing = NO_CROSSING;
+            }
+            if (sequence == mLastCrossing) {
+                mLastCrossing = NO_CROSSING;
+            }
+        }
+    }
+
+    public double getLatestFrequency() {
+        if (mSize < 2) {
+            return 0.0;
+        }
+
+        if (!mCrossingsValid) {
+            reclassifyAll();
         }
-        // Drop the leading cross because that's where time starts
-        crossings--;
 
-        if (firstCrossingTime == -1 || lastCrossingTime == -1) {
+        if (mCrossingCount < 2) {
             return 0.0;
         }
 
+        // Drop the leading cross because that's where time starts
+        int crossings = mCrossingCount - 1;
+
+        long firstCrossingTime = timestampOfSequence(getFirstCrossing());
+        long lastCrossingTime = timestampOfSequence(getLastCrossing());
         long adjustedWindowMillis = lastCrossingTime - firstCrossingTime;
 
         if (adjustedWindowMillis < mWindow / 4) {
@@ -107,25 +257,194 @@ public class FrequencyBuffer implements ValueFilter {
         return userUnitFrequency;
     }
 
+    private long getFirstCrossing() {
+        if (mFirstCrossing == NO_CROSSING) {
+            // Only searched for when the old first crossing goes away, which happens at most once
+            // per crossing.
+            int offset = 1;
+            while (!mCrossing[indexOf(offset)]) {
+                offset++;
+            }
+            mFirstCrossing = mHeadSequence + offset;
+        }
+        return mFirstCrossing;
+    }
+
+    private long getLastCrossing() {
+        if (mLastCrossing == NO_CROSSING) {
+            int offset = mSize - 1;
+            while (!mCrossing[indexOf(offset)]) {
+                offset--;
+            }
+            mLastCrossing = mHeadSequence + offset;
+        }
+        return mLastCrossing;
+    }
+
     private double computeAverageValue() {
         // TODO: if readings are not somewhat evenly distributed in time, we should weight
         // low-sampling-rate readings more heavily than high-sampling-rate.  But we'll just
         // assume for now that doesn't happen.
 
+        // Adding mFilter means that variations of less than mFilter won't register as cycles.
+        return mSum / mSize + mFilter;
+    }
+
+    /**
+     * Classifies every reading in the window against the current average.  This is linear in
+     * the size of the window, so it's only done when the window or filter changes.
+     */
+    private void reclassifyAll() {
+        retotal();
+        mThreshold = computeAverageValue();
+        mCrossingCount = 0;
+        mFirstCrossing = NO_CROSSING;
+        mLastCrossing = NO_CROSSING;
+        for (int i = 0; i < mSize; i++) {
+            int index = indexOf(i);
+            mHigher[index] = mValues[index] > mThreshold;
+            mCrossing[index] = false;
+            updateCrossing(i);
+        }
+        mCrossingsValid = true;
+    }
+
+    private void retotal() {
         double total = 0;
-        for (ScalarReading reading : mReadings) {
-            total += reading.getValue();
+        for (int i = 0; i < mSize; i++) {
+            total += mValues[indexOf(i)];
         }
-        // Adding mFilter means that variations of less than mFilter won't register as cycles.
-        return total / mReadings.size() + mFilter;
+        mSum = total;
+        mRemovalsSinceTotal = 0;
+    }
+
+    private int insert(int node, int item) {
+        if (node == NIL) {
+            return item;
+        }
+        if (comesBefore(item, node)) {
+            mLeft[node] = insert(mLeft[node], item);
+            if (mPriority[mLeft[node]] > mPriority[node]) {
+                int left = mLeft[node];
+                mLeft[node] = mRight[left];
+                mRight[left] = node;
+                return left;
+            }
+        } else {
+            mRight[node] = insert(mRight[node], item);
+            if (mPriority[mRight[node]] > mPriority[node]) {
+                int right = mRight[node];
+                mRight[node] = mLeft[right];
+                mLeft[right] = node;
+                return right;
+            }
+        }
+        return node;
+    }
+
+    private int remove(int node, int item) {
+        if (node == item) {
+            return join(mLeft[node], mRight[node]);
+        }
+        if (comesBefore(item, node)) {
+            mLeft[node] = remove(mLeft[node], item);
+        } else {
+            mRight[node] = remove(mRight[node], item);
+        }
+        return node;
+    }
+
+    /**
+     * Joins two treaps, where everything in {@code left} comes before everything in
+     * {@code right}.
+     */
+    private int join(int left, int right) {
+        if (left == NIL) {
+            return right;
+        }
+        if (right == NIL) {
+            return left;
+        }
+        if (mPriority[left] > mPriority[right]) {
+            mRight[left] = join(mRight[left], right);
+            return left;
+        } else {
+            mLeft[right] = join(left, mLeft[right]);
+            return right;
+        }
+    }
+
+    /**
+     * Orders readings by value, and readings with the same value by age.
+     */
+    private boolean comesBefore(int index, int otherIndex) {
+        double value = mValues[index];
+        double otherValue = mValues[otherIndex];
+        if (value != otherValue) {
+            return value < otherValue;
+        }
+        return offsetOf(index) < offsetOf(otherIndex);
+    }
+
+    private int nextPriority() {
+        // xorshift: cheap, and random enough to keep the treap balanced.
+        mRandom ^= mRandom << 13;
+        mRandom ^= mRandom >>> 17;
+        mRandom ^= mRandom << 5;
+        return mRandom;
+    }
+
+    private void grow() {
+        int newCapacity = mValues.length * 2;
+        long[] timestamps = new long[newCapacity];
+        double[] values = new double[newCapacity];
+        boolean[] higher = new boolean[newCapacity];
+        boolean[] crossing = new boolean[newCapacity];
+        for (int i = 0; i < mSize; i++) {
+            int index = indexOf(i);
+            timestamps[i] = mTimestamps[index];
+            values[i] = mValues[index];
+            higher[i] = mHigher[index];
+            crossing[i] = mCrossing[index];
+        }
+        mTimestamps = timestamps;
+        mValues = values;
+        mHigher = higher;
+        mCrossing = crossing;
+        mHead = 0;
+
+        // Every reading has moved, so link them up again.  This happens each time the capacity
+        // doubles, so it costs amortized O(log n) per reading.
+        mLeft = new int[newCapacity];
+        mRight = new int[newCapacity];
+        mPriority = new int[newCapacity];
+        mRoot = NIL;
+        for (int i = 0; i < mSize; i++) {
+            mPriority[i] = nextPriority();
+            mLeft[i] = NIL;
+            mRight[i] = NIL;
+            mRoot = insert(mRoot, i);
+        }
+    }
+
+    private int indexOf(int offsetFromOldest) {
+        return (mHead + offsetFromOldest) % mValues.length;
+    }
+
+    private int offsetOf(int index) {
+        return (index - mHead + mValues.length) % mValues.length;
+    }
+
+    private long timestampOfSequence(long sequence) {
+        return mTimestamps[indexOf((int) (sequence - mHeadSequence))];
     }
 
     private long getNewestTimestamp() {
-        final ScalarReading mostRecentReading = mReadings.get(mReadings.size() - 1);
-        return mostRecentReading.getCollectedTimeMillis();
+        return mTimestamps[indexOf(mSize - 1)];
     }
 
     public void changeFilter(double newFilter) {
         mFilter = newFilter;
+        mCrossingsValid = false;
     }
 }
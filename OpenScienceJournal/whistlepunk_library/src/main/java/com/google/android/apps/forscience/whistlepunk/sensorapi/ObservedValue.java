@@ -0,0 +1,91 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensorapi;
+
+import android.os.Bundle;
+
+import com.google.android.apps.forscience.whistlepunk.StatsAccumulator;
+
+/**
+ * One observation from a sensor: its value, if it has one, and the running stats at that point.
+ * Observers are handed the same instance over and over, so must copy out anything they want to
+ * keep.
+ */
+public class ObservedValue {
+    private static final String BUNDLE_KEY_SENSOR_VALUE = "key_sensor_value";
+
+    private boolean mHasValue = false;
+    private double mValue;
+    private boolean mHasStats = false;
+    private double mMin;
+    private double mMax;
+    private double mAverage;
+
+    public boolean hasValue() {
+        return mHasValue;
+    }
+
+    public double getValue() {
+        return mValue;
+    }
+
+    public void setValue(double value) {
+        mValue = value;
+        mHasValue = true;
+    }
+
+    public boolean hasStats() {
+        return mHasStats;
+    }
+
+    public double getMin() {
+        return mMin;
+    }
+
+    public double getMax() {
+        return mMax;
+    }
+
+    public double getAverage() {
+        return mAverage;
+    }
+
+    public void setStats(double min, double max, double average) {
+        mMin = min;
+        mMax = max;
+        mAverage = average;
+        mHasStats = true;
+    }
+
+    /**
+     * @return this observation as a Bundle, with the keys that clients of the cross-process API
+     * expect
+     */
+    public Bundle toBundle() {
+        Bundle bundle = new Bundle();
+        if (mHasValue) {
+            bundle.putDouble(BUNDLE_KEY_SENSOR_VALUE, mValue);
+        }
+        if (mHasStats) {
+            bundle.putDouble(StatsAccumulator.KEY_MIN, mMin);
+            bundle.putDouble(StatsAccumulator.KEY_MAX, mMax);
+            bundle.putDouble(StatsAccumulator.KEY_AVERAGE, mAverage);
+        }
+        return bundle;
+    }
+}
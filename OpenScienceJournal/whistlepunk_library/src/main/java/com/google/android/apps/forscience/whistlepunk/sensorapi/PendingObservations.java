@@ -0,0 +1,96 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensorapi;
+
+import java.util.Arrays;
+
+/**
+ * Observations waiting to be delivered on another thread.  Producers {@link #add} from any
+ * thread, and schedule a {@link #drainTo} whenever {@link #add} says the queue was empty, so that
+ * a burst of samples costs one hop to the consuming thread instead of one per sample.
+ */
+public class PendingObservations {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static class Batch {
+        long[] mTimestamps = new long[INITIAL_CAPACITY];
+        double[] mValues = new double[INITIAL_CAPACITY];
+        double[] mMins = new double[INITIAL_CAPACITY];
+        double[] mMaxes = new double[INITIAL_CAPACITY];
+        double[] mAverages = new double[INITIAL_CAPACITY];
+        int mCount = 0;
+
+        void add(long timestampMillis, double value, double min, double max, double average) {
+            if (mCount == mTimestamps.length) {
+                int capacity = mCount * 2;
+                mTimestamps = Arrays.copyOf(mTimestamps, capacity);
+                mValues = Arrays.copyOf(mValues, capacity);
+                mMins = Arrays.copyOf(mMins, capacity);
+                mMaxes = Arrays.copyOf(mMaxes, capacity);
+                mAverages = Arrays.copyOf(mAverages, capacity);
+            }
+            mTimestamps[mCount] = timestampMillis;
+            mValues[mCount] = value;
+            mMins[mCount] = min;
+            mMaxes[mCount] = max;
+            mAverages[mCount] = average;
+            mCount++;
+        }
+    }
+
+    private final ObservedValue mObservedValue = new ObservedValue();
+
+    // Guarded by this
+    private Batch mFilling = new Batch();
+    private Batch mSpare = new Batch();
+
+    /**
+     * @return true if nothing was pending before this, so the caller should schedule a drain
+     */
+    public synchronized boolean add(long timestampMillis, double value, double min, double max,
+            double average) {
+        mFilling.add(timestampMillis, value, min, max, average);
+        return mFilling.mCount == 1;
+    }
+
+    /**
+     * Delivers everything pending, in order.  Must always be called from the same thread.
+     *
+     * @return the number of observations delivered
+     */
+    public int drainTo(SensorObserver observer) {
+        Batch draining;
+        synchronized (this) {
+            draining = mFilling;
+            mFilling = mSpare != null ? mSpare : new Batch();
+            mSpare = null;
+        }
+        int count = draining.mCount;
+        for (int i = 0; i < count; i++) {
+            mObservedValue.setValue(draining.mValues[i]);
+            mObservedValue.setStats(draining.mMins[i], draining.mMaxes[i],
+                    draining.mAverages[i]);
+            observer.onNewData(draining.mTimestamps[i], mObservedValue);
+        }
+        draining.mCount = 0;
+        synchronized (this) {
+            mSpare = draining;
+        }
+        return count;
+    }
+}
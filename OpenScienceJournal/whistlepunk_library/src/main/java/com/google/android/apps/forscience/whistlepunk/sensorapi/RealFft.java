@@ -0,0 +1,155 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensorapi;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Power spectrum of a real-valued frame, using a Hann window and a radix-2 FFT.
+ *
+ * The frame is packed into a complex FFT of half its length, and the two halves are separated
+ * afterwards.  Twiddle factors, the window and the bit-reversal order are all computed up front,
+ * so {@link #computePowerSpectrum} doesn't allocate.  Instances are not thread-safe.
+ */
+public class RealFft {
+    private final int mSize;
+    private final int mHalfSize;
+
+    // cos and sin of 2 * PI * k / mSize, for k in [0, mHalfSize)
+    private final double[] mCos;
+    private final double[] mSin;
+    private final double[] mWindow;
+    private final double mWindowPower;
+    private final int[] mBitReversed;
+
+    // Scratch space for the half-size complex transform
+    private final double[] mReal;
+    private final double[] mImaginary;
+
+    /**
+     * @param size number of samples in each frame.  Must be a power of two, and at least 4.
+     */
+    public RealFft(int size) {
+        Preconditions.checkArgument(size >= 4 && Integer.bitCount(size) == 1,
+                "FFT size must be a power of two, at least 4: " + size);
+        mSize = size;
+        mHalfSize = size / 2;
+
+        mCos = new double[mHalfSize];
+        mSin = new double[mHalfSize];
+        for (int k = 0; k < mHalfSize; k++) {
+            double angle = 2 * Math.PI * k / size;
+            mCos[k] = Math.cos(angle);
+            mSin[k] = Math.sin(angle);
+        }
+
+        mWindow = new double[size];
+        double windowPower = 0;
+        for (int i = 0; i < size; i++) {
+            mWindow[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / size);
+            windowPower += mWindow[i] * mWindow[i];
+        }
+        mWindowPower = windowPower;
+
+        int bits = Integer.numberOfTrailingZeros(mHalfSize);
+        mBitReversed = new int[mHalfSize];
+        for (int i = 0; i < mHalfSize; i++) {
+            mBitReversed[i] = Integer.reverse(i) >>> (Integer.SIZE - bits);
+        }
+
+        mReal = new double[mHalfSize];
+        mImaginary = new double[mHalfSize];
+    }
+
+    public int getSize() {
+        return mSize;
+    }
+
+    /**
+     * @return the number of bins filled in by {@link #computePowerSpectrum}
+     */
+    public int getBinCount() {
+        return mHalfSize + 1;
+    }
+
+    /**
+     * @return sum of the squares of the window coefficients, for normalizing power.
+     */
+    public double getWindowPower() {
+        return mWindowPower;
+    }
+
+    /**
+     * Windows the first {@link #getSize()} values of {@code frame}, and writes the squared
+     * magnitude of bins 0 (DC) through size / 2 (Nyquist) into {@code power}.
+     */
+    public void computePowerSpectrum(double[] frame, double[] power) {
+        Preconditions.checkArgument(frame.length >= mSize);
+        Preconditions.checkArgument(power.length >= getBinCount());
+
+        // Even samples go in the real part, odd samples in the imaginary part, and both are
+        // scattered into bit-reversed order for the in-place transform.
+        for (int i = 0; i < mHalfSize; i++) {
+            int target = mBitReversed[i];
+            mReal[target] = frame[2 * i] * mWindow[2 * i];
+            mImaginary[target] = frame[2 * i + 1] * mWindow[2 * i + 1];
+        }
+
+        for (int length = 2; length <= mHalfSize; length *= 2) {
+            int half = length / 2;
+            // Twiddles for a transform of mHalfSize are every other one of ours.
+            int stride = 2 * (mHalfSize / length);
+            for (int start = 0; start < mHalfSize; start += length) {
+                for (int j = 0; j < half; j++) {
+                    double wr = mCos[j * stride];
+                    double wi = -mSin[j * stride];
+                    int a = start + j;
+                    int b = a + half;
+                    double tr = mReal[b] * wr - mImaginary[b] * wi;
+                    double ti = mReal[b] * wi + mImaginary[b] * wr;
+                    mReal[b] = mReal[a] - tr;
+                    mImaginary[b] = mImaginary[a] - ti;
+                    mReal[a] += tr;
+                    mImaginary[a] += ti;
+                }
+            }
+        }
+
+        // Separate the spectra of the even and odd samples, and recombine them into the spectrum
+        // of the whole frame.
+        double dc = mReal[0] + mImaginary[0];
+        double nyquist = mReal[0] - mImaginary[0];
+        power[0] = dc * dc;
+        power[mHalfSize] = nyquist * nyquist;
+        for (int k = 1; k < mHalfSize; k++) {
+            double a = mReal[k];
+            double b = mImaginary[k];
+            double c = mReal[mHalfSize - k];
+            double d = mImaginary[mHalfSize - k];
+
+            double evenReal = (a + c) / 2;
+            double evenImaginary = (b - d) / 2;
+            double oddReal = (b + d) / 2;
+            double oddImaginary = (c - a) / 2;
+
+            double real = evenReal + mCos[k] * oddReal + mSin[k] * oddImaginary;
+            double imaginary = evenImaginary + mCos[k] * oddImaginary - mSin[k] * oddReal;
+            power[k] = real * real + imaginary * imaginary;
+        }
+    }
+}
@@ -19,7 +19,6 @@ package com.google.android.apps.forscience.whistlepunk.sensorapi;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.hardware.SensorManager;
-import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -33,6 +32,7 @@ import com.google.android.apps.forscience.whistlepunk.AppSingleton;
 import com.google.android.apps.forscience.whistlepunk.Clock;
 import com.google.android.apps.forscience.whistlepunk.DataController;
 import com.google.android.apps.forscience.whistlepunk.ExternalAxisController;
+import com.google.android.apps.forscience.whistlepunk.LoggingConsumer;
 import com.google.android.apps.forscience.whistlepunk.R;
 import com.google.android.apps.forscience.whistlepunk.RecordingDataController;
 import com.google.android.apps.forscience.whistlepunk.StatsAccumulator;
@@ -70,14 +70,14 @@ public abstract class ScalarSensor extends SensorChoice implements FilterChangeL
 
     private static final String TAG = "ScalarSensor";
     protected static final double DENOMINATOR_FOR_RPMS = 60 * 1000.0;
-    private static final String BUNDLE_KEY_SENSOR_VALUE = "key_sensor_value";
 
     private final FailureListener mDataFailureListener;
     private final int mZoomLevelBetweenTiers;
 
     private final long mDefaultGraphRange;
     private Executor mUiThreadExecutor;
-    private ValueFilter mValueFilter = null;
+    // Replaced on the main thread, but used on whichever thread the sensor delivers data on.
+    private volatile ValueFilter mValueFilter = null;
     private ChartController mChartController;
     private AudioGenerator mAudioGenerator;
     private final Clock mClock;
@@ -147,14 +147,24 @@ public abstract class ScalarSensor extends SensorChoice implements FilterChangeL
             }
 
             @Override
-            public void onNewData(long timestamp, Bundle bundle) {
-                double value = getValue(bundle);
+            public void onNewData(long timestamp, ObservedValue data) {
+                double value = data.getValue();
                 chartController.addPoint(new ChartData.DataPoint(timestamp, value));
                 if (mAudioEnabled) {
                     audioGenerator.addData(timestamp, value, chartController.getRenderedYMin(),
                             chartController.getRenderedYMax());
                 }
-                statsDisplay.updateFromBundle(bundle);
+                statsDisplay.updateFromObservedValue(data);
+            }
+
+            @Override
+            public void beginDataBatch() {
+                chartController.beginPointBatch();
+            }
+
+            @Override
+            public void endDataBatch() {
+                chartController.endPointBatch();
             }
 
             @Override
@@ -339,14 +349,6 @@ public abstract class ScalarSensor extends SensorChoice implements FilterChangeL
         return null;
     }
 
-    public static double getValue(Bundle bundle) {
-        return bundle.getDouble(BUNDLE_KEY_SENSOR_VALUE);
-    }
-
-    public static boolean hasValue(Bundle bundle) {
-        return bundle.containsKey(BUNDLE_KEY_SENSOR_VALUE);
-    }
-
     @Override
     public SensorRecorder createRecorder(final Context context,
             final SensorObserver observer, SensorStatusListener listener,
@@ -360,8 +362,9 @@ public abstract class ScalarSensor extends SensorChoice implements FilterChangeL
         // TODO: make this configurable?
         int zoomBufferSize = mZoomLevelBetweenTiers * 2;
         final ZoomRecorder zoomRecorder = new ZoomRecorder(getId(), zoomBufferSize, 1);
+        final SparklineRecorder sparklineRecorder = new SparklineRecorder();
         final ScalarStreamConsumer consumer = new ScalarStreamConsumer(statsAccumulator, observer,
-                dataController, zoomRecorder);
+                dataController, zoomRecorder, sparklineRecorder);
         final SensorRecorder recorder = makeScalarControl(consumer, environment, context, listener);
         return new DelegatingSensorRecorder(recorder) {
             private String mRunId;
@@ -383,21 +386,44 @@ public abstract class ScalarSensor extends SensorChoice implements FilterChangeL
                 mRunId = runId;
                 statsAccumulator.clearStats();
                 zoomRecorder.clear();
+                sparklineRecorder.clear();
                 consumer.startRecording();
                 super.startRecording(runId);
             }
 
             @Override
-            public void stopRecording(MaybeConsumer<Success> onSuccess) {
+            public void stopRecording(final MaybeConsumer<Success> onSuccess) {
                 super.stopRecording(onSuccess);
 
-                RunStats runStats = statsAccumulator.makeSaveableStats();
+                final RunStats runStats = statsAccumulator.makeSaveableStats();
                 runStats.putStat(ZoomRecorder.STATS_KEY_TIER_COUNT, zoomRecorder.countTiers());
                 runStats.putStat(ZoomRecorder.STATS_KEY_ZOOM_LEVEL_BETWEEN_TIERS,
                         mZoomLevelBetweenTiers);
                 consumer.stopRecording();
-                environment.getDataController().setStats(mRunId, getId(), runStats, onSuccess);
+                final RecordingDataController dc = environment.getDataController();
+                final String runId = mRunId;
+                if (sparklineRecorder.hasData()) {
+                    // Save the preview summary first, so that anyone reacting to the stats
+                    // finds it already in place.  The preview is only a nicety, though: the
+                    // stats are saved whether or not it could be.
+                    dc.setSparkline(runId, getId(), sparklineRecorder.makeSparkline(),
+                            new LoggingConsumer<Success>(TAG, "save sparkline") {
+                                @Override
+                                public void success(Success value) {
+                                    dc.setStats(runId, getId(), runStats, onSuccess);
+                                }
+
+                                @Override
+                                public void fail(Exception e) {
+                                    super.fail(e);
+                                    dc.setStats(runId, getId(), runStats, onSuccess);
+                                }
+                            });
+                } else {
+                    dc.setStats(runId, getId(), runStats, onSuccess);
+                }
                 statsAccumulator.clearStats();
+                sparklineRecorder.clear();
             }
 
             @Override
@@ -448,26 +474,36 @@ public abstract class ScalarSensor extends SensorChoice implements FilterChangeL
     protected abstract SensorRecorder makeScalarControl(StreamConsumer c,
             SensorEnvironment environment, Context context, SensorStatusListener listener);
 
-    private class ScalarStreamConsumer implements StreamConsumer {
+    private class ScalarStreamConsumer implements BatchStreamConsumer {
         private static final int NO_DATA_RECORDED = -1;
 
-        private final Bundle mBundle;
+        private final PendingObservations mPending = new PendingObservations();
+        private final Runnable mDeliverPending = new Runnable() {
+            @Override
+            public void run() {
+                mPending.drainTo(mObserver);
+            }
+        };
         private final StatsAccumulator mStatsAccumulator;
         private final SensorObserver mObserver;
+        private final DetachableSensorObserver mDetachableObserver;
         private final RecordingDataController mDataController;
         private final ZoomRecorder mZoomRecorder;
+        private final SparklineRecorder mSparklineRecorder;
         private boolean mIsRecording = false;
         private long mLastDataTimestampMillis = NO_DATA_RECORDED;
         private long mTimestampBeforeRecordingStart = NO_DATA_RECORDED;
 
         public ScalarStreamConsumer(StatsAccumulator statsAccumulator,
                 SensorObserver observer, RecordingDataController dataController,
-                ZoomRecorder zoomRecorder) {
+                ZoomRecorder zoomRecorder, SparklineRecorder sparklineRecorder) {
             mStatsAccumulator = statsAccumulator;
             mObserver = observer;
+            mDetachableObserver = observer instanceof DetachableSensorObserver
+                    ? (DetachableSensorObserver) observer : null;
             mDataController = dataController;
-            mBundle = new Bundle();
             mZoomRecorder = zoomRecorder;
+            mSparklineRecorder = sparklineRecorder;
         }
 
         public void startRecording() {
@@ -499,30 +535,62 @@ public abstract class ScalarSensor extends SensorChoice implements FilterChangeL
             mLastDataTimestampMillis = timestampMillis;
         }
 
-        public void observeData(final long timestampMillis, double value) {
-            final Bundle data = makeBundle(value);
-            mStatsAccumulator.updateRecordingStreamStats(timestampMillis, value);
-            mStatsAccumulator.addStatsToBundle(data);
-
-            // TODO: try to remove this allocation
-            runOnMainThread(new Runnable() {
-                @Override
-                public void run() {
-                    mObserver.onNewData(timestampMillis, data);
+        @Override
+        public void addData(long[] timestampsMillis, double[] values, int count) {
+            final long[] keptTimestamps = new long[count];
+            final double[] keptValues = new double[count];
+            int kept = 0;
+            // The whole batch goes through the same filter, even if it's replaced meanwhile.
+            ValueFilter filter = mValueFilter;
+            for (int i = 0; i < count; i++) {
+                long timestampMillis = timestampsMillis[i];
+                if (!maintainsTimeSeries(timestampMillis)) {
+                    continue;
+                }
+                double value = filter == null ? values[i]
+                        : filter.filterValue(timestampMillis, values[i]);
+                observeData(timestampMillis, value);
+                if (mIsRecording) {
+                    mZoomRecorder.addData(timestampMillis, value, mDataController);
+                    mSparklineRecorder.addData(timestampMillis, value);
                 }
-            });
+                keptTimestamps[kept] = timestampMillis;
+                keptValues[kept] = value;
+                kept++;
+                mLastDataTimestampMillis = timestampMillis;
+            }
+            if (kept > 0 && mIsRecording) {
+                mDataController.addScalarReadings(getId(), 0, keptTimestamps, keptValues, kept);
+            }
+        }
+
+        public void observeData(long timestampMillis, double value) {
+            mStatsAccumulator.updateRecordingStreamStats(timestampMillis, value);
+            if (mDetachableObserver != null && !mDetachableObserver.isAttached()) {
+                // Nobody is watching (the record screen is in the background), so the sample
+                // only needs to reach the stats and the database, both of which happen here.
+                return;
+            }
+            // Only the first sample of a burst pays for a hop to the main thread; the rest ride
+            // along with it.
+            if (mPending.add(timestampMillis, value, mStatsAccumulator.getMin(),
+                    mStatsAccumulator.getMax(), mStatsAccumulator.getAverage())) {
+                runOnMainThread(mDeliverPending);
+            }
         }
 
         public void recordData(long timestampMillis, double value) {
             if (mIsRecording) {
                 mZoomRecorder.addData(timestampMillis, value, mDataController);
+                mSparklineRecorder.addData(timestampMillis, value);
                 mDataController.addScalarReading(getId(), 0, timestampMillis, value);
             }
         }
 
         public double maybeFilter(long timestampMillis, double value) {
-            if (mValueFilter != null) {
-                value = mValueFilter.filterValue(timestampMillis, value);
+            ValueFilter filter = mValueFilter;
+            if (filter != null) {
+                value = filter.filterValue(timestampMillis, value);
             }
             return value;
         }
@@ -530,13 +598,6 @@ public abstract class ScalarSensor extends SensorChoice implements FilterChangeL
         public boolean hasRecordedData() {
             return mLastDataTimestampMillis > mTimestampBeforeRecordingStart;
         }
-
-        // TODO: profile this to make sure Bundles don't add extravagant memory and
-        // CPU overhead
-        private Bundle makeBundle(double value) {
-            mBundle.putDouble(BUNDLE_KEY_SENSOR_VALUE, value);
-            return mBundle;
-        }
     }
 
     protected void runOnMainThread(Runnable runnable) {
@@ -16,8 +16,6 @@
 
 package com.google.android.apps.forscience.whistlepunk.sensorapi;
 
-import android.os.Bundle;
-
 /**
  * Observes changes to a sensor, potentially serialized between processes.
  *
@@ -29,5 +27,5 @@ public interface SensorObserver {
      * that it wishes to use after returning; caller can re-use the same reference to reduce
      * allocations.
      */
-    void onNewData(long timestamp, Bundle data);
+    void onNewData(long timestamp, ObservedValue data);
 }
@@ -67,6 +67,18 @@ public interface SensorPresenter extends SensorObserver {
      */
     void startShowing(View contentView, ExternalAxisController.InteractionListener listener);
 
+    /**
+     * A run of {@link #onNewData} calls is about to arrive together, as happens once per frame on
+     * a live card.  The presenter may hold off redrawing until {@link #endDataBatch}.
+     */
+    void beginDataBatch();
+
+    /**
+     * Every {@link #onNewData} call since {@link #beginDataBatch} has arrived.  Anything held
+     * back should be drawn now, once for all of them.
+     */
+    void endDataBatch();
+
     /**
      * The SensorPresenter may update its UI to show whether it is currently
      * recording.
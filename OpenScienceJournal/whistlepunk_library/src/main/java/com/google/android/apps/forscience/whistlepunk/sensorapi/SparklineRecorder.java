@@ -0,0 +1,144 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensorapi;
+
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciSparkline;
+import com.google.android.apps.forscience.whistlepunk.scalarchart.ChartData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Summarizes a run's readings into a {@link GoosciSparkline.Sparkline} of at most
+ * {@link #MAX_BUCKETS} min/max buckets, so that previews can be drawn without reading the sensor
+ * database.
+ *
+ * The run's length isn't known until it ends, so buckets start out 1ms wide and neighbouring
+ * pairs are merged (doubling the width) whenever a reading falls past the last bucket.  Memory
+ * use is constant, and a finished summary always uses between half and all of the buckets.
+ */
+public class SparklineRecorder {
+    public static final int MAX_BUCKETS = 256;
+
+    private final double[] mMins = new double[MAX_BUCKETS];
+    private final double[] mMaxes = new double[MAX_BUCKETS];
+    private int mBucketCount;
+    private long mBucketWidth;
+    private long mFirstTimestamp;
+    private long mLastTimestamp;
+
+    public SparklineRecorder() {
+        clear();
+    }
+
+    public void clear() {
+        mBucketCount = 0;
+        mBucketWidth = 1;
+    }
+
+    public boolean hasData() {
+        return mBucketCount > 0;
+    }
+
+    /**
+     * Readings must arrive in timestamp order, as they do from a recording or a database scan.
+     */
+    public void addData(long timestampMillis, double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        if (mBucketCount == 0) {
+            mFirstTimestamp = timestampMillis;
+        } else if (timestampMillis < mLastTimestamp) {
+            return;
+        }
+        long offset = timestampMillis - mFirstTimestamp;
+        while (offset / mBucketWidth >= MAX_BUCKETS) {
+            mergeBuckets();
+        }
+        int index = (int) (offset / mBucketWidth);
+        for (int i = mBucketCount; i <= index; i++) {
+            mMins[i] = Double.NaN;
+            mMaxes[i] = Double.NaN;
+        }
+        mBucketCount = Math.max(mBucketCount, index + 1);
+        mMins[index] = min(mMins[index], value);
+        mMaxes[index] = max(mMaxes[index], value);
+        mLastTimestamp = timestampMillis;
+    }
+
+    private void mergeBuckets() {
+        int merged = (mBucketCount + 1) / 2;
+        for (int i = 0; i < merged; i++) {
+            int left = 2 * i;
+            int right = left + 1;
+            double min = mMins[left];
+            double max = mMaxes[left];
+            if (right < mBucketCount) {
+                min = min(min, mMins[right]);
+                max = max(max, mMaxes[right]);
+            }
+            mMins[i] = min;
+            mMaxes[i] = max;
+        }
+        mBucketCount = merged;
+        mBucketWidth *= 2;
+    }
+
+    // Unlike Math.min and Math.max, these treat NaN (an empty bucket) as "no value".
+    private static double min(double a, double b) {
+        return Double.isNaN(a) || b < a ? b : a;
+    }
+
+    private static double max(double a, double b) {
+        return Double.isNaN(a) || b > a ? b : a;
+    }
+
+    public GoosciSparkline.Sparkline makeSparkline() {
+        GoosciSparkline.Sparkline sparkline = new GoosciSparkline.Sparkline();
+        sparkline.firstTimestamp = mFirstTimestamp;
+        sparkline.lastTimestamp = mLastTimestamp;
+        sparkline.bucketWidth = mBucketWidth;
+        sparkline.min = Arrays.copyOf(mMins, mBucketCount);
+        sparkline.max = Arrays.copyOf(mMaxes, mBucketCount);
+        return sparkline;
+    }
+
+    /**
+     * Turns a stored sparkline back into chart points: each non-empty bucket contributes its
+     * min at the bucket's start and its max at its middle, so spikes stay visible.
+     */
+    public static List<ChartData.DataPoint> asDataPoints(GoosciSparkline.Sparkline sparkline) {
+        int buckets = Math.min(sparkline.min.length, sparkline.max.length);
+        List<ChartData.DataPoint> points = new ArrayList<>(buckets * 2);
+        long halfWidth = sparkline.bucketWidth / 2;
+        for (int i = 0; i < buckets; i++) {
+            if (Double.isNaN(sparkline.min[i])) {
+                continue;
+            }
+            long start = sparkline.firstTimestamp + i * sparkline.bucketWidth;
+            long middle = Math.min(start + halfWidth, sparkline.lastTimestamp);
+            points.add(new ChartData.DataPoint(start, sparkline.min[i]));
+            if (middle > start) {
+                points.add(new ChartData.DataPoint(middle, sparkline.max[i]));
+            }
+        }
+        return points;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensorapi;
+
+/**
+ * Values that can be read off of a {@link SpectrumAnalyzer} once it has a spectrum.
+ */
+public enum SpectralFeature {
+    DOMINANT_FREQUENCY {
+        @Override
+        public double compute(SpectrumAnalyzer analyzer) {
+            return analyzer.getDominantFrequency();
+        }
+    },
+    SPECTRAL_CENTROID {
+        @Override
+        public double compute(SpectrumAnalyzer analyzer) {
+            return analyzer.getSpectralCentroid();
+        }
+    },
+    LOW_BAND_LEVEL(20, 250),
+    MID_BAND_LEVEL(250, 2000),
+    HIGH_BAND_LEVEL(2000, 20000);
+
+    // Floor for band power: -120 dB, well below anything the microphone picks up.
+    private static final double MIN_POWER = 1e-12;
+
+    private final double mLowHz;
+    private final double mHighHz;
+
+    SpectralFeature() {
+        this(0, 0);
+    }
+
+    SpectralFeature(double lowHz, double highHz) {
+        mLowHz = lowHz;
+        mHighHz = highHz;
+    }
+
+    /**
+     * Frequencies are in Hz.  Band levels are in uncalibrated decibels, like
+     * {@link com.google.android.apps.forscience.whistlepunk.sensors.DecibelSensor}.
+     */
+    public double compute(SpectrumAnalyzer analyzer) {
+        // Silence, or a band with no bins in it, has no power, and the log of that is -Infinity.
+        return 10 * Math.log10(Math.max(analyzer.getBandPower(mLowHz, mHighHz), MIN_POWER));
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensorapi;
+
+/**
+ * Replaces each value of a stream with a feature of the spectrum of the most recent values, for
+ * example the dominant frequency of a vibration.
+ *
+ * Spectra assume evenly-spaced samples, so the sample rate is estimated from a running average
+ * of the gaps between timestamps.  Until the first frame fills, the output is 0.
+ */
+public class SpectralFilter implements ValueFilter {
+    // Weight of each new gap in the running average
+    private static final double GAP_SMOOTHING = 0.05;
+
+    private final SpectrumAnalyzer mAnalyzer;
+    private final SpectralFeature mFeature;
+    private long mLastTimestamp = -1;
+    private double mAverageGapMillis = -1;
+    private double mLatestValue = 0;
+
+    public SpectralFilter(int frameSize, int hopSize, SpectralFeature feature) {
+        // The sample rate is filled in once there are timestamps to estimate it from
+        mAnalyzer = new SpectrumAnalyzer(frameSize, hopSize, 1);
+        mFeature = feature;
+    }
+
+    @Override
+    public double filterValue(long timestamp, double value) {
+        if (mLastTimestamp >= 0 && timestamp > mLastTimestamp) {
+            long gap = timestamp - mLastTimestamp;
+            if (mAverageGapMillis < 0) {
+                mAverageGapMillis = gap;
+            } else {
+                mAverageGapMillis += GAP_SMOOTHING * (gap - mAverageGapMillis);
+            }
+        }
+        mLastTimestamp = timestamp;
+
+        if (mAnalyzer.addSample(value) && mAverageGapMillis > 0) {
+            mAnalyzer.setSampleRate(1000.0 / mAverageGapMillis);
+            mLatestValue = mFeature.compute(mAnalyzer);
+        }
+        return mLatestValue;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensorapi;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Collects a stream of evenly-spaced samples into (possibly overlapping) frames, and computes the
+ * power spectrum of each frame as soon as it is full.  Summary features of the most recent
+ * spectrum are available from the getters.
+ *
+ * Nothing is allocated after construction, so this is safe to run at audio rates.  Instances are
+ * not thread-safe.
+ */
+public class SpectrumAnalyzer {
+    private final RealFft mFft;
+    private final int mHopSize;
+    private final double[] mFrame;
+    private final double[] mPower;
+    private int mFrameFill = 0;
+    private boolean mHasSpectrum = false;
+    private double mSampleRateHz;
+
+    /**
+     * @param frameSize number of samples in each spectrum.  Must be a power of two.
+     * @param hopSize number of new samples between spectra.  Use frameSize for frames that
+     *                don't overlap.
+     * @param sampleRateHz rate at which samples are added, used to label frequency bins
+     */
+    public SpectrumAnalyzer(int frameSize, int hopSize, double sampleRateHz) {
+        Preconditions.checkArgument(hopSize > 0 && hopSize <= frameSize);
+        mFft = new RealFft(frameSize);
+        mHopSize = hopSize;
+        mFrame = new double[frameSize];
+        mPower = new double[mFft.getBinCount()];
+        mSampleRateHz = sampleRateHz;
+    }
+
+    public void setSampleRate(double sampleRateHz) {
+        mSampleRateHz = sampleRateHz;
+    }
+
+    public double getSampleRate() {
+        return mSampleRateHz;
+    }
+
+    /**
+     * @return true if this sample completed a frame, and a new spectrum is available
+     */
+    public boolean addSample(double value) {
+        mFrame[mFrameFill++] = value;
+        if (mFrameFill < mFrame.length) {
+            return false;
+        }
+        mFft.computePowerSpectrum(mFrame, mPower);
+        mHasSpectrum = true;
+
+        // Keep the tail of this frame as the start of the next one.
+        int keep = mFrame.length - mHopSize;
+        System.arraycopy(mFrame, mHopSize, mFrame, 0, keep);
+        mFrameFill = keep;
+        return true;
+    }
+
+    public boolean hasSpectrum() {
+        return mHasSpectrum;
+    }
+
+    public void reset() {
+        mFrameFill = 0;
+        mHasSpectrum = false;
+    }
+
+    /**
+     * @return the frequency (in Hz) with the most power, not counting DC, interpolated between
+     *         bins.  0 if there is no spectrum yet.
+     */
+    public double getDominantFrequency() {
+        if (!mHasSpectrum) {
+            return 0;
+        }
+        int peak = 1;
+        for (int k = 2; k < mPower.length; k++) {
+            if (mPower[k] > mPower[peak]) {
+                peak = k;
+            }
+        }
+        double offset = 0;
+        if (peak < mPower.length - 1) {
+            // Fit a parabola through the peak and its neighbors
+            double before = Math.sqrt(mPower[peak - 1]);
+            double at = Math.sqrt(mPower[peak]);
+            double after = Math.sqrt(mPower[peak + 1]);
+            double denominator = before - 2 * at + after;
+            if (denominator != 0) {
+                offset = 0.5 * (before - after) / denominator;
+            }
+        }
+        return binToFrequency(peak + offset);
+    }
+
+    /**
+     * @return the power-weighted average frequency (in Hz), not counting DC.  0 if there is no
+     *         spectrum yet, or no power.
+     */
+    public double getSpectralCentroid() {
+        if (!mHasSpectrum) {
+            return 0;
+        }
+        double weighted = 0;
+        double total = 0;
+        for (int k = 1; k < mPower.length; k++) {
+            weighted += k * mPower[k];
+            total += mPower[k];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        return binToFrequency(weighted / total);
+    }
+
+    /**
+     * @return the mean square amplitude of the signal between lowHz (inclusive) and highHz
+     *         (exclusive), so that summing over every band gives the mean square of the frame.
+     */
+    public double getBandPower(double lowHz, double highHz) {
+        if (!mHasSpectrum) {
+            return 0;
+        }
+        int low = Math.max(0, (int) Math.ceil(frequencyToBin(lowHz)));
+        int high = Math.min(mPower.length, (int) Math.ceil(frequencyToBin(highHz)));
+        double total = 0;
+        for (int k = low; k < high; k++) {
+            boolean edge = k == 0 || k == mPower.length - 1;
+            total += edge ? mPower[k] : 2 * mPower[k];
+        }
+        return total / (mFrame.length * mFft.getWindowPower());
+    }
+
+    private double binToFrequency(double bin) {
+        return bin * mSampleRateHz / mFrame.length;
+    }
+
+    private double frequencyToBin(double frequencyHz) {
+        return frequencyHz * mFrame.length / mSampleRateHz;
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensorapi;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resamples any number of irregularly-timestamped streams onto a shared time grid, so that
+ * readings from different sensors can be compared row by row.
+ *
+ * Grid row {@code r} is at {@code startMillis + r * periodMillis}.  Each channel fills in rows as
+ * its own readings arrive, and rows are handed to the {@link RowConsumer} as soon as every channel
+ * has a value for them.  Memory is bounded by {@code capacity} rows per channel: if one channel
+ * gets that far ahead of the slowest, the oldest rows are emitted anyway, with {@code NaN} for the
+ * channels that have not caught up.
+ *
+ * Readings must arrive in timestamp order within each channel; out-of-order readings are dropped.
+ * Channels may be fed from any thread.
+ */
+public class StreamAligner {
+    public enum Interpolation {
+        /**
+         * Straight line between the readings on either side of the grid time.  No value before
+         * the first reading or after the last.
+         */
+        LINEAR,
+
+        /**
+         * Most recent reading at or before the grid time.
+         */
+        HOLD,
+
+        /**
+         * Smallest reading in the grid period ending at the grid time, or the most recent reading
+         * if there are none in that period.
+         */
+        MIN,
+
+        /**
+         * Largest reading in the grid period ending at the grid time, or the most recent reading
+         * if there are none in that period.
+         */
+        MAX
+    }
+
+    public interface RowConsumer {
+        /**
+         * Receives {@code count} consecutive rows, starting at {@code firstTimestampMillis}.  The
+         * value of channel {@code c} in row {@code i} is {@code values[c][offset + i]}.
+         *
+         * The arrays are reused, so copy out anything that is needed after this call returns.
+         */
+        void onRows(long firstTimestampMillis, double[][] values, int offset, int count);
+    }
+
+    private final long mStartMillis;
+    private final long mPeriodMillis;
+    private final int mCapacity;
+    private final RowConsumer mConsumer;
+    private final List<Channel> mChannels = new ArrayList<>();
+    private double[][] mRows = new double[0][];
+    private long mEmittedRow = 0;
+
+    /**
+     * @param startMillis timestamp of the first row
+     * @param periodMillis spacing of the rows
+     * @param capacity maximum number of rows to hold while waiting for slow channels
+     */
+    public StreamAligner(long startMillis, long periodMillis, int capacity,
+            RowConsumer consumer) {
+        Preconditions.checkArgument(periodMillis > 0);
+        Preconditions.checkArgument(capacity > 0);
+        mStartMillis = startMillis;
+        mPeriodMillis = periodMillis;
+        mCapacity = capacity;
+        mConsumer = Preconditions.checkNotNull(consumer);
+    }
+
+    /**
+     * Adds a channel, which will be the next column of the output.  Rows that have already been
+     * emitted are not revisited.
+     *
+     * @return the consumer to feed this channel's readings into
+     */
+    public synchronized StreamConsumer addChannel(Interpolation interpolation) {
+        Channel channel = new Channel(interpolation, mEmittedRow);
+        mChannels.add(channel);
+        double[][] rows = new double[mChannels.size()][];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = mChannels.get(i).mRing;
+        }
+        mRows = rows;
+        return channel;
+    }
+
+    public long getPeriodMillis() {
+        return mPeriodMillis;
+    }
+
+    /**
+     * Fills in and emits every row up to and including {@code endMillis}, treating each channel
+     * as if it will see no more readings before then.  Use at the end of a run.
+     */
+    public synchronized void flush(long endMillis) {
+        if (endMillis < mStartMillis) {
+            return;
+        }
+        long endRow = (endMillis - mStartMillis) / mPeriodMillis + 1;
+        while (mEmittedRow < endRow) {
+            long target = Math.min(endRow, mEmittedRow + mCapacity);
+            for (Channel channel : mChannels) {
+                channel.finishRowsBefore(target);
+            }
+            emitRowsBefore(target);
+        }
+    }
+
+    private long rowTime(long row) {
+        return mStartMillis + row * mPeriodMillis;
+    }
+
+    private int ringIndex(long row) {
+        return (int) (row % mCapacity);
+    }
+
+    private synchronized void addData(Channel channel, long timestampMillis, double value) {
+        if (channel.accept(timestampMillis, value)) {
+            long ready = Long.MAX_VALUE;
+            for (Channel c : mChannels) {
+                ready = Math.min(ready, c.mNextRow);
+            }
+            emitRowsBefore(ready);
+        }
+    }
+
+    /**
+     * Makes room for {@code channel} to write another row, by emitting old rows that slower
+     * channels have not filled in yet.
+     */
+    private void makeRoom() {
+        long target = mEmittedRow + Math.max(1, mCapacity / 4);
+        for (Channel c : mChannels) {
+            c.skipRowsBefore(target);
+        }
+        emitRowsBefore(target);
+    }
+
+    private void emitRowsBefore(long endRow) {
+        while (mEmittedRow < endRow) {
+            int offset = ringIndex(mEmittedRow);
+            int count = (int) Math.min(endRow - mEmittedRow, mCapacity - offset);
+            mConsumer.onRows(rowTime(mEmittedRow), mRows, offset, count);
+            mEmittedRow += count;
+        }
+    }
+
+    private class Channel implements StreamConsumer {
+        private final Interpolation mInterpolation;
+        private final boolean mBucketed;
+        private final double[] mRing = new double[mCapacity];
+        private long mNextRow;
+        private boolean mHasLast = false;
+        private long mLastTimestamp = Long.MIN_VALUE;
+        private double mLastValue = Double.NaN;
+        private boolean mBucketEmpty = true;
+        private double mBucketValue;
+
+        Channel(Interpolation interpolation, long firstRow) {
+            mInterpolation = Preconditions.checkNotNull(interpolation);
+            mBucketed = interpolation == Interpolation.MIN || interpolation == Interpolation.MAX;
+            mNextRow = firstRow;
+        }
+
+        @Override
+        public void addData(long timestampMillis, double value) {
+            StreamAligner.this.addData(this, timestampMillis, value);
+        }
+
+        /**
+         * @return true if any new rows were filled in
+         */
+        boolean accept(long timestampMillis, double value) {
+            if (timestampMillis < mLastTimestamp) {
+                return false;
+            }
+            long startRow = mNextRow;
+            if (mBucketed) {
+                while (rowTime(mNextRow) < timestampMillis) {
+                    put(mBucketEmpty ? lastOrNaN() : mBucketValue);
+                    mBucketEmpty = true;
+                }
+                if (timestampMillis > rowTime(mNextRow) - mPeriodMillis) {
+                    foldIntoBucket(value);
+                }
+            } else {
+                long rowTime;
+                while ((rowTime = rowTime(mNextRow)) <= timestampMillis) {
+                    put(valueAt(rowTime, timestampMillis, value));
+                }
+            }
+            mHasLast = true;
+            mLastTimestamp = timestampMillis;
+            mLastValue = value;
+            return mNextRow > startRow;
+        }
+
+        private double valueAt(long rowTime, long timestampMillis, double value) {
+            if (rowTime == timestampMillis) {
+                return value;
+            }
+            if (!mHasLast) {
+                return Double.NaN;
+            }
+            if (mInterpolation == Interpolation.HOLD) {
+                return mLastValue;
+            }
+            // Every row at or before mLastTimestamp is already filled, so rowTime is strictly
+            // between the two readings.
+            double fraction = (double) (rowTime - mLastTimestamp)
+                    / (timestampMillis - mLastTimestamp);
+            return mLastValue + (value - mLastValue) * fraction;
+        }
+
+        private void foldIntoBucket(double value) {
+            if (mBucketEmpty) {
+                mBucketValue = value;
+                mBucketEmpty = false;
+            } else if (mInterpolation == Interpolation.MIN) {
+                mBucketValue = Math.min(mBucketValue, value);
+            } else {
+                mBucketValue = Math.max(mBucketValue, value);
+            }
+        }
+
+        private double lastOrNaN() {
+            return mHasLast ? mLastValue : Double.NaN;
+        }
+
+        private void put(double value) {
+            if (mNextRow - mEmittedRow >= mCapacity) {
+                makeRoom();
+            }
+            mRing[ringIndex(mNextRow)] = value;
+            mNextRow++;
+        }
+
+        /**
+         * Fills rows before {@code endRow} as if no further readings arrive in them.
+         */
+        void finishRowsBefore(long endRow) {
+            if (mBucketed && !mBucketEmpty && mNextRow < endRow) {
+                mRing[ringIndex(mNextRow++)] = mBucketValue;
+                mBucketEmpty = true;
+            }
+            double fill = mInterpolation == Interpolation.LINEAR ? Double.NaN : lastOrNaN();
+            while (mNextRow < endRow) {
+                mRing[ringIndex(mNextRow++)] = fill;
+            }
+        }
+
+        /**
+         * Gives up on rows before {@code endRow}, leaving them without a value.
+         */
+        void skipRowsBefore(long endRow) {
+            if (mNextRow >= endRow) {
+                return;
+            }
+            while (mNextRow < endRow) {
+                mRing[ringIndex(mNextRow++)] = Double.NaN;
+            }
+            mBucketEmpty = true;
+        }
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensordb;
+
+import com.google.android.apps.forscience.whistlepunk.scalarchart.ChartData;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamConsumer;
+import com.google.common.collect.BoundType;
+import com.google.common.collect.Range;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Answers reads over a bounded time range from a {@link ReadingTileCache}, so that panning,
+ * zooming or reopening a run reads readings already seen from memory instead of the database.
+ * Writes and deletes go straight to the wrapped database, and drop the tiles they change.
+ * <p/>
+ * The tiles a read needs that are not cached yet are read from the database with one query, and
+ * split up afterwards.
+ * <p/>
+ * After each read, the next few tiles in the direction the reader is moving are loaded on the
+ * prefetch executor, if there is one.
+ */
+public class CachingSensorDatabase implements SensorDatabase {
+    /**
+     * Width of each tile at resolution tier 0.  Each higher tier holds roughly a tenth as many
+     * readings, so its tiles are ten times as wide.
+     */
+    /* Visible for testing */
+    static final long TIER_0_TILE_MILLIS = 10 * 1000;
+    private static final int TILE_WIDTH_SCALE_PER_TIER = 10;
+    private static final int MAX_TILE_WIDTH_TIER = 8;
+
+    // Tiles with more readings than this are read from the database every time.
+    private static final int MAX_READINGS_PER_TILE = 20000;
+
+    // Loading several tiles at once stops after this many readings; tiles past that point are
+    // loaded one at a time, when they're needed.
+    private static final int MAX_READINGS_PER_LOAD = 5 * MAX_READINGS_PER_TILE;
+
+    // Reads that span more tiles than this go straight to the database.
+    private static final int MAX_TILES_PER_READ = 1000;
+
+    private static final int PREFETCH_TILES = 2;
+
+    private final SensorDatabase mDelegate;
+    private final ReadingTileCache mCache;
+    private final Executor mPrefetchExecutor;
+
+    // Guarded by itself: the first tile of the last read for each sensor tag and tier.
+    private final Map<String, Long> mLastFirstTiles = new HashMap<>();
+
+    private final ReadingTileCache.TileLoader mLoader = new ReadingTileCache.TileLoader() {
+        @Override
+        public ReadingTileCache.Tile[] loadTiles(String sensorTag, int resolutionTier,
+                long firstTileIndex, long lastTileIndex) {
+            int maxReadings = firstTileIndex == lastTileIndex ? MAX_READINGS_PER_TILE + 1
+                    : MAX_READINGS_PER_LOAD;
+            ScalarReadingList readings = mDelegate.getScalarReadings(sensorTag,
+                    TimeRange.oldest(Range.closedOpen(getTileStart(firstTileIndex, resolutionTier),
+                            getTileStart(lastTileIndex + 1, resolutionTier))), resolutionTier,
+                    maxReadings);
+            final int count = readings.size();
+            final long[] timestamps = new long[count];
+            final double[] values = new double[count];
+            readings.deliver(new StreamConsumer() {
+                private int mIndex = 0;
+
+                @Override
+                public void addData(long timestampMillis, double value) {
+                    timestamps[mIndex] = timestampMillis;
+                    values[mIndex] = value;
+                    mIndex++;
+                }
+            });
+
+            long lastCompleteTile = lastTileIndex;
+            if (count >= maxReadings) {
+                // Cut off partway through the tile holding the last reading.
+                lastCompleteTile = getTileIndex(timestamps[count - 1], resolutionTier) - 1;
+            }
+            ReadingTileCache.Tile[] tiles =
+                    new ReadingTileCache.Tile[(int) (lastTileIndex - firstTileIndex + 1)];
+            int end = 0;
+            for (long tileIndex = firstTileIndex; tileIndex <= lastCompleteTile; tileIndex++) {
+                int start = end;
+                while (end < count && getTileIndex(timestamps[end], resolutionTier) == tileIndex) {
+                    end++;
+                }
+                if (end - start <= MAX_READINGS_PER_TILE) {
+                    tiles[(int) (tileIndex - firstTileIndex)] = new ReadingTileCache.Tile(
+                            Arrays.copyOfRange(timestamps, start, end),
+                            Arrays.copyOfRange(values, start, end), end - start);
+                }
+            }
+            return tiles;
+        }
+    };
+
+    /**
+     * @param prefetchExecutor runs loads of tiles that have not been asked for yet; may be null,
+     *                         to load tiles only when asked
+     */
+    public CachingSensorDatabase(SensorDatabase delegate, ReadingTileCache cache,
+            Executor prefetchExecutor) {
+        mDelegate = delegate;
+        mCache = cache;
+        mPrefetchExecutor = prefetchExecutor;
+    }
+
+    @Override
+    public void addScalarReading(String sensorTag, int resolutionTier, long timestampMillis,
+            double value) {
+        mDelegate.addScalarReading(sensorTag, resolutionTier, timestampMillis, value);
+        long tile = getTileIndex(timestampMillis, resolutionTier);
+        mCache.invalidate(sensorTag, resolutionTier, tile, tile);
+    }
+
+    @Override
+    public void addScalarReadings(String sensorTag, int resolutionTier, long[] timestampsMillis,
+            double[] values, int count) {
+        mDelegate.addScalarReadings(sensorTag, resolutionTier, timestampsMillis, values, count);
+        if (count == 0) {
+            return;
+        }
+        long firstTile = Long.MAX_VALUE;
+        long lastTile = Long.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            long tile = getTileIndex(timestampsMillis[i], resolutionTier);
+            firstTile = Math.min(firstTile, tile);
+            lastTile = Math.max(lastTile, tile);
+        }
+        mCache.invalidate(sensorTag, resolutionTier, firstTile, lastTile);
+    }
+
+    @Override
+    public ScalarReadingList getScalarReadings(String sensorTag, TimeRange range,
+            int resolutionTier, int maxRecords) {
+        Range<Long> times = range.getTimes();
+        if (times == null || !times.hasLowerBound() || !times.hasUpperBound()) {
+            // Asking for the latest readings, which are likely still being written.
+            return mDelegate.getScalarReadings(sensorTag, range, resolutionTier, maxRecords);
+        }
+        long first = times.lowerBoundType() == BoundType.CLOSED ? times.lowerEndpoint()
+                : times.lowerEndpoint() + 1;
+        long last = times.upperBoundType() == BoundType.CLOSED ? times.upperEndpoint()
+                : times.upperEndpoint() - 1;
+        if (first > last) {
+            return new TileReadingList();
+        }
+        long firstTile = getTileIndex(first, resolutionTier);
+        long lastTile = getTileIndex(last, resolutionTier);
+        if (lastTile - firstTile >= MAX_TILES_PER_READ) {
+            return mDelegate.getScalarReadings(sensorTag, range, resolutionTier, maxRecords);
+        }
+
+        mCache.loadMissing(sensorTag, resolutionTier, firstTile, lastTile, mLoader);
+        boolean oldestFirst = range.getOrder() == TimeRange.ObservationOrder.OLDEST_FIRST;
+        TileReadingList result = new TileReadingList();
+        long tileIndex = oldestFirst ? firstTile : lastTile;
+        long step = oldestFirst ? 1 : -1;
+        while (true) {
+            ReadingTileCache.Tile tile = mCache.getOrLoad(sensorTag, resolutionTier, tileIndex,
+                    mLoader);
+            if (tile == null) {
+                return mDelegate.getScalarReadings(sensorTag, range, resolutionTier, maxRecords);
+            }
+            if (result.addFrom(tile, first, last, oldestFirst, maxRecords)
+                    || tileIndex == (oldestFirst ? lastTile : firstTile)) {
+                break;
+            }
+            tileIndex += step;
+        }
+        prefetch(sensorTag, resolutionTier, oldestFirst ? firstTile : tileIndex,
+                oldestFirst ? tileIndex : lastTile, oldestFirst);
+        return result;
+    }
+
+    private void prefetch(final String sensorTag, final int resolutionTier, long firstTile,
+            long lastTile, boolean oldestFirst) {
+        if (mPrefetchExecutor == null) {
+            return;
+        }
+        String readerKey = sensorTag + "/" + resolutionTier;
+        Long previousFirstTile;
+        synchronized (mLastFirstTiles) {
+            previousFirstTile = mLastFirstTiles.put(readerKey, firstTile);
+        }
+        boolean forward = previousFirstTile == null ? oldestFirst : firstTile >= previousFirstTile;
+        for (int i = 1; i <= PREFETCH_TILES; i++) {
+            final long tileIndex = forward ? lastTile + i : firstTile - i;
+            if (tileIndex < 0 || mCache.isCachedOrLoading(sensorTag, resolutionTier, tileIndex)) {
+                continue;
+            }
+            mPrefetchExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    mCache.getOrLoad(sensorTag, resolutionTier, tileIndex, mLoader);
+                }
+            });
+        }
+    }
+
+    @Override
+    public String getFirstDatabaseTagAfter(long timestamp) {
+        return mDelegate.getFirstDatabaseTagAfter(timestamp);
+    }
+
+    @Override
+    public void deleteScalarReadings(String sensorTag, TimeRange range) {
+        mDelegate.deleteScalarReadings(sensorTag, range);
+        mCache.invalidateSensor(sensorTag);
+    }
+
+    @Override
+    public void beginRun(String runId, String experimentId, long startTimestampMillis) {
+        mDelegate.beginRun(runId, experimentId, startTimestampMillis);
+    }
+
+    @Override
+    public void endRun(String runId, long endTimestampMillis) {
+        mDelegate.endRun(runId, endTimestampMillis);
+    }
+
+    @Override
+    public boolean deleteRun(String runId, List<String> sensorTags) {
+        boolean deleted = mDelegate.deleteRun(runId, sensorTags);
+        if (deleted) {
+            for (String sensorTag : sensorTags) {
+                mCache.invalidateSensor(sensorTag);
+            }
+        }
+        return deleted;
+    }
+
+    @Override
+    public boolean isRunMigrationNeeded() {
+        return mDelegate.isRunMigrationNeeded();
+    }
+
+    @Override
+    public boolean migrateRun(String runId, String experimentId, List<String> sensorTags,
+            long firstTimestampMillis, long lastTimestampMillis) {
+        boolean migrated = mDelegate.migrateRun(runId, experimentId, sensorTags,
+                firstTimestampMillis, lastTimestampMillis);
+        // A tile read mid-move may have seen some readings twice.
+        for (String sensorTag : sensorTags) {
+            mCache.invalidateSensor(sensorTag);
+        }
+        return migrated;
+    }
+
+    @Override
+    public void open() {
+        mDelegate.open();
+    }
+
+    @Override
+    public void finishRunMigration() {
+        mDelegate.finishRunMigration();
+    }
+
+    @Override
+    public long getDiskUsageBytes(String experimentId) {
+        return mDelegate.getDiskUsageBytes(experimentId);
+    }
+
+    /* Visible for testing */
+    static long getTileWidth(int resolutionTier) {
+        long width = TIER_0_TILE_MILLIS;
+        for (int i = 0; i < Math.min(resolutionTier, MAX_TILE_WIDTH_TIER); i++) {
+            width *= TILE_WIDTH_SCALE_PER_TIER;
+        }
+        return width;
+    }
+
+    private static long getTileIndex(long timestampMillis, int resolutionTier) {
+        long width = getTileWidth(resolutionTier);
+        long index = timestampMillis / width;
+        return (timestampMillis % width < 0) ? index - 1 : index;
+    }
+
+    private static long getTileStart(long tileIndex, int resolutionTier) {
+        return tileIndex * getTileWidth(resolutionTier);
+    }
+
+    /**
+     * Readings gathered from one or more tiles, in the order they were asked for.
+     */
+    private static class TileReadingList implements ScalarReadingList {
+        private long[] mTimestamps = new long[16];
+        private double[] mValues = new double[16];
+        private int mCount = 0;
+
+        /**
+         * Adds the tile's readings between {@code first} and {@code last}, inclusive.
+         *
+         * @return true if the list now holds {@code maxRecords} readings
+         */
+        boolean addFrom(ReadingTileCache.Tile tile, long first, long last, boolean oldestFirst,
+                int maxRecords) {
+            int size = tile.size();
+            for (int j = 0; j < size; j++) {
+                int i = oldestFirst ? j : size - 1 - j;
+                long timestamp = tile.getTimestamp(i);
+                if (timestamp < first || timestamp > last) {
+                    continue;
+                }
+                add(timestamp, tile.getValue(i));
+                if (maxRecords > 0 && mCount >= maxRecords) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void add(long timestampMillis, double value) {
+            if (mCount == mTimestamps.length) {
+                mTimestamps = Arrays.copyOf(mTimestamps, mCount * 2);
+                mValues = Arrays.copyOf(mValues, mCount * 2);
+            }
+            mTimestamps[mCount] = timestampMillis;
+            mValues[mCount] = value;
+            mCount++;
+        }
+
+        @Override
+        public void deliver(StreamConsumer c) {
+            for (int i = 0; i < mCount; i++) {
+                c.addData(mTimestamps[i], mValues[i]);
+            }
+        }
+
+        @Override
+        public int size() {
+            return mCount;
+        }
+
+        @Override
+        public List<ChartData.DataPoint> asDataPoints() {
+            List<ChartData.DataPoint> result = new ArrayList<>();
+            for (int i = 0; i < mCount; i++) {
+                result.add(new ChartData.DataPoint(mTimestamps[i], mValues[i]));
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensordb;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps each run's readings in its own {@link SensorDatabaseImpl} file, and the index of runs in
+ * a small database of its own.
+ */
+public class FileRunPartitionStore implements RunPartitionStore {
+    private static final String INDEX_DATABASE_NAME = "sensor_partitions.db";
+    private static final String PARTITION_PREFIX = "run_";
+    private static final String PARTITION_SUFFIX = ".db";
+    private static final String WAL_SUFFIX = "-wal";
+    private static final String MIGRATION_FINISHED = "migration_finished";
+
+    private static class DbVersions {
+        public static final int V1_START = 1;
+        public static final int CURRENT = V1_START;
+    }
+
+    private static class PartitionsTable {
+        public static final String NAME = "partitions";
+
+        public static class Column {
+            public static final String RUN_ID = "runId";
+            public static final String EXPERIMENT_ID = "experimentId";
+            public static final String FIRST_TIMESTAMP_MILLIS = "firstTimestampMillis";
+            public static final String LAST_TIMESTAMP_MILLIS = "lastTimestampMillis";
+            public static final String MIGRATING = "migrating";
+        }
+
+        public static final String CREATION_SQL = "CREATE TABLE " + NAME + " (" + Column.RUN_ID
+                + " TEXT PRIMARY KEY, " + Column.EXPERIMENT_ID + " TEXT, "
+                + Column.FIRST_TIMESTAMP_MILLIS + " INTEGER, " + Column.LAST_TIMESTAMP_MILLIS
+                + " INTEGER, " + Column.MIGRATING + " INTEGER DEFAULT 0);";
+    }
+
+    private static class FlagsTable {
+        public static final String NAME = "flags";
+
+        public static class Column {
+            public static final String NAME = "name";
+        }
+
+        public static final String CREATION_SQL = "CREATE TABLE " + NAME + " (" + Column.NAME
+                + " TEXT PRIMARY KEY);";
+    }
+
+    private final Context mContext;
+    private final SQLiteOpenHelper mOpenHelper;
+    private final Map<String, SensorDatabaseImpl> mOpenPartitions = new HashMap<>();
+
+    public FileRunPartitionStore(Context context) {
+        mContext = context;
+        mOpenHelper = new SQLiteOpenHelper(context, INDEX_DATABASE_NAME, null,
+                DbVersions.CURRENT) {
+            @Override
+            public void onCreate(SQLiteDatabase db) {
+                db.execSQL(PartitionsTable.CREATION_SQL);
+                db.execSQL(FlagsTable.CREATION_SQL);
+            }
+
+            @Override
+            public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+                // Only one version so far.
+            }
+        };
+    }
+
+    private static String getPartitionName(String runId) {
+        return PARTITION_PREFIX + runId + PARTITION_SUFFIX;
+    }
+
+    @Override
+    public List<Partition> loadPartitions() {
+        List<Partition> partitions = new ArrayList<>();
+        Cursor cursor = mOpenHelper.getReadableDatabase().query(PartitionsTable.NAME,
+                new String[]{PartitionsTable.Column.RUN_ID, PartitionsTable.Column.EXPERIMENT_ID,
+                        PartitionsTable.Column.FIRST_TIMESTAMP_MILLIS,
+                        PartitionsTable.Column.LAST_TIMESTAMP_MILLIS,
+                        PartitionsTable.Column.MIGRATING}, null, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                Partition partition = new Partition(cursor.getString(0), cursor.getString(1),
+                        cursor.getLong(2), cursor.getLong(3));
+                partition.setMigrating(cursor.getInt(4) != 0);
+                partitions.add(partition);
+            }
+        } finally {
+            cursor.close();
+        }
+        return partitions;
+    }
+
+    @Override
+    public void savePartition(Partition partition) {
+        ContentValues values = new ContentValues();
+        values.put(PartitionsTable.Column.RUN_ID, partition.getRunId());
+        values.put(PartitionsTable.Column.EXPERIMENT_ID, partition.getExperimentId());
+        values.put(PartitionsTable.Column.FIRST_TIMESTAMP_MILLIS,
+                partition.getFirstTimestampMillis());
+        values.put(PartitionsTable.Column.LAST_TIMESTAMP_MILLIS,
+                partition.getLastTimestampMillis());
+        values.put(PartitionsTable.Column.MIGRATING, partition.isMigrating() ? 1 : 0);
+        mOpenHelper.getWritableDatabase().insertWithOnConflict(PartitionsTable.NAME, null, values,
+                SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    @Override
+    public synchronized SensorDatabase openPartition(String runId) {
+        SensorDatabaseImpl database = mOpenPartitions.get(runId);
+        if (database == null) {
+            database = new SensorDatabaseImpl(mContext, getPartitionName(runId));
+            mOpenPartitions.put(runId, database);
+        }
+        return database;
+    }
+
+    @Override
+    public long getNewestTimestampMillis(String runId) {
+        SensorDatabaseImpl database;
+        synchronized (this) {
+            openPartition(runId);
+            database = mOpenPartitions.get(runId);
+        }
+        return database.getNewestTimestampMillis();
+    }
+
+    @Override
+    public void deletePartition(String runId) {
+        mOpenHelper.getWritableDatabase().delete(PartitionsTable.NAME,
+                PartitionsTable.Column.RUN_ID + "=?", new String[]{runId});
+        SensorDatabaseImpl database;
+        synchronized (this) {
+            database = mOpenPartitions.remove(runId);
+        }
+        if (database != null) {
+            database.close();
+        }
+        mContext.deleteDatabase(getPartitionName(runId));
+    }
+
+    @Override
+    public long getPartitionSizeBytes(String runId) {
+        String name = getPartitionName(runId);
+        return mContext.getDatabasePath(name).length()
+                + mContext.getDatabasePath(name + WAL_SUFFIX).length();
+    }
+
+    @Override
+    public boolean isMigrationFinished() {
+        Cursor cursor = mOpenHelper.getReadableDatabase().query(FlagsTable.NAME,
+                new String[]{FlagsTable.Column.NAME}, FlagsTable.Column.NAME + "=?",
+                new String[]{MIGRATION_FINISHED}, null, null, null);
+        try {
+            return cursor.getCount() > 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public void setMigrationFinished() {
+        ContentValues values = new ContentValues();
+        values.put(FlagsTable.Column.NAME, MIGRATION_FINISHED);
+        mOpenHelper.getWritableDatabase().insertWithOnConflict(FlagsTable.NAME, null, values,
+                SQLiteDatabase.CONFLICT_IGNORE);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensordb;
+
+import com.google.common.collect.Range;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps track of sensor data writes that have been queued but not yet run, so that a read can
+ * tell whether it might miss any of them.
+ */
+public class PendingWrites {
+    private static class Pending {
+        int mCount = 0;
+        long mEarliestTimestamp = Long.MAX_VALUE;
+    }
+
+    private final Map<String, Pending> mPending = new HashMap<>();
+
+    /**
+     * A write of readings for {@code tag}, starting at {@code earliestTimestamp}, has been queued.
+     */
+    public synchronized void add(String tag, long earliestTimestamp) {
+        Pending pending = mPending.get(tag);
+        if (pending == null) {
+            pending = new Pending();
+            mPending.put(tag, pending);
+        }
+        pending.mCount++;
+        pending.mEarliestTimestamp = Math.min(pending.mEarliestTimestamp, earliestTimestamp);
+    }
+
+    /**
+     * A write added with {@link #add} has finished, successfully or not.
+     */
+    public synchronized void done(String tag) {
+        Pending pending = mPending.get(tag);
+        if (pending != null && --pending.mCount == 0) {
+            mPending.remove(tag);
+        }
+    }
+
+    /**
+     * @return true if a queued write for {@code tag} might land in {@code range}.  This is
+     * conservative: while writes keep arriving, the earliest timestamp only moves forward once
+     * the queue for that tag has drained.
+     */
+    public synchronized boolean mightOverlap(String tag, TimeRange range) {
+        Pending pending = mPending.get(tag);
+        if (pending == null) {
+            return false;
+        }
+        Range<Long> times = range.getTimes();
+        if (times == null || !times.hasUpperBound()) {
+            return true;
+        }
+        return times.upperEndpoint() >= pending.mEarliestTimestamp;
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensordb;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size-bounded, least-recently-used cache of sensor readings, in tiles: all the readings for
+ * one sensor tag, at one resolution tier, within one fixed span of time.  Safe to use from any
+ * thread.  When several threads ask for the same missing tile at once, only one of them loads it,
+ * and the rest wait for the result.
+ * <p/>
+ * Invalidating tiles for a sensor tag that has nothing cached doesn't take the lock, so that
+ * writes while recording stay cheap.
+ */
+public class ReadingTileCache {
+    public static final long DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+
+    // A timestamp and a value per reading, plus a rough per-tile overhead.
+    private static final long BYTES_PER_READING = 16;
+    private static final long BYTES_PER_TILE = 64;
+
+    /**
+     * Loads tiles that are not in the cache.
+     */
+    public interface TileLoader {
+        /**
+         * @return the readings for each tile from {@code firstTileIndex} to {@code lastTileIndex},
+         * inclusive, with a null entry for any tile that should not be cached (for example,
+         * because it is too large)
+         */
+        Tile[] loadTiles(String sensorTag, int resolutionTier, long firstTileIndex,
+                long lastTileIndex);
+    }
+
+    /**
+     * Readings for a single tile, oldest first.
+     */
+    public static class Tile {
+        private final long[] mTimestamps;
+        private final double[] mValues;
+        private final int mCount;
+
+        public Tile(long[] timestampsMillis, double[] values, int count) {
+            mTimestamps = timestampsMillis;
+            mValues = values;
+            mCount = count;
+        }
+
+        public int size() {
+            return mCount;
+        }
+
+        public long getTimestamp(int i) {
+            return mTimestamps[i];
+        }
+
+        public double getValue(int i) {
+            return mValues[i];
+        }
+
+        long getSizeBytes() {
+            return BYTES_PER_TILE + mTimestamps.length * BYTES_PER_READING;
+        }
+    }
+
+    private static class Key {
+        final String mSensorTag;
+        final int mResolutionTier;
+        final long mTileIndex;
+
+        Key(String sensorTag, int resolutionTier, long tileIndex) {
+            mSensorTag = sensorTag;
+            mResolutionTier = resolutionTier;
+            mTileIndex = tileIndex;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return mResolutionTier == key.mResolutionTier && mTileIndex == key.mTileIndex
+                    && mSensorTag.equals(key.mSensorTag);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mSensorTag.hashCode();
+            result = 31 * result + mResolutionTier;
+            result = 31 * result + (int) (mTileIndex ^ (mTileIndex >>> 32));
+            return result;
+        }
+    }
+
+    private final long mMaxBytes;
+
+    // Bumped on every invalidation, so that a load that raced a write is not cached.
+    private final ConcurrentMap<String, AtomicLong> mGenerations = new ConcurrentHashMap<>();
+    // Sensor tags that may have tiles cached or loading.  Only added to while holding the lock.
+    private final Set<String> mCachedTags =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    // All guarded by this
+    private final LinkedHashMap<Key, Tile> mTiles = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<Key> mLoading = new HashSet<>();
+    private long mClearCount = 0;
+    private long mSizeBytes = 0;
+    private long mHitCount = 0;
+    private long mMissCount = 0;
+
+    public ReadingTileCache(long maxBytes) {
+        Preconditions.checkArgument(maxBytes > 0);
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * @return the cached tile, or the result of loading it with {@code loader} if it is not
+     * cached.  May be null, if the loader would not load it.
+     */
+    public Tile getOrLoad(String sensorTag, int resolutionTier, long tileIndex,
+            TileLoader loader) {
+        Key key = new Key(sensorTag, resolutionTier, tileIndex);
+        long generation;
+        long clearCount;
+        synchronized (this) {
+            while (true) {
+                Tile tile = mTiles.get(key);
+                if (tile != null) {
+                    mHitCount++;
+                    return tile;
+                }
+                if (!mLoading.contains(key)) {
+                    break;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            mMissCount++;
+            mLoading.add(key);
+            mCachedTags.add(sensorTag);
+            generation = getGeneration(sensorTag).get();
+            clearCount = mClearCount;
+        }
+
+        Tile tile = null;
+        try {
+            tile = loader.loadTiles(sensorTag, resolutionTier, tileIndex, tileIndex)[0];
+            return tile;
+        } finally {
+            synchronized (this) {
+                mLoading.remove(key);
+                if (tile != null && generation == getGeneration(sensorTag).get()
+                        && clearCount == mClearCount) {
+                    put(key, tile);
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Loads every tile from {@code firstTileIndex} to {@code lastTileIndex}, inclusive, that is
+     * neither cached nor already loading, with a single call to {@code loader}.  Does nothing if
+     * fewer than two tiles are missing, since {@link #getOrLoad} will do just as well.
+     */
+    public void loadMissing(String sensorTag, int resolutionTier, long firstTileIndex,
+            long lastTileIndex, TileLoader loader) {
+        Set<Key> claimed = new HashSet<>();
+        long firstMissing = Long.MAX_VALUE;
+        long lastMissing = Long.MIN_VALUE;
+        long generation;
+        long clearCount;
+        synchronized (this) {
+            for (long i = firstTileIndex; i <= lastTileIndex; i++) {
+                Key key = new Key(sensorTag, resolutionTier, i);
+                if (!mTiles.containsKey(key) && !mLoading.contains(key)) {
+                    claimed.add(key);
+                    firstMissing = Math.min(firstMissing, i);
+                    lastMissing = Math.max(lastMissing, i);
+                }
+            }
+            if (claimed.size() < 2) {
+                return;
+            }
+            mMissCount += claimed.size();
+            mLoading.addAll(claimed);
+            mCachedTags.add(sensorTag);
+            generation = getGeneration(sensorTag).get();
+            clearCount = mClearCount;
+        }
+
+        Tile[] tiles = null;
+        try {
+            tiles = loader.loadTiles(sensorTag, resolutionTier, firstMissing, lastMissing);
+        } finally {
+            synchronized (this) {
+                mLoading.removeAll(claimed);
+                if (tiles != null && generation == getGeneration(sensorTag).get()
+                        && clearCount == mClearCount) {
+                    for (Key key : claimed) {
+                        Tile tile = tiles[(int) (key.mTileIndex - firstMissing)];
+                        if (tile != null) {
+                            put(key, tile);
+                        }
+                    }
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return true if the tile is cached, or being loaded right now
+     */
+    public synchronized boolean isCachedOrLoading(String sensorTag, int resolutionTier,
+            long tileIndex) {
+        Key key = new Key(sensorTag, resolutionTier, tileIndex);
+        return mTiles.containsKey(key) || mLoading.contains(key);
+    }
+
+    /**
+     * Forgets the tiles from {@code firstTileIndex} to {@code lastTileIndex}, inclusive, because
+     * their readings have changed.
+     */
+    public void invalidate(String sensorTag, int resolutionTier, long firstTileIndex,
+            long lastTileIndex) {
+        // Bumping first means that a load which checks the generation after this sees the
+        // change, and one that added the tag before this is seen below.
+        getGeneration(sensorTag).incrementAndGet();
+        if (!mCachedTags.contains(sensorTag)) {
+            return;
+        }
+        synchronized (this) {
+            for (long i = firstTileIndex; i <= lastTileIndex; i++) {
+                remove(new Key(sensorTag, resolutionTier, i));
+            }
+        }
+    }
+
+    /**
+     * Forgets every tile for the given sensor tag.
+     */
+    public void invalidateSensor(String sensorTag) {
+        getGeneration(sensorTag).incrementAndGet();
+        if (!mCachedTags.contains(sensorTag)) {
+            return;
+        }
+        synchronized (this) {
+            boolean loading = false;
+            for (Key key : mLoading) {
+                loading |= key.mSensorTag.equals(sensorTag);
+            }
+            if (!loading) {
+                mCachedTags.remove(sensorTag);
+            }
+            Iterator<Map.Entry<Key, Tile>> iterator = mTiles.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Key, Tile> entry = iterator.next();
+                if (entry.getKey().mSensorTag.equals(sensorTag)) {
+                    mSizeBytes -= entry.getValue().getSizeBytes();
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        mClearCount++;
+        mTiles.clear();
+        mSizeBytes = 0;
+    }
+
+    public synchronized long getSizeBytes() {
+        return mSizeBytes;
+    }
+
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    // Must hold the lock
+    private void put(Key key, Tile tile) {
+        remove(key);
+        mTiles.put(key, tile);
+        mSizeBytes += tile.getSizeBytes();
+        Iterator<Tile> eldest = mTiles.values().iterator();
+        while (mSizeBytes > mMaxBytes && eldest.hasNext()) {
+            mSizeBytes -= eldest.next().getSizeBytes();
+            eldest.remove();
+        }
+    }
+
+    // Must hold the lock
+    private void remove(Key key) {
+        Tile removed = mTiles.remove(key);
+        if (removed != null) {
+            mSizeBytes -= removed.getSizeBytes();
+        }
+    }
+
+    private AtomicLong getGeneration(String sensorTag) {
+        AtomicLong generation = mGenerations.get(sensorTag);
+        if (generation == null) {
+            mGenerations.putIfAbsent(sensorTag, new AtomicLong());
+            generation = mGenerations.get(sensorTag);
+        }
+        return generation;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensordb;
+
+import java.util.List;
+
+/**
+ * Where {@link RunPartitionedSensorDatabase} keeps each run's readings, and the index of which
+ * runs it has.  Calls come from the sensor data threads, and need not be synchronized by the
+ * implementation beyond what the returned databases already do.
+ */
+public interface RunPartitionStore {
+    /**
+     * The time span covered by one run's readings.
+     */
+    class Partition {
+        private final String mRunId;
+        private final String mExperimentId;
+        private long mFirstTimestampMillis;
+        private long mLastTimestampMillis;
+        private boolean mMigrating = false;
+
+        public Partition(String runId, String experimentId, long firstTimestampMillis,
+                long lastTimestampMillis) {
+            mRunId = runId;
+            mExperimentId = experimentId;
+            mFirstTimestampMillis = firstTimestampMillis;
+            mLastTimestampMillis = lastTimestampMillis;
+        }
+
+        public String getRunId() {
+            return mRunId;
+        }
+
+        public String getExperimentId() {
+            return mExperimentId;
+        }
+
+        public long getFirstTimestampMillis() {
+            return mFirstTimestampMillis;
+        }
+
+        public long getLastTimestampMillis() {
+            return mLastTimestampMillis;
+        }
+
+        /**
+         * @return true if the partition's span had to grow to include {@code timestampMillis}
+         */
+        public boolean extendTo(long timestampMillis) {
+            if (timestampMillis < mFirstTimestampMillis) {
+                mFirstTimestampMillis = timestampMillis;
+                return true;
+            }
+            if (timestampMillis > mLastTimestampMillis) {
+                mLastTimestampMillis = timestampMillis;
+                return true;
+            }
+            return false;
+        }
+
+        public void setLastTimestampMillis(long lastTimestampMillis) {
+            mLastTimestampMillis = lastTimestampMillis;
+        }
+
+        /**
+         * @return true if readings are still being copied into this partition from the legacy
+         * database, which still has all of them
+         */
+        public boolean isMigrating() {
+            return mMigrating;
+        }
+
+        public void setMigrating(boolean migrating) {
+            mMigrating = migrating;
+        }
+    }
+
+    /**
+     * @return every partition saved with {@link #savePartition}, in any order
+     */
+    List<Partition> loadPartitions();
+
+    /**
+     * Adds the partition to the index, or updates its span if it is already there.
+     */
+    void savePartition(Partition partition);
+
+    /**
+     * @return the database holding the readings for the given run, creating it if needed
+     */
+    SensorDatabase openPartition(String runId);
+
+    /**
+     * @return the newest timestamp among the given run's readings, or {@link Long#MIN_VALUE} if
+     * it has none
+     */
+    long getNewestTimestampMillis(String runId);
+
+    /**
+     * Removes the run from the index, and deletes its readings.
+     */
+    void deletePartition(String runId);
+
+    /**
+     * @return the bytes on disk taken by the given run's readings
+     */
+    long getPartitionSizeBytes(String runId);
+
+    /**
+     * @return true once {@link #setMigrationFinished} has been called
+     */
+    boolean isMigrationFinished();
+
+    /**
+     * Records that readings from before runs were partitioned have all been moved.
+     */
+    void setMigrationFinished();
+}
@@ -0,0 +1,603 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensordb;
+
+import com.google.android.apps.forscience.whistlepunk.scalarchart.ChartData;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamConsumer;
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps each run's readings in its own partition from {@link RunPartitionStore}, so that deleting
+ * a run drops its partition instead of deleting rows from a shared table.  Readings from before
+ * partitioning stay in the legacy database until {@link #migrateRun} moves them.
+ *
+ * Queries are sent to the legacy database and to every partition whose span overlaps the
+ * requested times, and the results are merged.  Writes go to the run being recorded, and
+ * otherwise to the partition whose span contains them.
+ *
+ * A run is moved by saving its partition as migrating, copying its readings, saving it again as
+ * done, and only then deleting the legacy copies.  If the app stops partway, a partition left
+ * migrating is dropped on the next start, and the move starts over from the legacy readings.
+ * Until the migration is finished, queries skip legacy readings inside any partition's span, so
+ * copies that have not been deleted yet are never seen twice.
+ *
+ * Partitions are handed out for the length of one query or write.  Deleting a run that is in use
+ * only drops it from the index, and its partition is closed and deleted once the last user is done
+ * with it.
+ */
+public class RunPartitionedSensorDatabase implements SensorDatabase {
+    private static final int MIGRATION_PAGE_SIZE = 1000;
+
+    private final SensorDatabase mLegacyDatabase;
+    private final RunPartitionStore mStore;
+
+    // All of the fields below are guarded by this.
+    // Sorted by first timestamp; null until first needed, to keep disk access off the caller.
+    private List<RunPartitionStore.Partition> mPartitions = null;
+    private RunPartitionStore.Partition mCurrentPartition = null;
+    private boolean mRecording = false;
+    private long mLastWrittenTimestamp = Long.MIN_VALUE;
+    private boolean mMigrationFinished;
+    // How many queries or writes are using each run's partition.
+    private final Map<String, Integer> mPartitionUsers = new HashMap<>();
+    // Deleted runs whose partitions are still in use.
+    private final Set<String> mDeleteWhenUnused = new HashSet<>();
+
+    public RunPartitionedSensorDatabase(SensorDatabase legacyDatabase, RunPartitionStore store) {
+        mLegacyDatabase = legacyDatabase;
+        mStore = store;
+    }
+
+    private void ensureLoaded() {
+        if (mPartitions != null) {
+            return;
+        }
+        mMigrationFinished = mStore.isMigrationFinished();
+        mPartitions = new ArrayList<>();
+        for (RunPartitionStore.Partition partition : mStore.loadPartitions()) {
+            if (partition.isMigrating()) {
+                // The app stopped while this run was being moved.  The legacy database still has
+                // all of its readings, so start the move over.
+                mStore.deletePartition(partition.getRunId());
+                continue;
+            }
+            mPartitions.add(partition);
+            if (partition.getLastTimestampMillis() == Long.MAX_VALUE) {
+                // The app stopped while this run was recording, so the run never got an end.
+                // It ends with the last reading that made it to disk, so that it keeps all of
+                // those without claiming every reading that comes after it.
+                long newest = mStore.getNewestTimestampMillis(partition.getRunId());
+                partition.setLastTimestampMillis(
+                        Math.max(newest, partition.getFirstTimestampMillis()));
+                mStore.savePartition(partition);
+            }
+        }
+        Collections.sort(mPartitions, new Comparator<RunPartitionStore.Partition>() {
+            @Override
+            public int compare(RunPartitionStore.Partition lhs, RunPartitionStore.Partition rhs) {
+                return Long.compare(lhs.getFirstTimestampMillis(), rhs.getFirstTimestampMillis());
+            }
+        });
+    }
+
+    private RunPartitionStore.Partition findPartition(String runId) {
+        for (RunPartitionStore.Partition partition : mPartitions) {
+            if (partition.getRunId().equals(runId)) {
+                return partition;
+            }
+        }
+        return null;
+    }
+
+    private void insertPartition(RunPartitionStore.Partition partition) {
+        int i = 0;
+        while (i < mPartitions.size() && mPartitions.get(i).getFirstTimestampMillis()
+                <= partition.getFirstTimestampMillis()) {
+            i++;
+        }
+        mPartitions.add(i, partition);
+    }
+
+    private static boolean overlaps(RunPartitionStore.Partition partition, Range<Long> times) {
+        if (times == null) {
+            return true;
+        }
+        Range<Long> span = Range.closed(partition.getFirstTimestampMillis(),
+                partition.getLastTimestampMillis());
+        return span.isConnected(times) && !span.intersection(times).isEmpty();
+    }
+
+    /**
+     * Marks the run's partition as in use, so that it isn't deleted until {@link #release}.
+     */
+    private String acquire(String runId) {
+        Integer users = mPartitionUsers.get(runId);
+        mPartitionUsers.put(runId, users == null ? 1 : users + 1);
+        return runId;
+    }
+
+    private void release(String runId) {
+        if (runId == null) {
+            return;
+        }
+        synchronized (this) {
+            int users = mPartitionUsers.get(runId) - 1;
+            if (users > 0) {
+                mPartitionUsers.put(runId, users);
+                return;
+            }
+            mPartitionUsers.remove(runId);
+            if (!mDeleteWhenUnused.remove(runId)) {
+                return;
+            }
+        }
+        mStore.deletePartition(runId);
+    }
+
+    private void release(List<String> runIds) {
+        for (String runId : runIds) {
+            release(runId);
+        }
+    }
+
+    /**
+     * @return the database for an id from {@link #acquireRunForWrite}
+     */
+    private SensorDatabase getDatabase(String runId) {
+        return runId == null ? mLegacyDatabase : mStore.openPartition(runId);
+    }
+
+    /**
+     * @return the runs whose partitions overlap {@code times}, oldest first.  Each must be
+     * given back to {@link #release}.
+     */
+    private synchronized List<String> acquireRunsOverlapping(Range<Long> times) {
+        ensureLoaded();
+        List<String> runIds = new ArrayList<>();
+        for (RunPartitionStore.Partition partition : mPartitions) {
+            if (overlaps(partition, times)) {
+                runIds.add(acquire(partition.getRunId()));
+            }
+        }
+        return runIds;
+    }
+
+    /**
+     * @return the spans of {@code range} to ask the legacy database for
+     */
+    private synchronized List<TimeRange> getLegacyRanges(TimeRange range) {
+        ensureLoaded();
+        List<TimeRange> ranges = new ArrayList<>();
+        if (mMigrationFinished) {
+            ranges.add(range);
+            return ranges;
+        }
+        RangeSet<Long> times = TreeRangeSet.create();
+        times.add(range.getTimes() == null ? Range.<Long>all() : range.getTimes());
+        for (RunPartitionStore.Partition partition : mPartitions) {
+            times.remove(Range.closed(partition.getFirstTimestampMillis(),
+                    partition.getLastTimestampMillis()));
+        }
+        for (Range<Long> span : times.asRanges()) {
+            ranges.add(range.getOrder() == TimeRange.ObservationOrder.OLDEST_FIRST
+                    ? TimeRange.oldest(span) : TimeRange.newest(span));
+        }
+        return ranges;
+    }
+
+    /**
+     * @return the run whose partition a reading at {@code timestampMillis} belongs in, which must
+     * be given back to {@link #release}, or null for the legacy database
+     */
+    private synchronized String acquireRunForWrite(long timestampMillis) {
+        ensureLoaded();
+        if (mCurrentPartition != null && mRecording) {
+            mCurrentPartition.extendTo(timestampMillis);
+            mLastWrittenTimestamp = Math.max(mLastWrittenTimestamp, timestampMillis);
+            return acquire(mCurrentPartition.getRunId());
+        }
+        for (RunPartitionStore.Partition partition : mPartitions) {
+            if (partition.getFirstTimestampMillis() <= timestampMillis
+                    && timestampMillis <= partition.getLastTimestampMillis()) {
+                return acquire(partition.getRunId());
+            }
+        }
+        if (mCurrentPartition != null
+                && timestampMillis > mCurrentPartition.getLastTimestampMillis()) {
+            // A reading that was still queued when the run stopped.
+            mCurrentPartition.extendTo(timestampMillis);
+            mStore.savePartition(mCurrentPartition);
+            return acquire(mCurrentPartition.getRunId());
+        }
+        return null;
+    }
+
+    @Override
+    public void addScalarReading(String sensorTag, int resolutionTier, long timestampMillis,
+            double value) {
+        String runId = acquireRunForWrite(timestampMillis);
+        try {
+            getDatabase(runId).addScalarReading(sensorTag, resolutionTier, timestampMillis,
+                    value);
+        } finally {
+            release(runId);
+        }
+    }
+
+    @Override
+    public void addScalarReadings(String sensorTag, int resolutionTier, long[] timestampsMillis,
+            double[] values, int count) {
+        if (count == 0) {
+            return;
+        }
+        // A batch comes from a single stretch of recording, so it all belongs in one place.
+        String runId = acquireRunForWrite(timestampsMillis[0]);
+        try {
+            synchronized (this) {
+                if (mRecording) {
+                    mCurrentPartition.extendTo(timestampsMillis[count - 1]);
+                    mLastWrittenTimestamp = Math.max(mLastWrittenTimestamp,
+                            timestampsMillis[count - 1]);
+                }
+            }
+            getDatabase(runId).addScalarReadings(sensorTag, resolutionTier, timestampsMillis,
+                    values, count);
+        } finally {
+            release(runId);
+        }
+    }
+
+    @Override
+    public ScalarReadingList getScalarReadings(String sensorTag, TimeRange range,
+            int resolutionTier, int maxRecords) {
+        List<ScalarReadingList> results = new ArrayList<>();
+        for (TimeRange legacyRange : getLegacyRanges(range)) {
+            addIfNotEmpty(results, mLegacyDatabase.getScalarReadings(sensorTag, legacyRange,
+                    resolutionTier, maxRecords));
+        }
+        List<String> runIds = acquireRunsOverlapping(range.getTimes());
+        try {
+            for (String runId : runIds) {
+                addIfNotEmpty(results, getDatabase(runId).getScalarReadings(sensorTag, range,
+                        resolutionTier, maxRecords));
+            }
+        } finally {
+            release(runIds);
+        }
+        if (results.size() == 1) {
+            return results.get(0);
+        }
+        return merge(results, range.getOrder(), maxRecords);
+    }
+
+    private static void addIfNotEmpty(List<ScalarReadingList> results,
+            ScalarReadingList readings) {
+        if (readings.size() > 0) {
+            results.add(readings);
+        }
+    }
+
+    /**
+     * Merges lists that are each already in {@code order}.  There are only ever a few of them,
+     * so each reading is picked by looking at the head of every list.
+     */
+    private static ScalarReadingList merge(List<ScalarReadingList> results,
+            TimeRange.ObservationOrder order, int maxRecords) {
+        boolean oldestFirst = order == TimeRange.ObservationOrder.OLDEST_FIRST;
+        int lists = results.size();
+        long[][] timestamps = new long[lists][];
+        double[][] values = new double[lists][];
+        int total = 0;
+        for (int i = 0; i < lists; i++) {
+            ScalarReadingList readings = results.get(i);
+            final long[] listTimestamps = new long[readings.size()];
+            final double[] listValues = new double[readings.size()];
+            readings.deliver(new StreamConsumer() {
+                private int mIndex = 0;
+
+                @Override
+                public void addData(long timestampMillis, double value) {
+                    listTimestamps[mIndex] = timestampMillis;
+                    listValues[mIndex] = value;
+                    mIndex++;
+                }
+            });
+            timestamps[i] = listTimestamps;
+            values[i] = listValues;
+            total += listTimestamps.length;
+        }
+
+        final int count = maxRecords > 0 ? Math.min(total, maxRecords) : total;
+        final long[] mergedTimestamps = new long[count];
+        final double[] mergedValues = new double[count];
+        int[] heads = new int[lists];
+        for (int n = 0; n < count; n++) {
+            int next = -1;
+            for (int i = 0; i < lists; i++) {
+                if (heads[i] == timestamps[i].length) {
+                    continue;
+                }
+                long timestamp = timestamps[i][heads[i]];
+                // Ties go to the earlier list, so legacy readings come first.
+                if (next < 0 || (oldestFirst ? timestamp < timestamps[next][heads[next]]
+                        : timestamp > timestamps[next][heads[next]])) {
+                    next = i;
+                }
+            }
+            mergedTimestamps[n] = timestamps[next][heads[next]];
+            mergedValues[n] = values[next][heads[next]];
+            heads[next]++;
+        }
+        return new ScalarReadingList() {
+            @Override
+            public void deliver(StreamConsumer c) {
+                for (int i = 0; i < count; i++) {
+                    c.addData(mergedTimestamps[i], mergedValues[i]);
+                }
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+
+            @Override
+            public List<ChartData.DataPoint> asDataPoints() {
+                List<ChartData.DataPoint> points = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    points.add(new ChartData.DataPoint(mergedTimestamps[i], mergedValues[i]));
+                }
+                return points;
+            }
+        };
+    }
+
+    @Override
+    public String getFirstDatabaseTagAfter(long timestamp) {
+        // Readings after a timestamp almost always belong to the run covering it, which comes
+        // first; the legacy database only holds runs that haven't been moved yet.
+        List<String> runIds = acquireRunsOverlapping(Range.greaterThan(timestamp));
+        try {
+            for (String runId : runIds) {
+                String tag = getDatabase(runId).getFirstDatabaseTagAfter(timestamp);
+                if (tag != null) {
+                    return tag;
+                }
+            }
+        } finally {
+            release(runIds);
+        }
+        return mLegacyDatabase.getFirstDatabaseTagAfter(timestamp);
+    }
+
+    @Override
+    public void deleteScalarReadings(String sensorTag, TimeRange range) {
+        mLegacyDatabase.deleteScalarReadings(sensorTag, range);
+        List<String> runIds = acquireRunsOverlapping(range.getTimes());
+        try {
+            for (String runId : runIds) {
+                getDatabase(runId).deleteScalarReadings(sensorTag, range);
+            }
+        } finally {
+            release(runIds);
+        }
+    }
+
+    @Override
+    public synchronized void beginRun(String runId, String experimentId,
+            long startTimestampMillis) {
+        ensureLoaded();
+        RunPartitionStore.Partition partition = new RunPartitionStore.Partition(runId,
+                experimentId, startTimestampMillis, Long.MAX_VALUE);
+        insertPartition(partition);
+        mStore.savePartition(partition);
+        mCurrentPartition = partition;
+        mRecording = true;
+        mLastWrittenTimestamp = startTimestampMillis;
+    }
+
+    @Override
+    public synchronized void endRun(String runId, long endTimestampMillis) {
+        ensureLoaded();
+        RunPartitionStore.Partition partition = findPartition(runId);
+        if (partition == null) {
+            return;
+        }
+        partition.setLastTimestampMillis(Math.max(endTimestampMillis, mLastWrittenTimestamp));
+        mStore.savePartition(partition);
+        if (partition == mCurrentPartition) {
+            mRecording = false;
+        }
+    }
+
+    @Override
+    public boolean deleteRun(String runId, List<String> sensorTags) {
+        synchronized (this) {
+            ensureLoaded();
+            RunPartitionStore.Partition partition = findPartition(runId);
+            if (partition == null) {
+                return false;
+            }
+            mPartitions.remove(partition);
+            if (partition == mCurrentPartition) {
+                mCurrentPartition = null;
+                mRecording = false;
+            }
+            if (mPartitionUsers.containsKey(runId)) {
+                // Closing it now would pull it out from under a query or write.
+                mDeleteWhenUnused.add(runId);
+                return true;
+            }
+        }
+        mStore.deletePartition(runId);
+        return true;
+    }
+
+    @Override
+    public boolean isRunMigrationNeeded() {
+        return !mStore.isMigrationFinished();
+    }
+
+    @Override
+    public boolean migrateRun(String runId, String experimentId, List<String> sensorTags,
+            long firstTimestampMillis, long lastTimestampMillis) {
+        boolean alreadyMoved;
+        synchronized (this) {
+            ensureLoaded();
+            alreadyMoved = findPartition(runId) != null;
+        }
+        if (alreadyMoved) {
+            // The app may have stopped before the legacy copies were deleted last time.
+            deleteLegacyReadings(sensorTags, firstTimestampMillis, lastTimestampMillis);
+            return false;
+        }
+
+        // Start from an empty partition, even if an earlier attempt left a half-filled one.
+        mStore.deletePartition(runId);
+        RunPartitionStore.Partition partition = new RunPartitionStore.Partition(runId,
+                experimentId, firstTimestampMillis, lastTimestampMillis);
+        partition.setMigrating(true);
+        mStore.savePartition(partition);
+
+        SensorDatabase partitionDatabase = mStore.openPartition(runId);
+        int moved = 0;
+        for (String tag : sensorTags) {
+            moved += copyReadings(tag, firstTimestampMillis, lastTimestampMillis,
+                    partitionDatabase);
+        }
+        if (moved == 0) {
+            mStore.deletePartition(runId);
+            return false;
+        }
+        partition.setMigrating(false);
+        synchronized (this) {
+            mStore.savePartition(partition);
+            insertPartition(partition);
+        }
+        deleteLegacyReadings(sensorTags, firstTimestampMillis, lastTimestampMillis);
+        return true;
+    }
+
+    private void deleteLegacyReadings(List<String> sensorTags, long firstTimestampMillis,
+            long lastTimestampMillis) {
+        TimeRange times = TimeRange.oldest(Range.closed(firstTimestampMillis,
+                lastTimestampMillis));
+        for (String tag : sensorTags) {
+            mLegacyDatabase.deleteScalarReadings(tag, times);
+        }
+    }
+
+    /**
+     * Copies every tier of readings for {@code tag} in the given span from the legacy database.
+     *
+     * @return the number of readings copied
+     */
+    private int copyReadings(String tag, long firstTimestampMillis, long lastTimestampMillis,
+            SensorDatabase destination) {
+        int copied = 0;
+        // Each tier is a sample of the one below it, so the first empty tier is the last.
+        for (int tier = 0; ; tier++) {
+            int copiedInTier = copyTier(tag, tier, firstTimestampMillis, lastTimestampMillis,
+                    destination);
+            if (copiedInTier == 0) {
+                return copied;
+            }
+            copied += copiedInTier;
+        }
+    }
+
+    private int copyTier(final String tag, final int tier, long firstTimestampMillis,
+            long lastTimestampMillis, final SensorDatabase destination) {
+        int copied = 0;
+        long cursor = firstTimestampMillis;
+        while (cursor <= lastTimestampMillis) {
+            ScalarReadingList page = mLegacyDatabase.getScalarReadings(tag,
+                    TimeRange.oldest(Range.closed(cursor, lastTimestampMillis)), tier,
+                    MIGRATION_PAGE_SIZE);
+            final int size = page.size();
+            if (size == 0) {
+                break;
+            }
+            final long[] timestamps = new long[size];
+            final double[] values = new double[size];
+            page.deliver(new StreamConsumer() {
+                int mIndex = 0;
+
+                @Override
+                public void addData(long timestampMillis, double value) {
+                    timestamps[mIndex] = timestampMillis;
+                    values[mIndex] = value;
+                    mIndex++;
+                }
+            });
+            destination.addScalarReadings(tag, tier, timestamps, values, size);
+            copied += size;
+            if (size < MIGRATION_PAGE_SIZE) {
+                break;
+            }
+            cursor = timestamps[size - 1] + 1;
+        }
+        return copied;
+    }
+
+    @Override
+    public void open() {
+        synchronized (this) {
+            ensureLoaded();
+        }
+        mLegacyDatabase.open();
+    }
+
+    @Override
+    public void finishRunMigration() {
+        mLegacyDatabase.finishRunMigration();
+        mStore.setMigrationFinished();
+        synchronized (this) {
+            mMigrationFinished = true;
+        }
+    }
+
+    @Override
+    public long getDiskUsageBytes(String experimentId) {
+        List<String> runIds = new ArrayList<>();
+        synchronized (this) {
+            ensureLoaded();
+            for (RunPartitionStore.Partition partition : mPartitions) {
+                if (partition.getExperimentId().equals(experimentId)) {
+                    runIds.add(partition.getRunId());
+                }
+            }
+        }
+        long bytes = 0;
+        for (String runId : runIds) {
+            bytes += mStore.getPartitionSizeBytes(runId);
+        }
+        return bytes;
+    }
+}
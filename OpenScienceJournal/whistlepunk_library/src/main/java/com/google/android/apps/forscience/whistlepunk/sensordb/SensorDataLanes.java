@@ -0,0 +1,170 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensordb;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background threads for the sensor database.  All writes go through a single writer thread, in
+ * order.  Reads go to a small pool of reader threads, which (with the database in WAL mode) can
+ * run alongside the writer, so loading a chart doesn't wait behind thousands of pending inserts.
+ * Queued interactive reads always run before queued background reads.
+ *
+ * Each lane keeps latency statistics, available from {@link #getStats(Lane)}.
+ */
+public class SensorDataLanes {
+    public static final int DEFAULT_READER_THREADS = 2;
+
+    public enum Lane {
+        /** Inserts and deletes, in the order they were requested. */
+        WRITE,
+
+        /** Reads that someone is waiting to see, like a chart being scrolled. */
+        INTERACTIVE_READ,
+
+        /** Reads for export, cropping and other bulk work. */
+        BACKGROUND_READ
+    }
+
+    /**
+     * How long work waited in a lane's queue, and how long it then took to run.
+     */
+    public static class LaneStats {
+        private long mCount;
+        private long mTotalWaitNanos;
+        private long mMaxWaitNanos;
+        private long mTotalRunNanos;
+
+        synchronized void record(long waitNanos, long runNanos) {
+            mCount++;
+            mTotalWaitNanos += waitNanos;
+            mMaxWaitNanos = Math.max(mMaxWaitNanos, waitNanos);
+            mTotalRunNanos += runNanos;
+        }
+
+        public synchronized long getCount() {
+            return mCount;
+        }
+
+        public synchronized double getMeanWaitMillis() {
+            return mCount == 0 ? 0 : mTotalWaitNanos / 1e6 / mCount;
+        }
+
+        public synchronized double getMaxWaitMillis() {
+            return mMaxWaitNanos / 1e6;
+        }
+
+        public synchronized double getMeanRunMillis() {
+            return mCount == 0 ? 0 : mTotalRunNanos / 1e6 / mCount;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("%d tasks, wait mean %.1fms max %.1fms, run mean %.1fms",
+                    mCount, getMeanWaitMillis(), getMaxWaitMillis(), getMeanRunMillis());
+        }
+    }
+
+    private final LaneStats[] mStats = new LaneStats[Lane.values().length];
+    private final AtomicLong mSequence = new AtomicLong();
+    private final ExecutorService mWriter;
+    private final ThreadPoolExecutor mReaders;
+
+    public SensorDataLanes(int readerThreads) {
+        for (int i = 0; i < mStats.length; i++) {
+            mStats[i] = new LaneStats();
+        }
+        mWriter = Executors.newSingleThreadExecutor(new NamedThreadFactory("SensorDataWriter"));
+        mReaders = new ThreadPoolExecutor(readerThreads, readerThreads, 0, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>(), new NamedThreadFactory("SensorDataReader"));
+    }
+
+    /**
+     * @return an executor that runs on the given lane
+     */
+    public Executor getExecutor(final Lane lane) {
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                Task task = new Task(lane, mSequence.getAndIncrement(), command);
+                if (lane == Lane.WRITE) {
+                    mWriter.execute(task);
+                } else {
+                    mReaders.execute(task);
+                }
+            }
+        };
+    }
+
+    public LaneStats getStats(Lane lane) {
+        return mStats[lane.ordinal()];
+    }
+
+    private class Task implements Runnable, Comparable<Task> {
+        private final Lane mLane;
+        private final long mSequence;
+        private final Runnable mCommand;
+        private final long mQueuedNanos = System.nanoTime();
+
+        Task(Lane lane, long sequence, Runnable command) {
+            mLane = lane;
+            mSequence = sequence;
+            mCommand = command;
+        }
+
+        @Override
+        public void run() {
+            long startNanos = System.nanoTime();
+            try {
+                mCommand.run();
+            } finally {
+                getStats(mLane).record(startNanos - mQueuedNanos, System.nanoTime() - startNanos);
+            }
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (mLane != other.mLane) {
+                return mLane.compareTo(other.mLane);
+            }
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String mName;
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        NamedThreadFactory(String name) {
+            mName = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, mName + "-" + mCount.incrementAndGet());
+        }
+    }
+}
@@ -16,6 +16,8 @@
 
 package com.google.android.apps.forscience.whistlepunk.sensordb;
 
+import java.util.List;
+
 /**
  * Stores and retrieves sensor data from on-device storage.  All access should be be from a single
  * background thread; all calls are blocking, and do not perform internal synchronization.
@@ -27,6 +29,12 @@ public interface SensorDatabase {
      */
     void addScalarReading(String sensorTag, int resolutionTier, long timestampMillis, double value);
 
+    /**
+     * Adds the first {@code count} readings from the given arrays, all in a single transaction.
+     */
+    void addScalarReadings(String sensorTag, int resolutionTier, long[] timestampsMillis,
+            double[] values, int count);
+
     /**
      * Get stored scalar records
      *
@@ -54,4 +62,57 @@ public interface SensorDatabase {
      * Deletes the scalar records for the given sensor for the given time range.
      */
     void deleteScalarReadings(String sensorTag, TimeRange range);
+
+    /**
+     * Readings written from now on, up until {@link #endRun}, belong to the given run.
+     * Databases that do not keep runs separately can ignore this.
+     */
+    void beginRun(String runId, String experimentId, long startTimestampMillis);
+
+    /**
+     * The given run has stopped recording at {@code endTimestampMillis}.
+     */
+    void endRun(String runId, long endTimestampMillis);
+
+    /**
+     * Deletes every reading belonging to the given run, if the run's readings are kept apart from
+     * other runs.
+     *
+     * @param sensorTags the sensors the run recorded
+     * @return true if the run's readings were deleted, false if the caller still needs to delete
+     * them by time range with {@link #deleteScalarReadings}
+     */
+    boolean deleteRun(String runId, List<String> sensorTags);
+
+    /**
+     * Opens the storage and runs any upgrades it needs, so that the first read or write doesn't
+     * have to.  Reads and writes still open it themselves if this was never called.
+     */
+    void open();
+
+    /**
+     * @return true if readings recorded before runs were kept separately may still need to be
+     * moved with {@link #migrateRun}
+     */
+    boolean isRunMigrationNeeded();
+
+    /**
+     * Moves the readings for a run recorded before runs were kept separately into that run's own
+     * storage.
+     *
+     * @return true if the readings were moved, false if there was nothing to do
+     */
+    boolean migrateRun(String runId, String experimentId, List<String> sensorTags,
+            long firstTimestampMillis, long lastTimestampMillis);
+
+    /**
+     * Called once every existing run has been passed to {@link #migrateRun}.
+     */
+    void finishRunMigration();
+
+    /**
+     * @return the bytes on disk used by readings of runs in the given experiment, or 0 if this
+     * database does not account for space per experiment
+     */
+    long getDiskUsageBytes(String experimentId);
 }
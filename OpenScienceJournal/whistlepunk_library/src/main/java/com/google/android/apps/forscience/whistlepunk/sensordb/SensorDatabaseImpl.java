@@ -83,6 +83,13 @@ public class SensorDatabaseImpl implements SensorDatabase {
                 }
             }
         };
+        // Lets reads run on other threads while a write is in progress.
+        mOpenHelper.setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void open() {
+        mOpenHelper.getWritableDatabase();
     }
 
     @Override
@@ -96,6 +103,26 @@ public class SensorDatabaseImpl implements SensorDatabase {
         mOpenHelper.getWritableDatabase().insert(ScalarSensorsTable.NAME, null, values);
     }
 
+    @Override
+    public void addScalarReadings(String sourceTag, int resolutionTier, long[] timestampsMillis,
+            double[] values, int count) {
+        SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        ContentValues row = new ContentValues();
+        row.put(ScalarSensorsTable.Column.TAG, sourceTag);
+        row.put(ScalarSensorsTable.Column.RESOLUTION_TIER, resolutionTier);
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < count; i++) {
+                row.put(ScalarSensorsTable.Column.TIMESTAMP_MILLIS, timestampsMillis[i]);
+                row.put(ScalarSensorsTable.Column.VALUE, values[i]);
+                db.insert(ScalarSensorsTable.NAME, null, row);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
     /**
      * Gets the selection string and selectionArgs based on the tag, range and resolution tier.
      *
@@ -206,6 +233,25 @@ public class SensorDatabaseImpl implements SensorDatabase {
         }
     }
 
+    /**
+     * @return the newest timestamp of any reading, in any tier, or {@link Long#MIN_VALUE} if there
+     * are none
+     */
+    public long getNewestTimestampMillis() {
+        final Cursor cursor = mOpenHelper.getReadableDatabase().query(ScalarSensorsTable.NAME,
+                new String[]{"MAX(" + ScalarSensorsTable.Column.TIMESTAMP_MILLIS + ")"}, null,
+                null, null, null, null);
+        try {
+            if (cursor.moveToNext() && !cursor.isNull(0)) {
+                return cursor.getLong(0);
+            } else {
+                return Long.MIN_VALUE;
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
     @Override
     public void deleteScalarReadings(String sensorTag, TimeRange range) {
         Pair<String, String[]> selectionAndArgs = getSelectionAndArgs(sensorTag, range,
@@ -214,4 +260,48 @@ public class SensorDatabaseImpl implements SensorDatabase {
         String[] selectionArgs = selectionAndArgs.second;
         mOpenHelper.getWritableDatabase().delete(ScalarSensorsTable.NAME, selection, selectionArgs);
     }
+
+    @Override
+    public void beginRun(String runId, String experimentId, long startTimestampMillis) {
+        // All runs share one table here.
+    }
+
+    @Override
+    public void endRun(String runId, long endTimestampMillis) {
+        // All runs share one table here.
+    }
+
+    @Override
+    public boolean deleteRun(String runId, List<String> sensorTags) {
+        return false;
+    }
+
+    @Override
+    public boolean isRunMigrationNeeded() {
+        return false;
+    }
+
+    @Override
+    public boolean migrateRun(String runId, String experimentId, List<String> sensorTags,
+            long firstTimestampMillis, long lastTimestampMillis) {
+        return false;
+    }
+
+    /**
+     * Once runs have moved out, the rows they left behind are free pages; rebuild the file so that
+     * it actually shrinks.
+     */
+    @Override
+    public void finishRunMigration() {
+        mOpenHelper.getWritableDatabase().execSQL("VACUUM");
+    }
+
+    @Override
+    public long getDiskUsageBytes(String experimentId) {
+        return 0;
+    }
+
+    public void close() {
+        mOpenHelper.close();
+    }
 }
@@ -23,6 +23,7 @@ import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 
 import com.google.android.apps.forscience.whistlepunk.Clock;
+import com.google.android.apps.forscience.whistlepunk.DevOptionsFragment;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.AbstractSensorRecorder;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.AvailableSensors;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.ScalarSensor;
@@ -74,9 +75,21 @@ public class AccelerometerSensor extends ScalarSensor {
                 SensorManager sensorManager = getSensorManager(context);
                 Sensor sensor = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
                 if (mSensorEventListener != null) {
-                    getSensorManager(context).unregisterListener(mSensorEventListener);
+                    SensorEventBatcher.unregister(getSensorManager(context), mSensorEventListener);
                 }
                 final Clock clock = environment.getDefaultClock();
+                if (DevOptionsFragment.isSensorBatchingEnabled(context)) {
+                    SensorEventBatcher batcher = new SensorEventBatcher(c, clock,
+                            new SensorEventBatcher.ValueExtractor() {
+                                @Override
+                                public double getValue(SensorEvent event) {
+                                    return mAxis.getValue(event);
+                                }
+                            });
+                    mSensorEventListener = batcher;
+                    batcher.register(sensorManager, sensor);
+                    return;
+                }
                 mSensorEventListener = new SensorEventListener() {
                     @Override
                     public void onSensorChanged(SensorEvent event) {
@@ -95,7 +108,7 @@ public class AccelerometerSensor extends ScalarSensor {
 
             @Override
             public void stopObserving() {
-                getSensorManager(context).unregisterListener(mSensorEventListener);
+                SensorEventBatcher.unregister(getSensorManager(context), mSensorEventListener);
                 listener.onSourceStatus(getId(), SensorStatusListener.STATUS_DISCONNECTED);
             }
         };
@@ -23,6 +23,7 @@ import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 
 import com.google.android.apps.forscience.javalib.DataRefresher;
+import com.google.android.apps.forscience.whistlepunk.DevOptionsFragment;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.AbstractSensorRecorder;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.AvailableSensors;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.ReadableSensorOptions;
@@ -55,13 +56,28 @@ public class AmbientLightSensor extends ScalarSensor {
         return new AbstractSensorRecorder() {
             @Override
             public void startObserving() {
-                mDataRefresher = new DataRefresher(mScheduler, environment.getDefaultClock());
                 listener.onSourceStatus(getId(), SensorStatusListener.STATUS_CONNECTED);
                 SensorManager sensorManager = getSensorManager(context);
                 Sensor sensor = sensorManager.getDefaultSensor(Sensor.TYPE_LIGHT);
                 if (mSensorEventListener != null) {
-                    getSensorManager(context).unregisterListener(mSensorEventListener);
+                    SensorEventBatcher.unregister(getSensorManager(context), mSensorEventListener);
+                }
+                if (DevOptionsFragment.isSensorBatchingEnabled(context)) {
+                    // Batched readings carry their own timestamps, so there is no need to
+                    // refresh the graph between them.
+                    SensorEventBatcher batcher = new SensorEventBatcher(c,
+                            environment.getDefaultClock(),
+                            new SensorEventBatcher.ValueExtractor() {
+                                @Override
+                                public double getValue(SensorEvent event) {
+                                    return event.values[0];
+                                }
+                            });
+                    mSensorEventListener = batcher;
+                    batcher.register(sensorManager, sensor);
+                    return;
                 }
+                mDataRefresher = new DataRefresher(mScheduler, environment.getDefaultClock());
                 mSensorEventListener = new SensorEventListener() {
                     @Override
                     public void onSensorChanged(SensorEvent event) {
@@ -83,7 +99,7 @@ public class AmbientLightSensor extends ScalarSensor {
 
             @Override
             public void stopObserving() {
-                getSensorManager(context).unregisterListener(mSensorEventListener);
+                SensorEventBatcher.unregister(getSensorManager(context), mSensorEventListener);
                 listener.onSourceStatus(getId(), SensorStatusListener.STATUS_DISCONNECTED);
                 if (mDataRefresher != null) {
                     mDataRefresher.stopStreaming();
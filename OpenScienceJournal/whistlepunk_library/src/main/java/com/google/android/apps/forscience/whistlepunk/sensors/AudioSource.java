@@ -0,0 +1,201 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensors;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.util.Log;
+
+import com.google.android.apps.forscience.javalib.FailureListener;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Shares the microphone between every sensor that is derived from audio, so that they can be
+ * observed at the same time.  The microphone is opened when the first receiver is added, and
+ * released when the last one is removed.  All receivers are called on a single background thread.
+ *
+ * Audio is read straight into a direct buffer, and receivers see it through a view of that
+ * buffer, so samples are never copied on the Java side.
+ */
+public class AudioSource {
+    private static final String TAG = "AudioSource";
+    public static final int SAMPLE_RATE_IN_HZ = 44100;
+    private static final int CHANNEL_CONFIG = AudioFormat.CHANNEL_IN_MONO;
+    private static final int AUDIO_FORMAT = AudioFormat.ENCODING_PCM_16BIT;
+
+    // Stopping the record makes the pending read return, so the loop should finish almost at once.
+    private static final long STOP_LOOP_TIMEOUT_MILLIS = 500;
+
+    public interface AudioReceiver {
+        /**
+         * Called on the audio thread with 16-bit mono PCM samples between the position and
+         * limit of {@code samples}.  Receivers must not move the position or limit, and must
+         * not hold on to the buffer, since it is reused for the next read.
+         */
+        void onReceiveAudio(ShortBuffer samples);
+    }
+
+    private final ExecutorService mExecutor;
+    private final int mBytesInBuffer;
+    private final List<AudioReceiver> mReceivers = new CopyOnWriteArrayList<>();
+    private AudioRecord mRecord;
+    private AtomicBoolean mRunning;
+    private Future<?> mLoop;
+    // The loop of the last recording, until it is known to have released the microphone.
+    private Future<?> mStoppingLoop;
+
+    public AudioSource() {
+        mBytesInBuffer =
+                AudioRecord.getMinBufferSize(SAMPLE_RATE_IN_HZ, CHANNEL_CONFIG, AUDIO_FORMAT);
+        mExecutor = Executors.newSingleThreadExecutor();
+    }
+
+    /**
+     * Starts delivering audio to {@code receiver}, opening the microphone if needed.  If the
+     * microphone can't be opened, {@code onFailure} is called, and the receiver is not added.
+     */
+    public void addAudioReceiver(AudioReceiver receiver, FailureListener onFailure) {
+        while (true) {
+            Future<?> stoppingLoop;
+            synchronized (this) {
+                if (mRecord != null || mStoppingLoop == null) {
+                    if (mRecord == null) {
+                        String error = startRecording();
+                        if (error != null) {
+                            onFailure.fail(new IllegalStateException(error));
+                            return;
+                        }
+                    }
+                    mReceivers.add(receiver);
+                    return;
+                }
+                stoppingLoop = mStoppingLoop;
+            }
+            // The microphone can't be opened again until the last loop has released it.  Wait
+            // for that without the lock, so that other receivers can come and go meanwhile.
+            awaitLoop(stoppingLoop);
+            synchronized (this) {
+                if (mStoppingLoop == stoppingLoop) {
+                    mStoppingLoop = null;
+                }
+            }
+        }
+    }
+
+    public synchronized void removeAudioReceiver(AudioReceiver receiver) {
+        mReceivers.remove(receiver);
+        if (mReceivers.isEmpty()) {
+            stopRecording();
+        }
+    }
+
+    /**
+     * @return null on success, or a description of the problem
+     */
+    private String startRecording() {
+        if (mBytesInBuffer < 0) {
+            // If this is the case, AudioRecord.getMinBufferSize returned an error.
+            return "Could not connect to microphone";
+        }
+        final AudioRecord record = new AudioRecord(MediaRecorder.AudioSource.MIC,
+                SAMPLE_RATE_IN_HZ, CHANNEL_CONFIG, AUDIO_FORMAT, mBytesInBuffer);
+        if (record.getState() != AudioRecord.STATE_INITIALIZED) {
+            record.release();
+            return "Could not connect to microphone";
+        }
+        record.startRecording();
+        // Check to see if we actually started recording before continuing.
+        // AudioRecord#startRecording() logs an error but it has no return value and
+        // doesn't throw an exception when someone else is using the mic.
+        if (record.getRecordingState() != AudioRecord.RECORDSTATE_RECORDING) {
+            record.release();
+            return "Microphone in use by another application";
+        }
+
+        // Each recording gets its own flag, so a quick stop and start can't revive the old loop.
+        final AtomicBoolean running = new AtomicBoolean(true);
+        mRecord = record;
+        mRunning = running;
+        mLoop = mExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(mBytesInBuffer);
+                buffer.order(ByteOrder.nativeOrder());
+                ShortBuffer samples = buffer.asShortBuffer();
+
+                while (running.get()) {
+                    // Note that this doesn't move the buffer's position.
+                    int readBytes = record.read(buffer, mBytesInBuffer);
+                    if (readBytes > 0) {
+                        samples.limit(readBytes / 2);
+                        samples.position(0);
+                        for (AudioReceiver receiver : mReceivers) {
+                            receiver.onReceiveAudio(samples);
+                        }
+                    }
+                }
+                // Only release once the loop is done reading.
+                record.release();
+            }
+        });
+        return null;
+    }
+
+    /**
+     * Tells the loop to stop, without waiting for it.  The next {@link #addAudioReceiver} waits
+     * for it instead, if it needs the microphone before the loop has let go.
+     */
+    private void stopRecording() {
+        if (mRecord == null) {
+            return;
+        }
+        mRunning.set(false);
+        if (mRecord.getState() == AudioRecord.STATE_INITIALIZED) {
+            mRecord.stop();
+        }
+        mStoppingLoop = mLoop;
+        mRecord = null;
+        mRunning = null;
+        mLoop = null;
+    }
+
+    private static void awaitLoop(Future<?> loop) {
+        try {
+            loop.get(STOP_LOOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            Log.w(TAG, "Audio loop did not stop in time");
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Audio loop failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
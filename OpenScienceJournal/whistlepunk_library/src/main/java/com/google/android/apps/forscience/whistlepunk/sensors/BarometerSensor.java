@@ -23,6 +23,7 @@ import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 
 import com.google.android.apps.forscience.whistlepunk.Clock;
+import com.google.android.apps.forscience.whistlepunk.DevOptionsFragment;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.AbstractSensorRecorder;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.AvailableSensors;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.ScalarSensor;
@@ -53,15 +54,25 @@ public class BarometerSensor extends ScalarSensor {
                 SensorManager sensorManager = getSensorManager(context);
                 Sensor sensor = sensorManager.getDefaultSensor(Sensor.TYPE_PRESSURE);
                 if (mSensorEventListener != null) {
-                    getSensorManager(context).unregisterListener(mSensorEventListener);
+                    SensorEventBatcher.unregister(getSensorManager(context), mSensorEventListener);
                 }
                 final Clock clock = environment.getDefaultClock();
+                if (DevOptionsFragment.isSensorBatchingEnabled(context)) {
+                    SensorEventBatcher batcher = new SensorEventBatcher(c, clock,
+                            new SensorEventBatcher.ValueExtractor() {
+                                @Override
+                                public double getValue(SensorEvent event) {
+                                    return getPressure(event);
+                                }
+                            });
+                    mSensorEventListener = batcher;
+                    batcher.register(sensorManager, sensor);
+                    return;
+                }
                 mSensorEventListener = new SensorEventListener() {
                     @Override
                     public void onSensorChanged(SensorEvent event) {
-                        // values[0]: Atmospheric pressure in hPa (millibar).
-                        // 1 hPa == 1 millibar
-                        c.addData(clock.getNow(), event.values[0]);
+                        c.addData(clock.getNow(), getPressure(event));
                     }
 
                     @Override
@@ -75,12 +86,18 @@ public class BarometerSensor extends ScalarSensor {
 
             @Override
             public void stopObserving() {
-                getSensorManager(context).unregisterListener(mSensorEventListener);
+                SensorEventBatcher.unregister(getSensorManager(context), mSensorEventListener);
                 listener.onSourceStatus(getId(), SensorStatusListener.STATUS_DISCONNECTED);
             }
         };
     }
 
+    private static double getPressure(SensorEvent event) {
+        // values[0]: Atmospheric pressure in hPa (millibar).
+        // 1 hPa == 1 millibar
+        return event.values[0];
+    }
+
     public static boolean isBarometerSensorAvailable(AvailableSensors availableSensors) {
         return availableSensors.isSensorAvailable(Sensor.TYPE_PRESSURE);
     }
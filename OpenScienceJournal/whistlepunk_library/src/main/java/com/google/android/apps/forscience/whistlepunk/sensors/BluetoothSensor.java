@@ -23,13 +23,16 @@ import android.util.Log;
 import com.google.android.apps.forscience.ble.BleFlow;
 import com.google.android.apps.forscience.ble.BleFlowListener;
 import com.google.android.apps.forscience.whistlepunk.AppSingleton;
+import com.google.android.apps.forscience.whistlepunk.BlePacketDecoder;
 import com.google.android.apps.forscience.whistlepunk.Clock;
+import com.google.android.apps.forscience.whistlepunk.MultiSamplePacketDecoder;
 import com.google.android.apps.forscience.whistlepunk.PacketAssembler;
 import com.google.android.apps.forscience.whistlepunk.data.GoosciSensor;
 import com.google.android.apps.forscience.whistlepunk.data.GoosciSensorConfig;
 import com.google.android.apps.forscience.whistlepunk.devicemanager.PinTypeProvider;
 import com.google.android.apps.forscience.whistlepunk.metadata.BleSensorSpec;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.AbstractSensorRecorder;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.ClockOffsetEstimator;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.ScalarSensor;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorEnvironment;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorRecorder;
@@ -148,6 +151,9 @@ public class BluetoothSensor extends ScalarSensor {
     public static final BleServiceSpec[] SUPPORTED_SERVICES =
             new BleServiceSpec[]{ANNING_SERVICE_SPEC};
 
+    // From this major version on, devices can pack several readings into each notification.
+    private static final int PACKED_SAMPLES_MAJOR_VERSION = 2;
+
     private static final long DEFAULT_FREQUENCY_WINDOW = 2000;
     private static final float DEFAULT_FREQUENCY_FILTER = 0;
     private final BleSensorSpec mSensor;
@@ -155,12 +161,14 @@ public class BluetoothSensor extends ScalarSensor {
     private boolean mDeviceFrequencyEnabled;
     private boolean mNotificationSubscribed = false;
 
-    private long mTimeSkew = -1;
+    private final ClockOffsetEstimator mClockOffsets = new ClockOffsetEstimator();
     private String mAddress;
     private GoosciSensorConfig.BleSensorConfig.ScaleTransform mDeviceScaleTransform;
 
-    public long getTimeSkew() { return mTimeSkew; }
-    public void setTimeSkew(long skew) { mTimeSkew = skew; }
+    /**
+     * Maps the device's timestamps onto the app clock, and counts readings it had to drop or move.
+     */
+    public ClockOffsetEstimator getClockOffsets() { return mClockOffsets; }
     private BleFlow mFlow;
     private BleFlowListener mBleFlowListener;
 
@@ -181,8 +189,8 @@ public class BluetoothSensor extends ScalarSensor {
     private BleFlowListener createBleFlowListener(final StreamConsumer c, final Clock defaultClock,
             final SensorStatusListener listener) {
         return new BleFlowListener() {
-            final PacketAssembler mPa = new PacketAssembler(c, defaultClock, BluetoothSensor.this,
-                    listener);
+            BlePacketDecoder mDecoder = new PacketAssembler(c, defaultClock,
+                    BluetoothSensor.this, listener);
 
             @Override
             public void onSuccess() {
@@ -205,17 +213,21 @@ public class BluetoothSensor extends ScalarSensor {
                 // For Description (UUID:555a0002), it's a string desc (eg. "Goosci Windmill")
                 if (characteristic.compareTo(mServiceSpec.getVersionId()) == 0) {
                     BleProtocolVersion protocolVersion = new BleProtocolVersion(value);
-                    switch (protocolVersion.getMajorVersion()) {
-                        // Currently no version requires a special connection sequence
-                        default:
-                            writeConfigAndSetNotification();
+                    if (protocolVersion.getMajorVersion() >= PACKED_SAMPLES_MAJOR_VERSION) {
+                        // The larger MTU this needs is negotiated by the BLE service when the
+                        // notifications are turned on.
+                        mDecoder = new MultiSamplePacketDecoder(c, defaultClock,
+                                BluetoothSensor.this, listener);
+                        writeConfigAndSetNotification(GoosciSensor.PACKED_SAMPLES);
+                    } else {
+                        writeConfigAndSetNotification(GoosciSensor.SENSOR_DATA_PROTO);
                     }
                 }
             }
 
             @Override
             public void onNotification(UUID characteristic, int flags, byte[] value) {
-                mPa.append(value);
+                mDecoder.append(value);
             }
 
             @Override
@@ -250,7 +262,7 @@ public class BluetoothSensor extends ScalarSensor {
                             mServiceSpec.getVersionId()).read();
                     BleFlow.run(mFlow);
                 } else {
-                    writeConfigAndSetNotification();
+                    writeConfigAndSetNotification(GoosciSensor.SENSOR_DATA_PROTO);
                 }
             }
         };
@@ -266,12 +278,13 @@ public class BluetoothSensor extends ScalarSensor {
         return mDeviceScaleTransform;
     }
 
-    private byte[] buildConfigProtoForDevice(BleSensorSpec sensor) {
+    private byte[] buildConfigProtoForDevice(BleSensorSpec sensor, int packetFormat) {
         GoosciSensor.SensorDataRequest sdr = new GoosciSensor.SensorDataRequest();
         sdr.timestampKey = 42; // arbitrary constant.  TMOLTUAE.
         sdr.interval = new GoosciSensor.Interval();
         sdr.interval.count = 1;
         sdr.interval.frequency = 20;
+        sdr.packetFormat = packetFormat;
 
         sdr.pin = new GoosciSensor.Pin[]{
                 new GoosciSensor.Pin(),
@@ -310,8 +323,13 @@ public class BluetoothSensor extends ScalarSensor {
         return outputStream.toByteArray();
     }
 
-    private void writeConfigAndSetNotification() {
-        byte[] sensorConfig = buildConfigProtoForDevice(mSensor);
+    /**
+     * @param packetFormat how the device should frame its notifications, one of
+     *                     {@link GoosciSensor#SENSOR_DATA_PROTO} or
+     *                     {@link GoosciSensor#PACKED_SAMPLES}.
+     */
+    private void writeConfigAndSetNotification(int packetFormat) {
+        byte[] sensorConfig = buildConfigProtoForDevice(mSensor, packetFormat);
         if (sensorConfig != null && mFlow.isCharacteristicValid(mServiceSpec.getServiceId(),
                 mServiceSpec.getSettingId())) {
             mFlow.lookupCharacteristic(mServiceSpec.getServiceId(),
@@ -338,7 +356,8 @@ public class BluetoothSensor extends ScalarSensor {
     protected SensorRecorder makeScalarControl(final StreamConsumer c,
             final SensorEnvironment environment, Context context,
             final SensorStatusListener listener) {
-        mFlow = environment.getBleClient().getFlowFor(mAddress);
+        // Each sensor gets its own flow, so sensors on the same device can share its connection.
+        mFlow = environment.getBleClient().getFlowFor(mAddress, getId());
         return new AbstractSensorRecorder() {
             @Override
             public void startObserving() {
@@ -346,7 +365,7 @@ public class BluetoothSensor extends ScalarSensor {
                 listener.onSourceStatus(getId(), SensorStatusListener.STATUS_CONNECTING);
                 mBleFlowListener =
                         createBleFlowListener(c, environment.getDefaultClock(), listener);
-                mTimeSkew = -1;
+                mClockOffsets.reset();
                 mFlow.resetAndAddListener(mBleFlowListener, true)
                         .connect()
                         .lookupService(mServiceSpec.getServiceId());
@@ -355,7 +374,10 @@ public class BluetoothSensor extends ScalarSensor {
 
             @Override
             public void stopObserving() {
-                mTimeSkew = -1;
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "Clock offsets for " + getId() + ": " + mClockOffsets);
+                }
+                mClockOffsets.reset();
 
                 // Don't reset service map: should still be valid from above, and it doesn't work
                 // on ChromeBooks
@@ -17,11 +17,12 @@
 package com.google.android.apps.forscience.whistlepunk.sensors;
 
 import android.content.Context;
-import android.media.AudioFormat;
-import android.media.AudioRecord;
-import android.media.MediaRecorder;
 
+import com.google.android.apps.forscience.javalib.FailureListener;
 import com.google.android.apps.forscience.whistlepunk.Clock;
+import com.google.android.apps.forscience.whistlepunk.WhistlePunkApplication;
+import com.google.android.apps.forscience.whistlepunk.analytics.TrackerConstants;
+import com.google.android.apps.forscience.whistlepunk.analytics.UsageTracker;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.AbstractSensorRecorder;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.ReadableSensorOptions;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.ScalarSensor;
@@ -30,111 +31,104 @@ import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorRecorder;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorStatusListener;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamConsumer;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.nio.ShortBuffer;
 
 /**
  * Displays sound pressure levels in uncalibrated decibels (I have not tried to figure out the
  * 16-bit integer corresponding to 20 micro-Pascals, nor am I convinced it is the same from
  * device to device).  Results should be comparable between readings on the same device, but not
  * necessarily between devices.
+ *
+ * One level is reported for every {@link SoundLevelMeter#DEFAULT_WINDOW_MILLIS} of audio, no
+ * matter what buffer size the device uses.
  */
 public class DecibelSensor extends ScalarSensor {
-    private static final int SAMPLE_RATE_IN_HZ = 44100;
-    private static final int CHANNEL_CONFIG = AudioFormat.CHANNEL_IN_MONO;
-    private static final int AUDIO_FORMAT = AudioFormat.ENCODING_PCM_16BIT;
     public static final String ID = "DecibelSource";
-    private AudioRecord mRecord;
-    private final ExecutorService mExecutor;
-    private final int mBytesInBuffer;
-    AtomicBoolean mRunning = new AtomicBoolean(false);
+
+    public enum Level {
+        UNWEIGHTED(ID),
+        A_WEIGHTED("DecibelSourceA"),
+        C_WEIGHTED("DecibelSourceC"),
+        PEAK("DecibelSourcePeak");
+
+        private final String mDatabaseTag;
+
+        Level(String databaseTag) {
+            mDatabaseTag = databaseTag;
+        }
+
+        public String getSensorId() {
+            return mDatabaseTag;
+        }
+
+        SoundLevelMeter createMeter(int sampleRateHz, int windowMillis) {
+            switch (this) {
+                case A_WEIGHTED:
+                    return new SoundLevelMeter(sampleRateHz, windowMillis,
+                            WeightingFilter.createA(sampleRateHz), false);
+                case C_WEIGHTED:
+                    return new SoundLevelMeter(sampleRateHz, windowMillis,
+                            WeightingFilter.createC(sampleRateHz), false);
+                case PEAK:
+                    return new SoundLevelMeter(sampleRateHz, windowMillis, null, true);
+                default:
+                    return new SoundLevelMeter(sampleRateHz, windowMillis, null, false);
+            }
+        }
+    }
+
+    private final Level mLevel;
+    private final AudioSource mAudioSource;
 
     public DecibelSensor() {
-        super(ID);
-        int minBufferSize =
-                AudioRecord.getMinBufferSize(SAMPLE_RATE_IN_HZ, CHANNEL_CONFIG, AUDIO_FORMAT);
-        mBytesInBuffer = minBufferSize;
-        mExecutor = Executors.newSingleThreadExecutor();
+        this(Level.UNWEIGHTED, new AudioSource());
+    }
+
+    public DecibelSensor(Level level, AudioSource audioSource) {
+        super(level.getSensorId());
+        mLevel = level;
+        mAudioSource = audioSource;
     }
 
     @Override
     protected SensorRecorder makeScalarControl(final StreamConsumer c,
-            final SensorEnvironment environment, Context context,
+            final SensorEnvironment environment, final Context context,
             final SensorStatusListener listener) {
         final Clock clock = environment.getDefaultClock();
+        final SoundLevelMeter meter = mLevel.createMeter(AudioSource.SAMPLE_RATE_IN_HZ,
+                SoundLevelMeter.DEFAULT_WINDOW_MILLIS);
+        final StreamConsumer validReadings = new StreamConsumer() {
+            @Override
+            public void addData(long timestampMillis, double value) {
+                if (isValidReading(value)) {
+                    c.addData(timestampMillis, value);
+                }
+            }
+        };
+        final AudioSource.AudioReceiver receiver = new AudioSource.AudioReceiver() {
+            @Override
+            public void onReceiveAudio(ShortBuffer samples) {
+                meter.addSamples(samples, clock.getNow(), validReadings);
+            }
+        };
         return new AbstractSensorRecorder() {
             @Override
             public void startObserving() {
                 listener.onSourceStatus(getId(), SensorStatusListener.STATUS_CONNECTED);
-                if (mBytesInBuffer < 0) {
-                    // If this is the case, AudioRecord.getMinBufferSize returned an error.
-                    listener.onSourceError(getId(), SensorStatusListener.ERROR_FAILED_TO_CONNECT,
-                            "Could not connect to microphone");
-                    return;
-                }
-                mRunning.set(true);
-                mRecord = new AudioRecord(MediaRecorder.AudioSource.MIC, SAMPLE_RATE_IN_HZ,
-                        CHANNEL_CONFIG, AUDIO_FORMAT, mBytesInBuffer);
-                if (mRecord.getState() != AudioRecord.STATE_INITIALIZED) {
-                    listener.onSourceError(getId(), SensorStatusListener.ERROR_FAILED_TO_CONNECT,
-                            "Could not connect to microphone");
-                    return;
-                }
-                mRecord.startRecording();
-                // Check to see if we actually started recording before continuing.
-                // AudioRecord#startRecording() logs an error but it has no return value and
-                // doesn't throw an exception when someone else is using the mic.
-                if (mRecord.getRecordingState() != AudioRecord.RECORDSTATE_RECORDING) {
-                    listener.onSourceError(getId(), SensorStatusListener.ERROR_FAILED_TO_CONNECT,
-                            "Microphone in use by another application");
-                    return;
-                }
-                mExecutor.execute(new Runnable() {
+                meter.reset();
+                mAudioSource.addAudioReceiver(receiver, new FailureListener() {
                     @Override
-                    public void run() {
-                        short[] tempBuffer = new short[mBytesInBuffer];
-
-                        while (mRunning.get()) {
-                            int readShorts = mRecord.read(tempBuffer, 0, mBytesInBuffer);
-                            if (readShorts > 0) {
-                                sendBuffer(tempBuffer, readShorts);
-                            }
-                        }
-                    }
-
-                    private void sendBuffer(short[] tempBuffer, int readShorts) {
-                        final long timestampMillis = clock.getNow();
-                        double totalSquared = 0;
-
-                        for (int i = 0; i < readShorts; i++) {
-                            short soundbits = tempBuffer[i];
-                            totalSquared += soundbits * soundbits;
-                        }
-
-                        // https://en.wikipedia.org/wiki/Sound_pressure
-                        final double quadraticMeanPressure =
-                                Math.sqrt(totalSquared / readShorts);
-                        final double uncalibratedDecibels =
-                                20 * Math.log10(quadraticMeanPressure);
-
-                        if (isValidReading(uncalibratedDecibels)) {
-                            c.addData(timestampMillis, uncalibratedDecibels);
-                        }
+                    public void fail(Exception e) {
+                        listener.onSourceError(getId(),
+                                SensorStatusListener.ERROR_FAILED_TO_CONNECT, e.getMessage());
                     }
                 });
             }
 
             @Override
             public void stopObserving() {
-                mRunning.set(false);
-                if (mRecord != null) {
-                    if (mRecord.getState() == AudioRecord.STATE_INITIALIZED) {
-                        mRecord.stop();
-                    }
-                    mRecord.release();
-                }
-                mRecord = null;
+                mAudioSource.removeAudioReceiver(receiver);
+                reportMetrics(context, meter);
                 listener.onSourceStatus(getId(), SensorStatusListener.STATUS_DISCONNECTED);
             }
 
@@ -144,12 +138,26 @@ public class DecibelSensor extends ScalarSensor {
             }
         };
     }
+
+    private void reportMetrics(Context context, SoundLevelMeter meter) {
+        double outputRate = meter.getOutputRate();
+        if (outputRate == 0) {
+            return;
+        }
+        UsageTracker tracker = WhistlePunkApplication.getUsageTracker(context);
+        tracker.trackEvent(TrackerConstants.CATEGORY_PERFORMANCE,
+                TrackerConstants.ACTION_SENSOR_OUTPUT_RATE, getId(), Math.round(outputRate));
+        tracker.trackEvent(TrackerConstants.CATEGORY_PERFORMANCE,
+                TrackerConstants.ACTION_SENSOR_MAX_LATENCY, getId(),
+                meter.getMaxLatencyMillis());
+    }
+
     /* Some devices (mostly Samsung) seem to spit out
     some -Double.MAX_VALUE points when the mic starts
     which mess up graphing/audio due to an absurd yMin
     so we drop them since they are bad data anyways.
     */
-    private boolean isValidReading(double reading) {
+    static boolean isValidReading(double reading) {
         return reading > -Double.MAX_VALUE;
     }
 }
@@ -23,6 +23,7 @@ import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 
 import com.google.android.apps.forscience.whistlepunk.Clock;
+import com.google.android.apps.forscience.whistlepunk.DevOptionsFragment;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.AbstractSensorRecorder;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.AvailableSensors;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.ScalarSensor;
@@ -53,18 +54,25 @@ public class MagneticRotationSensor extends ScalarSensor {
                 SensorManager sensorManager = getSensorManager(context);
                 Sensor magnetometer = sensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
                 if (mSensorEventListener != null) {
-                    getSensorManager(context).unregisterListener(mSensorEventListener);
+                    SensorEventBatcher.unregister(getSensorManager(context), mSensorEventListener);
                 }
                 final Clock clock = environment.getDefaultClock();
+                if (DevOptionsFragment.isSensorBatchingEnabled(context)) {
+                    SensorEventBatcher batcher = new SensorEventBatcher(c, clock,
+                            new SensorEventBatcher.ValueExtractor() {
+                                @Override
+                                public double getValue(SensorEvent event) {
+                                    return getAngle(event);
+                                }
+                            });
+                    mSensorEventListener = batcher;
+                    batcher.register(sensorManager, magnetometer);
+                    return;
+                }
                 mSensorEventListener = new SensorEventListener() {
                     @Override
                     public void onSensorChanged(SensorEvent event) {
-                        double x = event.values[0];
-                        double y = event.values[1];
-                        // Convert X and Y components to angle
-                        // https://en.wikipedia.org/wiki/Atan2
-                        double angle = Math.toDegrees(Math.atan2(y,x)) + 180.;
-                        c.addData(clock.getNow(), angle);
+                        c.addData(clock.getNow(), getAngle(event));
                     }
 
                     @Override
@@ -78,12 +86,20 @@ public class MagneticRotationSensor extends ScalarSensor {
 
             @Override
             public void stopObserving() {
-                getSensorManager(context).unregisterListener(mSensorEventListener);
+                SensorEventBatcher.unregister(getSensorManager(context), mSensorEventListener);
                 listener.onSourceStatus(getId(), SensorStatusListener.STATUS_DISCONNECTED);
             }
         };
     }
 
+    private static double getAngle(SensorEvent event) {
+        double x = event.values[0];
+        double y = event.values[1];
+        // Convert X and Y components to angle
+        // https://en.wikipedia.org/wiki/Atan2
+        return Math.toDegrees(Math.atan2(y,x)) + 180.;
+    }
+
     public static boolean isMagneticRotationSensorAvailable(AvailableSensors availableSensors) {
         return availableSensors.isSensorAvailable(Sensor.TYPE_MAGNETIC_FIELD);
     }
@@ -0,0 +1,170 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensors;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+
+import com.google.android.apps.forscience.whistlepunk.Clock;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.BatchStreamConsumer;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamConsumer;
+
+/**
+ * Listens to a built-in sensor using hardware batching, for long recordings where waking the CPU
+ * for every event costs too much power.
+ *
+ * Events are delivered on a shared background thread rather than the main looper, timestamped
+ * from {@link SensorEvent#timestamp} (when the hardware took the reading, not when we heard about
+ * it), and passed on to the consumer a batch at a time.
+ */
+public class SensorEventBatcher implements SensorEventListener {
+    public interface ValueExtractor {
+        double getValue(SensorEvent event);
+    }
+
+    /** Ask for readings at 50 Hz. */
+    private static final int SAMPLING_PERIOD_US = 20 * 1000;
+
+    /** Let the sensor hub hold readings for up to 5 seconds before waking us. */
+    private static final int MAX_REPORT_LATENCY_US = 5 * 1000 * 1000;
+
+    private static final int MAX_BATCH_SIZE = 256;
+
+    /**
+     * Event timestamps further than this from the expected time mean the device does not use
+     * elapsedRealtimeNanos for its sensor clock.
+     */
+    private static final long MAX_CLOCK_SKEW_MILLIS = MAX_REPORT_LATENCY_US / 1000 + 5000;
+
+    private static HandlerThread sEventThread;
+    private static Handler sEventHandler;
+
+    private final StreamConsumer mConsumer;
+    private final Clock mClock;
+    private final ValueExtractor mExtractor;
+    private final long[] mTimestamps = new long[MAX_BATCH_SIZE];
+    private final double[] mValues = new double[MAX_BATCH_SIZE];
+    private int mCount = 0;
+    private long mOffsetMillis;
+    private boolean mOffsetChecked;
+    // Set from the main thread by unregister, read on the event thread.
+    private volatile boolean mUnregistered;
+    private final Runnable mDeliverBatch = new Runnable() {
+        @Override
+        public void run() {
+            deliverBatch();
+        }
+    };
+
+    public SensorEventBatcher(StreamConsumer consumer, Clock clock, ValueExtractor extractor) {
+        mConsumer = consumer;
+        mClock = clock;
+        mExtractor = extractor;
+    }
+
+    private static synchronized Handler getEventHandler() {
+        if (sEventHandler == null) {
+            sEventThread = new HandlerThread("SensorEventBatcher",
+                    Process.THREAD_PRIORITY_BACKGROUND);
+            sEventThread.start();
+            sEventHandler = new Handler(sEventThread.getLooper());
+        }
+        return sEventHandler;
+    }
+
+    /**
+     * Starts listening.  Stop with {@link #unregister(SensorManager, SensorEventListener)}.
+     */
+    public void register(SensorManager sensorManager, Sensor sensor) {
+        mUnregistered = false;
+        mOffsetMillis = mClock.getNow() - SystemClock.elapsedRealtimeNanos() / 1000000;
+        mOffsetChecked = false;
+        sensorManager.registerListener(this, sensor, SAMPLING_PERIOD_US, MAX_REPORT_LATENCY_US,
+                getEventHandler());
+    }
+
+    /**
+     * Stops {@code listener} listening.  If it is a batcher, readings it has not yet passed on to
+     * its consumer are dropped, as are any that were already on their way to it, so that the
+     * consumer hears nothing more once this returns (short of a batch already being delivered).
+     */
+    public static void unregister(SensorManager sensorManager, SensorEventListener listener) {
+        sensorManager.unregisterListener(listener);
+        if (listener instanceof SensorEventBatcher) {
+            SensorEventBatcher batcher = (SensorEventBatcher) listener;
+            batcher.mUnregistered = true;
+            getEventHandler().removeCallbacks(batcher.mDeliverBatch);
+        }
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        if (mUnregistered) {
+            return;
+        }
+        long eventMillis = event.timestamp / 1000000;
+        if (!mOffsetChecked) {
+            // Some older devices stamp events with a different clock; fall back to treating the
+            // first event as current.
+            long now = mClock.getNow();
+            if (Math.abs(eventMillis + mOffsetMillis - now) > MAX_CLOCK_SKEW_MILLIS) {
+                mOffsetMillis = now - eventMillis;
+            }
+            mOffsetChecked = true;
+        }
+        if (mCount == 0) {
+            // The rest of this burst is delivered to us before the handler gets to this.
+            getEventHandler().post(mDeliverBatch);
+        }
+        mTimestamps[mCount] = eventMillis + mOffsetMillis;
+        mValues[mCount] = mExtractor.getValue(event);
+        mCount++;
+        if (mCount == MAX_BATCH_SIZE) {
+            deliverBatch();
+        }
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+
+    }
+
+    private void deliverBatch() {
+        if (mUnregistered) {
+            mCount = 0;
+            return;
+        }
+        if (mCount == 0) {
+            return;
+        }
+        if (mConsumer instanceof BatchStreamConsumer) {
+            ((BatchStreamConsumer) mConsumer).addData(mTimestamps, mValues, mCount);
+        } else {
+            for (int i = 0; i < mCount; i++) {
+                mConsumer.addData(mTimestamps[i], mValues[i]);
+            }
+        }
+        mCount = 0;
+    }
+}
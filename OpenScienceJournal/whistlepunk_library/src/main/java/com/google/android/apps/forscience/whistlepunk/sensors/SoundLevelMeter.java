@@ -0,0 +1,206 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensors;
+
+import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamConsumer;
+
+import java.nio.ShortBuffer;
+
+/**
+ * Reduces 16-bit audio to sound levels in uncalibrated decibels, one per fixed-duration window,
+ * regardless of how the audio is split into buffers.
+ *
+ * Each level is timestamped at the end of its window, counting samples forward from the time the
+ * first buffer started, so that timestamps never go backwards however late a buffer arrives.  If
+ * the count falls well behind the time buffers arrive (because audio was dropped), it skips ahead
+ * to catch up.  The latency between the end of a window and its level being reported is tracked,
+ * along with the number of levels reported, so that the actual output rate can be checked.
+ */
+public class SoundLevelMeter {
+    public static final int DEFAULT_WINDOW_MILLIS = 20;
+
+    // How long a peak level is held before a lower one replaces it.
+    static final long PEAK_HOLD_MILLIS = 1000;
+
+    // Silence would otherwise be -Infinity decibels, which isn't a valid reading.
+    private static final double MIN_POWER = 1e-12;
+
+    // How far behind buffer arrival times the sample count can fall before it skips ahead.
+    private static final long MAX_LAG_MILLIS = 100;
+
+    private final int mSampleRateHz;
+    private final int mWindowSamples;
+    private final WeightingFilter mWeighting;
+    private final boolean mPeakHold;
+
+    private int mWindowFill = 0;
+    private long mSumOfSquares = 0;
+    private double mWeightedSumOfSquares = 0;
+    private double mPeak = 0;
+
+    // Time that the first sample since the last reset was captured, and how many samples have
+    // been measured since.
+    private long mStartMillis = 0;
+    private long mSampleCount = 0;
+
+    private double mHeldPeak = Double.NEGATIVE_INFINITY;
+    private long mHeldPeakTime = 0;
+
+    private int mLevelCount = 0;
+    private long mFirstLevelTime = -1;
+    private long mLastLevelTime = -1;
+    private long mMaxLatencyMillis = 0;
+
+    /**
+     * @param weighting filter to apply before measuring, or null to measure unweighted levels
+     * @param peakHold if true, report the held peak level rather than the RMS level
+     */
+    public SoundLevelMeter(int sampleRateHz, int windowMillis, WeightingFilter weighting,
+            boolean peakHold) {
+        mSampleRateHz = sampleRateHz;
+        mWindowSamples = Math.max(1, sampleRateHz * windowMillis / 1000);
+        mWeighting = weighting;
+        mPeakHold = peakHold;
+    }
+
+    /**
+     * @param samples the samples between position and limit are measured.  The buffer's
+     *                position is not changed.
+     * @param arrivalMillis the time at which the last sample was captured
+     */
+    public void addSamples(ShortBuffer samples, long arrivalMillis, StreamConsumer c) {
+        int end = samples.limit();
+        int index = samples.position();
+        long millisToBufferEnd = (mSampleCount + end - index) * 1000 / mSampleRateHz;
+        if (mSampleCount == 0
+                || arrivalMillis - (mStartMillis + millisToBufferEnd) > MAX_LAG_MILLIS) {
+            mStartMillis = arrivalMillis - millisToBufferEnd;
+        }
+        while (index < end) {
+            int segmentEnd = Math.min(end, index + mWindowSamples - mWindowFill);
+            if (mWeighting == null) {
+                accumulate(samples, index, segmentEnd);
+            } else {
+                accumulateWeighted(samples, index, segmentEnd);
+            }
+            mWindowFill += segmentEnd - index;
+            mSampleCount += segmentEnd - index;
+            index = segmentEnd;
+
+            if (mWindowFill == mWindowSamples) {
+                long windowEnd = mStartMillis + mSampleCount * 1000 / mSampleRateHz;
+                // Never later than the audio could have arrived, nor earlier than the last level.
+                windowEnd = Math.max(Math.min(windowEnd, arrivalMillis), mLastLevelTime);
+                reportLevel(windowEnd, arrivalMillis, c);
+            }
+        }
+    }
+
+    // Sums in integers, so the unweighted level has no rounding error.
+    private void accumulate(ShortBuffer samples, int start, int end) {
+        long sum = 0;
+        int peak = 0;
+        for (int i = start; i < end; i++) {
+            int sample = samples.get(i);
+            sum += sample * sample;
+            peak = Math.max(peak, Math.abs(sample));
+        }
+        mSumOfSquares += sum;
+        mPeak = Math.max(mPeak, peak);
+    }
+
+    private void accumulateWeighted(ShortBuffer samples, int start, int end) {
+        double sum = 0;
+        double peak = 0;
+        for (int i = start; i < end; i++) {
+            double sample = mWeighting.filter(samples.get(i));
+            sum += sample * sample;
+            peak = Math.max(peak, Math.abs(sample));
+        }
+        mWeightedSumOfSquares += sum;
+        mPeak = Math.max(mPeak, peak);
+    }
+
+    private void reportLevel(long windowEnd, long now, StreamConsumer c) {
+        double level;
+        if (mPeakHold) {
+            // 20 * log10(amplitude) == 10 * log10(amplitude squared)
+            double peakLevel = 10 * Math.log10(Math.max(mPeak * mPeak, MIN_POWER));
+            if (peakLevel >= mHeldPeak || windowEnd - mHeldPeakTime > PEAK_HOLD_MILLIS) {
+                mHeldPeak = peakLevel;
+                mHeldPeakTime = windowEnd;
+            }
+            level = mHeldPeak;
+        } else {
+            // https://en.wikipedia.org/wiki/Sound_pressure
+            // 20 * log10(sqrt(mean square)) == 10 * log10(mean square)
+            double sumOfSquares = mWeighting == null ? mSumOfSquares : mWeightedSumOfSquares;
+            level = 10 * Math.log10(Math.max(sumOfSquares / mWindowFill, MIN_POWER));
+        }
+        mWindowFill = 0;
+        mSumOfSquares = 0;
+        mWeightedSumOfSquares = 0;
+        mPeak = 0;
+
+        c.addData(windowEnd, level);
+
+        mLevelCount++;
+        if (mFirstLevelTime < 0) {
+            mFirstLevelTime = windowEnd;
+        }
+        mLastLevelTime = windowEnd;
+        mMaxLatencyMillis = Math.max(mMaxLatencyMillis, now - windowEnd);
+    }
+
+    public void reset() {
+        mWindowFill = 0;
+        mSumOfSquares = 0;
+        mWeightedSumOfSquares = 0;
+        mPeak = 0;
+        mStartMillis = 0;
+        mSampleCount = 0;
+        mHeldPeak = Double.NEGATIVE_INFINITY;
+        mHeldPeakTime = 0;
+        mLevelCount = 0;
+        mFirstLevelTime = -1;
+        mLastLevelTime = -1;
+        mMaxLatencyMillis = 0;
+        if (mWeighting != null) {
+            mWeighting.reset();
+        }
+    }
+
+    /**
+     * @return levels reported per second since the last reset, or 0 if there aren't enough to
+     *         tell.
+     */
+    public double getOutputRate() {
+        if (mLevelCount < 2 || mLastLevelTime <= mFirstLevelTime) {
+            return 0;
+        }
+        return (mLevelCount - 1) * 1000.0 / (mLastLevelTime - mFirstLevelTime);
+    }
+
+    /**
+     * @return longest time, since the last reset, between the end of a window and its level
+     *         being reported.
+     */
+    public long getMaxLatencyMillis() {
+        return mMaxLatencyMillis;
+    }
+}
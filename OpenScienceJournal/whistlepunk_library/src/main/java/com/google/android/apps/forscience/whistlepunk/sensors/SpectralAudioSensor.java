@@ -0,0 +1,135 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensors;
+
+import android.content.Context;
+
+import com.google.android.apps.forscience.javalib.FailureListener;
+import com.google.android.apps.forscience.whistlepunk.Clock;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.AbstractSensorRecorder;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.ReadableSensorOptions;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.ScalarSensor;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorEnvironment;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorRecorder;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorStatusListener;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.SpectralFeature;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.SpectrumAnalyzer;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamConsumer;
+
+import java.nio.ShortBuffer;
+
+/**
+ * Reports one feature of the spectrum of the microphone input, such as its dominant frequency.
+ *
+ * Spectra are computed over non-overlapping frames of {@link #FRAME_SIZE} samples on the audio
+ * thread, so at 44.1kHz there are about 21 readings per second, each at most one frame (46ms)
+ * behind the audio it describes.
+ */
+public class SpectralAudioSensor extends ScalarSensor {
+    public static final int FRAME_SIZE = 2048;
+
+    public enum Measure {
+        DOMINANT_FREQUENCY("AudioDominantFrequency", SpectralFeature.DOMINANT_FREQUENCY),
+        SPECTRAL_CENTROID("AudioSpectralCentroid", SpectralFeature.SPECTRAL_CENTROID),
+        LOW_BAND_LEVEL("AudioLowBandLevel", SpectralFeature.LOW_BAND_LEVEL),
+        MID_BAND_LEVEL("AudioMidBandLevel", SpectralFeature.MID_BAND_LEVEL),
+        HIGH_BAND_LEVEL("AudioHighBandLevel", SpectralFeature.HIGH_BAND_LEVEL);
+
+        private final String mDatabaseTag;
+        private final SpectralFeature mFeature;
+
+        Measure(String databaseTag, SpectralFeature feature) {
+            mDatabaseTag = databaseTag;
+            mFeature = feature;
+        }
+
+        public String getSensorId() {
+            return mDatabaseTag;
+        }
+
+        public SpectralFeature getFeature() {
+            return mFeature;
+        }
+    }
+
+    private final Measure mMeasure;
+    private final AudioSource mAudioSource;
+
+    public SpectralAudioSensor(Measure measure, AudioSource audioSource) {
+        super(measure.getSensorId());
+        mMeasure = measure;
+        mAudioSource = audioSource;
+    }
+
+    @Override
+    protected SensorRecorder makeScalarControl(final StreamConsumer c,
+            final SensorEnvironment environment, Context context,
+            final SensorStatusListener listener) {
+        final Clock clock = environment.getDefaultClock();
+        final SpectrumAnalyzer analyzer = new SpectrumAnalyzer(FRAME_SIZE, FRAME_SIZE,
+                AudioSource.SAMPLE_RATE_IN_HZ);
+        final AudioSource.AudioReceiver receiver = new AudioSource.AudioReceiver() {
+            private long mLastTimestamp = Long.MIN_VALUE;
+
+            @Override
+            public void onReceiveAudio(ShortBuffer samples) {
+                // The last sample in the buffer was captured about now, and each frame is
+                // stamped with the time of its own last sample.
+                long now = clock.getNow();
+                int limit = samples.limit();
+                for (int i = samples.position(); i < limit; i++) {
+                    if (analyzer.addSample(samples.get(i))) {
+                        double value = mMeasure.getFeature().compute(analyzer);
+                        if (DecibelSensor.isValidReading(value)) {
+                            long timestamp = now
+                                    - (limit - 1 - i) * 1000L / AudioSource.SAMPLE_RATE_IN_HZ;
+                            // Buffers that arrive early shouldn't send time backwards.
+                            mLastTimestamp = Math.max(mLastTimestamp, timestamp);
+                            c.addData(mLastTimestamp, value);
+                        }
+                    }
+                }
+            }
+        };
+        return new AbstractSensorRecorder() {
+            @Override
+            public void startObserving() {
+                listener.onSourceStatus(getId(), SensorStatusListener.STATUS_CONNECTED);
+                analyzer.reset();
+                mAudioSource.addAudioReceiver(receiver, new FailureListener() {
+                    @Override
+                    public void fail(Exception e) {
+                        listener.onSourceError(getId(),
+                                SensorStatusListener.ERROR_FAILED_TO_CONNECT, e.getMessage());
+                    }
+                });
+            }
+
+            @Override
+            public void stopObserving() {
+                mAudioSource.removeAudioReceiver(receiver);
+                listener.onSourceStatus(getId(), SensorStatusListener.STATUS_DISCONNECTED);
+            }
+
+            @Override
+            public void applyOptions(ReadableSensorOptions settings) {
+                // do nothing, no settings apply to collection
+            }
+        };
+    }
+}
@@ -22,7 +22,6 @@ import android.content.pm.PackageManager;
 import android.hardware.Camera;
 import android.media.CamcorderProfile;
 import android.media.MediaRecorder;
-import android.os.Bundle;
 import android.os.Environment;
 import android.util.Log;
 import android.view.View;
@@ -37,6 +36,7 @@ import com.google.android.apps.forscience.whistlepunk.metadata.Label;
 import com.google.android.apps.forscience.whistlepunk.metadata.SensorTrigger;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.AbstractSensorRecorder;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.DataViewOptions;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.ObservedValue;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.ReadableSensorOptions;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorChoice;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorEnvironment;
@@ -169,7 +169,15 @@ public class VideoSensor extends SensorChoice {
             }
 
             @Override
-            public void onNewData(long timestamp, Bundle bundle) {
+            public void onNewData(long timestamp, ObservedValue data) {
+            }
+
+            @Override
+            public void beginDataBatch() {
+            }
+
+            @Override
+            public void endDataBatch() {
             }
 
             @Override
@@ -0,0 +1,113 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensors;
+
+/**
+ * Frequency weighting for sound levels, per IEC 61672.  The analog filters are built from
+ * first-order sections (one per pole), mapped to digital with the bilinear transform, and
+ * normalized to unity gain at 1kHz.
+ */
+public class WeightingFilter {
+    // Pole frequencies of the standard weighting curves, in Hz
+    private static final double POLE_1 = 20.598997;
+    private static final double POLE_2 = 107.65265;
+    private static final double POLE_3 = 737.86223;
+    private static final double POLE_4 = 12194.217;
+
+    private static final double REFERENCE_FREQUENCY = 1000;
+
+    private final double[] mB0;
+    private final double[] mB1;
+    private final double[] mA1;
+    private final double[] mLastInput;
+    private final double[] mLastOutput;
+    private final double mGain;
+
+    public static WeightingFilter createA(double sampleRateHz) {
+        return new WeightingFilter(sampleRateHz, new double[]{POLE_1, POLE_1, POLE_2, POLE_3},
+                new double[]{POLE_4, POLE_4});
+    }
+
+    public static WeightingFilter createC(double sampleRateHz) {
+        return new WeightingFilter(sampleRateHz, new double[]{POLE_1, POLE_1},
+                new double[]{POLE_4, POLE_4});
+    }
+
+    /**
+     * @param highPassPolesHz poles with a matching zero at DC: s / (s + w)
+     * @param lowPassPolesHz poles with no matching zero: w / (s + w)
+     */
+    private WeightingFilter(double sampleRateHz, double[] highPassPolesHz,
+            double[] lowPassPolesHz) {
+        int sections = highPassPolesHz.length + lowPassPolesHz.length;
+        mB0 = new double[sections];
+        mB1 = new double[sections];
+        mA1 = new double[sections];
+        mLastInput = new double[sections];
+        mLastOutput = new double[sections];
+
+        double k = 2 * sampleRateHz;
+        for (int i = 0; i < sections; i++) {
+            boolean highPass = i < highPassPolesHz.length;
+            double poleHz = highPass ? highPassPolesHz[i] : lowPassPolesHz[i
+                    - highPassPolesHz.length];
+            // Pre-warp so the pole lands at the right frequency after the transform
+            double w = k * Math.tan(Math.PI * poleHz / sampleRateHz);
+            double norm = k + w;
+            mB0[i] = (highPass ? k : w) / norm;
+            mB1[i] = (highPass ? -k : w) / norm;
+            mA1[i] = (w - k) / norm;
+        }
+        mGain = 1 / magnitudeAt(REFERENCE_FREQUENCY, sampleRateHz);
+    }
+
+    private double magnitudeAt(double frequencyHz, double sampleRateHz) {
+        double theta = 2 * Math.PI * frequencyHz / sampleRateHz;
+        // z^-1 = cos(theta) - i sin(theta)
+        double zr = Math.cos(theta);
+        double zi = -Math.sin(theta);
+        double magnitude = 1;
+        for (int i = 0; i < mB0.length; i++) {
+            double numeratorReal = mB0[i] + mB1[i] * zr;
+            double numeratorImaginary = mB1[i] * zi;
+            double denominatorReal = 1 + mA1[i] * zr;
+            double denominatorImaginary = mA1[i] * zi;
+            magnitude *= Math.hypot(numeratorReal, numeratorImaginary)
+                    / Math.hypot(denominatorReal, denominatorImaginary);
+        }
+        return magnitude;
+    }
+
+    public double filter(double input) {
+        double value = input * mGain;
+        for (int i = 0; i < mB0.length; i++) {
+            double output = mB0[i] * value + mB1[i] * mLastInput[i] - mA1[i] * mLastOutput[i];
+            mLastInput[i] = value;
+            mLastOutput[i] = output;
+            value = output;
+        }
+        return value;
+    }
+
+    public void reset() {
+        for (int i = 0; i < mB0.length; i++) {
+            mLastInput[i] = 0;
+            mLastOutput[i] = 0;
+        }
+    }
+}
@@ -23,7 +23,9 @@ import com.google.android.apps.forscience.whistlepunk.metadata.ApplicationLabel;
 import com.google.android.apps.forscience.whistlepunk.metadata.Experiment;
 import com.google.android.apps.forscience.whistlepunk.metadata.ExperimentRun;
 import com.google.android.apps.forscience.whistlepunk.metadata.ExperimentSensors;
+import com.google.android.apps.forscience.whistlepunk.metadata.ExperimentSummary;
 import com.google.android.apps.forscience.whistlepunk.metadata.ExternalSensorSpec;
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciSparkline;
 import com.google.android.apps.forscience.whistlepunk.metadata.Label;
 import com.google.android.apps.forscience.whistlepunk.metadata.Project;
 import com.google.android.apps.forscience.whistlepunk.metadata.Run;
@@ -46,6 +48,12 @@ public class StubDataController implements DataController {
 
     }
 
+    @Override
+    public void getScalarReadings(String databaseTag, int resolutionTier, TimeRange timeRange,
+            int maxRecords, ReadPriority priority, MaybeConsumer<ScalarReadingList> onSuccess) {
+        getScalarReadings(databaseTag, resolutionTier, timeRange, maxRecords, onSuccess);
+    }
+
     @Override
     public void addLabel(Label label, MaybeConsumer<Label> onSuccess) {
 
@@ -73,6 +81,11 @@ public class StubDataController implements DataController {
 
     }
 
+    @Override
+    public void getSensorDataBytes(String experimentId, MaybeConsumer<Long> onSuccess) {
+
+    }
+
     @Override
     public void createExperiment(Project project, MaybeConsumer<Experiment> onSuccess) {
 
@@ -104,6 +117,12 @@ public class StubDataController implements DataController {
 
     }
 
+    @Override
+    public void getExperimentRuns(String experiment, boolean includeArchived, String afterRunId,
+            int maxNumber, MaybeConsumer<List<ExperimentRun>> onSuccess) {
+
+    }
+
     @Override
     public void createProject(MaybeConsumer<Project> onSuccess) {
 
@@ -125,6 +144,12 @@ public class StubDataController implements DataController {
 
     }
 
+    @Override
+    public void getProjects(int maxNumber, boolean includeArchived, Project after,
+            MaybeConsumer<List<Project>> onSuccess) {
+
+    }
+
     @Override
     public void editLabel(Label updatedLabel, MaybeConsumer<Label> onSuccess) {
 
@@ -151,6 +176,18 @@ public class StubDataController implements DataController {
 
     }
 
+    @Override
+    public void getExperimentsForProject(Project project, boolean includeArchived,
+            Experiment after, int maxNumber, MaybeConsumer<List<Experiment>> onSuccess) {
+
+    }
+
+    @Override
+    public void getExperimentSummaries(Project project,
+            MaybeConsumer<Map<String, ExperimentSummary>> onSuccess) {
+
+    }
+
     @Override
     public void getProjectById(String projectId, MaybeConsumer<Project> onSuccess) {
 
@@ -212,6 +249,18 @@ public class StubDataController implements DataController {
 
     }
 
+    @Override
+    public void getSparkline(String runId, String sensorId,
+            MaybeConsumer<GoosciSparkline.Sparkline> onSuccess) {
+
+    }
+
+    @Override
+    public void updateSparkline(String runId, String sensorId,
+            GoosciSparkline.Sparkline sparkline, MaybeConsumer<Success> onSuccess) {
+
+    }
+
     @Override
     public void getExperimentStats(String experimentId,
             MaybeConsumer<Map<String, RunStats>> onSuccess) {
@@ -74,6 +74,14 @@ public class TestData {
         return this;
     }
 
+    public List<ChartData.DataPoint> asDataPoints() {
+        List<ChartData.DataPoint> result = new ArrayList<>();
+        for (Point point : mPoints) {
+            result.add(new ChartData.DataPoint(point.x, point.y));
+        }
+        return result;
+    }
+
     public void checkObserver(RecordingSensorObserver observer) {
         ArrayList<ChartData.DataPoint> rawData = new ArrayList<>();
         for (ScalarReading sr : observer.getReadings()) {
@@ -76,6 +76,16 @@ public class TestSensorDiscoverer extends ISensorDiscoverer.Stub {
         mDevices.add(new Device(deviceId, name));
     }
 
+    public void removeDevice(String deviceId) {
+        Iterator<Device> iter = mDevices.iterator();
+        while (iter.hasNext()) {
+            if (iter.next().mDeviceId.equals(deviceId)) {
+                iter.remove();
+            }
+        }
+        mSensors.removeAll(deviceId);
+    }
+
     @Override
     public void scanDevices(final IDeviceConsumer c) throws RemoteException {
         for (final Device device : mDevices) {
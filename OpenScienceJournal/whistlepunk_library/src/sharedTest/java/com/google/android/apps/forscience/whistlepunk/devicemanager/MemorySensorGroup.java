@@ -72,6 +72,11 @@ class MemorySensorGroup implements SensorGroup {
 
     }
 
+    @Override
+    public void removeAvailableDevice(InputDeviceSpec device) {
+
+    }
+
     @Override
     public void setMyDevices(List<InputDeviceSpec> device) {
 
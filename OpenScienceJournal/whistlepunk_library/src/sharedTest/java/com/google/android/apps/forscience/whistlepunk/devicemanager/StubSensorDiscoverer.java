@@ -32,6 +32,11 @@ class StubSensorDiscoverer implements ExternalSensorDiscoverer {
 
     }
 
+    @Override
+    public void clearScanCache() {
+
+    }
+
     @Override
     public ExternalSensorProvider getProvider() {
         return new ExternalSensorProvider() {
@@ -46,19 +46,24 @@ public class FakeBleClient implements BleClient {
         return BleFlow.getInstance(this, mContext, address);
     }
 
+    @Override
+    public BleFlow getFlowFor(String address, String owner) {
+        return createFlowFor(address);
+    }
+
     @Override
     public void scanForDevices(UUID[] serviceType, int timeoutSeconds) {
 
     }
 
     @Override
-    public boolean connectToAddress(String address) {
+    public boolean connectToAddress(String address, String issuer) {
         mostRecentAddress = address;
         return address.equals(expectedAddress);
     }
 
     @Override
-    public void findServices(String address) {
+    public void findServices(String address, String issuer) {
 
     }
 
@@ -68,29 +73,30 @@ public class FakeBleClient implements BleClient {
     }
 
     @Override
-    public void readValue(String address, BluetoothGattCharacteristic theCharacteristic) {
+    public void readValue(String address, BluetoothGattCharacteristic theCharacteristic,
+            String issuer) {
 
     }
 
     @Override
     public void writeValue(String address, BluetoothGattCharacteristic theCharacteristic,
-            byte[] value) {
+            byte[] value, String issuer) {
 
     }
 
     @Override
-    public void disconnectDevice(String address) {
-
+    public boolean disconnectDevice(String address) {
+        return true;
     }
 
     @Override
-    public void commit(String address) {
+    public void commit(String address, String issuer) {
 
     }
 
     @Override
     public void writeValue(String address, BluetoothGattDescriptor currentDescriptor,
-            byte[] value) {
+            byte[] value, String issuer) {
 
     }
 
@@ -107,12 +113,12 @@ public class FakeBleClient implements BleClient {
     }
 
     @Override
-    public void changeMtu(String address, int mtu) {
+    public void changeMtu(String address, int mtu, String issuer) {
 
     }
 
     @Override
-    public void startTransaction(String address) {
+    public void startTransaction(String address, String issuer) {
 
     }
 
@@ -134,6 +134,13 @@ public class ManualSensor extends ScalarSensor {
         }
     }
 
+    public void pushBatch(long[] timestampsMillis, double[] values) {
+        if (mConsumer != null) {
+            ((BatchStreamConsumer) mConsumer).addData(timestampsMillis, values,
+                    timestampsMillis.length);
+        }
+    }
+
     private SensorPresenter createPresenter() {
         StatsListener statsListener = new StubStatsListener();
         return createPresenter(new DataViewOptions(0, new ScalarDisplayOptions()),
@@ -16,8 +16,6 @@
 
 package com.google.android.apps.forscience.whistlepunk.sensorapi;
 
-import android.os.Bundle;
-
 import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarReading;
 
 import java.util.ArrayList;
@@ -27,8 +25,8 @@ public class RecordingSensorObserver implements SensorObserver {
     private List<ScalarReading> mReadings = new ArrayList<>();
 
     @Override
-    public void onNewData(long timestamp, Bundle bundle) {
-        mReadings.add(new ScalarReading(timestamp, ScalarSensor.getValue(bundle)));
+    public void onNewData(long timestamp, ObservedValue data) {
+        mReadings.add(new ScalarReading(timestamp, data.getValue()));
     }
 
     public List<ScalarReading> getReadings() {
@@ -29,6 +29,7 @@ import com.google.common.util.concurrent.MoreExecutors;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 
@@ -68,6 +69,14 @@ public class InMemorySensorDatabase implements SensorDatabase {
         getTierReadings(resolutionTier).add(new Reading(databaseTag, timestampMillis, value));
     }
 
+    @Override
+    public void addScalarReadings(String databaseTag, int resolutionTier,
+            long[] timestampsMillis, double[] values, int count) {
+        for (int i = 0; i < count; i++) {
+            addScalarReading(databaseTag, resolutionTier, timestampsMillis[i], values[i]);
+        }
+    }
+
     private List<Reading> getTierReadings(int resolutionTier) {
         while (resolutionTier >= mReadings.size()) {
             mReadings.add(new ArrayList<Reading>());
@@ -85,6 +94,16 @@ public class InMemorySensorDatabase implements SensorDatabase {
                         new ScalarReading(reading.getTimestampMillis(), reading.getValue()));
             }
         }
+        // Like the real database, return them in the order asked for.
+        Collections.sort(readingsToReturn, new Comparator<ScalarReading>() {
+            @Override
+            public int compare(ScalarReading lhs, ScalarReading rhs) {
+                return Long.compare(lhs.getCollectedTimeMillis(), rhs.getCollectedTimeMillis());
+            }
+        });
+        if (range.getOrder() == TimeRange.ObservationOrder.NEWEST_FIRST) {
+            Collections.reverse(readingsToReturn);
+        }
         return new ScalarReadingList() {
             @Override
             public void deliver(StreamConsumer c) {
@@ -128,6 +147,55 @@ public class InMemorySensorDatabase implements SensorDatabase {
         }
     }
 
+    @Override
+    public void beginRun(String runId, String experimentId, long startTimestampMillis) {
+
+    }
+
+    @Override
+    public void endRun(String runId, long endTimestampMillis) {
+
+    }
+
+    @Override
+    public boolean deleteRun(String runId, List<String> sensorTags) {
+        return false;
+    }
+
+    @Override
+    public boolean isRunMigrationNeeded() {
+        return false;
+    }
+
+    @Override
+    public boolean migrateRun(String runId, String experimentId, List<String> sensorTags,
+            long firstTimestampMillis, long lastTimestampMillis) {
+        return false;
+    }
+
+    @Override
+    public void open() {
+
+    }
+
+    @Override
+    public void finishRunMigration() {
+
+    }
+
+    @Override
+    public long getDiskUsageBytes(String experimentId) {
+        return 0;
+    }
+
+    public int getReadingCount() {
+        int count = 0;
+        for (List<Reading> readingList : mReadings) {
+            count += readingList.size();
+        }
+        return count;
+    }
+
     public List<Reading> getReadings(int resolutionTier) {
         if (resolutionTier >= mReadings.size()) {
             return Collections.emptyList();
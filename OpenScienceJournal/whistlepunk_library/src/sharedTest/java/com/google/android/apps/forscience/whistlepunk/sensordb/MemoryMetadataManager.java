@@ -23,11 +23,15 @@ import com.google.android.apps.forscience.whistlepunk.ExternalSensorProvider;
 import com.google.android.apps.forscience.whistlepunk.api.scalarinput.InputDeviceSpec;
 import com.google.android.apps.forscience.whistlepunk.data.GoosciSensorLayout;
 import com.google.android.apps.forscience.whistlepunk.devicemanager.ConnectableSensor;
+import com.google.android.apps.forscience.whistlepunk.metadata.ApplicationLabel;
 import com.google.android.apps.forscience.whistlepunk.metadata.Experiment;
 import com.google.android.apps.forscience.whistlepunk.metadata.ExperimentSensors;
+import com.google.android.apps.forscience.whistlepunk.metadata.ExperimentSummary;
 import com.google.android.apps.forscience.whistlepunk.metadata.ExternalSensorSpec;
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciSparkline;
 import com.google.android.apps.forscience.whistlepunk.metadata.Label;
 import com.google.android.apps.forscience.whistlepunk.metadata.MetaDataManager;
+import com.google.android.apps.forscience.whistlepunk.metadata.PictureLabel;
 import com.google.android.apps.forscience.whistlepunk.metadata.Project;
 import com.google.android.apps.forscience.whistlepunk.metadata.Run;
 import com.google.android.apps.forscience.whistlepunk.metadata.RunStats;
@@ -59,6 +63,8 @@ public class MemoryMetadataManager implements MetaDataManager {
     private Multimap<String, String> mExperimentExcluded = HashMultimap.create();
     private ListMultimap<String, Label> mLabels = LinkedListMultimap.create();
     private Table<String, String, RunStats> mStats = HashBasedTable.create();
+    private Table<String, String, GoosciSparkline.Sparkline> mSparklines =
+            HashBasedTable.create();
     private Map<String, List<GoosciSensorLayout.SensorLayout>> mLayouts = new HashMap<>();
     private Map<String, ExternalSensorSpec> mExternalSensors = new HashMap<>();
     private Map<String, Run> mRuns = new HashMap<>();
@@ -75,6 +81,11 @@ public class MemoryMetadataManager implements MetaDataManager {
         return null;
     }
 
+    @Override
+    public List<Project> getProjects(int maxNumber, boolean archived, Project after) {
+        return null;
+    }
+
     @Override
     public Project newProject() {
         Project project = new Project(System.currentTimeMillis());
@@ -129,6 +140,12 @@ public class MemoryMetadataManager implements MetaDataManager {
         return Lists.newArrayList(mExperimentsPerProject.get(project.getProjectId()));
     }
 
+    @Override
+    public List<Experiment> getExperimentsForProject(Project project, boolean includeArchived,
+            Experiment after, int maxNumber) {
+        return page(mExperimentsPerProject.get(project.getProjectId()), after, maxNumber);
+    }
+
     @Override
     public void addLabel(Experiment experiment, Label label) {
         mLabels.put(experiment.getExperimentId(), label);
@@ -165,11 +182,57 @@ public class MemoryMetadataManager implements MetaDataManager {
         return mStats.get(startLabelId, sensorId);
     }
 
+    @Override
+    public void setSparkline(String runId, String sensorId,
+            GoosciSparkline.Sparkline sparkline) {
+        mSparklines.put(runId, sensorId, sparkline);
+    }
+
+    @Override
+    public GoosciSparkline.Sparkline getSparkline(String runId, String sensorId) {
+        return mSparklines.get(runId, sensorId);
+    }
+
     @Override
     public List<String> getExperimentRunIds(String experimentId, boolean includeArchived) {
         return mExperimentIdsToRunIds.get(experimentId);
     }
 
+    @Override
+    public List<String> getExperimentRunIds(String experimentId, boolean includeArchived,
+            String afterRunId, int maxNumber) {
+        return page(mExperimentIdsToRunIds.get(experimentId), afterRunId, maxNumber);
+    }
+
+    private static <T> List<T> page(List<T> all, T after, int maxNumber) {
+        int start = after == null ? 0 : all.indexOf(after) + 1;
+        int end = start + Math.min(all.size() - start, maxNumber);
+        return Lists.newArrayList(all.subList(start, end));
+    }
+
+    @Override
+    public Map<String, ExperimentSummary> getExperimentSummaries(String projectId) {
+        Map<String, ExperimentSummary> summaries = new HashMap<>();
+        for (Experiment experiment : mExperimentsPerProject.get(projectId)) {
+            String experimentId = experiment.getExperimentId();
+            int labelCount = 0;
+            String coverPicturePath = null;
+            for (Label label : mLabels.get(experimentId)) {
+                if (label instanceof ApplicationLabel) {
+                    continue;
+                }
+                labelCount++;
+                if (coverPicturePath == null && label instanceof PictureLabel) {
+                    coverPicturePath = ((PictureLabel) label).getFilePath();
+                }
+            }
+            summaries.put(experimentId, new ExperimentSummary(experimentId,
+                    mExperimentIdsToRunIds.get(experimentId).size(), ExperimentSummary.NO_RUNS,
+                    coverPicturePath, labelCount));
+        }
+        return summaries;
+    }
+
     @Override
     public void editLabel(Label updatedLabel) {
 
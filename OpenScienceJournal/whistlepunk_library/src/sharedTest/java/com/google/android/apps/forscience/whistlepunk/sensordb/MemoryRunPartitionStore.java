@@ -0,0 +1,112 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensordb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps each run's readings in an {@link InMemorySensorDatabase}.
+ */
+public class MemoryRunPartitionStore implements RunPartitionStore {
+    /**
+     * Pretend size of one reading on disk: timestamp, value, tier and tag.
+     */
+    public static final int BYTES_PER_READING = 32;
+
+    private final Map<String, Partition> mIndex = new HashMap<>();
+    private final Map<String, InMemorySensorDatabase> mDatabases = new HashMap<>();
+    private boolean mMigrationFinished = false;
+
+    @Override
+    public List<Partition> loadPartitions() {
+        List<Partition> partitions = new ArrayList<>();
+        for (Partition partition : mIndex.values()) {
+            partitions.add(copy(partition));
+        }
+        return partitions;
+    }
+
+    @Override
+    public void savePartition(Partition partition) {
+        mIndex.put(partition.getRunId(), copy(partition));
+    }
+
+    private static Partition copy(Partition partition) {
+        Partition copy = new Partition(partition.getRunId(), partition.getExperimentId(),
+                partition.getFirstTimestampMillis(), partition.getLastTimestampMillis());
+        copy.setMigrating(partition.isMigrating());
+        return copy;
+    }
+
+    @Override
+    public InMemorySensorDatabase openPartition(String runId) {
+        InMemorySensorDatabase database = mDatabases.get(runId);
+        if (database == null) {
+            database = new InMemorySensorDatabase();
+            mDatabases.put(runId, database);
+        }
+        return database;
+    }
+
+    @Override
+    public long getNewestTimestampMillis(String runId) {
+        long newest = Long.MIN_VALUE;
+        // Every higher tier is a sample of tier 0.
+        for (InMemorySensorDatabase.Reading reading : openPartition(runId).getReadings(0)) {
+            newest = Math.max(newest, reading.getTimestampMillis());
+        }
+        return newest;
+    }
+
+    @Override
+    public void deletePartition(String runId) {
+        mIndex.remove(runId);
+        mDatabases.remove(runId);
+    }
+
+    @Override
+    public long getPartitionSizeBytes(String runId) {
+        InMemorySensorDatabase database = mDatabases.get(runId);
+        return database == null ? 0 : (long) database.getReadingCount() * BYTES_PER_READING;
+    }
+
+    @Override
+    public boolean isMigrationFinished() {
+        return mMigrationFinished;
+    }
+
+    @Override
+    public void setMigrationFinished() {
+        mMigrationFinished = true;
+    }
+
+    protected void putPartition(String runId, InMemorySensorDatabase database) {
+        mDatabases.put(runId, database);
+    }
+
+    public boolean hasPartition(String runId) {
+        return mDatabases.containsKey(runId);
+    }
+
+    public Partition getSavedPartition(String runId) {
+        return mIndex.get(runId);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.ble;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class DeviceConnectionStatsTest {
+    @Test
+    public void connectLatency() {
+        DeviceConnectionStats stats = new DeviceConnectionStats("address");
+        assertEquals(DeviceConnectionStats.UNKNOWN, stats.getConnectLatencyMs());
+        stats.onConnectRequested(1000);
+        stats.onConnected(1250);
+        assertEquals(250, stats.getConnectLatencyMs());
+
+        // A spurious connect callback doesn't change the measurement
+        stats.onConnected(5000);
+        assertEquals(250, stats.getConnectLatencyMs());
+    }
+
+    @Test
+    public void notificationThroughput() {
+        DeviceConnectionStats stats = new DeviceConnectionStats("address");
+        stats.onNotification(20, 1000);
+        assertEquals(0.0, stats.getNotificationsPerSecond(), 0.001);
+
+        for (int i = 1; i <= 10; i++) {
+            stats.onNotification(20, 1000 + i * 50);
+        }
+        assertEquals(11, stats.getNotificationCount());
+        assertEquals(20.0, stats.getNotificationsPerSecond(), 0.001);
+        assertEquals(440.0, stats.getBytesPerSecond(), 0.001);
+
+        stats.resetStreaming();
+        assertEquals(0, stats.getNotificationCount());
+        assertEquals(DeviceConnectionStats.DEFAULT_MTU, stats.getMtu());
+    }
+}
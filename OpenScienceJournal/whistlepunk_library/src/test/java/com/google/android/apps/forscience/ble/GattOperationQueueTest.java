@@ -0,0 +1,102 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.ble;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class GattOperationQueueTest {
+    private final List<String> mStarted = new ArrayList<>();
+    private final List<String> mFailed = new ArrayList<>();
+
+    private GattOperationQueue.Operation op(final String name, final boolean startSucceeds) {
+        return new GattOperationQueue.Operation() {
+            @Override
+            public boolean start() {
+                mStarted.add(name);
+                return startSucceeds;
+            }
+
+            @Override
+            public void onStartFailed() {
+                mFailed.add(name);
+            }
+        };
+    }
+
+    @Test
+    public void oneOperationAtATimePerDevice() {
+        GattOperationQueue queue = new GattOperationQueue();
+        queue.enqueue("a", op("a1", true));
+        queue.enqueue("a", op("a2", true));
+        assertEquals("[a1]", mStarted.toString());
+        assertEquals(1, queue.getPendingCount("a"));
+
+        queue.operationCompleted("a");
+        assertEquals("[a1, a2]", mStarted.toString());
+        queue.operationCompleted("a");
+        assertFalse(queue.isBusy("a"));
+    }
+
+    @Test
+    public void devicesDontWaitForEachOther() {
+        GattOperationQueue queue = new GattOperationQueue();
+        queue.enqueue("a", op("a1", true));
+        queue.enqueue("b", op("b1", true));
+        queue.enqueue("a", op("a2", true));
+        queue.enqueue("b", op("b2", true));
+        assertEquals("[a1, b1]", mStarted.toString());
+
+        queue.operationCompleted("b");
+        assertEquals("[a1, b1, b2]", mStarted.toString());
+        assertTrue(queue.isBusy("a"));
+    }
+
+    @Test
+    public void failedStartMovesOn() {
+        GattOperationQueue queue = new GattOperationQueue();
+        queue.enqueue("a", op("a1", true));
+        queue.enqueue("a", op("a2", false));
+        queue.enqueue("a", op("a3", true));
+
+        queue.operationCompleted("a");
+        assertEquals("[a1, a2, a3]", mStarted.toString());
+        assertEquals("[a2]", mFailed.toString());
+        assertTrue(queue.isBusy("a"));
+    }
+
+    @Test
+    public void clearDropsPendingAndIgnoresLateCallbacks() {
+        GattOperationQueue queue = new GattOperationQueue();
+        queue.enqueue("a", op("a1", true));
+        queue.enqueue("a", op("a2", true));
+        queue.clear("a");
+        queue.operationCompleted("a");
+        assertEquals("[a1]", mStarted.toString());
+        assertFalse(queue.isBusy("a"));
+
+        queue.enqueue("a", op("a3", true));
+        assertEquals("[a1, a3]", mStarted.toString());
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.android.apps.forscience.javalib.MaybeConsumer;
+import com.google.android.apps.forscience.whistlepunk.scalarchart.ChartData;
+import com.google.android.apps.forscience.whistlepunk.sensordb.InMemorySensorDatabase;
+import com.google.android.apps.forscience.whistlepunk.sensordb.MonotonicClock;
+import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarReadingList;
+import com.google.android.apps.forscience.whistlepunk.sensordb.TimeRange;
+import com.google.common.collect.Range;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class GraphPopulatorTest {
+    private static final String TAG = "tag";
+
+    private final List<String> mLog = new ArrayList<>();
+    private final List<Long> mDisplayed = new ArrayList<>();
+    private final InMemorySensorDatabase mDb = new InMemorySensorDatabase();
+
+    /**
+     * Answers reads from memory, either straight away or when {@link #deliverNext} is called.
+     */
+    private class MemoryDataController extends StubDataController {
+        private final boolean mQueue;
+        private final List<Runnable> mPending = new ArrayList<>();
+
+        MemoryDataController(boolean queue) {
+            mQueue = queue;
+        }
+
+        @Override
+        public void getScalarReadings(String databaseTag, int resolutionTier,
+                TimeRange timeRange, int maxRecords,
+                final MaybeConsumer<ScalarReadingList> onSuccess) {
+            mLog.add("request " + maxRecords);
+            // The in-memory database returns everything in range, oldest first.
+            final InMemorySensorDatabase page = new InMemorySensorDatabase();
+            List<ChartData.DataPoint> points = mDb.getScalarReadings(databaseTag, timeRange,
+                    resolutionTier, 0).asDataPoints();
+            for (ChartData.DataPoint point : points.subList(0,
+                    Math.min(maxRecords, points.size()))) {
+                page.addScalarReading(databaseTag, resolutionTier, point.getX(), point.getY());
+            }
+            final ScalarReadingList readings = page.getScalarReadings(databaseTag, timeRange,
+                    resolutionTier, 0);
+            Runnable delivery = new Runnable() {
+                @Override
+                public void run() {
+                    onSuccess.success(readings);
+                }
+            };
+            if (mQueue) {
+                mPending.add(delivery);
+            } else {
+                delivery.run();
+            }
+        }
+
+        void deliverNext() {
+            mPending.remove(0).run();
+        }
+    }
+
+    private final GraphPopulator.ObservationDisplay mDisplay =
+            new GraphPopulator.ObservationDisplay() {
+                @Override
+                public void addRange(ScalarReadingList observations, Range<Double> valueRange,
+                        long requestId) {
+                    mLog.add("display " + observations.size());
+                    for (ChartData.DataPoint point : observations.asDataPoints()) {
+                        mDisplayed.add(point.getX());
+                    }
+                }
+
+                @Override
+                public void onFinish(long requestId) {
+                    mLog.add("finish");
+                }
+            };
+
+    @Test public void nextPageIsRequestedBeforeThisOneIsDisplayed() {
+        addReadings(1000);
+        MemoryDataController dc = new MemoryDataController(true);
+        GraphPopulator populator = new GraphPopulator(mDisplay, new MonotonicClock());
+        populator.setPixelWidth(100);
+        populator.requestObservations(GraphPopulator.constantGraphStatus(0, 999), dc, null, 0,
+                TAG);
+        assertEquals("[request 200]", mLog.toString());
+
+        dc.deliverNext();
+        assertEquals("[request 200, request 800, display 200]", mLog.toString());
+
+        dc.deliverNext();
+        assertEquals("[request 200, request 800, display 200, display 800, finish]",
+                mLog.toString());
+    }
+
+    @Test public void loadsEverythingInOrderWithGrowingPages() {
+        addReadings(10000);
+        GraphPopulator populator = new GraphPopulator(mDisplay, new MonotonicClock());
+        populator.setPixelWidth(100);
+        populator.requestObservations(GraphPopulator.constantGraphStatus(0, 9999),
+                new MemoryDataController(false), null, 0, TAG);
+
+        assertEquals("[request 200, request 800, display 200, request 3200, display 800, "
+                + "request 4000, display 3200, request 4000, display 4000, display 1800, finish]",
+                mLog.toString());
+        assertEquals(10000, mDisplayed.size());
+        for (int i = 0; i < mDisplayed.size(); i++) {
+            assertEquals(i, (long) mDisplayed.get(i));
+        }
+    }
+
+    @Test public void pageSizes() {
+        assertEquals(100, GraphPopulator.getFirstPageSize(0));
+        assertEquals(2160, GraphPopulator.getFirstPageSize(1080));
+        assertEquals(4000, GraphPopulator.getFirstPageSize(10000));
+        assertEquals(200, GraphPopulator.getNextPageSize(100, 1));
+        assertEquals(4000, GraphPopulator.getNextPageSize(2160, 0));
+    }
+
+    private void addReadings(int count) {
+        for (int i = 0; i < count; i++) {
+            mDb.addScalarReading(TAG, 0, i, i);
+        }
+    }
+}
@@ -20,7 +20,6 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import android.graphics.Color;
-import android.os.Bundle;
 import android.view.View;
 
 import com.google.android.apps.forscience.javalib.FailureListener;
@@ -32,6 +31,7 @@ import com.google.android.apps.forscience.whistlepunk.sensorapi.BlankReadableSen
 import com.google.android.apps.forscience.whistlepunk.sensorapi.DataViewOptions;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.ManualSensor;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.NewOptionsStorage;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.ObservedValue;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.OptionsListener;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorChoice;
 import com.google.android.apps.forscience.whistlepunk.sensorapi.SensorPresenter;
@@ -178,7 +178,17 @@ public class SensorCardPresenterUnitTest {
         }
 
         @Override
-        public void onNewData(long timestamp, Bundle data) {
+        public void onNewData(long timestamp, ObservedValue data) {
+
+        }
+
+        @Override
+        public void beginDataBatch() {
+
+        }
+
+        @Override
+        public void endDataBatch() {
 
         }
     }
@@ -24,6 +24,8 @@ public class RecordingScanListener implements ExternalSensorDiscoverer.ScanListe
     public List<ExternalSensorDiscoverer.DiscoveredService> services = Lists.newArrayList();
     public List<ExternalSensorDiscoverer.DiscoveredDevice> devices = Lists.newArrayList();
     public List<ExternalSensorDiscoverer.DiscoveredSensor> sensors = Lists.newArrayList();
+    public List<ExternalSensorDiscoverer.DiscoveredDevice> lostDevices = Lists.newArrayList();
+    public List<ExternalSensorDiscoverer.DiscoveredSensor> lostSensors = Lists.newArrayList();
     public boolean isDone = false;
 
     @Override
@@ -41,6 +43,16 @@ public class RecordingScanListener implements ExternalSensorDiscoverer.ScanListe
         sensors.add(sensor);
     }
 
+    @Override
+    public void onDeviceLost(ExternalSensorDiscoverer.DiscoveredDevice device) {
+        lostDevices.add(device);
+    }
+
+    @Override
+    public void onSensorLost(ExternalSensorDiscoverer.DiscoveredSensor sensor) {
+        lostSensors.add(sensor);
+    }
+
     @Override
     public void onServiceScanComplete(String serviceId) {
 
@@ -33,6 +33,7 @@ import org.junit.Test;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -256,4 +257,161 @@ public class ScalarInputDiscovererTest {
         // Just don't crash
         scheduler.incrementTime(200);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCachedScanShownWithoutRescanning() {
+        CountingDiscoverer service = new CountingDiscoverer();
+        MockScheduler scheduler = new MockScheduler();
+        FixedStamps stamps = new FixedStamps();
+        ScalarInputDiscoverer sid = makeCachingDiscoverer(service, scheduler, stamps);
+
+        RecordingScanListener first = new RecordingScanListener();
+        sid.startScanning(first, TestConsumers.expectingSuccess());
+        assertEquals(1, first.sensors.size());
+        assertEquals(1, service.scanCount);
+
+        RecordingScanListener second = new RecordingScanListener();
+        sid.startScanning(second, TestConsumers.expectingSuccess());
+        assertEquals(1, second.services.size());
+        assertEquals(1, second.devices.size());
+        assertEquals("sensorAddress1", addressOf(getOnly(second.sensors)));
+        assertEquals(1, service.scanCount);
+
+        // Refreshing forgets the cache
+        sid.clearScanCache();
+        RecordingScanListener third = new RecordingScanListener();
+        sid.startScanning(third, TestConsumers.expectingSuccess());
+        assertEquals(1, third.sensors.size());
+        assertEquals(2, service.scanCount);
+    }
+
+    @Test
+    public void testUpdatedPackageRescanned() {
+        CountingDiscoverer service = new CountingDiscoverer();
+        FixedStamps stamps = new FixedStamps();
+        ScalarInputDiscoverer sid = makeCachingDiscoverer(service, new MockScheduler(), stamps);
+
+        sid.startScanning(new RecordingScanListener(), TestConsumers.expectingSuccess());
+        service.removeSensor("deviceId1", "sensorAddress1");
+        service.addSensor("deviceId1",
+                new TestSensor("sensorAddress2", "sensorName2", new SensorAppearanceResources()));
+        stamps.stamp++;
+
+        // The old sensor isn't shown, because the package it came from has changed
+        RecordingScanListener listener = new RecordingScanListener();
+        sid.startScanning(listener, TestConsumers.expectingSuccess());
+        assertEquals("sensorAddress2", addressOf(getOnly(listener.sensors)));
+        assertEquals(2, service.scanCount);
+    }
+
+    @Test
+    public void testStaleScanShownThenOnlyNewSensorsAdded() {
+        CountingDiscoverer service = new CountingDiscoverer();
+        MockScheduler scheduler = new MockScheduler();
+        ScalarInputDiscoverer sid = makeCachingDiscoverer(service, scheduler, new FixedStamps());
+
+        sid.startScanning(new RecordingScanListener(), TestConsumers.expectingSuccess());
+        service.addSensor("deviceId1",
+                new TestSensor("sensorAddress2", "sensorName2", new SensorAppearanceResources()));
+        scheduler.incrementTime(CACHE_TTL + 1);
+
+        RecordingScanListener listener = new RecordingScanListener();
+        sid.startScanning(listener, TestConsumers.expectingSuccess());
+        assertEquals(2, service.scanCount);
+        assertEquals(1, listener.services.size());
+        assertEquals(1, listener.devices.size());
+        assertEquals(2, listener.sensors.size());
+        assertEquals("sensorAddress1", addressOf(listener.sensors.get(0)));
+        assertEquals("sensorAddress2", addressOf(listener.sensors.get(1)));
+    }
+
+    @Test
+    public void testRescanTakesBackWhatIsGone() {
+        CountingDiscoverer service = new CountingDiscoverer();
+        service.addDevice("deviceId2", "deviceName2");
+        service.addSensor("deviceId2",
+                new TestSensor("sensorAddress2", "sensorName2", new SensorAppearanceResources()));
+        MockScheduler scheduler = new MockScheduler();
+        ScalarInputDiscoverer sid = makeCachingDiscoverer(service, scheduler, new FixedStamps());
+
+        sid.startScanning(new RecordingScanListener(), TestConsumers.expectingSuccess());
+        service.removeSensor("deviceId1", "sensorAddress1");
+        service.removeDevice("deviceId2");
+        scheduler.incrementTime(CACHE_TTL + 1);
+
+        RecordingScanListener listener = new RecordingScanListener();
+        sid.startScanning(listener, TestConsumers.expectingSuccess());
+        assertEquals(2, service.scanCount);
+        assertEquals(2, listener.lostSensors.size());
+        assertEquals(1, listener.lostDevices.size());
+        assertEquals(ScalarInputSpec.makeApiDeviceAddress("package/serviceId", "deviceId2"),
+                getOnly(listener.lostDevices).getSpec().getDeviceAddress());
+    }
+
+    @Test
+    public void testNotDoneUntilQueuedServiceScanned() {
+        CountingDiscoverer service = new CountingDiscoverer();
+        ExplicitExecutor scanExecutor = new ExplicitExecutor();
+        MockScheduler scheduler = new MockScheduler();
+        ScalarInputDiscoverer sid = makeCachingDiscoverer(service, scheduler, new FixedStamps(),
+                scanExecutor);
+
+        RecordingScanListener listener = new RecordingScanListener();
+        sid.startScanning(listener, TestConsumers.expectingSuccess());
+        // Discovery is over, but the service's scan hasn't started yet.
+        assertEquals(0, service.scanCount);
+        assertFalse(listener.isDone);
+
+        scanExecutor.drain();
+        assertEquals(1, listener.sensors.size());
+        assertTrue(listener.isDone);
+    }
+
+    private static final long CACHE_TTL = 1000;
+
+    private String addressOf(ExternalSensorDiscoverer.DiscoveredSensor sensor) {
+        return ((ScalarInputSpec) sensor.getSpec()).getSensorAddressInService();
+    }
+
+    private ScalarInputDiscoverer makeCachingDiscoverer(CountingDiscoverer service,
+            MockScheduler scheduler, FixedStamps stamps) {
+        return makeCachingDiscoverer(service, scheduler, stamps, MoreExecutors.directExecutor());
+    }
+
+    private ScalarInputDiscoverer makeCachingDiscoverer(CountingDiscoverer service,
+            MockScheduler scheduler, FixedStamps stamps, Executor scanExecutor) {
+        ScalarInputScanCache cache = new ScalarInputScanCache(stamps, scheduler.getClock(),
+                CACHE_TTL);
+        return new ScalarInputDiscoverer(service.makeFinder("package/serviceId"),
+                new TestStringSource(), MoreExecutors.directExecutor(), scheduler, 100,
+                new RecordingUsageTracker(), cache, scanExecutor);
+    }
+
+    private static class FixedStamps implements ScalarInputScanCache.PackageStamps {
+        public long stamp = 1;
+
+        @Override
+        public long getStamp(String packageName) {
+            assertEquals("package", packageName);
+            return stamp;
+        }
+    }
+
+    private static class CountingDiscoverer extends TestSensorDiscoverer {
+        public int scanCount = 0;
+
+        public CountingDiscoverer() {
+            super("serviceName");
+            addDevice("deviceId1", "deviceName1");
+            addSensor("deviceId1",
+                    new TestSensor("sensorAddress1", "sensorName1",
+                            new SensorAppearanceResources()));
+        }
+
+        @Override
+        public void scanDevices(IDeviceConsumer c) throws RemoteException {
+            scanCount++;
+            super.scanDevices(c);
+        }
+    }
+}
@@ -33,6 +33,16 @@ public class StubScanListener implements ExternalSensorDiscoverer.ScanListener {
 
     }
 
+    @Override
+    public void onDeviceLost(ExternalSensorDiscoverer.DiscoveredDevice device) {
+
+    }
+
+    @Override
+    public void onSensorLost(ExternalSensorDiscoverer.DiscoveredSensor sensor) {
+
+    }
+
     @Override
     public void onServiceScanComplete(String serviceId) {
 
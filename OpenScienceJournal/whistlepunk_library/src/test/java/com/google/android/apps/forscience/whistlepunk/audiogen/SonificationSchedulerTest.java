@@ -0,0 +1,166 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.audiogen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SonificationSchedulerTest {
+    private static final double LATENCY = 0.1;
+    private static final double CONTROL_PERIOD = 0.01;
+    private static final double DELTA = 0.000001;
+
+    private static class Note {
+        final double value;
+        final double audioTime;
+
+        Note(double value, double audioTime) {
+            this.value = value;
+            this.audioTime = audioTime;
+        }
+    }
+
+    private final List<Note> mNotes = new ArrayList<>();
+
+    private SonificationScheduler makeScheduler(int capacity) {
+        return new SonificationScheduler(new SonificationSampleQueue(capacity),
+                new SonificationScheduler.NoteSink() {
+                    @Override
+                    public void playNote(double value, double min, double max,
+                            double audioTimeSeconds) {
+                        mNotes.add(new Note(value, audioTimeSeconds));
+                    }
+                }, LATENCY, CONTROL_PERIOD);
+    }
+
+    @Test public void notesKeepSensorSpacingRegardlessOfArrival() {
+        SonificationScheduler scheduler = makeScheduler(16);
+        // Three samples 50ms apart arrive all at once.
+        scheduler.addSample(1000, 1, 0, 10);
+        scheduler.addSample(1050, 2, 0, 10);
+        scheduler.addSample(1100, 3, 0, 10);
+
+        scheduler.tick(5.0);
+        scheduler.tick(5.05);
+        scheduler.tick(5.1);
+        scheduler.tick(5.15);
+
+        assertEquals(3, mNotes.size());
+        assertEquals(5.1, mNotes.get(0).audioTime, DELTA);
+        assertEquals(5.15, mNotes.get(1).audioTime, DELTA);
+        assertEquals(5.2, mNotes.get(2).audioTime, DELTA);
+        assertEquals(3, mNotes.get(2).value, DELTA);
+    }
+
+    @Test public void fastSamplesAreAveragedPerControlPeriod() {
+        SonificationScheduler scheduler = makeScheduler(16);
+        // 1ms apart: ten of these fit in one control period.
+        for (int i = 0; i < 10; i++) {
+            scheduler.addSample(i, i, 0, 10);
+        }
+        scheduler.tick(0);
+        scheduler.tick(0.02);
+
+        assertEquals(1, mNotes.size());
+        assertEquals(4.5, mNotes.get(0).value, DELTA);
+    }
+
+    @Test public void speedCompressesSpacing() {
+        SonificationScheduler scheduler = makeScheduler(16);
+        scheduler.setRealtime(false);
+        scheduler.setSpeed(4);
+        scheduler.addSample(0, 1, 0, 10);
+        scheduler.addSample(400, 2, 0, 10);
+
+        scheduler.tick(0);
+        scheduler.tick(0.1);
+        scheduler.tick(0.2);
+
+        assertEquals(2, mNotes.size());
+        assertEquals(0.1, mNotes.get(1).audioTime - mNotes.get(0).audioTime, DELTA);
+    }
+
+    @Test public void playbackLeavesFutureSamplesQueued() {
+        SonificationScheduler scheduler = makeScheduler(16);
+        scheduler.setRealtime(false);
+        scheduler.addSample(0, 1, 0, 10);
+        scheduler.addSample(10000, 2, 0, 10);
+
+        scheduler.tick(0);
+        scheduler.tick(0.05);
+        assertEquals(1, mNotes.size());
+        assertEquals(1, scheduler.getQueuedSampleCount());
+        assertFalse(scheduler.isDrained(0));
+        assertEquals(5000, scheduler.getTimestampAt(5.1));
+    }
+
+    @Test public void lateSamplesAreRescheduled() {
+        SonificationScheduler scheduler = makeScheduler(16);
+        scheduler.addSample(0, 1, 0, 10);
+        scheduler.tick(0);
+        scheduler.tick(0.2);
+        assertEquals(1, mNotes.size());
+
+        // Arrives a second late: plays one latency budget from now, not in the past.
+        scheduler.addSample(100, 2, 0, 10);
+        scheduler.tick(1.2);
+        scheduler.tick(1.4);
+        assertEquals(2, mNotes.size());
+        assertEquals(1.3, mNotes.get(1).audioTime, DELTA);
+        assertTrue(scheduler.isDrained(1.4));
+    }
+
+    @Test public void samplesQueuedAfterResetArePlayedFromTheStart() {
+        SonificationScheduler scheduler = makeScheduler(16);
+        scheduler.addSample(0, 1, 0, 10);
+        scheduler.addSample(60000, 2, 0, 10);
+        scheduler.tick(10);
+        scheduler.tick(10.2);
+        assertEquals(1, mNotes.size());
+
+        // Stopped, then the first page of a replay queued before the synthesizer restarts its
+        // clock.
+        scheduler.reset();
+        assertEquals(0, scheduler.getQueuedSampleCount());
+        scheduler.addSample(0, 3, 0, 10);
+        scheduler.tick(0);
+        scheduler.tick(0.2);
+
+        assertEquals(2, mNotes.size());
+        assertEquals(3, mNotes.get(1).value, DELTA);
+        assertEquals(0.1, mNotes.get(1).audioTime, DELTA);
+    }
+
+    @Test public void fullQueueDropsNewSamples() {
+        SonificationSampleQueue queue = new SonificationSampleQueue(2);
+        assertTrue(queue.offer(0, 0, 0, 1));
+        assertTrue(queue.offer(1, 0, 0, 1));
+        assertFalse(queue.offer(2, 0, 0, 1));
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(0, queue.peekTimestamp());
+        queue.remove();
+        assertTrue(queue.offer(3, 0, 0, 1));
+        assertEquals(1, queue.peekTimestamp());
+    }
+}
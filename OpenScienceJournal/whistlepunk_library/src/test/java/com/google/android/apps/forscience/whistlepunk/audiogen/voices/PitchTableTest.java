@@ -0,0 +1,53 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.audiogen.voices;
+
+import static org.junit.Assert.assertEquals;
+
+import com.softsynth.math.AudioMath;
+
+import org.junit.Test;
+
+public class PitchTableTest {
+    // The pentatonic scale from pitch 71 up to pitch 92: ten pitches.
+    private final PitchTable mTable = new PitchTable(PitchTable.PENTATONIC_SCALE, 71, 92);
+
+    @Test public void frequenciesMatchPitches() {
+        assertEquals(10, mTable.size());
+        for (int i = 0; i < mTable.size(); i++) {
+            assertEquals(AudioMath.pitchToFrequency(mTable.getPitch(i)), mTable.getFrequency(i),
+                    0.000001);
+        }
+    }
+
+    @Test public void normalizedValuesMapAcrossTable() {
+        assertEquals(0, mTable.indexOf(0));
+        assertEquals(4, mTable.indexOf(0.5));
+        assertEquals(9, mTable.indexOf(1));
+        // Out of range values are clamped.
+        assertEquals(0, mTable.indexOf(-3));
+        assertEquals(9, mTable.indexOf(7));
+        assertEquals(mTable.getFrequency(9), mTable.frequencyOf(1.5), 0);
+    }
+
+    @Test public void emptyTable() {
+        PitchTable table = new PitchTable(new int[0], 60, 72);
+        assertEquals(0, table.size());
+        assertEquals(-1, table.indexOf(0.5));
+    }
+}
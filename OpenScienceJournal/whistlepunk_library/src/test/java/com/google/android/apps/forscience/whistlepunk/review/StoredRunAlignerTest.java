@@ -0,0 +1,69 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.review;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.android.apps.forscience.javalib.Success;
+import com.google.android.apps.forscience.whistlepunk.DataControllerImpl;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamAligner;
+import com.google.android.apps.forscience.whistlepunk.sensordb.InMemorySensorDatabase;
+import com.google.android.apps.forscience.whistlepunk.sensordb.MemoryMetadataManager;
+import com.google.android.apps.forscience.whistlepunk.sensordb.StoringConsumer;
+
+import org.junit.Test;
+
+public class StoredRunAlignerTest {
+    @Test public void alignsStoredSensors() {
+        InMemorySensorDatabase db = new InMemorySensorDatabase();
+        DataControllerImpl dc = db.makeSimpleController(new MemoryMetadataManager());
+        // A fast sensor every 7ms and a slow one every 100ms, longer than a page.
+        for (long t = 0; t <= 5000; t += 7) {
+            dc.addScalarReading("fast", 0, t, t);
+        }
+        for (long t = 0; t <= 5000; t += 100) {
+            dc.addScalarReading("slow", 0, t, -t);
+        }
+
+        final double[] fastColumn = new double[501];
+        final double[] slowColumn = new double[501];
+        StreamAligner aligner = new StreamAligner(0, 10, 64, new StreamAligner.RowConsumer() {
+            @Override
+            public void onRows(long firstTimestampMillis, double[][] values, int offset,
+                    int count) {
+                for (int i = 0; i < count; i++) {
+                    int row = (int) (firstTimestampMillis / 10) + i;
+                    fastColumn[row] = values[0][offset + i];
+                    slowColumn[row] = values[1][offset + i];
+                }
+            }
+        });
+        StoredRunAligner storedRunAligner = new StoredRunAligner(dc, aligner);
+        storedRunAligner.addSensor("fast", StreamAligner.Interpolation.LINEAR);
+        storedRunAligner.addSensor("slow", StreamAligner.Interpolation.HOLD);
+
+        StoringConsumer<Success> onDone = new StoringConsumer<>();
+        storedRunAligner.align(0, 5000, onDone);
+        assertEquals(Success.SUCCESS, onDone.getValue());
+
+        for (int row = 0; row < 500; row++) {
+            assertEquals(row * 10, fastColumn[row], 0.0001);
+            assertEquals(-(row / 10) * 100, slowColumn[row], 0.0001);
+        }
+    }
+}
@@ -123,6 +123,24 @@ public class ChartControllerTest {
                 new ChartData.DataPoint(2, 2).toString());
     }
 
+    @Test
+    public void batchedPointsReachChartData() {
+        ChartController chartController = makeChartController();
+        addData(chartController, 0, 4, 2);
+        chartController.onResume(5);
+
+        chartController.beginPointBatch();
+        addData(chartController, 4, 10, 1);
+        chartController.endPointBatch();
+
+        // The point at 4 straggled in from before the reset
+        List<Long> timestamps = new ArrayList<>();
+        for (ChartData.DataPoint point : chartController.getData()) {
+            timestamps.add(point.getX());
+        }
+        assertEquals("[0, 2, 5, 6, 7, 8, 9]", timestamps.toString());
+    }
+
     private void addData(ChartController controller, long start, long end, long interval) {
         for (long i = start; i < end; i+= interval) {
             controller.addPoint(new ChartData.DataPoint(i, (double) i));
@@ -0,0 +1,86 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.scalarchart;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.google.android.apps.forscience.whistlepunk.StatsAccumulator;
+import com.google.android.apps.forscience.whistlepunk.metadata.RunStats;
+import com.google.android.apps.forscience.whistlepunk.sensorapi.ZoomRecorder;
+import com.google.common.collect.Range;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class OverlaidRunTest {
+    @Test public void pointsAreShiftedOntoPrimaryTimeBase() {
+        // Primary run started at 1000, this run at 5000.
+        long offset = OverlaidRun.getAlignmentOffset(1000, 5000);
+        OverlaidRun run = new OverlaidRun("run", 5000, 6000, offset, 0, new RunStats());
+
+        List<ChartData.DataPoint> points = new ArrayList<>();
+        points.add(new ChartData.DataPoint(5000, 1));
+        points.add(new ChartData.DataPoint(5500, 2));
+        run.addPoints(points, run.getGeneration());
+
+        List<ChartData.DataPoint> shifted = run.getChartData().getPoints();
+        assertEquals(2, shifted.size());
+        assertEquals(1000, shifted.get(0).getX());
+        assertEquals(1500, shifted.get(1).getX());
+        assertEquals(2, shifted.get(1).getY(), 0.0001);
+        assertEquals(5500, run.toRunTime(1500));
+    }
+
+    @Test public void loadableRangeIsClippedToRun() {
+        OverlaidRun run = new OverlaidRun("run", 5000, 6000,
+                OverlaidRun.getAlignmentOffset(1000, 5000), 0, new RunStats());
+
+        assertEquals(Range.closed(5000L, 5200L), run.getLoadableRange(0, 1200));
+        assertEquals(Range.closed(5500L, 6000L), run.getLoadableRange(1500, 3000));
+        assertNull(run.getLoadableRange(2500, 3000));
+    }
+
+    @Test public void pointsFromClearedLoadsAreIgnored() {
+        OverlaidRun run = new OverlaidRun("run", 0, 1000, 0, 0, new RunStats());
+        int staleGeneration = run.getGeneration();
+        run.clear();
+
+        List<ChartData.DataPoint> points = new ArrayList<>();
+        points.add(new ChartData.DataPoint(10, 1));
+        run.addPoints(points, staleGeneration);
+        assertEquals(0, run.getChartData().getNumPoints());
+
+        run.addPoints(points, run.getGeneration());
+        assertEquals(1, run.getChartData().getNumPoints());
+    }
+
+    @Test public void narrowerChartsLoadCoarserTiers() {
+        // 100,000 readings, 10ms apart.
+        RunStats stats = new RunStats();
+        stats.putStat(StatsAccumulator.KEY_TOTAL_DURATION, 1000000);
+        stats.putStat(StatsAccumulator.KEY_NUM_DATA_POINTS, 100000);
+        stats.putStat(ZoomRecorder.STATS_KEY_ZOOM_LEVEL_BETWEEN_TIERS, 10);
+        stats.putStat(ZoomRecorder.STATS_KEY_TIER_COUNT, 5);
+
+        assertEquals(2, new OverlaidRun("run", 0, 1000000, 0, 0, stats).updateTier(1000000, 2000));
+        assertEquals(3, new OverlaidRun("run", 0, 1000000, 0, 0, stats).updateTier(1000000, 200));
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensorapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CachingAvailableSensorsTest {
+    @Test
+    public void asksOncePerType() {
+        final int[] askCount = {0};
+        CachingAvailableSensors available = new CachingAvailableSensors(new AvailableSensors() {
+            @Override
+            public boolean isSensorAvailable(int sensorType) {
+                askCount[0]++;
+                return sensorType == 1;
+            }
+        });
+
+        assertTrue(available.isSensorAvailable(1));
+        assertFalse(available.isSensorAvailable(2));
+        assertTrue(available.isSensorAvailable(1));
+        assertFalse(available.isSensorAvailable(2));
+        assertEquals(2, askCount[0]);
+    }
+}
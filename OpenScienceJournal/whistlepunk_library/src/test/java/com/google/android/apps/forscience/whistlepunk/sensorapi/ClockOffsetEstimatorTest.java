@@ -0,0 +1,124 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensorapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class ClockOffsetEstimatorTest {
+    @Test public void firstReadingArrivesNow() {
+        ClockOffsetEstimator estimator = new ClockOffsetEstimator();
+        assertEquals(50000, estimator.map(1000, 50000));
+    }
+
+    @Test public void lowerLatencyIsUsedAtOnce() {
+        ClockOffsetEstimator estimator = new ClockOffsetEstimator();
+        assertEquals(50030, estimator.map(1000, 50030));
+        // 20ms quicker than the first one, so the first one was at least 20ms late.
+        assertEquals(50090, estimator.map(1100, 50090));
+        // Slower again: offset stays where it was.
+        assertEquals(50190, estimator.map(1200, 50240));
+        assertEquals(0, estimator.getCorrectedCount());
+    }
+
+    @Test public void followsDrift() {
+        ClockOffsetEstimator estimator = new ClockOffsetEstimator();
+        Random random = new Random(42);
+        long minLatency = 5;
+        long worstError = 0;
+        long oneShotOffset = 0;
+        long worstOneShotError = 0;
+        // Device clock runs 200ppm fast, readings every 10ms for ten minutes, delivered 5 to 50ms
+        // late.
+        for (int i = 0; i < 60000; i++) {
+            long appTime = 100000 + i * 10L;
+            long deviceTime = Math.round(i * 10 * 1.0002);
+            long arrival = appTime + minLatency + random.nextInt(46);
+            long mapped = estimator.map(deviceTime, arrival);
+            if (i == 0) {
+                // What a single skew taken from the first reading would give.
+                oneShotOffset = arrival - deviceTime;
+            }
+            long oneShotMapped = deviceTime + oneShotOffset;
+            if (i >= 1000) {
+                worstError = Math.max(worstError, Math.abs(mapped - appTime - minLatency));
+                worstOneShotError = Math.max(worstOneShotError,
+                        Math.abs(oneShotMapped - appTime - minLatency));
+            }
+        }
+        assertTrue("worst error " + worstError, worstError <= 3);
+        assertTrue("one-shot error " + worstOneShotError, worstOneShotError > 100);
+        assertEquals(0, estimator.getDroppedCount());
+    }
+
+    @Test public void dropsRepeatedAndReorderedReadings() {
+        ClockOffsetEstimator estimator = new ClockOffsetEstimator();
+        estimator.map(1000, 5000);
+        assertEquals(ClockOffsetEstimator.DROP, estimator.map(1000, 5001));
+        assertEquals(1, estimator.getDroppedCount());
+        assertEquals(0, estimator.getReorderedCount());
+
+        assertEquals(ClockOffsetEstimator.DROP, estimator.map(900, 5002));
+        assertEquals(2, estimator.getDroppedCount());
+        assertEquals(1, estimator.getReorderedCount());
+
+        assertEquals(5010, estimator.map(1010, 5010));
+    }
+
+    @Test public void keepsMappedTimesIncreasing() {
+        ClockOffsetEstimator estimator = new ClockOffsetEstimator();
+        assertEquals(5100, estimator.map(1000, 5100));
+        // Offset drops by 90ms, which would put this reading before the previous one.
+        assertEquals(5101, estimator.map(1010, 5020));
+        assertEquals(1, estimator.getCorrectedCount());
+        assertEquals(5110, estimator.map(1100, 5110));
+        assertEquals(1, estimator.getCorrectedCount());
+    }
+
+    @Test public void sameClockWithinTolerance() {
+        ClockOffsetEstimator estimator = new ClockOffsetEstimator(250);
+        assertEquals(2, estimator.map(2, 0));
+        assertEquals(2500, estimator.map(2500, 2520));
+
+        ClockOffsetEstimator otherClock = new ClockOffsetEstimator(250);
+        assertEquals(10000, otherClock.map(0, 10000));
+    }
+
+    @Test public void deviceRestart() {
+        ClockOffsetEstimator estimator = new ClockOffsetEstimator();
+        assertEquals(5000, estimator.map(100000, 5000));
+        // Device clock starts again from zero: not a reordering.
+        assertEquals(6000, estimator.map(50, 6000));
+        assertEquals(6010, estimator.map(60, 6010));
+        assertEquals(0, estimator.getDroppedCount());
+    }
+
+    @Test public void resetClearsCounters() {
+        ClockOffsetEstimator estimator = new ClockOffsetEstimator();
+        estimator.map(1000, 5000);
+        estimator.map(900, 5000);
+        estimator.reset();
+        assertEquals(0, estimator.getDroppedCount());
+        assertEquals(0, estimator.getReorderedCount());
+        assertEquals(900, estimator.map(900, 900));
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensorapi;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarReading;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class FrameCoalescingObserverTest {
+    private static class FrameQueue implements FrameDispatcher.FrameSource {
+        private int mPosted = 0;
+        private FrameDispatcher mDispatcher;
+
+        @Override
+        public void postFrameCallback(FrameDispatcher dispatcher) {
+            mDispatcher = dispatcher;
+            mPosted++;
+        }
+
+        @Override
+        public long nanoTime() {
+            return 0;
+        }
+
+        public void runFrame() {
+            if (mPosted > 0) {
+                mPosted = 0;
+                mDispatcher.doFrame(0);
+            }
+        }
+
+        public int size() {
+            return mPosted;
+        }
+    }
+
+    private static class CountingFrameListener implements FrameCoalescingObserver.FrameListener {
+        public int starting = 0;
+        public int count = 0;
+
+        @Override
+        public void onFrameStarting() {
+            starting++;
+        }
+
+        @Override
+        public void onFrameDelivered() {
+            count++;
+        }
+    }
+
+    @Test public void manySamplesInOneFrame() {
+        FrameQueue frames = new FrameQueue();
+        RecordingSensorObserver delegate = new RecordingSensorObserver();
+        CountingFrameListener frameDelivered = new CountingFrameListener();
+        FrameCoalescingObserver observer = new FrameCoalescingObserver(
+                new FrameDispatcher(frames), delegate, frameDelivered);
+
+        for (int i = 0; i < 100; i++) {
+            observer.onNewData(i, value(i));
+        }
+        assertEquals(1, frames.size());
+        assertEquals(0, delegate.getReadings().size());
+
+        frames.runFrame();
+        List<ScalarReading> readings = delegate.getReadings();
+        assertEquals(100, readings.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, readings.get(i).getCollectedTimeMillis());
+            assertEquals(i, readings.get(i).getValue(), 0.0);
+        }
+        assertEquals(1, frameDelivered.starting);
+        assertEquals(1, frameDelivered.count);
+    }
+
+    @Test public void nextSampleSchedulesNextFrame() {
+        FrameQueue frames = new FrameQueue();
+        RecordingSensorObserver delegate = new RecordingSensorObserver();
+        CountingFrameListener frameDelivered = new CountingFrameListener();
+        FrameCoalescingObserver observer = new FrameCoalescingObserver(
+                new FrameDispatcher(frames), delegate, frameDelivered);
+
+        observer.onNewData(1, value(1));
+        frames.runFrame();
+        frames.runFrame();
+        observer.onNewData(2, value(2));
+        observer.onNewData(3, value(3));
+        frames.runFrame();
+
+        assertEquals(3, delegate.getReadings().size());
+        assertEquals(2, frameDelivered.count);
+    }
+
+    @Test public void statsTravelWithEachSample() {
+        PendingObservations pending = new PendingObservations();
+        pending.add(1, 5, 1, 9, 4);
+        pending.add(2, 6, 1, 10, 5);
+        final List<Double> maxes = new ArrayList<>();
+        assertEquals(2, pending.drainTo(new SensorObserver() {
+            @Override
+            public void onNewData(long timestamp, ObservedValue data) {
+                maxes.add(data.getMax());
+            }
+        }));
+        assertEquals("[9.0, 10.0]", maxes.toString());
+    }
+
+    private ObservedValue value(double value) {
+        ObservedValue data = new ObservedValue();
+        data.setValue(value);
+        data.setStats(value, value, value);
+        return data;
+    }
+}
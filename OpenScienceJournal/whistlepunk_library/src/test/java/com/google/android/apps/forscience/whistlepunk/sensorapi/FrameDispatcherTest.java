@@ -0,0 +1,112 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensorapi;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class FrameDispatcherTest {
+    private static class ManualFrameSource implements FrameDispatcher.FrameSource {
+        public int posted = 0;
+        public long now = 0;
+
+        @Override
+        public void postFrameCallback(FrameDispatcher dispatcher) {
+            posted++;
+        }
+
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+    }
+
+    private static class RecordingClient implements FrameDispatcher.Client {
+        private final String mName;
+        private final List<String> mLog;
+        private final int mDepth;
+
+        RecordingClient(String name, List<String> log, int depth) {
+            mName = name;
+            mLog = log;
+            mDepth = depth;
+        }
+
+        @Override
+        public int deliverFrame() {
+            mLog.add(mName);
+            return mDepth;
+        }
+    }
+
+    @Test public void oneCallbackForAllClients() {
+        ManualFrameSource source = new ManualFrameSource();
+        FrameDispatcher dispatcher = new FrameDispatcher(source);
+        List<String> log = new ArrayList<>();
+        RecordingClient a = new RecordingClient("a", log, 3);
+        RecordingClient b = new RecordingClient("b", log, 4);
+
+        dispatcher.schedule(a);
+        dispatcher.schedule(b);
+        dispatcher.schedule(a);
+        assertEquals(1, source.posted);
+
+        dispatcher.doFrame(0);
+        assertEquals("[a, b]", log.toString());
+        assertEquals(7, dispatcher.getLastQueueDepth());
+
+        // Nothing scheduled, so nothing runs
+        dispatcher.doFrame(0);
+        assertEquals("[a, b]", log.toString());
+
+        dispatcher.schedule(b);
+        assertEquals(2, source.posted);
+        dispatcher.doFrame(0);
+        assertEquals("[a, b, b]", log.toString());
+        assertEquals(4, dispatcher.getLastQueueDepth());
+        assertEquals(7, dispatcher.getMaxQueueDepth());
+    }
+
+    @Test public void countsLateFramesAsDropped() {
+        ManualFrameSource source = new ManualFrameSource();
+        FrameDispatcher dispatcher = new FrameDispatcher(source);
+        List<String> log = new ArrayList<>();
+        RecordingClient a = new RecordingClient("a", log, 1);
+
+        dispatcher.schedule(a);
+        source.now = FrameDispatcher.FRAME_INTERVAL_NANOS / 2;
+        dispatcher.doFrame(0);
+        assertEquals(0, dispatcher.getDroppedFrameCount());
+
+        dispatcher.schedule(a);
+        long frameTime = 10 * FrameDispatcher.FRAME_INTERVAL_NANOS;
+        source.now = frameTime + 2 * FrameDispatcher.FRAME_INTERVAL_NANOS + 1;
+        dispatcher.doFrame(frameTime);
+        assertEquals(2, dispatcher.getDroppedFrameCount());
+        assertEquals(2, dispatcher.getFrameCount());
+
+        dispatcher.resetCounters();
+        assertEquals(0, dispatcher.getDroppedFrameCount());
+        assertEquals(0, dispatcher.getFrameCount());
+        assertEquals(0, dispatcher.getMaxQueueDepth());
+    }
+}
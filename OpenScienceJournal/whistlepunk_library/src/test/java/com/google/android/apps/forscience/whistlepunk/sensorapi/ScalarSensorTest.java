@@ -90,6 +90,76 @@ public class ScalarSensorTest {
         assertEquals(expectedObserved, observer.getReadings());
     }
 
+    @Test
+    public void testBatchesRecordLikeSingleValues() {
+        ManualSensor sensor = new ManualSensor("test", Long.MAX_VALUE, 2);
+        RecordingSensorObserver observer = new RecordingSensorObserver();
+        SensorRecorder recorder = sensor.createRecorder(getContext(),
+                mRecordingController, observer);
+
+        recorder.startObserving();
+        sensor.pushBatch(new long[] {0}, new double[] {0});
+        recorder.startRecording("runId");
+        // The out-of-order reading at 1 is dropped, as it would be on its own
+        sensor.pushBatch(new long[] {1, 2, 1, 3}, new double[] {1, 2, 10, 3});
+        recorder.stopRecording(TestConsumers.<Success>expectingSuccess());
+        sensor.pushBatch(new long[] {4, 5}, new double[] {4, 5});
+        recorder.stopObserving();
+
+        ArrayList<InMemorySensorDatabase.Reading> expectedRecorded = Lists.newArrayList(
+                new InMemorySensorDatabase.Reading("test", 1, 1),
+                new InMemorySensorDatabase.Reading("test", 2, 2),
+                new InMemorySensorDatabase.Reading("test", 3, 3));
+        assertEquals(expectedRecorded, mDb.getReadings(0));
+
+        ArrayList<ScalarReading> expectedObserved = Lists.newArrayList(new ScalarReading(0, 0),
+                new ScalarReading(1, 1), new ScalarReading(2, 2), new ScalarReading(3, 3),
+                new ScalarReading(4, 4), new ScalarReading(5, 5));
+        assertEquals(expectedObserved, observer.getReadings());
+    }
+
+    @Test
+    public void testDetachedObserverStillRecords() {
+        ManualSensor sensor = new ManualSensor("test", Long.MAX_VALUE, 2);
+        DetachableRecordingObserver observer = new DetachableRecordingObserver();
+        SensorRecorder recorder = sensor.createRecorder(getContext(),
+                mRecordingController, observer);
+
+        recorder.startObserving();
+        recorder.startRecording("runId");
+        sensor.pushValue(1, 1);
+        observer.attached = false;
+        sensor.pushValue(2, 2);
+        sensor.pushValue(3, 3);
+        observer.attached = true;
+        sensor.pushValue(4, 4);
+        recorder.stopRecording(TestConsumers.<Success>expectingSuccess());
+        recorder.stopObserving();
+
+        ArrayList<InMemorySensorDatabase.Reading> expectedRecorded = Lists.newArrayList(
+                new InMemorySensorDatabase.Reading("test", 1, 1),
+                new InMemorySensorDatabase.Reading("test", 2, 2),
+                new InMemorySensorDatabase.Reading("test", 3, 3),
+                new InMemorySensorDatabase.Reading("test", 4, 4));
+        assertEquals(expectedRecorded, mDb.getReadings(0));
+
+        // Samples that arrive while nobody is watching aren't passed on, but still count
+        // towards the stats.
+        ArrayList<ScalarReading> expectedObserved = Lists.newArrayList(new ScalarReading(1, 1),
+                new ScalarReading(4, 4));
+        assertEquals(expectedObserved, observer.getReadings());
+    }
+
+    private static class DetachableRecordingObserver extends RecordingSensorObserver
+            implements DetachableSensorObserver {
+        public boolean attached = true;
+
+        @Override
+        public boolean isAttached() {
+            return attached;
+        }
+    }
+
     private Context getContext() {
         return null;
     }
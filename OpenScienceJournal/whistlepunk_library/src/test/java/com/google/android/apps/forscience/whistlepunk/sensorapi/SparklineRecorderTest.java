@@ -0,0 +1,108 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensorapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.android.apps.forscience.whistlepunk.metadata.GoosciSparkline;
+import com.google.android.apps.forscience.whistlepunk.scalarchart.ChartData;
+
+import org.junit.Test;
+
+import java.util.List;
+
+public class SparklineRecorderTest {
+    private static final double DELTA = 0.0001;
+
+    @Test public void shortRunKeepsEveryReading() {
+        SparklineRecorder recorder = new SparklineRecorder();
+        assertFalse(recorder.hasData());
+        recorder.addData(1000, 5);
+        recorder.addData(1001, 3);
+        recorder.addData(1003, 7);
+        assertTrue(recorder.hasData());
+
+        GoosciSparkline.Sparkline sparkline = recorder.makeSparkline();
+        assertEquals(1000, sparkline.firstTimestamp);
+        assertEquals(1003, sparkline.lastTimestamp);
+        assertEquals(1, sparkline.bucketWidth);
+        assertEquals(4, sparkline.min.length);
+        assertEquals(3, sparkline.min[1], DELTA);
+        // No reading at 1002
+        assertTrue(Double.isNaN(sparkline.min[2]));
+        assertEquals(7, sparkline.max[3], DELTA);
+    }
+
+    @Test public void longRunStaysWithinBucketLimit() {
+        SparklineRecorder recorder = new SparklineRecorder();
+        for (int i = 0; i < 100000; i++) {
+            recorder.addData(i, i % 10 == 0 ? -i : i);
+        }
+        GoosciSparkline.Sparkline sparkline = recorder.makeSparkline();
+        int buckets = sparkline.min.length;
+        assertTrue(buckets <= SparklineRecorder.MAX_BUCKETS);
+        assertTrue(buckets > SparklineRecorder.MAX_BUCKETS / 2);
+        assertTrue(buckets * sparkline.bucketWidth >= 100000);
+
+        // Every bucket still reports the extremes of the readings it covers.
+        for (int b = 0; b < buckets; b++) {
+            long start = b * sparkline.bucketWidth;
+            long end = Math.min(start + sparkline.bucketWidth, 100000) - 1;
+            long lastMultipleOfTen = end - end % 10;
+            assertEquals(-lastMultipleOfTen, sparkline.min[b], DELTA);
+            long lastNonMultiple = end % 10 == 0 ? end - 1 : end;
+            assertEquals(lastNonMultiple, sparkline.max[b], DELTA);
+        }
+    }
+
+    @Test public void clearStartsOver() {
+        SparklineRecorder recorder = new SparklineRecorder();
+        for (int i = 0; i < 1000; i++) {
+            recorder.addData(i, i);
+        }
+        recorder.clear();
+        assertFalse(recorder.hasData());
+        recorder.addData(5000, 1);
+        GoosciSparkline.Sparkline sparkline = recorder.makeSparkline();
+        assertEquals(5000, sparkline.firstTimestamp);
+        assertEquals(1, sparkline.bucketWidth);
+        assertEquals(1, sparkline.min.length);
+    }
+
+    @Test public void dataPointsSkipEmptyBuckets() {
+        SparklineRecorder recorder = new SparklineRecorder();
+        for (int i = 0; i < 512; i += 2) {
+            recorder.addData(i, i);
+        }
+        recorder.addData(2000, -1);
+        List<ChartData.DataPoint> points =
+                SparklineRecorder.asDataPoints(recorder.makeSparkline());
+
+        // Buckets are 8ms wide by now: 64 full buckets, a gap, then the last reading.
+        assertEquals(64 * 2 + 1, points.size());
+        assertEquals(0, points.get(0).getX());
+        assertEquals(0, points.get(0).getY(), DELTA);
+        assertEquals(4, points.get(1).getX());
+        assertEquals(6, points.get(1).getY(), DELTA);
+        ChartData.DataPoint last = points.get(points.size() - 1);
+        assertEquals(2000, last.getX());
+        assertEquals(-1, last.getY(), DELTA);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensorapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SpectrumAnalyzerTest {
+    private static final double SAMPLE_RATE = 1000;
+
+    @Test public void fftMatchesDirectComputation() {
+        int size = 64;
+        double[] frame = new double[size];
+        for (int i = 0; i < size; i++) {
+            frame[i] = Math.sin(i * 0.7) + 0.5 * Math.cos(i * 2.1) + (i % 5) * 0.1;
+        }
+        RealFft fft = new RealFft(size);
+        double[] power = new double[fft.getBinCount()];
+        fft.computePowerSpectrum(frame, power);
+
+        for (int k = 0; k < fft.getBinCount(); k++) {
+            double real = 0;
+            double imaginary = 0;
+            for (int i = 0; i < size; i++) {
+                double window = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / size);
+                double angle = 2 * Math.PI * k * i / size;
+                real += frame[i] * window * Math.cos(angle);
+                imaginary -= frame[i] * window * Math.sin(angle);
+            }
+            assertEquals("bin " + k, real * real + imaginary * imaginary, power[k], 1e-9);
+        }
+    }
+
+    @Test public void dominantFrequencyOfSine() {
+        SpectrumAnalyzer analyzer = new SpectrumAnalyzer(256, 256, SAMPLE_RATE);
+        assertFalse(analyzer.hasSpectrum());
+        assertEquals(0, analyzer.getDominantFrequency(), 0);
+        boolean ready = false;
+        for (int i = 0; i < 256; i++) {
+            ready = analyzer.addSample(Math.sin(2 * Math.PI * 123 * i / SAMPLE_RATE));
+        }
+        assertTrue(ready);
+        assertEquals(123, analyzer.getDominantFrequency(), 2);
+        assertEquals(123, analyzer.getSpectralCentroid(), 10);
+    }
+
+    @Test public void bandPowerSumsToMeanSquare() {
+        SpectrumAnalyzer analyzer = new SpectrumAnalyzer(512, 512, SAMPLE_RATE);
+        for (int i = 0; i < 512; i++) {
+            analyzer.addSample(3 * Math.sin(2 * Math.PI * 50 * i / SAMPLE_RATE)
+                    + Math.sin(2 * Math.PI * 300 * i / SAMPLE_RATE));
+        }
+        // Mean square of a sine is half its amplitude squared
+        assertEquals(4.5, analyzer.getBandPower(0, 100), 0.1);
+        assertEquals(0.5, analyzer.getBandPower(200, 400), 0.1);
+        assertEquals(5.0, analyzer.getBandPower(0, SAMPLE_RATE), 0.1);
+    }
+
+    @Test public void hopKeepsOverlap() {
+        SpectrumAnalyzer analyzer = new SpectrumAnalyzer(64, 16, SAMPLE_RATE);
+        int spectra = 0;
+        for (int i = 0; i < 64 + 16 * 3; i++) {
+            if (analyzer.addSample(i)) {
+                spectra++;
+            }
+        }
+        assertEquals(4, spectra);
+    }
+
+    @Test public void filterUsesTimestampsForSampleRate() {
+        SpectralFilter filter = new SpectralFilter(128, 32, SpectralFeature.DOMINANT_FREQUENCY);
+        double value = 0;
+        // 5Hz signal sampled every 20ms
+        for (long t = 0; t < 128 * 20; t += 20) {
+            value = filter.filterValue(t, Math.sin(2 * Math.PI * 5 * t / 1000.0));
+        }
+        assertEquals(5, value, 0.5);
+    }
+
+    @Test public void silentBandLevelIsFinite() {
+        SpectrumAnalyzer analyzer = new SpectrumAnalyzer(64, 64, SAMPLE_RATE);
+        for (int i = 0; i < 64; i++) {
+            analyzer.addSample(0);
+        }
+        assertEquals(-120, SpectralFeature.LOW_BAND_LEVEL.compute(analyzer), 0.001);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensorapi;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class StreamAlignerTest {
+    private static final double DELTA = 0.0001;
+
+    private static class RecordingRows implements StreamAligner.RowConsumer {
+        public final List<Long> timestamps = new ArrayList<>();
+        public final List<double[]> rows = new ArrayList<>();
+
+        @Override
+        public void onRows(long firstTimestampMillis, double[][] values, int offset, int count) {
+            for (int i = 0; i < count; i++) {
+                double[] row = new double[values.length];
+                for (int c = 0; c < values.length; c++) {
+                    row[c] = values[c][offset + i];
+                }
+                timestamps.add(firstTimestampMillis + i * 10);
+                rows.add(row);
+            }
+        }
+
+        public double get(int row, int channel) {
+            return rows.get(row)[channel];
+        }
+    }
+
+    @Test public void linearAndHold() {
+        RecordingRows rows = new RecordingRows();
+        StreamAligner aligner = new StreamAligner(100, 10, 100, rows);
+        StreamConsumer linear = aligner.addChannel(StreamAligner.Interpolation.LINEAR);
+        StreamConsumer hold = aligner.addChannel(StreamAligner.Interpolation.HOLD);
+
+        linear.addData(95, 0);
+        linear.addData(125, 30);
+        // Nothing until the hold channel has caught up
+        assertEquals(0, rows.rows.size());
+
+        hold.addData(97, 5);
+        hold.addData(113, 7);
+        assertEquals(2, rows.rows.size());
+        assertEquals(100, (long) rows.timestamps.get(0));
+        assertEquals(5, rows.get(0, 0), DELTA);
+        assertEquals(5, rows.get(0, 1), DELTA);
+        assertEquals(15, rows.get(1, 0), DELTA);
+        assertEquals(5, rows.get(1, 1), DELTA);
+
+        hold.addData(140, 9);
+        assertEquals(3, rows.rows.size());
+        assertEquals(25, rows.get(2, 0), DELTA);
+        assertEquals(7, rows.get(2, 1), DELTA);
+    }
+
+    @Test public void minMaxBuckets() {
+        RecordingRows rows = new RecordingRows();
+        StreamAligner aligner = new StreamAligner(0, 10, 100, rows);
+        StreamConsumer min = aligner.addChannel(StreamAligner.Interpolation.MIN);
+        StreamConsumer max = aligner.addChannel(StreamAligner.Interpolation.MAX);
+        double[] values = {3, 1, 4, 1, 5, 9, 2, 6};
+        for (int i = 0; i < values.length; i++) {
+            min.addData(i * 3 + 1, values[i]);
+            max.addData(i * 3 + 1, values[i]);
+        }
+        aligner.flush(30);
+        assertEquals(4, rows.rows.size());
+        // Row 0 covers only the instant 0: nothing yet.
+        assertEquals(Double.NaN, rows.get(0, 0), DELTA);
+        // (0, 10] holds readings at 1, 4, 7, 10
+        assertEquals(1, rows.get(1, 0), DELTA);
+        assertEquals(4, rows.get(1, 1), DELTA);
+        // (10, 20] holds readings at 13, 16, 19
+        assertEquals(2, rows.get(2, 0), DELTA);
+        assertEquals(9, rows.get(2, 1), DELTA);
+        // (20, 30] holds the reading at 22
+        assertEquals(6, rows.get(3, 0), DELTA);
+        assertEquals(6, rows.get(3, 1), DELTA);
+    }
+
+    @Test public void flushFinishesRun() {
+        RecordingRows rows = new RecordingRows();
+        StreamAligner aligner = new StreamAligner(0, 10, 100, rows);
+        StreamConsumer linear = aligner.addChannel(StreamAligner.Interpolation.LINEAR);
+        StreamConsumer hold = aligner.addChannel(StreamAligner.Interpolation.HOLD);
+        linear.addData(0, 1);
+        linear.addData(10, 2);
+        hold.addData(5, 3);
+        aligner.flush(20);
+        assertEquals(3, rows.rows.size());
+        assertEquals(2, rows.get(1, 0), DELTA);
+        assertEquals(3, rows.get(1, 1), DELTA);
+        // No extrapolation past the last linear reading
+        assertEquals(Double.NaN, rows.get(2, 0), DELTA);
+        assertEquals(3, rows.get(2, 1), DELTA);
+    }
+
+    @Test public void stalledChannelDoesNotHoldMemory() {
+        RecordingRows rows = new RecordingRows();
+        StreamAligner aligner = new StreamAligner(0, 10, 8, rows);
+        StreamConsumer fast = aligner.addChannel(StreamAligner.Interpolation.HOLD);
+        StreamConsumer stalled = aligner.addChannel(StreamAligner.Interpolation.HOLD);
+        stalled.addData(0, -1);
+        for (int i = 0; i < 100; i++) {
+            fast.addData(i * 10, i);
+        }
+        // Everything but the last capacity's worth of rows has been forced out.
+        assertEquals(true, rows.rows.size() > 100 - 8);
+        for (int i = 0; i < rows.rows.size(); i++) {
+            assertEquals(i, rows.get(i, 0), DELTA);
+            assertEquals(i == 0 ? -1 : Double.NaN, rows.get(i, 1), DELTA);
+        }
+    }
+
+    @Test public void dropsOutOfOrderReadings() {
+        RecordingRows rows = new RecordingRows();
+        StreamAligner aligner = new StreamAligner(0, 10, 100, rows);
+        StreamConsumer hold = aligner.addChannel(StreamAligner.Interpolation.HOLD);
+        hold.addData(12, 1);
+        hold.addData(8, 2);
+        hold.addData(25, 3);
+        assertEquals(3, rows.rows.size());
+        assertEquals(Double.NaN, rows.get(0, 0), DELTA);
+        assertEquals(Double.NaN, rows.get(1, 0), DELTA);
+        assertEquals(1, rows.get(2, 0), DELTA);
+    }
+}
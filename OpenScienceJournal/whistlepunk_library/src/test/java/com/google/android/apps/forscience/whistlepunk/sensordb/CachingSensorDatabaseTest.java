@@ -0,0 +1,196 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensordb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.android.apps.forscience.whistlepunk.scalarchart.ChartData;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Range;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+public class CachingSensorDatabaseTest {
+    private static final String TAG = "tag";
+    private static final long TILE = CachingSensorDatabase.TIER_0_TILE_MILLIS;
+
+    private static class CountingDatabase extends InMemorySensorDatabase {
+        public int reads = 0;
+
+        @Override
+        public ScalarReadingList getScalarReadings(String sensorTag, TimeRange range,
+                int resolutionTier, int maxRecords) {
+            reads++;
+            return super.getScalarReadings(sensorTag, range, resolutionTier, maxRecords);
+        }
+    }
+
+    private static class QueuedExecutor implements Executor {
+        private List<Runnable> mQueued = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            mQueued.add(command);
+        }
+
+        public void runAll() {
+            List<Runnable> running = mQueued;
+            mQueued = new ArrayList<>();
+            for (Runnable runnable : running) {
+                runnable.run();
+            }
+        }
+    }
+
+    private final CountingDatabase mDelegate = new CountingDatabase();
+    private final ReadingTileCache mCache =
+            new ReadingTileCache(ReadingTileCache.DEFAULT_MAX_BYTES);
+    private final QueuedExecutor mPrefetch = new QueuedExecutor();
+    private final CachingSensorDatabase mDb = new CachingSensorDatabase(mDelegate, mCache,
+            mPrefetch);
+
+    @Test public void secondReadComesFromCache() {
+        addReadingsEverySecond(0, 3 * TILE);
+
+        assertEquals(30, read(TimeRange.oldest(Range.closed(0L, 3 * TILE - 1)), 0).size());
+        int reads = mDelegate.reads;
+        assertEquals(Lists.newArrayList(29000L, 28000L, 27000L),
+                timestamps(read(TimeRange.newest(Range.closed(0L, 3 * TILE - 1)), 3)));
+        assertEquals(Lists.newArrayList(11000L, 12000L),
+                timestamps(read(TimeRange.oldest(Range.openClosed(10000L, 12000L)), 0)));
+        assertEquals(reads, mDelegate.reads);
+    }
+
+    @Test public void coldReadIsOneQuery() {
+        addReadingsEverySecond(0, 5 * TILE);
+
+        int reads = mDelegate.reads;
+        assertEquals(50, read(TimeRange.oldest(Range.closed(0L, 5 * TILE - 1)), 0).size());
+        assertEquals(reads + 1, mDelegate.reads);
+        assertEquals(Lists.newArrayList(21000L, 22000L),
+                timestamps(read(TimeRange.oldest(Range.closed(20500L, 22000L)), 0)));
+        assertEquals(reads + 1, mDelegate.reads);
+    }
+
+    @Test public void writeDropsOnlyItsTile() {
+        addReadingsEverySecond(0, 2 * TILE);
+        read(TimeRange.oldest(Range.closed(0L, 2 * TILE - 1)), 0);
+
+        mDb.addScalarReading(TAG, 0, TILE + 500, 0);
+        int reads = mDelegate.reads;
+        assertEquals(21, read(TimeRange.oldest(Range.closed(0L, 2 * TILE - 1)), 0).size());
+        assertEquals(reads + 1, mDelegate.reads);
+    }
+
+    @Test public void prefetchFollowsPanDirection() {
+        addReadingsEverySecond(0, 4 * TILE);
+        read(TimeRange.oldest(Range.closed(0L, TILE - 1)), 0);
+        mPrefetch.runAll();
+        assertTrue(mCache.isCachedOrLoading(TAG, 0, 1));
+        assertTrue(mCache.isCachedOrLoading(TAG, 0, 2));
+
+        int reads = mDelegate.reads;
+        assertEquals(20, read(TimeRange.oldest(Range.closed(TILE, 3 * TILE - 1)), 0).size());
+        assertEquals(reads, mDelegate.reads);
+    }
+
+    @Test public void prefetchBackwardsWhenPanningBack() {
+        addReadingsEverySecond(0, 8 * TILE);
+        read(TimeRange.oldest(Range.closed(5 * TILE, 6 * TILE - 1)), 0);
+        mPrefetch.runAll();
+        read(TimeRange.oldest(Range.closed(4 * TILE, 5 * TILE - 1)), 0);
+        mPrefetch.runAll();
+
+        assertTrue(mCache.isCachedOrLoading(TAG, 0, 3));
+        assertTrue(mCache.isCachedOrLoading(TAG, 0, 2));
+        assertFalse(mCache.isCachedOrLoading(TAG, 0, 8));
+    }
+
+    @Test public void deleteDropsSensorTiles() {
+        addReadingsEverySecond(0, TILE);
+        read(TimeRange.oldest(Range.closed(0L, TILE - 1)), 0);
+
+        mDb.deleteScalarReadings(TAG, TimeRange.oldest(Range.closed(0L, 4999L)));
+        assertEquals(5, read(TimeRange.oldest(Range.closed(0L, TILE - 1)), 0).size());
+    }
+
+    @Test public void deleteRunDropsOnlyItsSensors() {
+        final List<String> deleted = new ArrayList<>();
+        CachingSensorDatabase db = new CachingSensorDatabase(new InMemorySensorDatabase() {
+            @Override
+            public boolean deleteRun(String runId, List<String> sensorTags) {
+                deleted.addAll(sensorTags);
+                return true;
+            }
+        }, mCache, null);
+        db.addScalarReading(TAG, 0, 0, 0);
+        db.addScalarReading("other", 0, 0, 0);
+        db.getScalarReadings(TAG, TimeRange.oldest(Range.closed(0L, TILE - 1)), 0, 0);
+        db.getScalarReadings("other", TimeRange.oldest(Range.closed(0L, TILE - 1)), 0, 0);
+
+        assertTrue(db.deleteRun("run", Lists.newArrayList(TAG)));
+        assertEquals(Lists.newArrayList(TAG), deleted);
+        assertFalse(mCache.isCachedOrLoading(TAG, 0, 0));
+        assertTrue(mCache.isCachedOrLoading("other", 0, 0));
+    }
+
+    @Test public void leastRecentlyUsedTilesAreEvicted() {
+        ReadingTileCache cache = new ReadingTileCache(300);
+        ReadingTileCache.TileLoader loader = new ReadingTileCache.TileLoader() {
+            @Override
+            public ReadingTileCache.Tile[] loadTiles(String sensorTag, int resolutionTier,
+                    long firstTileIndex, long lastTileIndex) {
+                return new ReadingTileCache.Tile[] {
+                        new ReadingTileCache.Tile(new long[4], new double[4], 4)};
+            }
+        };
+        cache.getOrLoad(TAG, 0, 0, loader);
+        cache.getOrLoad(TAG, 0, 1, loader);
+        cache.getOrLoad(TAG, 0, 0, loader);
+        cache.getOrLoad(TAG, 0, 2, loader);
+
+        assertTrue(cache.isCachedOrLoading(TAG, 0, 0));
+        assertFalse(cache.isCachedOrLoading(TAG, 0, 1));
+        assertTrue(cache.isCachedOrLoading(TAG, 0, 2));
+        assertEquals(1, cache.getHitCount());
+    }
+
+    private void addReadingsEverySecond(long start, long end) {
+        for (long t = start; t < end; t += 1000) {
+            mDb.addScalarReading(TAG, 0, t, t);
+        }
+    }
+
+    private ScalarReadingList read(TimeRange range, int maxRecords) {
+        return mDb.getScalarReadings(TAG, range, 0, maxRecords);
+    }
+
+    private List<Long> timestamps(ScalarReadingList readings) {
+        List<Long> result = new ArrayList<>();
+        for (ChartData.DataPoint point : readings.asDataPoints()) {
+            result.add(point.getX());
+        }
+        return result;
+    }
+}
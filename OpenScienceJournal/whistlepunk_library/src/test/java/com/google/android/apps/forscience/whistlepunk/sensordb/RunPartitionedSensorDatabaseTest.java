@@ -0,0 +1,246 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensordb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.android.apps.forscience.whistlepunk.scalarchart.ChartData;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Range;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class RunPartitionedSensorDatabaseTest {
+    private static final String TAG = "tag";
+
+    private final InMemorySensorDatabase mLegacy = new InMemorySensorDatabase();
+    private final MemoryRunPartitionStore mStore = new MemoryRunPartitionStore();
+    private final RunPartitionedSensorDatabase mDb =
+            new RunPartitionedSensorDatabase(mLegacy, mStore);
+    private RunPartitionedSensorDatabase mDeleteDuringQuery = null;
+
+    @Test public void readingsDuringRunGoToItsPartition() {
+        recordRun("run1", "experiment1", 100, 110);
+
+        assertEquals(0, mLegacy.getReadingCount());
+        assertEquals(11, mStore.openPartition("run1").getReadingCount());
+        assertEquals(11, read(TimeRange.oldest(Range.closed(0L, 200L)), 0).size());
+    }
+
+    @Test public void deleteRunDropsPartition() {
+        recordRun("run1", "experiment1", 100, 110);
+
+        assertTrue(mDb.deleteRun("run1", Lists.newArrayList(TAG)));
+        assertFalse(mStore.hasPartition("run1"));
+        assertEquals(0, read(TimeRange.oldest(Range.closed(0L, 200L)), 0).size());
+        assertFalse(mDb.deleteRun("run1", Lists.newArrayList(TAG)));
+    }
+
+    @Test public void deleteRunWaitsForQueryInProgress() {
+        final MemoryRunPartitionStore store = new MemoryRunPartitionStore() {
+            @Override
+            public InMemorySensorDatabase openPartition(final String runId) {
+                if (hasPartition(runId)) {
+                    return super.openPartition(runId);
+                }
+                InMemorySensorDatabase database = new InMemorySensorDatabase() {
+                    @Override
+                    public ScalarReadingList getScalarReadings(String sensorTag,
+                            TimeRange range, int resolutionTier, int maxRecords) {
+                        // As if another thread deleted the run while this query was running.
+                        if (mDeleteDuringQuery != null) {
+                            assertTrue(mDeleteDuringQuery.deleteRun(runId,
+                                    Lists.newArrayList(TAG)));
+                            mDeleteDuringQuery = null;
+                            assertTrue(hasPartition(runId));
+                        }
+                        return super.getScalarReadings(sensorTag, range, resolutionTier,
+                                maxRecords);
+                    }
+                };
+                putPartition(runId, database);
+                return database;
+            }
+        };
+        RunPartitionedSensorDatabase db = new RunPartitionedSensorDatabase(mLegacy, store);
+        db.beginRun("run1", "experiment1", 100);
+        db.addScalarReading(TAG, 0, 100, 0);
+        db.endRun("run1", 100);
+
+        mDeleteDuringQuery = db;
+        assertEquals(1, db.getScalarReadings(TAG, TimeRange.oldest(Range.closed(0L, 200L)), 0,
+                0).size());
+        assertFalse(store.hasPartition("run1"));
+        assertEquals(0, db.getScalarReadings(TAG, TimeRange.oldest(Range.closed(0L, 200L)), 0,
+                0).size());
+    }
+
+    @Test public void queriesMergeAcrossRunsAndLegacy() {
+        mLegacy.addScalarReading(TAG, 0, 50, 50);
+        recordRun("run1", "experiment1", 100, 102);
+        recordRun("run2", "experiment1", 200, 202);
+
+        assertEquals(Lists.newArrayList(50L, 100L, 101L, 102L),
+                timestamps(read(TimeRange.oldest(Range.closed(0L, 300L)), 4)));
+        assertEquals(Lists.newArrayList(202L, 201L),
+                timestamps(read(TimeRange.newest(Range.closed(0L, 300L)), 2)));
+        assertEquals(Lists.newArrayList(101L, 102L),
+                timestamps(read(TimeRange.oldest(Range.closed(101L, 150L)), 0)));
+    }
+
+    @Test public void readingQueuedAfterStopStaysWithRun() {
+        mDb.beginRun("run1", "experiment1", 100);
+        mDb.addScalarReading(TAG, 0, 100, 0);
+        mDb.endRun("run1", 110);
+        mDb.addScalarReading(TAG, 0, 115, 0);
+
+        assertEquals(0, mLegacy.getReadingCount());
+        assertEquals(2, mStore.openPartition("run1").getReadingCount());
+        assertEquals(115, mStore.getSavedPartition("run1").getLastTimestampMillis());
+    }
+
+    @Test public void migrationMovesEveryTier() {
+        for (long t = 10; t <= 20; t++) {
+            mLegacy.addScalarReading(TAG, 0, t, t);
+        }
+        mLegacy.addScalarReading(TAG, 1, 10, 10);
+        mLegacy.addScalarReading(TAG, 1, 15, 15);
+        assertTrue(mDb.isRunMigrationNeeded());
+
+        assertTrue(mDb.migrateRun("run0", "experiment1", Lists.newArrayList(TAG), 10, 20));
+        assertFalse(mDb.migrateRun("run0", "experiment1", Lists.newArrayList(TAG), 10, 20));
+        mDb.finishRunMigration();
+
+        assertEquals(0, mLegacy.getReadingCount());
+        assertEquals(13, mStore.openPartition("run0").getReadingCount());
+        assertEquals(2, mDb.getScalarReadings(TAG, TimeRange.oldest(Range.closed(0L, 100L)), 1,
+                0).size());
+        assertFalse(mDb.isRunMigrationNeeded());
+    }
+
+    @Test public void migrationInterruptedMidCopyStartsOver() {
+        addLegacyReadings(10, 20);
+        // As if the app was killed partway through copying the run.
+        RunPartitionStore.Partition halfMoved = new RunPartitionStore.Partition("run0",
+                "experiment1", 10, 20);
+        halfMoved.setMigrating(true);
+        mStore.savePartition(halfMoved);
+        mStore.openPartition("run0").addScalarReading(TAG, 0, 10, 10);
+
+        assertEquals(11, read(TimeRange.oldest(Range.closed(0L, 100L)), 0).size());
+        assertTrue(mDb.migrateRun("run0", "experiment1", Lists.newArrayList(TAG), 10, 20));
+
+        assertEquals(0, mLegacy.getReadingCount());
+        assertEquals(11, mStore.openPartition("run0").getReadingCount());
+        assertFalse(mStore.getSavedPartition("run0").isMigrating());
+    }
+
+    @Test public void migrationInterruptedBeforeLegacyDeleteShowsNoDuplicates() {
+        addLegacyReadings(10, 20);
+        // As if the app was killed after the run was moved, but before the legacy copies were
+        // deleted.
+        mStore.savePartition(new RunPartitionStore.Partition("run0", "experiment1", 10, 20));
+        for (long t = 10; t <= 20; t++) {
+            mStore.openPartition("run0").addScalarReading(TAG, 0, t, t);
+        }
+        mLegacy.addScalarReading(TAG, 0, 50, 50);
+
+        assertEquals(12, read(TimeRange.oldest(Range.closed(0L, 100L)), 0).size());
+        assertEquals(Lists.newArrayList(50L, 20L),
+                timestamps(read(TimeRange.newest(Range.closed(0L, 100L)), 2)));
+
+        assertFalse(mDb.migrateRun("run0", "experiment1", Lists.newArrayList(TAG), 10, 20));
+        assertEquals(1, mLegacy.getReadingCount());
+        assertEquals(12, read(TimeRange.oldest(Range.closed(0L, 100L)), 0).size());
+    }
+
+    @Test public void migrationSkipsRunsWithNoReadings() {
+        assertFalse(mDb.migrateRun("run0", "experiment1", Lists.newArrayList(TAG), 10, 20));
+        assertFalse(mStore.hasPartition("run0"));
+    }
+
+    @Test public void diskUsageIsPerExperiment() {
+        recordRun("run1", "experiment1", 100, 102);
+        recordRun("run2", "experiment2", 200, 201);
+        recordRun("run3", "experiment1", 300, 300);
+
+        assertEquals(4 * MemoryRunPartitionStore.BYTES_PER_READING,
+                mDb.getDiskUsageBytes("experiment1"));
+        assertEquals(2 * MemoryRunPartitionStore.BYTES_PER_READING,
+                mDb.getDiskUsageBytes("experiment2"));
+    }
+
+    @Test public void unfinishedRunDoesNotClaimLaterReadings() {
+        mDb.beginRun("run1", "experiment1", 100);
+        mDb.addScalarReading(TAG, 0, 100, 0);
+
+        // As if the app was killed mid-recording and restarted.
+        RunPartitionedSensorDatabase restarted = new RunPartitionedSensorDatabase(mLegacy, mStore);
+        restarted.addScalarReading(TAG, 0, 500, 0);
+
+        assertEquals(1, mLegacy.getReadingCount());
+        assertEquals(100, mStore.getSavedPartition("run1").getLastTimestampMillis());
+    }
+
+    @Test public void unfinishedRunKeepsReadingsThatReachedDisk() {
+        mDb.beginRun("run1", "experiment1", 100);
+        for (long t = 100; t <= 150; t++) {
+            mDb.addScalarReading(TAG, 0, t, t);
+        }
+
+        // As if the app was killed mid-recording and restarted.
+        RunPartitionedSensorDatabase restarted = new RunPartitionedSensorDatabase(mLegacy, mStore);
+        restarted.addScalarReading(TAG, 0, 500, 0);
+
+        assertEquals(150, mStore.getSavedPartition("run1").getLastTimestampMillis());
+        assertEquals(51, restarted.getScalarReadings(TAG,
+                TimeRange.oldest(Range.closed(0L, 200L)), 0, 0).size());
+        assertEquals(1, mLegacy.getReadingCount());
+    }
+
+    private void addLegacyReadings(long first, long last) {
+        for (long t = first; t <= last; t++) {
+            mLegacy.addScalarReading(TAG, 0, t, t);
+        }
+    }
+
+    private void recordRun(String runId, String experimentId, long first, long last) {
+        mDb.beginRun(runId, experimentId, first);
+        for (long t = first; t <= last; t++) {
+            mDb.addScalarReading(TAG, 0, t, t);
+        }
+        mDb.endRun(runId, last);
+    }
+
+    private ScalarReadingList read(TimeRange range, int maxRecords) {
+        return mDb.getScalarReadings(TAG, range, 0, maxRecords);
+    }
+
+    private List<Long> timestamps(ScalarReadingList readings) {
+        List<Long> timestamps = new ArrayList<>();
+        for (ChartData.DataPoint point : readings.asDataPoints()) {
+            timestamps.add(point.getX());
+        }
+        return timestamps;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensordb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.Range;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+public class SensorDataLanesTest {
+    @Test public void interactiveReadsJumpTheQueue() throws InterruptedException {
+        SensorDataLanes lanes = new SensorDataLanes(1);
+        Executor interactive = lanes.getExecutor(SensorDataLanes.Lane.INTERACTIVE_READ);
+        Executor background = lanes.getExecutor(SensorDataLanes.Lane.BACKGROUND_READ);
+
+        // Occupy the only reader, so that everything after this queues up.
+        final CountDownLatch release = new CountDownLatch(1);
+        background.execute(new Runnable() {
+            @Override
+            public void run() {
+                await(release);
+            }
+        });
+
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch done = new CountDownLatch(4);
+        background.execute(record(order, "export1", done));
+        background.execute(record(order, "export2", done));
+        interactive.execute(record(order, "chart1", done));
+        interactive.execute(record(order, "chart2", done));
+        release.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals("[chart1, chart2, export1, export2]", order.toString());
+        assertEquals(2, lanes.getStats(SensorDataLanes.Lane.INTERACTIVE_READ).getCount());
+        assertEquals(3, lanes.getStats(SensorDataLanes.Lane.BACKGROUND_READ).getCount());
+    }
+
+    @Test public void readsDontWaitForWrites() throws InterruptedException {
+        SensorDataLanes lanes = new SensorDataLanes(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        lanes.getExecutor(SensorDataLanes.Lane.WRITE).execute(new Runnable() {
+            @Override
+            public void run() {
+                await(release);
+            }
+        });
+
+        final CountDownLatch read = new CountDownLatch(1);
+        lanes.getExecutor(SensorDataLanes.Lane.INTERACTIVE_READ).execute(new Runnable() {
+            @Override
+            public void run() {
+                read.countDown();
+            }
+        });
+        assertTrue(read.await(5, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test public void pendingWrites() {
+        PendingWrites pending = new PendingWrites();
+        TimeRange early = TimeRange.oldest(Range.closed(0L, 99L));
+        TimeRange late = TimeRange.oldest(Range.closed(100L, 200L));
+
+        pending.add("tag", 100);
+        assertEquals(false, pending.mightOverlap("tag", early));
+        assertEquals(true, pending.mightOverlap("tag", late));
+        assertEquals(true, pending.mightOverlap("tag", TimeRange.NOW));
+        assertEquals(false, pending.mightOverlap("other", late));
+
+        pending.done("tag");
+        assertEquals(false, pending.mightOverlap("tag", late));
+    }
+
+    private static Runnable record(final List<String> order, final String name,
+            final CountDownLatch done) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                order.add(name);
+                done.countDown();
+            }
+        };
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
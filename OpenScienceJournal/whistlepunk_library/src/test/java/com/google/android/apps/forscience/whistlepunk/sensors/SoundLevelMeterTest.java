@@ -0,0 +1,140 @@
+/*
+ *  Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.google.android.apps.forscience.whistlepunk.sensors;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.android.apps.forscience.whistlepunk.sensorapi.StreamConsumer;
+import com.google.android.apps.forscience.whistlepunk.sensordb.ScalarReading;
+
+import org.junit.Test;
+
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SoundLevelMeterTest {
+    private static final int SAMPLE_RATE = 44100;
+
+    private static class RecordingConsumer implements StreamConsumer {
+        public final List<ScalarReading> readings = new ArrayList<>();
+
+        @Override
+        public void addData(long timestampMillis, double value) {
+            readings.add(new ScalarReading(timestampMillis, value));
+        }
+    }
+
+    private static ShortBuffer sine(double frequency, double amplitude, int count) {
+        ShortBuffer buffer = ShortBuffer.allocate(count);
+        for (int i = 0; i < count; i++) {
+            buffer.put(i, (short) Math.round(
+                    amplitude * Math.sin(2 * Math.PI * frequency * i / SAMPLE_RATE)));
+        }
+        return buffer;
+    }
+
+    @Test public void levelPerWindowRegardlessOfBufferSize() {
+        SoundLevelMeter meter = new SoundLevelMeter(SAMPLE_RATE, 20, null, false);
+        RecordingConsumer consumer = new RecordingConsumer();
+        // 100ms of audio, delivered in odd-sized buffers
+        ShortBuffer audio = sine(440, 1000, 4410);
+        long now = 1000;
+        for (int start = 0; start < 4410; start += 1000) {
+            audio.limit(Math.min(4410, start + 1000));
+            audio.position(start);
+            now += 23;
+            meter.addSamples(audio, now, consumer);
+        }
+        assertEquals(5, consumer.readings.size());
+        // RMS of a sine is amplitude / sqrt(2)
+        double expected = 20 * Math.log10(1000 / Math.sqrt(2));
+        for (int i = 0; i < 5; i++) {
+            assertEquals(expected, consumer.readings.get(i).getValue(), 0.1);
+        }
+        assertEquals(50, meter.getOutputRate(), 10);
+    }
+
+    @Test public void timestampsAtEndOfWindow() {
+        SoundLevelMeter meter = new SoundLevelMeter(SAMPLE_RATE, 20, null, false);
+        RecordingConsumer consumer = new RecordingConsumer();
+        // 40ms of audio in one buffer, which arrived at time 1000
+        meter.addSamples(sine(440, 1000, 1764), 1000, consumer);
+        assertEquals(2, consumer.readings.size());
+        assertEquals(980, consumer.readings.get(0).getCollectedTimeMillis());
+        assertEquals(1000, consumer.readings.get(1).getCollectedTimeMillis());
+        assertEquals(20, meter.getMaxLatencyMillis());
+    }
+
+    @Test public void timestampsNeverGoBackwards() {
+        SoundLevelMeter meter = new SoundLevelMeter(SAMPLE_RATE, 20, null, false);
+        RecordingConsumer consumer = new RecordingConsumer();
+        // 40ms of audio that arrives only 5ms after the 20ms before it.
+        meter.addSamples(sine(440, 1000, 882), 1000, consumer);
+        meter.addSamples(sine(440, 1000, 1764), 1005, consumer);
+        meter.addSamples(sine(440, 1000, 882), 1050, consumer);
+        assertEquals(1000, consumer.readings.get(0).getCollectedTimeMillis());
+        assertEquals(1005, consumer.readings.get(1).getCollectedTimeMillis());
+        assertEquals(1005, consumer.readings.get(2).getCollectedTimeMillis());
+        assertEquals(1050, consumer.readings.get(3).getCollectedTimeMillis());
+    }
+
+    @Test public void silenceIsFinite() {
+        RecordingConsumer consumer = new RecordingConsumer();
+        new SoundLevelMeter(SAMPLE_RATE, 20, null, false).addSamples(ShortBuffer.allocate(882),
+                20, consumer);
+        new SoundLevelMeter(SAMPLE_RATE, 20, null, true).addSamples(ShortBuffer.allocate(882),
+                20, consumer);
+        assertEquals(-120, consumer.readings.get(0).getValue(), 0.1);
+        assertEquals(-120, consumer.readings.get(1).getValue(), 0.1);
+    }
+
+    @Test public void peakHold() {
+        SoundLevelMeter meter = new SoundLevelMeter(SAMPLE_RATE, 20, null, true);
+        RecordingConsumer consumer = new RecordingConsumer();
+        meter.addSamples(sine(440, 10000, 882), 20, consumer);
+        meter.addSamples(sine(440, 100, 882), 40, consumer);
+        meter.addSamples(sine(440, 100, 882), 40 + SoundLevelMeter.PEAK_HOLD_MILLIS, consumer);
+        assertEquals(80, consumer.readings.get(0).getValue(), 0.1);
+        assertEquals(80, consumer.readings.get(1).getValue(), 0.1);
+        assertEquals(40, consumer.readings.get(2).getValue(), 0.1);
+    }
+
+    @Test public void weightingCurves() {
+        assertEquals(0, gainInDecibels(WeightingFilter.createA(SAMPLE_RATE), 1000), 0.1);
+        assertEquals(-19.1, gainInDecibels(WeightingFilter.createA(SAMPLE_RATE), 100), 0.3);
+        assertEquals(1.0, gainInDecibels(WeightingFilter.createA(SAMPLE_RATE), 4000), 0.5);
+        assertEquals(0, gainInDecibels(WeightingFilter.createC(SAMPLE_RATE), 1000), 0.1);
+        assertEquals(-0.3, gainInDecibels(WeightingFilter.createC(SAMPLE_RATE), 100), 0.3);
+    }
+
+    private double gainInDecibels(WeightingFilter filter, double frequency) {
+        double input = 0;
+        double output = 0;
+        // Skip the first second, while the filter settles
+        for (int i = 0; i < 2 * SAMPLE_RATE; i++) {
+            double sample = Math.sin(2 * Math.PI * frequency * i / SAMPLE_RATE);
+            double filtered = filter.filter(sample);
+            if (i >= SAMPLE_RATE) {
+                input += sample * sample;
+                output += filtered * filtered;
+            }
+        }
+        return 10 * Math.log10(output / input);
+    }
+}